@@ -21,6 +21,7 @@ public class TranscodingCommand {
     private String subtitlesExtractionCommand;
     private Long transcodeEstimateTimePadding;
     private Long transcodeEstimateBytePadding;
+    private Long transcodePreRoll;
     private String brand;
 
     public TranscodingDTO getNewTranscoding() {
@@ -119,6 +120,14 @@ public class TranscodingCommand {
         this.transcodeEstimateBytePadding = transcodeEstimateBytePadding;
     }
 
+    public Long getTranscodePreRoll() {
+        return transcodePreRoll;
+    }
+
+    public void setTranscodePreRoll(Long transcodePreRoll) {
+        this.transcodePreRoll = transcodePreRoll;
+    }
+
     public String getBrand() {
         return brand;
     }
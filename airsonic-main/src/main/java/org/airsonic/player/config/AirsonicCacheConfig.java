@@ -0,0 +1,98 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Component
+@ConfigurationProperties(prefix = "airsonic.cache")
+@Validated
+public class AirsonicCacheConfig {
+
+    private static final int DEFAULT_MEDIA_FILE_HEAP_SIZE = 64;
+
+    @Positive
+    private Integer mediaFileHeapSize = DEFAULT_MEDIA_FILE_HEAP_SIZE;
+
+    @PositiveOrZero
+    private Integer mediaFileOffHeapSize = 0;
+
+    @PositiveOrZero
+    private Integer authenticationSize = 1000;
+
+    @Positive
+    private Integer authenticationTimeToLive = 300;
+
+    /**
+     * Get the memory budget of the on-heap media file cache.
+     *
+     * @return size in megabytes
+     */
+    public Integer getMediaFileHeapSize() {
+        return mediaFileHeapSize;
+    }
+
+    /**
+     * Get the size of the off-heap media file cache, which holds media files evicted from the heap in serialized form.
+     *
+     * @return size in megabytes, 0 if disabled
+     */
+    public Integer getMediaFileOffHeapSize() {
+        return mediaFileOffHeapSize;
+    }
+
+    /**
+     * Get the maximum number of successful password and token authentications that are remembered.
+     *
+     * @return number of entries, 0 if disabled
+     */
+    public Integer getAuthenticationSize() {
+        return authenticationSize;
+    }
+
+    /**
+     * Get how long a successful password or token authentication is remembered.
+     *
+     * @return time in seconds
+     */
+    public Integer getAuthenticationTimeToLive() {
+        return authenticationTimeToLive;
+    }
+
+    public void setMediaFileHeapSize(Integer mediaFileHeapSize) {
+        this.mediaFileHeapSize = mediaFileHeapSize;
+    }
+
+    public void setMediaFileOffHeapSize(Integer mediaFileOffHeapSize) {
+        this.mediaFileOffHeapSize = mediaFileOffHeapSize;
+    }
+
+    public void setAuthenticationSize(Integer authenticationSize) {
+        this.authenticationSize = authenticationSize;
+    }
+
+    public void setAuthenticationTimeToLive(Integer authenticationTimeToLive) {
+        this.authenticationTimeToLive = authenticationTimeToLive;
+    }
+}
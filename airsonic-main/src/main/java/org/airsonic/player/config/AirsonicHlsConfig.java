@@ -0,0 +1,83 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Component
+@ConfigurationProperties(prefix = "airsonic.hls")
+@Validated
+public class AirsonicHlsConfig {
+
+    private static final int DEFAULT_LOOK_AHEAD = 3;
+    private static final int DEFAULT_CACHE_SIZE = 2048;
+
+    @PositiveOrZero
+    private Integer lookAhead = DEFAULT_LOOK_AHEAD;
+
+    @Positive
+    private Integer cacheSize = DEFAULT_CACHE_SIZE;
+
+    private boolean preTranscodeVariants = true;
+
+    /**
+     * Get how many segments following the requested one are transcoded ahead of time.
+     *
+     * @return number of segments
+     */
+    public Integer getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * Get the disk space for transcoded HLS segments. The least recently used segments are deleted first.
+     *
+     * @return size in megabytes
+     */
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Whether the first segments of the first variant of an adaptive stream, which players start with, are transcoded
+     * as soon as its playlist is requested, so playback starts without waiting.
+     *
+     * @return true if the first variant is transcoded ahead of time
+     */
+    public boolean isPreTranscodeVariants() {
+        return preTranscodeVariants;
+    }
+
+    public void setLookAhead(Integer lookAhead) {
+        this.lookAhead = lookAhead;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public void setPreTranscodeVariants(boolean preTranscodeVariants) {
+        this.preTranscodeVariants = preTranscodeVariants;
+    }
+}
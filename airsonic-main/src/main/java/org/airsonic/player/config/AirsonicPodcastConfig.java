@@ -0,0 +1,101 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+
+@Component
+@ConfigurationProperties(prefix = "airsonic.podcast")
+@Validated
+public class AirsonicPodcastConfig {
+
+    private static final int DEFAULT_PROGRESS_INTERVAL = 5;
+    private static final int DEFAULT_SEGMENTS = 1;
+    private static final int DEFAULT_SEGMENT_THRESHOLD = 64;
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+
+    @Positive
+    private Integer progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    @Positive
+    private Integer segments = DEFAULT_SEGMENTS;
+
+    @Positive
+    private Integer segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+
+    @Positive
+    private Integer bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Get how often the progress of an episode download is saved.
+     *
+     * @return interval in seconds
+     */
+    public Integer getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Get the number of parallel range requests a large episode is downloaded with. 1 downloads every episode with a
+     * single request.
+     *
+     * @return number of segments
+     */
+    public Integer getSegments() {
+        return segments;
+    }
+
+    /**
+     * Get the size from which episodes are downloaded in segments.
+     *
+     * @return size in megabytes
+     */
+    public Integer getSegmentThreshold() {
+        return segmentThreshold;
+    }
+
+    /**
+     * Get the size of the buffer episodes are written to disk with.
+     *
+     * @return size in kilobytes
+     */
+    public Integer getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setProgressInterval(Integer progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public void setSegments(Integer segments) {
+        this.segments = segments;
+    }
+
+    public void setSegmentThreshold(Integer segmentThreshold) {
+        this.segmentThreshold = segmentThreshold;
+    }
+
+    public void setBufferSize(Integer bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+}
@@ -39,6 +39,8 @@ public class AirsonicScanConfig {
 
     private static final int DEFAULT_SCAN = 60 * 60;
     private static final int DEFAULT_FULLSCAN = 4 * 60 * 60;
+    private static final int DEFAULT_WATCH_DELAY = 30;
+    private static final int DEFAULT_BATCH_SIZE = 100;
 
     @Positive
     private Integer fullTimeout = DEFAULT_FULLSCAN;
@@ -49,6 +51,14 @@ public class AirsonicScanConfig {
     @Positive
     private Integer parallelism;
 
+    private boolean watch = false;
+
+    @Positive
+    private Integer watchDelay = DEFAULT_WATCH_DELAY;
+
+    @Positive
+    private Integer batchSize = DEFAULT_BATCH_SIZE;
+
     public Integer getFullTimeout() {
         return fullTimeout;
     }
@@ -75,6 +85,33 @@ public class AirsonicScanConfig {
         return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
     }
 
+    /**
+     * Whether music folders are watched for changes, so that only changed directories are rescanned.
+     *
+     * @return true if music folders are watched
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Get the number of seconds without further changes to wait before an incremental scan is started.
+     *
+     * @return watch delay in seconds
+     */
+    public Integer getWatchDelay() {
+        return watchDelay;
+    }
+
+    /**
+     * Get the number of media files, albums or artists the scanner writes to the database in one transaction.
+     *
+     * @return batch size
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
     public void setFullTimeout(Integer fullTimeout) {
         this.fullTimeout = fullTimeout;
     }
@@ -86,4 +123,16 @@ public class AirsonicScanConfig {
     public void setParallelism(Integer parallelism) {
         this.parallelism = parallelism;
     }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public void setWatchDelay(Integer watchDelay) {
+        this.watchDelay = watchDelay;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
 }
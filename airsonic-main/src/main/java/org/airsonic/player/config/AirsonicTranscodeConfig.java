@@ -0,0 +1,151 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Component
+@ConfigurationProperties(prefix = "airsonic.transcode")
+@Validated
+public class AirsonicTranscodeConfig {
+
+    private static final int DEFAULT_SHARED_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_SLOW_READER_TIMEOUT = 30;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final int DEFAULT_QUEUE_TIMEOUT = 30;
+
+    private boolean shareStreams = true;
+
+    @Positive
+    private Integer sharedBufferSize = DEFAULT_SHARED_BUFFER_SIZE;
+
+    @Positive
+    private Integer slowReaderTimeout = DEFAULT_SLOW_READER_TIMEOUT;
+
+    @PositiveOrZero
+    private Integer cacheSize = DEFAULT_CACHE_SIZE;
+
+    @PositiveOrZero
+    private Integer concurrency = 0;
+
+    @PositiveOrZero
+    private Integer userConcurrency = 0;
+
+    @Positive
+    private Integer queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+
+    /**
+     * Whether identical transcodes requested by several players are served by a single transcoder process.
+     *
+     * @return true if transcodes are shared
+     */
+    public boolean isShareStreams() {
+        return shareStreams;
+    }
+
+    /**
+     * Get the size of the buffer between a shared transcoder process and its listeners. Listeners can join a shared
+     * transcode as long as its beginning is still in the buffer.
+     *
+     * @return size in kilobytes
+     */
+    public Integer getSharedBufferSize() {
+        return sharedBufferSize;
+    }
+
+    /**
+     * Get how long a shared transcode waits for its slowest listener before disconnecting it.
+     *
+     * @return timeout in seconds
+     */
+    public Integer getSlowReaderTimeout() {
+        return slowReaderTimeout;
+    }
+
+    /**
+     * Get the disk space for the output of completed transcodes. The least recently used output is deleted first.
+     *
+     * @return size in megabytes, 0 disables the cache
+     */
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Get how many transcoder processes may run at once, weighted by their cost: audio transcodes and video frames
+     * for cover art cost 1, video and HLS transcodes cost 2.
+     *
+     * @return units of all running transcodes, 0 for the number of processors
+     */
+    public Integer getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Get how many transcoder processes of a single user may run at once, weighted like {@link #getConcurrency()}.
+     * Transcodes not made for a particular user, such as HLS and cover art, share one allowance.
+     *
+     * @return units of the running transcodes of a user, 0 for half of the concurrency
+     */
+    public Integer getUserConcurrency() {
+        return userConcurrency;
+    }
+
+    /**
+     * Get how long a transcode waits to be started before it fails.
+     *
+     * @return timeout in seconds
+     */
+    public Integer getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    public void setShareStreams(boolean shareStreams) {
+        this.shareStreams = shareStreams;
+    }
+
+    public void setSharedBufferSize(Integer sharedBufferSize) {
+        this.sharedBufferSize = sharedBufferSize;
+    }
+
+    public void setSlowReaderTimeout(Integer slowReaderTimeout) {
+        this.slowReaderTimeout = slowReaderTimeout;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setUserConcurrency(Integer userConcurrency) {
+        this.userConcurrency = userConcurrency;
+    }
+
+    public void setQueueTimeout(Integer queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+}
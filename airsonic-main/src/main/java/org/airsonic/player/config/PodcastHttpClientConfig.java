@@ -0,0 +1,39 @@
+package org.airsonic.player.config;
+
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP client shared by the podcast refresh and download thread pools, so that connections to the same feed hosts
+ * are kept alive and reused.
+ */
+@Configuration
+public class PodcastHttpClientConfig {
+
+    @Bean(name = "PodcastHttpClient", destroyMethod = "close")
+    public CloseableHttpClient podcastHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        // enough for both podcast thread pools at their max size, plus channel images
+        connectionManager.setMaxTotal(20);
+        connectionManager.setDefaultMaxPerRoute(5);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(2 * 60 * 1000) // 2 minutes
+                .setSocketTimeout(10 * 60 * 1000) // 10 minutes
+                // Workaround HttpClient circular redirects, which some feeds use (with query
+                // parameters)
+                .setCircularRedirectsAllowed(true)
+                // Workaround HttpClient not understanding latest RFC-compliant cookie 'expires'
+                // attributes
+                .setCookieSpec(CookieSpecs.STANDARD)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+}
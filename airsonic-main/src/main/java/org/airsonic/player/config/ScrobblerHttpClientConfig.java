@@ -0,0 +1,32 @@
+package org.airsonic.player.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP client shared by the scrobblers, so that connections to the scrobble services are kept alive and reused
+ * between submissions.
+ */
+@Configuration
+public class ScrobblerHttpClientConfig {
+
+    @Bean(name = "ScrobblerHttpClient", destroyMethod = "close")
+    public CloseableHttpClient scrobblerHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        // each scrobbler submits from a single thread
+        connectionManager.setMaxTotal(4);
+        connectionManager.setDefaultMaxPerRoute(2);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(15000)
+                .setSocketTimeout(15000)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+}
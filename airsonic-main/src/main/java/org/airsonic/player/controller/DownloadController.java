@@ -21,20 +21,18 @@
 package org.airsonic.player.controller;
 
 import org.airsonic.player.domain.*;
+import org.airsonic.player.io.FileRegionResource;
 import org.airsonic.player.io.PipeStreams.MonitoredResource;
-import org.airsonic.player.io.PipeStreams.PipedInputStream;
-import org.airsonic.player.io.PipeStreams.PipedOutputStream;
+import org.airsonic.player.io.StoredZipResource;
 import org.airsonic.player.service.*;
-import org.airsonic.player.spring.KnownLengthInputStreamResource;
+import org.airsonic.player.service.cache.FileCrcCache;
 import org.airsonic.player.util.FileUtil;
-import org.airsonic.player.util.LambdaUtils;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
@@ -47,30 +45,21 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.context.request.ServletWebRequest;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.util.zip.CRC32;
-import java.util.zip.CheckedInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * A controller used for downloading files to a remote client. If the requested
@@ -102,6 +91,8 @@ public class DownloadController {
     private MediaFileService mediaFileService;
     @Autowired
     private CoverArtService coverArtService;
+    @Autowired
+    private FileCrcCache fileCrcCache;
 
     @GetMapping
     public ResponseEntity<Resource> handleRequest(Principal p,
@@ -163,30 +154,6 @@ public class DownloadController {
         return ResponseEntity.ok().headers(headers).body(response.getResource());
     }
 
-    /**
-     * Computes the CRC checksum for the given file.
-     *
-     * @param file The file to compute checksum for.
-     * @return A CRC32 checksum.
-     * @throws IOException If an I/O error occurs.
-     */
-    private static long computeCrc(Path file) throws IOException {
-        try (InputStream is = Files.newInputStream(file);
-                BufferedInputStream bis = new BufferedInputStream(is);
-                CheckedInputStream cis = new CheckedInputStream(bis, new CRC32())) {
-            byte[] buf = new byte[8192];
-            while ((cis.read(buf)) != -1) {
-                continue;
-            }
-
-            return cis.getChecksum().getValue();
-        }
-    }
-
-    private static long zipSize(Stream<Entry<String, Long>> paths) {
-        return paths.mapToLong(e -> 30 + 46 + (2L * e.getKey().length()) + e.getValue()).sum() + 22;
-    }
-
     private ResponseDTO prepareResponse(List<MediaFile> files, List<Integer> indices,
             Supplier<TransferStatus> statusSupplier, Consumer<TransferStatus> statusCloser, Collection<Pair<Path, MusicFolder>> additionalFiles)
             throws IOException {
@@ -208,7 +175,7 @@ public class DownloadController {
             long changed = file.getChanged() == null ? -1 : file.getChanged().toEpochMilli();
             return new ResponseDTO(
                     new MonitoredResource(
-                            new FileSystemResource(path),
+                            new FileRegionResource(path),
                             settingsService.getDownloadBitrateLimiter(),
                             statusSupplier,
                             statusCloser,
@@ -218,7 +185,7 @@ public class DownloadController {
                     changed);
         } else {
             // get a list of all paths under the tree, plus their zip names and sizes
-            Collection<Pair<Path, Pair<String, Long>>> pathsToZip = Stream
+            List<StoredZipResource.Entry> entries = Stream
                     .concat(
                             indices.stream()
                                 .map(index -> Objects.isNull(index) ? null : files.get(index))
@@ -240,7 +207,7 @@ public class DownloadController {
                                         } else {
                                             zipName = zipName + '/';
                                         }
-                                        return Pair.of(f, Pair.of(zipName, size));
+                                        return new StoredZipResource.Entry(f, zipName, size, FileUtil.lastModified(f).toEpochMilli());
                                     })
                                     // need to create a new stream, because try-with-resources will close the paths stream before it exits
                                     .collect(Collectors.toList()).stream();
@@ -248,60 +215,23 @@ public class DownloadController {
                             LOG.warn("Error retrieving file to zip", e);
                             return Stream.empty();
                         }
-                    }).filter(Objects::nonNull)
+                    })
                     // need to preserve order because zip file creation needs to create folders first then files
-                    .collect(Collectors.toCollection(LinkedHashSet::new));
-
-            // zip to out
-            BiConsumer<InputStream, TransferStatus> poutInit = (input, status) -> {
-                PipedInputStream pin = (PipedInputStream) input;
-
-                // start a new thread to feed data in
-                new Thread(() -> {
-                    try (PipedOutputStream pout = new PipedOutputStream(pin);
-                            ZipOutputStream zout = new ZipOutputStream(pout)) {
-                        zout.setMethod(ZipOutputStream.STORED); // No compression.
-                        pathsToZip.stream().forEach(LambdaUtils.uncheckConsumer(f -> {
-                            status.setExternalFile(f.getLeft());
-                            ZipEntry zipEntry = new ZipEntry(f.getRight().getKey());
-                            zipEntry.setSize(f.getRight().getValue());
-                            zipEntry.setCompressedSize(f.getRight().getValue());
-
-                            if (f.getRight().getKey().endsWith("/") && f.getRight().getValue() == 0L) {
-                                // directory
-                                zipEntry.setCrc(0);
-                                zout.putNextEntry(zipEntry);
-                            } else {
-                                zipEntry.setCrc(computeCrc(f.getLeft()));
-                                zout.putNextEntry(zipEntry);
-                                Files.copy(f.getLeft(), zout);
-                            }
-
-                            zout.closeEntry();
-                        }));
-                    } catch (Exception e1) {
-                        LOG.debug("Error with output to zip", e1);
-                    }
-                }, "DownloadControllerDatafeed").start();
-
-                // wait for src data thread to connect
-                while (pin.source == null) {
-                    // sit and wait and ponder life
-                }
-            };
-
-            long size = zipSize(pathsToZip.stream().map(e -> e.getRight()));
+                    .distinct()
+                    .collect(Collectors.toList());
 
-            PipedInputStream pin = new PipedInputStream(null, 16 * 1024); // 16 Kb buffer
+            // the zip is streamed straight from the files, and its exact length is known up front, so ranges of it
+            // can be served too
+            StoredZipResource zip = new StoredZipResource(entries, fileCrcCache);
 
             return new ResponseDTO(
                     new MonitoredResource(
-                            new KnownLengthInputStreamResource(pin, size),
+                            zip,
                             settingsService.getDownloadBitrateLimiter(),
                             statusSupplier,
                             statusCloser,
-                            poutInit),
-                    null, size, -1);
+                        (input, status) -> ((StoredZipResource.ZipStream) input).setEntryListener(status::setExternalFile)),
+                    null, zip.contentLength(), zip.lastModified());
         }
     }
 
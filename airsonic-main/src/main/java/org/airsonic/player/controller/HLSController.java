@@ -21,6 +21,7 @@
 package org.airsonic.player.controller;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
+import org.airsonic.player.config.AirsonicHlsConfig;
 import org.airsonic.player.config.AirsonicHomeConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Player;
@@ -30,11 +31,14 @@ import org.airsonic.player.io.PipeStreams.MonitoredResource;
 import org.airsonic.player.security.JWTAuthenticationToken;
 import org.airsonic.player.service.JWTSecurityService;
 import org.airsonic.player.service.MediaFileService;
+import org.airsonic.player.service.PathWatcherService;
 import org.airsonic.player.service.PlayerService;
 import org.airsonic.player.service.SecurityService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.service.StatusService;
+import org.airsonic.player.service.TaskSchedulingService;
 import org.airsonic.player.service.TranscodingService;
+import org.airsonic.player.service.hls.HlsSegmentStore;
 import org.airsonic.player.service.hls.HlsSession;
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.NetworkUtil;
@@ -66,10 +70,12 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.awt.*;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -96,6 +102,7 @@ public class HLSController {
     private static final Logger LOG = LoggerFactory.getLogger(HLSController.class);
 
     private static final int SEGMENT_DURATION = 10;
+    private static final Duration SESSION_EXPIRY = Duration.ofMinutes(10);
     private static final Pattern BITRATE_PATTERN = Pattern.compile("(\\d+)(@(\\d+)x(\\d+))?");
 
     private final PlayerService playerService;
@@ -105,9 +112,13 @@ public class HLSController {
     private final StatusService statusService;
     private final SettingsService settingsService;
     private final TranscodingService transcodingService;
+    private final PathWatcherService pathWatcherService;
+    private final HlsSegmentStore segmentStore;
+    private final AirsonicHlsConfig hlsConfig;
     private final AirsonicHomeConfig homeConfig;
+    private final TaskSchedulingService taskService;
 
-    public HLSController(PlayerService playerService, MediaFileService mediaFileService, SecurityService securityService, JWTSecurityService jwtSecurityService, StatusService statusService, SettingsService settingsService, TranscodingService transcodingService, AirsonicHomeConfig homeConfig) {
+    public HLSController(PlayerService playerService, MediaFileService mediaFileService, SecurityService securityService, JWTSecurityService jwtSecurityService, StatusService statusService, SettingsService settingsService, TranscodingService transcodingService, PathWatcherService pathWatcherService, HlsSegmentStore segmentStore, AirsonicHlsConfig hlsConfig, AirsonicHomeConfig homeConfig, TaskSchedulingService taskService) {
         this.playerService = playerService;
         this.mediaFileService = mediaFileService;
         this.securityService = securityService;
@@ -115,7 +126,11 @@ public class HLSController {
         this.statusService = statusService;
         this.settingsService = settingsService;
         this.transcodingService = transcodingService;
+        this.pathWatcherService = pathWatcherService;
+        this.segmentStore = segmentStore;
+        this.hlsConfig = hlsConfig;
         this.homeConfig = homeConfig;
+        this.taskService = taskService;
         init();
     }
 
@@ -126,6 +141,22 @@ public class HLSController {
         if (Files.exists(airsonicHome.resolve("hls"))) {
             FileUtil.delete(airsonicHome.resolve("hls"));
         }
+        taskService.scheduleFixedDelayTask("hls-session-expiry", this::expireSessions,
+                Instant.now().plus(SESSION_EXPIRY), SESSION_EXPIRY.dividedBy(10), true);
+    }
+
+    /**
+     * Destroys the sessions no player has requested a segment of for a while, together with their segments.
+     */
+    private void expireSessions() {
+        sessions.entrySet().removeIf(e -> {
+            if (e.getValue().getIdleMillis() < SESSION_EXPIRY.toMillis()) {
+                return false;
+            }
+            LOG.debug("Expiring idle hls session {}", e.getKey());
+            e.getValue().destroySession();
+            return true;
+        });
     }
 
     @GetMapping("/hls.m3u8")
@@ -173,6 +204,9 @@ public class HLSController {
         PrintWriter writer = response.getWriter();
         if (bitRates.size() > 1) {
             generateVariantPlaylist(authentication, basePath, prefix, id, player, bitRates, writer);
+            if (hlsConfig.isPreTranscodeVariants()) {
+                preTranscodeFirstVariant(mediaFile, player, bitRates.get(0));
+            }
         } else {
             generateNormalPlaylist(authentication, basePath, prefix, id, player, bitRates.get(0), Math.round(duration), writer);
         }
@@ -180,6 +214,21 @@ public class HLSController {
         return;
     }
 
+    /**
+     * Starts transcoding the first segments of the first variant, which players start with, so playback doesn't wait
+     * for the transcoder. The other variants are only transcoded once a player switches to them.
+     */
+    private void preTranscodeFirstVariant(MediaFile mediaFile, Player player, Pair<Integer, Dimension> bitRate) {
+        // same key as the segment requests of the variant playlist
+        HlsSession.Key sessionKey = new HlsSession.Key(mediaFile.getId(), bitRate.getLeft(),
+                bitRate.getRight().width + "x" + bitRate.getRight().height, SEGMENT_DURATION, null);
+        try {
+            getOrCreateSession(sessionKey, mediaFile).prepare(String.valueOf(player.getId()), 0);
+        } catch (IOException e) {
+            LOG.warn("Could not transcode variant {} of media file {} ahead of time", sessionKey, mediaFile.getId(), e);
+        }
+    }
+
     private List<Pair<Integer, Dimension>> parseBitRates(HttpServletRequest request) throws IllegalArgumentException {
         List<Pair<Integer, Dimension>> result = new ArrayList<>();
         String[] bitRates = request.getParameterValues("maxBitRate");
@@ -313,9 +362,9 @@ public class HLSController {
         }
         TransferStatus status = this.statusService.createStreamStatus(player);
         status.setMediaFile(mediaFile);
-        HlsSession.Key sessionKey = new HlsSession.Key(id, playerId, maxBitRate, size, duration, audioTrack);
+        HlsSession.Key sessionKey = new HlsSession.Key(id, maxBitRate, size, duration, audioTrack);
         HlsSession session = getOrCreateSession(sessionKey, mediaFile);
-        Path segmentFile = session.waitForSegment(segmentIndex, 30000L);
+        Path segmentFile = session.waitForSegment(String.valueOf(player.getId()), segmentIndex, 30000L);
         if (segmentFile == null) {
             throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE,
                     "Timed out producing segment " + segmentIndex + " for media file " + id);
@@ -342,17 +391,13 @@ public class HLSController {
         return ResponseEntity.ok().headers(headers).body(resource);
     }
 
+    /**
+     * Sessions are shared by all players and kept when a player switches variants, so their segments can be reused.
+     * They are destroyed once idle for {@link #SESSION_EXPIRY}.
+     */
     private HlsSession getOrCreateSession(HlsSession.Key sessionKey, MediaFile mediaFile) {
-        return this.sessions.computeIfAbsent(sessionKey, k -> {
-            for (HlsSession.Key k1 : sessions.keySet()) {
-                if (k1.getMediaFileId() == k.getMediaFileId()
-                        && StringUtils.equals(k1.getPlayerId(), k.getPlayerId())) {
-                    sessions.remove(k1).destroySession();
-                }
-            }
-
-            return new HlsSession(k, mediaFile, transcodingService, homeConfig.getAirsonicHome().resolve("hls"));
-        });
+        return this.sessions.computeIfAbsent(sessionKey,
+            k -> new HlsSession(k, mediaFile, transcodingService, pathWatcherService, segmentStore, hlsConfig));
     }
 
 }
@@ -154,7 +154,7 @@ public class HomeController {
         List<Album> result = new ArrayList<>();
         for (MediaFile mediaFile : ratingService.getHighestRatedAlbums(offset, count, musicFolders)) {
             Album album = createAlbum(mediaFile);
-            album.setRating((int) Math.round(ratingService.getAverageRating(mediaFile) * 10.0D));
+            album.setRating((int) Math.round(mediaFile.getAverageRating() * 10.0D));
             result.add(album);
         }
         return result;
@@ -44,12 +44,16 @@ import javax.xml.datatype.XMLGregorianCalendar;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.GregorianCalendar;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static org.airsonic.player.util.XMLUtil.createSAXBuilder;
 import static org.springframework.web.bind.ServletRequestUtils.getStringParameter;
@@ -62,7 +66,19 @@ public class JAXBWriter {
 
     private static final Logger LOG = LoggerFactory.getLogger(JAXBWriter.class);
 
-    private final jakarta.xml.bind.JAXBContext jaxbContext;
+    /**
+     * Maximum number of idle marshallers kept per format. More may be in use at once, they are just not kept.
+     */
+    private static final int MAX_POOLED_MARSHALLERS = 16;
+    private static final int RESPONSE_BUFFER_SIZE = 64 * 1024;
+
+    // the context is thread safe and expensive to create, so it is shared by all writers
+    private static final JAXBContext jaxbContext = createJaxbContext();
+    private static final BlockingQueue<Marshaller> xmlMarshallers = new ArrayBlockingQueue<>(MAX_POOLED_MARSHALLERS);
+    private static final BlockingQueue<Marshaller> jsonMarshallers = new ArrayBlockingQueue<>(MAX_POOLED_MARSHALLERS);
+    // clients don't need indentation, it only makes large responses larger
+    private static final boolean formattedOutput = System.getProperty("airsonic.development") != null;
+
     private final DatatypeFactory datatypeFactory;
     private static final String restProtocolVersion = parseRESTProtocolVersion();
     private static final String serverVersion = parseServerVersion();
@@ -70,34 +86,41 @@ public class JAXBWriter {
     private final String SERVER_TYPE = "Airsonic-Advanced";
 
     public JAXBWriter() {
+        try {
+            datatypeFactory = DatatypeFactory.newInstance();
+        } catch (Exception x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static JAXBContext createJaxbContext() {
         Map<String, Object> properties = Map.of(JAXBContext.JAXB_CONTEXT_FACTORY, "org.eclipse.persistence.jaxb.JAXBContextFactory");
         Class<?>[] classes = {Response.class};
         try {
-            jaxbContext = JAXBContext.newInstance(classes, properties);
-            datatypeFactory = DatatypeFactory.newInstance();
+            return JAXBContext.newInstance(classes, properties);
         } catch (Exception x) {
             throw new RuntimeException(x);
         }
     }
 
-    private Marshaller createXmlMarshaller() {
+    private static Marshaller createXmlMarshaller() {
         Marshaller marshaller = null;
         try {
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formattedOutput);
             return marshaller;
         } catch (JAXBException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private Marshaller createJsonMarshaller() {
+    private static Marshaller createJsonMarshaller() {
         try {
             Marshaller marshaller;
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formattedOutput);
             marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
             marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, true);
             return marshaller;
@@ -143,15 +166,31 @@ public class JAXBWriter {
     }
 
     public void writeResponse(HttpServletRequest request, HttpServletResponse httpResponse, Response jaxbResponse) {
-        Entry<String, String> serializedResp = serializeForType(request, jaxbResponse);
+        Format format = Format.of(request);
 
         httpResponse.setCharacterEncoding(StringUtil.ENCODING_UTF8);
-        httpResponse.setContentType(serializedResp.getKey());
+        httpResponse.setContentType(format.type.toString());
+        // most responses fit into the buffer, and are not sent before they were marshalled completely
+        httpResponse.setBufferSize(Math.max(httpResponse.getBufferSize(), RESPONSE_BUFFER_SIZE));
 
+        // marshalled straight into the response, large responses are never held in memory as a whole
         try {
-            httpResponse.getWriter().append(serializedResp.getValue());
-        } catch (IOException x) {
+            OutputStream out = httpResponse.getOutputStream();
+            if (format.jsonpCallback != null) {
+                out.write((format.jsonpCallback + "(").getBytes(StandardCharsets.UTF_8));
+            }
+            marshal(format, marshaller -> marshaller.marshal(new ObjectFactory().createSubsonicResponse(jaxbResponse), out));
+            if (format.jsonpCallback != null) {
+                out.write(");".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JAXBException x) {
             LOG.error("Failed to marshal JAXB", x);
+            if (!httpResponse.isCommitted()) {
+                // don't send the partial response as a successful one
+                httpResponse.resetBuffer();
+                httpResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            // a committed response is aborted by the exception, so the client sees it is incomplete
             throw new RuntimeException(x);
         }
     }
@@ -176,31 +215,15 @@ public class JAXBWriter {
     }
 
     public Entry<String, String> serializeForType(HttpServletRequest request, Response resp) {
-        String format = getStringParameter(request, "f", "xml");
-        String jsonpCallback = request.getParameter("callback");
-        boolean json = "json".equals(format);
-        boolean jsonp = "jsonp".equals(format) && jsonpCallback != null;
-        Marshaller marshaller;
-        MediaType type;
-
-        if (json) {
-            marshaller = createJsonMarshaller();
-            type = MediaType.JSON_UTF_8;
-        } else if (jsonp) {
-            marshaller = createJsonMarshaller();
-            type = MediaType.JAVASCRIPT_UTF_8;
-        } else {
-            marshaller = createXmlMarshaller();
-            type = MediaType.XML_UTF_8;
-        }
+        Format format = Format.of(request);
 
         StringWriter writer = new StringWriter();
         try {
-            if (jsonp) {
-                writer.append(jsonpCallback).append('(');
+            if (format.jsonpCallback != null) {
+                writer.append(format.jsonpCallback).append('(');
             }
-            marshaller.marshal(new ObjectFactory().createSubsonicResponse(resp), writer);
-            if (jsonp) {
+            marshal(format, marshaller -> marshaller.marshal(new ObjectFactory().createSubsonicResponse(resp), writer));
+            if (format.jsonpCallback != null) {
                 writer.append(");");
             }
         } catch (JAXBException x) {
@@ -208,7 +231,50 @@ public class JAXBWriter {
             throw new RuntimeException(x);
         }
 
-        return Pair.of(type.toString(), writer.toString());
+        return Pair.of(format.type.toString(), writer.toString());
+    }
+
+    private static void marshal(Format format, MarshalAction action) throws JAXBException {
+        BlockingQueue<Marshaller> pool = format.json ? jsonMarshallers : xmlMarshallers;
+        Marshaller marshaller = pool.poll();
+        if (marshaller == null) {
+            marshaller = format.json ? createJsonMarshaller() : createXmlMarshaller();
+        }
+        action.marshal(marshaller);
+        // a marshaller that failed half way is not reused
+        pool.offer(marshaller);
+    }
+
+    @FunctionalInterface
+    private interface MarshalAction {
+        void marshal(Marshaller marshaller) throws JAXBException;
+    }
+
+    /**
+     * Response format requested by the client.
+     */
+    private static class Format {
+        private final boolean json;
+        private final String jsonpCallback;
+        private final MediaType type;
+
+        private Format(boolean json, String jsonpCallback, MediaType type) {
+            this.json = json;
+            this.jsonpCallback = jsonpCallback;
+            this.type = type;
+        }
+
+        private static Format of(HttpServletRequest request) {
+            String format = getStringParameter(request, "f", "xml");
+            String jsonpCallback = request.getParameter("callback");
+            if ("json".equals(format)) {
+                return new Format(true, null, MediaType.JSON_UTF_8);
+            } else if ("jsonp".equals(format) && jsonpCallback != null) {
+                return new Format(true, jsonpCallback, MediaType.JAVASCRIPT_UTF_8);
+            } else {
+                return new Format(false, null, MediaType.XML_UTF_8);
+            }
+        }
     }
 
     public XMLGregorianCalendar convertDate(Instant date) {
@@ -23,7 +23,9 @@ package org.airsonic.player.controller;
 import com.google.re2j.Matcher;
 import com.google.re2j.Pattern;
 import org.airsonic.player.domain.*;
+import org.airsonic.player.io.FileRegionResource;
 import org.airsonic.player.io.PipeStreams.MonitoredInputStream;
+import org.airsonic.player.io.PipeStreams.MonitoredResource;
 import org.airsonic.player.io.PipeStreams.PipedInputStream;
 import org.airsonic.player.io.PipeStreams.PipedOutputStream;
 import org.airsonic.player.io.PlayQueueInputStream;
@@ -31,6 +33,8 @@ import org.airsonic.player.io.ShoutCastOutputStream;
 import org.airsonic.player.security.JWTAuthenticationToken;
 import org.airsonic.player.service.*;
 import org.airsonic.player.service.sonos.SonosHelper;
+import org.airsonic.player.service.transcoding.TranscodeRejectedException;
+import org.airsonic.player.service.transcoding.TranscodeScheduler;
 import org.airsonic.player.spring.KnownLengthInputStreamResource;
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.LambdaUtils;
@@ -41,6 +45,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -70,6 +75,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 /**
  * A controller which streams the content of a {@link PlayQueue} to a remote
@@ -161,6 +167,7 @@ public class StreamController {
         }
 
         Long byteOffset = null;
+        boolean isRawFile = false;
 
         if (isSingleFile) {
 
@@ -191,6 +198,7 @@ public class StreamController {
 
             // Support ranges as long as we're not transcoding blindly
             expectedSize = parameters.isRangeAllowed() ? parameters.getExpectedLength() : null;
+            isRawFile = !parameters.isTranscode() && expectedSize != null;
 
             // roughly adjust for offset seconds
             if (expectedSize != null && expectedSize > 0 && offsetSeconds != null && offsetSeconds > 0 && file.getDuration() != null) {
@@ -240,16 +248,71 @@ public class StreamController {
                     new PlayStatus(status.getId(), mediaFile, player, status.getMillisSinceLastUpdate()));
         };
         Function<MediaFile, InputStream> streamGenerator = LambdaUtils.uncheckFunction(
-            mediaFile -> transcodingService.getTranscodedInputStream(
+            mediaFile -> transcodingService.getSharedTranscodedInputStream(
                     transcodingService.getParameters(mediaFile, player, bitRate, targetFormat, videoTranscodingSettingsF)));
+        // the next song is transcoded with the lowest priority, and not taken from the user's share
+        Function<MediaFile, InputStream> preRollGenerator = LambdaUtils.uncheckFunction(mediaFile -> {
+            TranscodingService.Parameters parameters = transcodingService.getParameters(mediaFile, player, bitRate,
+                    targetFormat, videoTranscodingSettingsF);
+            if (!mediaFile.isVideo()) {
+                parameters.setKind(TranscodeScheduler.Kind.PRE_ROLL);
+            }
+            return transcodingService.getSharedTranscodedInputStream(parameters);
+        });
 
         HttpHeaders headers = new HttpHeaders();
-        InputStream playStream = new PlayQueueInputStream(player.getPlayQueue(), fileStartListener, fileEndListener, streamGenerator);
+        Supplier<TransferStatus> statusSupplier = () -> status;
+        Consumer<TransferStatus> statusCloser = s -> {
+            securityService.incrementBytesStreamed(user.getUsername(), s.getBytesTransferred());
+            statusService.removeStreamStatus(s);
+        };
+
+        boolean sonos = SonosHelper.AIRSONIC_CLIENT_ID.equals(player.getClientId());
+        headers.setContentType(MediaType.parseMediaType(StringUtil.getMimeType(suffix, sonos)));
+
+        String clientId = Optional.ofNullable(swr.getParameter("c")).orElse("");
+        boolean shoutcast = !ICY_IGNORED_CLIENT.contains(clientId) && "1".equals(swr.getHeader("icy-metadata"));
+
+        // Files that are neither transcoded nor split are served straight from the file region, without the play
+        // queue and transcoder streams, so ranges are seeked to and the file is copied in large chunks
+        if (isRawFile && !shoutcast) {
+            long offset = byteOffset == null ? 0L : byteOffset;
+            Resource resource = new MonitoredResource(
+                    new FileRegionResource(file.getFullPath(), offset, expectedSize),
+                    settingsService.getDownloadBitrateLimiter(),
+                    statusSupplier,
+                    s -> {
+                        fileEndListener.accept(s.getBytesTransferred() > 0 ? 1 : 0, file);
+                        statusCloser.accept(s);
+                    },
+                    (i, s) -> {
+                        fileStartListener.accept(file);
+                        s.addBytesSkipped(offset);
+                    });
+            return ResponseEntity.ok().headers(headers).body(resource);
+        }
+
+        // Lets the next song of the queue be transcoded before the current one ends
+        ToLongFunction<MediaFile> expectedLength = mediaFile -> Optional.ofNullable(transcodingService
+                .getParameters(mediaFile, player, bitRate, targetFormat, videoTranscodingSettingsF).getExpectedLength())
+                .orElse(0L);
+        PlayQueueInputStream playQueueStream = new PlayQueueInputStream(player.getPlayQueue(), fileStartListener,
+                fileEndListener, streamGenerator, preRollGenerator, expectedLength, settingsService.getTranscodePreRoll());
+        // Opens the first file before the response is committed, so a busy transcoder can still be reported
+        try {
+            playQueueStream.open();
+        } catch (IOException | RuntimeException e) {
+            statusService.removeStreamStatus(status);
+            if (e.getCause() instanceof TranscodeRejectedException rejected) {
+                throw rejected;
+            }
+            throw e;
+        }
+        InputStream playStream = playQueueStream;
         BiConsumer<InputStream, TransferStatus> streamInit = (i, s) -> {};
 
         // Enabled SHOUTcast, if requested.
-        String clientId = Optional.ofNullable(swr.getParameter("c")).orElse("");
-        if (!ICY_IGNORED_CLIENT.contains(clientId) && "1".equals(swr.getHeader("icy-metadata"))) {
+        if (shoutcast) {
             expectedSize = null;
             ShoutcastDetails shoutcastDetails = getShoutcastDetails(playStream);
             playStream = shoutcastDetails.getStream();
@@ -274,12 +337,6 @@ public class StreamController {
             playStream = new ThresholdInputStream(playStream, expectedSize);
         }
 
-        Supplier<TransferStatus> statusSupplier = () -> status;
-        Consumer<TransferStatus> statusCloser = s -> {
-            securityService.incrementBytesStreamed(user.getUsername(), s.getBytesTransferred());
-            statusService.removeStreamStatus(s);
-        };
-
         InputStream monitoredStream = new MonitoredInputStream(
                 playStream,
                 settingsService.getDownloadBitrateLimiter(),
@@ -290,12 +347,20 @@ public class StreamController {
                 new InputStreamResource(monitoredStream) :
                 new KnownLengthInputStreamResource(monitoredStream, expectedSize);
 
-        boolean sonos = SonosHelper.AIRSONIC_CLIENT_ID.equals(player.getClientId());
-        headers.setContentType(MediaType.parseMediaType(StringUtil.getMimeType(suffix, sonos)));
-
         return ResponseEntity.ok().headers(headers).body(resource);
     }
 
+    /**
+     * Tells the client to retry later when the transcoder is too busy to start its stream.
+     */
+    @ExceptionHandler(TranscodeRejectedException.class)
+    public ResponseEntity<Void> handleTranscodeRejectedException(TranscodeRejectedException e) {
+        LOG.warn("Stream rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
+
     @ExceptionHandler(AsyncRequestNotUsableException.class)
     public void handleAsyncRequestNotUsableException(AsyncRequestNotUsableException e) {
         LOG.info("Client Aborted");
@@ -31,6 +31,7 @@ import org.airsonic.player.i18n.LocaleResolver;
 import org.airsonic.player.service.*;
 import org.airsonic.player.service.podcast.PodcastDownloadClient;
 import org.airsonic.player.service.search.IndexType;
+import org.airsonic.player.service.transcoding.TranscodeRejectedException;
 import org.airsonic.player.util.NetworkUtil;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
@@ -270,11 +271,16 @@ public class SubsonicRESTController {
             }
         }
 
-        for (MediaFile shortcut : musicIndexService.getShortcuts(musicFolders)) {
-            indexes.getShortcut().add(jaxbContentService.createJaxbArtist(shortcut, username));
-        }
+        indexes.getShortcut().addAll(jaxbContentService.createJaxbArtists(musicIndexService.getShortcuts(musicFolders), username));
 
         MusicFolderContent musicFolderContent = musicIndexService.getMusicFolderContent(musicFolders, false);
+        MediaFileAnnotations annotations = jaxbContentService.getUserAnnotations(
+                musicFolderContent.getIndexedArtists().values().stream()
+                        .flatMap(List::stream)
+                        .flatMap(artist -> artist.getMediaFiles().stream())
+                        .filter(MediaFile::isDirectory)
+                        .collect(Collectors.toList()),
+                username);
 
         for (Map.Entry<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> entry : musicFolderContent.getIndexedArtists().entrySet()) {
             Index index = new Index();
@@ -284,16 +290,15 @@ public class SubsonicRESTController {
             for (MusicIndex.SortableArtistWithMediaFiles artist : entry.getValue()) {
                 for (MediaFile mediaFile : artist.getMediaFiles()) {
                     if (mediaFile.isDirectory()) {
-                        Instant starredDate = mediaFileService.getMediaFileStarredDate(mediaFile, username);
                         org.subsonic.restapi.Artist a = new org.subsonic.restapi.Artist();
                         index.getArtist().add(a);
                         a.setId(String.valueOf(mediaFile.getId()));
                         a.setName(artist.getName());
-                        a.setStarred(jaxbWriter.convertDate(starredDate));
+                        a.setStarred(jaxbWriter.convertDate(annotations.getStarredDate(mediaFile)));
 
                         if (mediaFile.isAlbum()) {
-                            a.setAverageRating(ratingService.getAverageRating(mediaFile));
-                            a.setUserRating(ratingService.getRatingForUser(username, mediaFile));
+                            a.setAverageRating(annotations.getAverageRating(mediaFile));
+                            a.setUserRating(annotations.getUserRating(mediaFile));
                         }
                     }
                 }
@@ -303,9 +308,7 @@ public class SubsonicRESTController {
         // Add children
         Player player = playerService.getPlayer(request, response, username);
 
-        for (MediaFile singleSong : musicFolderContent.getSingleSongs()) {
-            indexes.getChild().add(jaxbContentService.createJaxbChild(player, singleSong, username));
-        }
+        indexes.getChild().addAll(jaxbContentService.createJaxbChildren(player, musicFolderContent.getSingleSongs(), username));
 
         res.setIndexes(indexes);
         jaxbWriter.writeResponse(request, response, res);
@@ -343,9 +346,7 @@ public class SubsonicRESTController {
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username, musicFolderId);
 
-        for (MediaFile mediaFile : mediaFileService.getSongsByGenre(offset, count, genre, musicFolders)) {
-            songs.getSong().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        songs.getSong().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getSongsByGenre(offset, count, genre, musicFolders), username));
         Response res = createResponse();
         res.setSongsByGenre(songs);
         jaxbWriter.writeResponse(request, response, res);
@@ -361,8 +362,7 @@ public class SubsonicRESTController {
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username, musicFolderId);
 
-        List<org.airsonic.player.domain.Artist> artists = artistService.getAlphabeticalArtists(musicFolders);
-        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> indexedArtists = musicIndexService.getIndexedArtists(artists);
+        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> indexedArtists = musicIndexService.getIndexedId3Artists(musicFolders);
         for (Map.Entry<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> entry : indexedArtists.entrySet()) {
             IndexID3 index = new IndexID3();
             result.getIndex().add(index);
@@ -395,9 +395,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongsByMediaFile(mediaFile, count, musicFolders);
         Player player = playerService.getPlayer(request, response, username);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs(result);
@@ -423,9 +421,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response, username);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs2(result);
@@ -445,9 +441,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
         List<MediaFile> topSongs = lastFmService.getTopSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response, username);
-        for (MediaFile topSong : topSongs) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, topSong, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, topSongs, username));
 
         Response res = createResponse();
         res.setTopSongs(result);
@@ -472,9 +466,7 @@ public class SubsonicRESTController {
         }
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
         List<MediaFile> similarArtists = lastFmService.getSimilarArtistsByMediaFile(mediaFile, count, includeNotPresent, musicFolders);
-        for (MediaFile similarArtist : similarArtists) {
-            result.getSimilarArtist().add(jaxbContentService.createJaxbArtist(similarArtist, username));
-        }
+        result.getSimilarArtist().addAll(jaxbContentService.createJaxbArtists(similarArtists, username));
         ArtistBio artistBio = lastFmService.getArtistBioByMediaFile(mediaFile, localeResolver.resolveLocale(request));
         if (artistBio != null) {
             result.setBiography(artistBio.getBiography());
@@ -570,9 +562,7 @@ public class SubsonicRESTController {
         }
 
         AlbumWithSongsID3 result = jaxbContentService.createJaxbAlbum(new AlbumWithSongsID3(), album, username);
-        for (MediaFile mediaFile : mediaFileService.getSongsForAlbum(album.getArtist(), album.getName())) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getSongsForAlbum(album.getArtist(), album.getName()), username));
 
         Response res = createResponse();
         res.setAlbum(result);
@@ -637,9 +627,7 @@ public class SubsonicRESTController {
             directory.setUserRating(ratingService.getRatingForUser(username, dir));
         }
 
-        for (MediaFile child : mediaFileService.getVisibleChildrenOf(dir, true, true)) {
-            directory.getChild().add(jaxbContentService.createJaxbChild(player, child, username));
-        }
+        directory.getChild().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getVisibleChildrenOf(dir, true, true), username));
 
         Response res = createResponse();
         res.setDirectory(directory);
@@ -682,9 +670,7 @@ public class SubsonicRESTController {
         searchResult.setOffset(result.getOffset());
         searchResult.setTotalHits(result.getTotalHits());
 
-        for (MediaFile mediaFile : result.getMediaFiles()) {
-            searchResult.getMatch().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getMatch().addAll(jaxbContentService.createJaxbChildren(player, result.getMediaFiles(), username));
         Response res = createResponse();
         res.setSearchResult(searchResult);
         jaxbWriter.writeResponse(request, response, res);
@@ -706,23 +692,17 @@ public class SubsonicRESTController {
         criteria.setCount(getIntParameter(request, "artistCount", 20));
         criteria.setOffset(getIntParameter(request, "artistOffset", 0));
         org.airsonic.player.domain.SearchResult artists = searchService.search(criteria, musicFolders, IndexType.ARTIST);
-        for (MediaFile mediaFile : artists.getMediaFiles()) {
-            searchResult.getArtist().add(jaxbContentService.createJaxbArtist(mediaFile, username));
-        }
+        searchResult.getArtist().addAll(jaxbContentService.createJaxbArtists(artists.getMediaFiles(), username));
 
         criteria.setCount(getIntParameter(request, "albumCount", 20));
         criteria.setOffset(getIntParameter(request, "albumOffset", 0));
         org.airsonic.player.domain.SearchResult albums = searchService.search(criteria, musicFolders, IndexType.ALBUM);
-        for (MediaFile mediaFile : albums.getMediaFiles()) {
-            searchResult.getAlbum().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getAlbum().addAll(jaxbContentService.createJaxbChildren(player, albums.getMediaFiles(), username));
 
         criteria.setCount(getIntParameter(request, "songCount", 20));
         criteria.setOffset(getIntParameter(request, "songOffset", 0));
         org.airsonic.player.domain.SearchResult songs = searchService.search(criteria, musicFolders, IndexType.SONG);
-        for (MediaFile mediaFile : songs.getMediaFiles()) {
-            searchResult.getSong().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getSong().addAll(jaxbContentService.createJaxbChildren(player, songs.getMediaFiles(), username));
 
         Response res = createResponse();
         res.setSearchResult2(searchResult);
@@ -756,7 +736,7 @@ public class SubsonicRESTController {
                 albumService.getAlbums(musicFolders, albumCount, albumOffset).forEach(album -> searchResult.getAlbum().add(jaxbContentService.createJaxbAlbum(new AlbumID3(), album, username)));
             }
             if (songCount > 0) {
-                mediaFileService.getSongs(musicFolders, songCount, songOffset).forEach(song -> searchResult.getSong().add(jaxbContentService.createJaxbChild(player, song, username)));
+                searchResult.getSong().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getSongs(musicFolders, songCount, songOffset), username));
             }
         } else {
             SearchCriteria criteria = new SearchCriteria();
@@ -778,9 +758,7 @@ public class SubsonicRESTController {
             criteria.setCount(songCount);
             criteria.setOffset(songOffset);
             result = searchService.search(criteria, musicFolders, IndexType.SONG);
-            for (MediaFile song : result.getMediaFiles()) {
-                searchResult.getSong().add(jaxbContentService.createJaxbChild(player, song, username));
-            }
+            searchResult.getSong().addAll(jaxbContentService.createJaxbChildren(player, result.getMediaFiles(), username));
         }
 
         Response res = createResponse();
@@ -832,11 +810,10 @@ public class SubsonicRESTController {
             return;
         }
         PlaylistWithSongs result = jaxbContentService.createJaxbPlaylist(new PlaylistWithSongs(), playlist);
-        for (MediaFile mediaFile : playlistService.getFilesInPlaylist(id)) {
-            if (securityService.isFolderAccessAllowed(mediaFile, username)) {
-                result.getEntry().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-            }
-        }
+        List<MediaFile> files = playlistService.getFilesInPlaylist(id).stream()
+                .filter(mediaFile -> securityService.isFolderAccessAllowed(mediaFile, username))
+                .collect(Collectors.toList());
+        result.getEntry().addAll(jaxbContentService.createJaxbChildren(player, files, username));
 
         Response res = createResponse();
         res.setPlaylist(result);
@@ -923,9 +900,7 @@ public class SubsonicRESTController {
             result.setPlaying(playing);
             result.setGain(gain);
             result.setPosition(position);
-            for (MediaFile mediaFile : playQueue.getFiles()) {
-                result.getEntry().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-            }
+            result.getEntry().addAll(jaxbContentService.createJaxbChildren(player, playQueue.getFiles(), username));
         } else {
             JukeboxStatus result = new JukeboxStatus();
             res.setJukeboxStatus(result);
@@ -1102,9 +1077,7 @@ public class SubsonicRESTController {
         }
 
         AlbumList result = new AlbumList();
-        for (MediaFile album : albums) {
-            result.getAlbum().add(jaxbContentService.createJaxbChild(player, album, username));
-        }
+        result.getAlbum().addAll(jaxbContentService.createJaxbChildren(player, albums, username));
 
         Response res = createResponse();
         res.setAlbumList(result);
@@ -1171,9 +1144,7 @@ public class SubsonicRESTController {
         RandomSearchCriteria criteria = new RandomSearchCriteria(size, genre, fromYear, toYear, musicFolders);
 
         Songs result = new Songs();
-        for (MediaFile mediaFile : searchService.getRandomSongs(criteria)) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, searchService.getRandomSongs(criteria), username));
         Response res = createResponse();
         res.setRandomSongs(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1190,9 +1161,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
 
         Videos result = new Videos();
-        for (MediaFile mediaFile : mediaFileService.getVideos(musicFolders, size, offset)) {
-            result.getVideo().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        result.getVideo().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getVideos(musicFolders, size, offset), username));
         Response res = createResponse();
         res.setVideos(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1262,6 +1231,11 @@ public class SubsonicRESTController {
         }
     }
 
+    @ExceptionHandler(TranscodeRejectedException.class)
+    public ResponseEntity<Void> handleTranscodeRejectedException(TranscodeRejectedException exception) {
+        return streamController.handleTranscodeRejectedException(exception);
+    }
+
     @ExceptionHandler(APIException.class)
     public ResponseEntity<String> apiException(ServletWebRequest swr, APIException exception) {
         Entry<String, String> exceptionResponse = jaxbWriter.serializeForType(swr.getRequest(),
@@ -1385,15 +1359,9 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username, musicFolderId);
 
         Starred result = new Starred();
-        for (MediaFile artist : mediaFileService.getStarredArtists(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getArtist().add(jaxbContentService.createJaxbArtist(artist, username));
-        }
-        for (MediaFile album : mediaFileService.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getAlbum().add(jaxbContentService.createJaxbChild(player, album, username));
-        }
-        for (MediaFile song : mediaFileService.getStarredSongs(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, song, username));
-        }
+        result.getArtist().addAll(jaxbContentService.createJaxbArtists(mediaFileService.getStarredArtists(0, Integer.MAX_VALUE, username, musicFolders), username));
+        result.getAlbum().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders), username));
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getStarredSongs(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1414,9 +1382,7 @@ public class SubsonicRESTController {
         for (Album album : albumService.getStarredAlbums(username, musicFolders)) {
             result.getAlbum().add(jaxbContentService.createJaxbAlbum(new AlbumID3(), album, username));
         }
-        for (MediaFile song : mediaFileService.getStarredSongs(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(jaxbContentService.createJaxbChild(player, song, username));
-        }
+        result.getSong().addAll(jaxbContentService.createJaxbChildren(player, mediaFileService.getStarredSongs(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred2(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1612,8 +1578,15 @@ public class SubsonicRESTController {
         String username = securityService.getCurrentUsername(request);
         Player player = playerService.getPlayer(request, response, username);
 
+        List<Bookmark> bookmarks = bookmarkService.getBookmarks(username);
+        List<MediaFile> mediaFiles = bookmarks.stream()
+                .map(bookmark -> mediaFileService.getMediaFile(bookmark.getMediaFileId()))
+                .collect(Collectors.toList());
+        List<Child> entries = jaxbContentService.createJaxbChildren(player, mediaFiles, username);
+
         Bookmarks result = new Bookmarks();
-        for (Bookmark bookmark : bookmarkService.getBookmarks(username)) {
+        for (int i = 0; i < bookmarks.size(); i++) {
+            Bookmark bookmark = bookmarks.get(i);
             org.subsonic.restapi.Bookmark b = new org.subsonic.restapi.Bookmark();
             result.getBookmark().add(b);
             b.setPosition(bookmark.getPositionMillis());
@@ -1622,8 +1595,7 @@ public class SubsonicRESTController {
             b.setCreated(jaxbWriter.convertDate(bookmark.getCreated()));
             b.setChanged(jaxbWriter.convertDate(bookmark.getChanged()));
 
-            MediaFile mediaFile = mediaFileService.getMediaFile(bookmark.getMediaFileId());
-            b.setEntry(jaxbContentService.createJaxbChild(player, mediaFile, username));
+            b.setEntry(entries.get(i));
         }
 
         Response res = createResponse();
@@ -1674,11 +1646,8 @@ public class SubsonicRESTController {
         restPlayQueue.setChanged(jaxbWriter.convertDate(playQueue.getChanged()));
         restPlayQueue.setChangedBy(playQueue.getChangedBy());
 
-        for (MediaFile mediaFile : playQueue.getMediaFiles()) {
-            if (mediaFile != null) {
-                restPlayQueue.getEntry().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-            }
-        }
+        List<MediaFile> files = playQueue.getMediaFiles().stream().filter(Objects::nonNull).collect(Collectors.toList());
+        restPlayQueue.getEntry().addAll(jaxbContentService.createJaxbChildren(player, files, username));
 
         Response res = createResponse();
         res.setPlayQueue(restPlayQueue);
@@ -1717,9 +1686,7 @@ public class SubsonicRESTController {
             org.subsonic.restapi.Share s = createJaxbShare(request, share);
             result.getShare().add(s);
 
-            for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-                s.getEntry().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-            }
+            s.getEntry().addAll(jaxbContentService.createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
         }
         Response res = createResponse();
         res.setShares(result);
@@ -1757,9 +1724,7 @@ public class SubsonicRESTController {
 
         List<org.airsonic.player.domain.MusicFolder> musicFolders = mediaFolderService.getMusicFoldersForUser(username);
 
-        for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-            s.getEntry().add(jaxbContentService.createJaxbChild(player, mediaFile, username));
-        }
+        s.getEntry().addAll(jaxbContentService.createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
 
         Response res = createResponse();
         res.setShares(result);
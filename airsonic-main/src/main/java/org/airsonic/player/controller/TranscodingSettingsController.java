@@ -66,6 +66,7 @@ public class TranscodingSettingsController {
         command.setSubtitlesExtractionCommand(settingsService.getSubtitlesExtractionCommand());
         command.setTranscodeEstimateTimePadding(settingsService.getTranscodeEstimateTimePadding());
         command.setTranscodeEstimateBytePadding(settingsService.getTranscodeEstimateBytePadding());
+        command.setTranscodePreRoll(settingsService.getTranscodePreRoll());
         command.setBrand(settingsService.getBrand());
 
         return new ModelAndView("transcodingSettings", "command", command);
@@ -147,6 +148,7 @@ public class TranscodingSettingsController {
         settingsService.setSubtitlesExtractionCommand(command.getSubtitlesExtractionCommand());
         settingsService.setTranscodeEstimateTimePadding(command.getTranscodeEstimateTimePadding());
         settingsService.setTranscodeEstimateBytePadding(command.getTranscodeEstimateBytePadding());
+        settingsService.setTranscodePreRoll(command.getTranscodePreRoll());
 
         settingsService.save();
         return null;
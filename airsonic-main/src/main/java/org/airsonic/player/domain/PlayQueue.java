@@ -132,6 +132,22 @@ public class PlayQueue {
         }
     }
 
+    /**
+     * Returns the song that {@link #next()} would skip to, without skipping.
+     *
+     * @return The next song in the playlist, or <code>null</code> if the end of the playlist is reached.
+     */
+    public synchronized MediaFile getNextFile() {
+        if (index == -1) {
+            return null;
+        }
+        int next = getRepeatStatus() == RepeatStatus.TRACK ? index : index + 1;
+        if (next >= size()) {
+            next = (getRepeatStatus() == RepeatStatus.QUEUE) ? 0 : -1;
+        }
+        return next == -1 || next >= size() ? null : files.get(next);
+    }
+
     /**
      * Returns the number of songs in the playlists.
      *
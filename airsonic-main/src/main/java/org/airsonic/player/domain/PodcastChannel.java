@@ -61,6 +61,13 @@ public class PodcastChannel implements Serializable {
     @Column(name = "error_message")
     private String errorMessage;
 
+    // validators of the last fetched RSS document, for conditional requests
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "last_modified")
+    private String lastModified;
+
     @OneToOne
     @JoinColumn(name = "media_file_id")
     private MediaFile mediaFile;
@@ -150,6 +157,24 @@ public class PodcastChannel implements Serializable {
         this.errorMessage = errorMessage;
     }
 
+    @JsonIgnore
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    @JsonIgnore
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
     public void setMediaFile(MediaFile mediaFile) {
         this.mediaFile = mediaFile;
     }
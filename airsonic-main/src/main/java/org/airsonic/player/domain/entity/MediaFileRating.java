@@ -0,0 +1,89 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.domain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Sum and number of the user ratings of a media file. Kept up to date as users rate, so that rating averages can be
+ * read and sorted on without aggregating {@link UserRating}.
+ */
+@Entity
+@Table(name = "media_file_rating")
+public class MediaFileRating {
+
+    @Id
+    @Column(name = "media_file_id")
+    private int mediaFileId;
+
+    @Column(name = "rating_sum")
+    private int ratingSum;
+
+    @Column(name = "rating_count")
+    private int ratingCount;
+
+    public MediaFileRating() {
+    }
+
+    public MediaFileRating(int mediaFileId, int ratingSum, int ratingCount) {
+        this.mediaFileId = mediaFileId;
+        this.ratingSum = ratingSum;
+        this.ratingCount = ratingCount;
+    }
+
+    public int getMediaFileId() {
+        return mediaFileId;
+    }
+
+    public int getRatingSum() {
+        return ratingSum;
+    }
+
+    public int getRatingCount() {
+        return ratingCount;
+    }
+
+    public Double getAverageRating() {
+        return ratingCount == 0 ? null : (double) ratingSum / ratingCount;
+    }
+
+    public void setMediaFileId(int mediaFileId) {
+        this.mediaFileId = mediaFileId;
+    }
+
+    public void setRatingSum(int ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    public void setRatingCount(int ratingCount) {
+        this.ratingCount = ratingCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaFileRating{" +
+                "mediaFileId=" + mediaFileId +
+                ", ratingSum=" + ratingSum +
+                ", ratingCount=" + ratingCount +
+                '}';
+    }
+}
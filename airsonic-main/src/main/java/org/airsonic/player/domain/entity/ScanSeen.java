@@ -0,0 +1,110 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.domain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Staging row recording that a media file, album or artist was seen by the scan with the given generation.
+ * Rows are only ever inserted, so they are always new to the persistence context.
+ */
+@Entity
+@Table(name = "scan_seen")
+@IdClass(ScanSeenKey.class)
+public class ScanSeen implements Persistable<ScanSeenKey> {
+
+    public enum EntityType {
+        MEDIA_FILE, ALBUM, ARTIST
+    }
+
+    @Id
+    private long generation;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type")
+    private EntityType entityType;
+
+    @Id
+    @Column(name = "entity_id")
+    private int entityId;
+
+    public ScanSeen() {
+    }
+
+    public ScanSeen(long generation, EntityType entityType, int entityId) {
+        this.generation = generation;
+        this.entityType = entityType;
+        this.entityId = entityId;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public void setEntityType(EntityType entityType) {
+        this.entityType = entityType;
+    }
+
+    public void setEntityId(int entityId) {
+        this.entityId = entityId;
+    }
+
+    @Override
+    @Transient
+    public ScanSeenKey getId() {
+        return new ScanSeenKey(generation, entityType, entityId);
+    }
+
+    @Override
+    @Transient
+    public boolean isNew() {
+        // never merged, so saving does not select the row first
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanSeen{" +
+                "generation=" + generation +
+                ", entityType=" + entityType +
+                ", entityId=" + entityId +
+                '}';
+    }
+}
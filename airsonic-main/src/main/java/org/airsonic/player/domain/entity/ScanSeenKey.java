@@ -0,0 +1,77 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.domain.entity;
+
+import org.airsonic.player.domain.entity.ScanSeen.EntityType;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class ScanSeenKey implements Serializable {
+
+    private long generation;
+    private EntityType entityType;
+    private int entityId;
+
+    public ScanSeenKey() {
+    }
+
+    public ScanSeenKey(long generation, EntityType entityType, int entityId) {
+        this.generation = generation;
+        this.entityType = entityType;
+        this.entityId = entityId;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public void setEntityType(EntityType entityType) {
+        this.entityType = entityType;
+    }
+
+    public void setEntityId(int entityId) {
+        this.entityId = entityId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScanSeenKey)) return false;
+        ScanSeenKey that = (ScanSeenKey) o;
+        return generation == that.generation && entityId == that.entityId && entityType == that.entityType;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(generation, entityType, entityId);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.io;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A region of a file, read with positional {@link FileChannel} reads.
+ *
+ * <p>Its streams skip by moving their position, so Spring serves ranges of it without reading the skipped bytes,
+ * and {@link InputStream#transferTo} copies it in large chunks, each read straight into the buffer that is written
+ * out.
+ */
+public class FileRegionResource extends AbstractResource {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final Path path;
+    private final long offset;
+    private final Long length;
+
+    /**
+     * @param path the file
+     */
+    public FileRegionResource(Path path) {
+        this(path, 0L, null);
+    }
+
+    /**
+     * @param path the file
+     * @param offset where the region starts
+     * @param length length of the region, or {@code null} for the rest of the file
+     */
+    public FileRegionResource(Path path, long offset, Long length) {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new FileRegionInputStream(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return length != null ? length : Math.max(0L, Files.size(path) - offset);
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    @Override
+    public String getFilename() {
+        return path.getFileName().toString();
+    }
+
+    @Override
+    public String getDescription() {
+        return "file region [" + path + ", " + offset + "+" + length + "]";
+    }
+
+    private class FileRegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position = offset;
+
+        private FileRegionInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.end = length != null ? offset + length : channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0L, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1L, end - position))];
+            long transferred = 0L;
+            int n;
+            while ((n = read(buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, n);
+                transferred += n;
+            }
+            return transferred;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
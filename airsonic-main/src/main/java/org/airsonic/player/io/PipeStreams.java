@@ -6,11 +6,14 @@ import org.springframework.core.io.Resource;
 
 import java.io.File;
 import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -350,6 +353,228 @@ public class PipeStreams {
 
     } // PipedOutputStream
 
+    /**
+     * A pipe with one writer and any number of readers, each of which reads
+     * everything that is written. Like <code>PipedOutputStream</code> it writes
+     * into a circular buffer, but every reader connected with {@link #connect()}
+     * has a read position of its own.
+     *
+     * Readers can connect as long as nothing has been overwritten yet, i.e. until
+     * the writer has written more than the buffer size. They start reading at the
+     * beginning of the stream.
+     *
+     * The writer waits for the slowest reader when the buffer is full. While
+     * other readers are connected, a reader that doesn't read anything for the
+     * given timeout is disconnected, so one stalled reader can't stall everyone
+     * else. A single reader may pause as long as it likes.
+     */
+
+    public static class SharedPipedOutputStream extends OutputStream {
+
+        final byte[] buffer;
+        final long slowReaderTimeoutMillis;
+        final List<SharedPipedInputStream> readers = new ArrayList<>();
+        long written = 0;
+        boolean closed = false;
+
+        public SharedPipedOutputStream(int bufferSize, long slowReaderTimeoutMillis) {
+            this.buffer = new byte[bufferSize];
+            this.slowReaderTimeoutMillis = slowReaderTimeoutMillis;
+        }
+
+        /**
+         * Connects a new reader, which starts reading at the beginning of the stream.
+         *
+         * @return the reader, or {@code null} if the beginning of the stream has
+         *         already been overwritten
+         */
+
+        public SharedPipedInputStream connect() {
+            synchronized (buffer) {
+                if (written > buffer.length) {
+                    return null;
+                }
+                SharedPipedInputStream reader = new SharedPipedInputStream(this);
+                readers.add(reader);
+                return reader;
+            }
+        }
+
+        public int getReaderCount() {
+            synchronized (buffer) {
+                return readers.size();
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (buffer) {
+                closed = true;
+                buffer.notifyAll();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b });
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        /**
+         * @exception IOException The pipe has been closed.
+         */
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (buffer) {
+                long waitingSince = 0;
+                while (len > 0) {
+                    if (closed) {
+                        throw new IOException("Broken pipe");
+                    }
+
+                    long slowest = readers.stream().mapToLong(r -> r.position).min().orElse(written);
+                    int free = buffer.length - (int) (written - slowest);
+
+                    if (free == 0) {
+                        // The circular buffer is full, so wait for the slowest reader to
+                        // consume something.
+                        long now = System.currentTimeMillis();
+                        if (readers.size() <= 1) {
+                            // Nobody else to hold up, so just wait.
+                            waitingSince = 0;
+                        } else if (waitingSince == 0) {
+                            waitingSince = now;
+                        } else if (now - waitingSince >= slowReaderTimeoutMillis) {
+                            readers.removeIf(r -> {
+                                if (r.position == slowest) {
+                                    r.disconnected = true;
+                                    return true;
+                                }
+                                return false;
+                            });
+                            waitingSince = 0;
+                            buffer.notifyAll();
+                            continue;
+                        }
+                        try {
+                            buffer.wait(waitingSince == 0 ? slowReaderTimeoutMillis
+                                    : slowReaderTimeoutMillis - (now - waitingSince));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException(e.getMessage());
+                        }
+                        continue;
+                    }
+                    waitingSince = 0;
+
+                    int writePosition = (int) (written % buffer.length);
+                    int amount = Math.min(len, Math.min(free, buffer.length - writePosition));
+                    System.arraycopy(b, off, buffer, writePosition, amount);
+                    written += amount;
+                    off += amount;
+                    len -= amount;
+                    buffer.notifyAll();
+                }
+            }
+        }
+
+    } // SharedPipedOutputStream
+
+    /**
+     * A reader of a <code>SharedPipedOutputStream</code>. Unlike
+     * <code>PipedInputStream</code> it returns whatever is available instead of
+     * waiting for the complete block asked for.
+     */
+
+    public static class SharedPipedInputStream extends InputStream {
+
+        final SharedPipedOutputStream source;
+        long position = 0;
+        boolean closed = false;
+        boolean disconnected = false;
+
+        SharedPipedInputStream(SharedPipedOutputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int available() throws IOException {
+            synchronized (source.buffer) {
+                return (int) Math.min(Integer.MAX_VALUE, source.written - position);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int result = read(b);
+
+            return result == -1 ? -1 : b[0] & 0xff;
+        }
+
+        /**
+         * @exception IOException The reader was closed or disconnected for being too slow.
+         */
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            byte[] buffer = source.buffer;
+            synchronized (buffer) {
+                while (position == source.written) {
+                    if (closed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    if (disconnected) {
+                        throw new IOException("Reader fell too far behind and was disconnected");
+                    }
+                    if (source.closed) {
+                        return -1;
+                    }
+                    try {
+                        buffer.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Pipe closed");
+                }
+                if (disconnected) {
+                    throw new IOException("Reader fell too far behind and was disconnected");
+                }
+
+                int readPosition = (int) (position % buffer.length);
+                int amount = (int) Math.min(len, Math.min(source.written - position, buffer.length - readPosition));
+                System.arraycopy(buffer, readPosition, b, off, amount);
+                position += amount;
+
+                // Release the writer if it waits for this reader.
+                buffer.notifyAll();
+
+                return amount;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (source.buffer) {
+                closed = true;
+                source.readers.remove(this);
+                source.buffer.notifyAll();
+            }
+        }
+
+    } // SharedPipedInputStream
+
     public static class DelayedResource implements Resource {
         private final Resource delegate;
         private final Consumer<InputStream> inputStreamInit;
@@ -462,6 +687,28 @@ public class PipeStreams {
             return skipped;
         }
 
+        /**
+         * Lets the delegate copy in its own chunk size, acquiring and counting each chunk as it is written.
+         */
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            return in.transferTo(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    acquire(len);
+                    out.write(b, off, len);
+                    status.addBytesTransferred(len);
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1);
+                    out.write(b);
+                    status.addBytesTransferred(1);
+                }
+            });
+        }
+
         @Override
         public void close() throws IOException {
             super.close();
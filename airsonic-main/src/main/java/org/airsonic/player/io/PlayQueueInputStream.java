@@ -2,28 +2,80 @@ package org.airsonic.player.io;
 
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.PlayQueue;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
+/**
+ * Streams the files of a play queue one after another.
+ *
+ * <p>With a pre-roll, the stream of the next file is opened when the current file is estimated to be within the
+ * pre-roll seconds of its end, and the head of it is read ahead on a virtual thread, so a transcoder started for the
+ * next file has output ready when the current one ends. The stream is opened with a separate generator, so it can be
+ * admitted with a lower priority than the file being played. The estimate compares the bytes read with the expected length
+ * of the current file. The start and end listeners are still called when a file is actually reached and left, and a
+ * pre-rolled stream is discarded if another file comes next. A pre-roll that isn't ready shortly after its file is
+ * reached, most likely because it is still waiting for the transcoder, is cancelled and the file is opened with the
+ * normal generator instead.
+ */
 public class PlayQueueInputStream extends InputStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlayQueueInputStream.class);
+    private static final int PRE_ROLL_HEAD_SIZE = 256 * 1024;
+    private static final long PRE_ROLL_WAIT_MILLIS = 1000L;
+
     private final PlayQueue queue;
     private final Consumer<MediaFile> fileStartListener;
     private final BiConsumer<Integer, MediaFile> fileEndListener;
     private final Function<MediaFile, InputStream> streamGenerator;
+    private final Function<MediaFile, InputStream> preRollGenerator;
+    private final ToLongFunction<MediaFile> expectedLength;
+    private final long preRollSeconds;
     private InputStream currentStream;
     private MediaFile currentFile;
     private Integer readCount = 0;
+    private long currentLength;
+    private long currentPosition;
+    private boolean preRollChecked;
+    private PreRoll preRoll;
 
     public PlayQueueInputStream(PlayQueue queue, Consumer<MediaFile> fileStartListener,
             BiConsumer<Integer, MediaFile> fileEndListener, Function<MediaFile, InputStream> streamGenerator) {
+        this(queue, fileStartListener, fileEndListener, streamGenerator, streamGenerator, f -> 0L, 0L);
+    }
+
+    /**
+     * @param preRollGenerator Opens the stream of the next file ahead of time.
+     * @param expectedLength   Expected length of the stream of a file, or 0 if unknown.
+     * @param preRollSeconds   How long before the end of a file the stream of the next one is opened, or 0 to open it
+     *                         only when the current one has ended.
+     */
+    public PlayQueueInputStream(PlayQueue queue, Consumer<MediaFile> fileStartListener,
+            BiConsumer<Integer, MediaFile> fileEndListener, Function<MediaFile, InputStream> streamGenerator,
+            Function<MediaFile, InputStream> preRollGenerator, ToLongFunction<MediaFile> expectedLength,
+            long preRollSeconds) {
         this.queue = queue;
         this.fileStartListener = fileStartListener;
         this.fileEndListener = fileEndListener;
         this.streamGenerator = streamGenerator;
+        this.preRollGenerator = preRollGenerator;
+        this.expectedLength = expectedLength;
+        this.preRollSeconds = preRollSeconds;
     }
 
     @Override
@@ -54,9 +106,34 @@ public class PlayQueueInputStream extends InputStream {
             return read(b, off, len);
         }
 
+        currentPosition += n;
+        checkPreRoll();
         return n;
     }
 
+    @Override
+    public long skip(long n) throws IOException {
+        prepare();
+        if (currentStream == null || queue.getStatus() == PlayQueue.Status.STOPPED) {
+            return 0;
+        }
+
+        // Lets cached and raw files seek instead of reading everything up to the offset
+        long skipped = currentStream.skip(n);
+        currentPosition += skipped;
+        return skipped;
+    }
+
+    /**
+     * Opens the stream of the current file ahead of the first read, so a failure to open it is thrown before any of
+     * the stream is sent.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void open() throws IOException {
+        prepare();
+    }
+
     private void prepare() throws IOException {
 //        PlayQueue playQueue = player.getPlayQueue();
 //
@@ -70,9 +147,15 @@ public class PlayQueueInputStream extends InputStream {
             closeStream();
         } else if (!file.equals(currentFile)) {
             closeStream();
+            // the file is only started once its stream could be opened
+            InputStream stream = takePreRoll(file);
+            if (stream == null) {
+                stream = streamGenerator.apply(file);
+            }
+            currentStream = stream;
             currentFile = file;
             fileStartListener.accept(currentFile);
-            currentStream = streamGenerator.apply(currentFile);
+            currentLength = preRollSeconds > 0 ? expectedLength.applyAsLong(currentFile) : 0L;
         } else {
             readCount++;
         }
@@ -88,11 +171,102 @@ public class PlayQueueInputStream extends InputStream {
             currentFile = null;
         }
         readCount = 0;
+        currentLength = 0L;
+        currentPosition = 0L;
+        preRollChecked = false;
+    }
+
+    /**
+     * Opens the stream of the next file once the current one is within the pre-roll of its end.
+     */
+    private void checkPreRoll() {
+        if (preRollChecked || currentLength <= 0 || currentFile.getDuration() == null || currentFile.getDuration() <= 0) {
+            return;
+        }
+        double remainingSeconds = (currentLength - currentPosition) * currentFile.getDuration() / currentLength;
+        if (remainingSeconds > preRollSeconds) {
+            return;
+        }
+        preRollChecked = true;
+        MediaFile next = queue.getNextFile();
+        if (next != null && preRoll == null) {
+            CompletableFuture<InputStream> stream = new CompletableFuture<>();
+            Thread thread = Thread.ofVirtual().name("play-queue-pre-roll").start(() -> {
+                try {
+                    InputStream in = openWithHead(next);
+                    if (!stream.complete(in)) {
+                        // cancelled while it was opened
+                        FileUtil.closeQuietly(in);
+                    }
+                } catch (Throwable e) {
+                    stream.completeExceptionally(e);
+                }
+            });
+            preRoll = new PreRoll(next, stream, thread);
+        }
+    }
+
+    private InputStream openWithHead(MediaFile file) {
+        InputStream in = preRollGenerator.apply(file);
+        try {
+            byte[] head = in.readNBytes(PRE_ROLL_HEAD_SIZE);
+            return new SequenceInputStream(new ByteArrayInputStream(head), in);
+        } catch (IOException e) {
+            FileUtil.closeQuietly(in);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the pre-rolled stream of the given file, or {@code null} if there is none or it isn't ready in time.
+     */
+    private InputStream takePreRoll(MediaFile file) throws IOException {
+        PreRoll taken = preRoll;
+        preRoll = null;
+        if (taken == null) {
+            return null;
+        }
+        if (!taken.file().equals(file)) {
+            discard(taken);
+            return null;
+        }
+        try {
+            return taken.stream().get(PRE_ROLL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.debug("Pre-roll of {} is not ready, opening it again", file.getPath());
+            discard(taken);
+            return null;
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to pre-roll {}", file.getPath(), e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            discard(taken);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pre-roll of " + file.getPath());
+        }
+    }
+
+    /**
+     * Stops a pre-roll that is still being opened, and closes its stream otherwise.
+     */
+    private static void discard(PreRoll preRoll) {
+        if (!preRoll.stream().cancel(false)) {
+            preRoll.stream().thenAccept(FileUtil::closeQuietly);
+        }
+        // stops waiting for the transcoder, or for the head of its output
+        preRoll.thread().interrupt();
     }
 
     @Override
     public void close() throws IOException {
         closeStream();
+        if (preRoll != null) {
+            discard(preRoll);
+            preRoll = null;
+        }
         super.close();
     }
+
+    private record PreRoll(MediaFile file, CompletableFuture<InputStream> stream, Thread thread) {
+    }
 }
@@ -0,0 +1,468 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.io;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An uncompressed zip archive of files, which is streamed reading every file once.
+ *
+ * <p>The CRC of an entry is only known after its data was read, so it is written to a data descriptor after the
+ * data. The sizes are known up front and are also written to the local header, for readers that don't use the
+ * central directory. Since the length of the archive is known and its streams skip without reading, it can be
+ * served in ranges. The CRCs of skipped entries, which are needed for the central directory, are taken from the
+ * {@link CrcStore} that earlier streams filled, or else computed.
+ */
+public class StoredZipResource extends AbstractResource {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    // data descriptor, UTF-8 names
+    private static final int FLAGS = 0x0808;
+
+    /**
+     * A file or directory of the archive. Directory names end with a slash.
+     */
+    public record Entry(Path path, String name, long size, long lastModified) {
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Remembers the CRCs of files between streams.
+     */
+    public interface CrcStore {
+
+        Long getCrc(Entry entry);
+
+        void putCrc(Entry entry, long crc);
+    }
+
+    private final List<Entry> entries;
+    private final CrcStore crcStore;
+    private final byte[][] names;
+    // local header offset of each entry
+    private final long[] offsets;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final long length;
+
+    public StoredZipResource(List<Entry> entries, CrcStore crcStore) {
+        this.entries = List.copyOf(entries);
+        this.crcStore = crcStore;
+        names = new byte[this.entries.size()][];
+        offsets = new long[this.entries.size()];
+        long offset = 0L;
+        long directorySize = 0L;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = this.entries.get(i).name().getBytes(StandardCharsets.UTF_8);
+            offsets[i] = offset;
+            offset += getLocalHeaderLength(i) + this.entries.get(i).size() + getDescriptorLength(i);
+        }
+        for (int i = 0; i < names.length; i++) {
+            directorySize += CENTRAL_HEADER_SIZE + names[i].length + getCentralExtraLength(i);
+        }
+        centralDirectoryOffset = offset;
+        centralDirectorySize = directorySize;
+        length = centralDirectoryOffset + centralDirectorySize + (isZip64End() ? ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE : 0)
+                + END_SIZE;
+    }
+
+    @Override
+    public ZipStream getInputStream() {
+        return new ZipStream();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public long lastModified() {
+        return entries.stream().mapToLong(Entry::lastModified).max().orElse(0L);
+    }
+
+    @Override
+    public String getDescription() {
+        return "zip of " + entries.size() + " entries";
+    }
+
+    private boolean isZip64Size(int i) {
+        return entries.get(i).size() >= ZIP64_MAGIC;
+    }
+
+    private boolean isZip64Offset(int i) {
+        return offsets[i] >= ZIP64_MAGIC;
+    }
+
+    private boolean isZip64End() {
+        return entries.size() >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+    }
+
+    private int getLocalHeaderLength(int i) {
+        return LOCAL_HEADER_SIZE + names[i].length + (isZip64Size(i) ? 20 : 0);
+    }
+
+    private int getDescriptorLength(int i) {
+        return isZip64Size(i) ? 24 : 16;
+    }
+
+    private int getCentralExtraLength(int i) {
+        int fields = (isZip64Size(i) ? 2 : 0) + (isZip64Offset(i) ? 1 : 0);
+        return fields == 0 ? 0 : 4 + 8 * fields;
+    }
+
+    private int getVersion(int i) {
+        return isZip64Size(i) || isZip64Offset(i) ? ZIP64_VERSION : VERSION;
+    }
+
+    private byte[] createLocalHeader(int i) {
+        Entry entry = entries.get(i);
+        ByteBuffer buffer = ByteBuffer.allocate(getLocalHeaderLength(i)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x04034b50);
+        buffer.putShort((short) getVersion(i));
+        buffer.putShort((short) FLAGS);
+        buffer.putShort((short) 0); // stored
+        buffer.putInt(toDosTime(entry.lastModified()));
+        buffer.putInt(0); // CRC follows in the data descriptor
+        int size = isZip64Size(i) ? (int) ZIP64_MAGIC : (int) entry.size();
+        buffer.putInt(size);
+        buffer.putInt(size);
+        buffer.putShort((short) names[i].length);
+        buffer.putShort((short) (isZip64Size(i) ? 20 : 0));
+        buffer.put(names[i]);
+        if (isZip64Size(i)) {
+            buffer.putShort((short) 0x0001);
+            buffer.putShort((short) 16);
+            buffer.putLong(entry.size());
+            buffer.putLong(entry.size());
+        }
+        return buffer.array();
+    }
+
+    private byte[] createDescriptor(int i, long crc) {
+        ByteBuffer buffer = ByteBuffer.allocate(getDescriptorLength(i)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x08074b50);
+        buffer.putInt((int) crc);
+        if (isZip64Size(i)) {
+            buffer.putLong(entries.get(i).size());
+            buffer.putLong(entries.get(i).size());
+        } else {
+            buffer.putInt((int) entries.get(i).size());
+            buffer.putInt((int) entries.get(i).size());
+        }
+        return buffer.array();
+    }
+
+    private byte[] createCentralDirectoryAndEnd(long[] crcs) {
+        int endLength = (int) (length - centralDirectoryOffset);
+        ByteBuffer buffer = ByteBuffer.allocate(endLength).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < names.length; i++) {
+            Entry entry = entries.get(i);
+            buffer.putInt(0x02014b50);
+            buffer.putShort((short) ZIP64_VERSION); // made by
+            buffer.putShort((short) getVersion(i));
+            buffer.putShort((short) FLAGS);
+            buffer.putShort((short) 0); // stored
+            buffer.putInt(toDosTime(entry.lastModified()));
+            buffer.putInt((int) crcs[i]);
+            int size = isZip64Size(i) ? (int) ZIP64_MAGIC : (int) entry.size();
+            buffer.putInt(size);
+            buffer.putInt(size);
+            buffer.putShort((short) names[i].length);
+            buffer.putShort((short) getCentralExtraLength(i));
+            buffer.putShort((short) 0); // comment
+            buffer.putShort((short) 0); // disk
+            buffer.putShort((short) 0); // internal attributes
+            buffer.putInt(entry.isDirectory() ? 0x10 : 0);
+            buffer.putInt(isZip64Offset(i) ? (int) ZIP64_MAGIC : (int) offsets[i]);
+            buffer.put(names[i]);
+            if (getCentralExtraLength(i) > 0) {
+                buffer.putShort((short) 0x0001);
+                buffer.putShort((short) (getCentralExtraLength(i) - 4));
+                if (isZip64Size(i)) {
+                    buffer.putLong(entry.size());
+                    buffer.putLong(entry.size());
+                }
+                if (isZip64Offset(i)) {
+                    buffer.putLong(offsets[i]);
+                }
+            }
+        }
+        if (isZip64End()) {
+            buffer.putInt(0x06064b50);
+            buffer.putLong(ZIP64_END_SIZE - 12);
+            buffer.putShort((short) ZIP64_VERSION);
+            buffer.putShort((short) ZIP64_VERSION);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(entries.size());
+            buffer.putLong(entries.size());
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+
+            buffer.putInt(0x07064b50);
+            buffer.putInt(0);
+            buffer.putLong(centralDirectoryOffset + centralDirectorySize);
+            buffer.putInt(1);
+        }
+        buffer.putInt(0x06054b50);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        buffer.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        buffer.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        buffer.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        buffer.putShort((short) 0); // comment
+        return buffer.array();
+    }
+
+    private static int toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * A stream of the archive. Skipping is free, but the CRCs of skipped files may have to be computed when the
+     * central directory is reached.
+     */
+    public class ZipStream extends InputStream {
+
+        private final long[] crcs = new long[names.length];
+        private long position;
+        private Consumer<Path> entryListener = path -> {};
+
+        // the entry whose data is being read, and the CRC of its data read so far
+        private int entry = -1;
+        private FileChannel channel;
+        private CRC32 crc;
+        private long crcLength;
+
+        // the header, descriptor or end of the archive being read
+        private byte[] metadata;
+        private long metadataOffset = -1L;
+
+        private ZipStream() {
+            Arrays.fill(crcs, -1L);
+        }
+
+        /**
+         * @param entryListener called with the path of each file whose data is started
+         */
+        public void setEntryListener(Consumer<Path> entryListener) {
+            this.entryListener = entryListener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            if (position >= centralDirectoryOffset) {
+                if (metadataOffset != centralDirectoryOffset) {
+                    long[] allCrcs = new long[names.length];
+                    for (int i = 0; i < names.length; i++) {
+                        allCrcs[i] = getCrc(i);
+                    }
+                    setMetadata(createCentralDirectoryAndEnd(allCrcs), centralDirectoryOffset);
+                }
+                return readMetadata(b, off, len);
+            }
+
+            int i = Arrays.binarySearch(offsets, position);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            long dataOffset = offsets[i] + getLocalHeaderLength(i);
+            long descriptorOffset = dataOffset + entries.get(i).size();
+            if (position < dataOffset) {
+                if (metadataOffset != offsets[i]) {
+                    setMetadata(createLocalHeader(i), offsets[i]);
+                }
+                return readMetadata(b, off, len);
+            }
+            if (position < descriptorOffset) {
+                return readData(i, position - dataOffset, b, off, (int) Math.min(len, descriptorOffset - position));
+            }
+            if (metadataOffset != descriptorOffset) {
+                setMetadata(createDescriptor(i, getCrc(i)), descriptorOffset);
+            }
+            return readMetadata(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0L, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeChannel();
+        }
+
+        private void setMetadata(byte[] bytes, long offset) {
+            metadata = bytes;
+            metadataOffset = offset;
+        }
+
+        private int readMetadata(byte[] b, int off, int len) {
+            int from = (int) (position - metadataOffset);
+            int n = Math.min(len, metadata.length - from);
+            System.arraycopy(metadata, from, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private int readData(int i, long dataPosition, byte[] b, int off, int len) throws IOException {
+            Entry current = entries.get(i);
+            if (entry != i) {
+                openEntry(i);
+            }
+            if (crc != null && crcLength < dataPosition) {
+                // a part was skipped, read it for the CRC only
+                updateCrc(current, dataPosition);
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, len), dataPosition);
+            if (n <= 0) {
+                throw new IOException("File " + current.path() + " changed while zipping");
+            }
+            if (crc != null) {
+                crc.update(b, off, n);
+                crcLength += n;
+                if (crcLength == current.size()) {
+                    crcs[i] = crc.getValue();
+                    crcStore.putCrc(current, crcs[i]);
+                    crc = null;
+                }
+            }
+            position += n;
+            return n;
+        }
+
+        private void openEntry(int i) throws IOException {
+            closeChannel();
+            Entry current = entries.get(i);
+            entry = i;
+            channel = FileChannel.open(current.path(), StandardOpenOption.READ);
+            entryListener.accept(current.path());
+            crc = null;
+            if (crcs[i] < 0) {
+                Long known = crcStore.getCrc(current);
+                if (known != null) {
+                    crcs[i] = known;
+                } else {
+                    crc = new CRC32();
+                    crcLength = 0L;
+                }
+            }
+        }
+
+        private void updateCrc(Entry current, long end) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (crcLength < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - crcLength));
+                int n = channel.read(buffer, crcLength);
+                if (n <= 0) {
+                    throw new IOException("File " + current.path() + " changed while zipping");
+                }
+                buffer.flip();
+                crc.update(buffer);
+                crcLength += n;
+            }
+        }
+
+        private long getCrc(int i) throws IOException {
+            if (crcs[i] < 0) {
+                Entry current = entries.get(i);
+                if (current.isDirectory()) {
+                    crcs[i] = 0L;
+                } else {
+                    Long known = crcStore.getCrc(current);
+                    if (known == null) {
+                        // skipped without a known CRC, so the file is read just for it
+                        openEntry(i);
+                        updateCrc(current, current.size());
+                        known = crc.getValue();
+                        crc = null;
+                        crcStore.putCrc(current, known);
+                    }
+                    crcs[i] = known;
+                }
+            }
+            return crcs[i];
+        }
+
+        private void closeChannel() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                entry = -1;
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -47,6 +48,8 @@ public class TranscodeInputStream extends InputStream {
     private OutputStream processOutputStream;
     private Process process;
     private final Path tmpFile;
+    // the step feeding this one, if any
+    private final TranscodeInputStream upstream;
 
     /**
      * Creates a transcoded input stream by executing an external process. If <code>in</code> is not null,
@@ -59,6 +62,7 @@ public class TranscodeInputStream extends InputStream {
      */
     public TranscodeInputStream(ProcessBuilder processBuilder, final InputStream in, Path tmpFile) throws IOException {
         this.tmpFile = tmpFile;
+        this.upstream = in instanceof TranscodeInputStream step ? step : null;
         String exe = processBuilder.command().isEmpty() ? "<unknown>" : processBuilder.command().get(0);
         int argCount = Math.max(0, processBuilder.command().size() - 1);
         LOG.info("Starting transcoder executable: {} (args={})", exe, argCount);
@@ -93,6 +97,16 @@ public class TranscodeInputStream extends InputStream {
         return process;
     }
 
+    /**
+     * Returns whether the transcode succeeded, once the process of this step and of all steps feeding it have exited.
+     *
+     * @return completes with {@code true} if all processes exited with status 0
+     */
+    public CompletableFuture<Boolean> onExit() {
+        CompletableFuture<Boolean> exit = process.onExit().thenApply(p -> p.exitValue() == 0);
+        return upstream == null ? exit : exit.thenCombine(upstream.onExit(), Boolean::logicalAnd);
+    }
+
     /**
      * @see InputStream#read()
      */
@@ -2,6 +2,7 @@ package org.airsonic.player.repository;
 
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -23,6 +24,8 @@ public interface AlbumRepository extends JpaRepository<Album, Integer> {
 
     public List<Album> findByName(String artist);
 
+    public List<Album> findByArtistInAndNameIn(Iterable<String> artists, Iterable<String> names);
+
     public List<Album> findByArtistAndFolderInAndPresentTrue(String artist, Iterable<MusicFolder> musicFolders);
 
     public List<Album> findByArtistAndFolderInAndPresentTrue(String artist, Iterable<MusicFolder> musicFolders, Pageable pageable);
@@ -53,4 +56,10 @@ public interface AlbumRepository extends JpaRepository<Album, Integer> {
     @Query("UPDATE Album a SET a.present = false WHERE a.lastScanned < :lastScanned")
     public void markNonPresent(@Param("lastScanned") Instant lastScanned);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE Album a SET a.present = false WHERE a.present = true AND NOT EXISTS "
+            + "(SELECT s FROM ScanSeen s WHERE s.generation = :generation AND s.entityType = :entityType AND s.entityId = a.id)")
+    public int markNonPresent(@Param("generation") long generation, @Param("entityType") ScanSeen.EntityType entityType);
+
 }
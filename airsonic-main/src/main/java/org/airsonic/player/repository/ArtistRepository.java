@@ -20,6 +20,7 @@ package org.airsonic.player.repository;
 
 import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -38,6 +39,8 @@ public interface ArtistRepository extends JpaRepository<Artist, Integer> {
 
     public Optional<Artist> findByName(String name);
 
+    public List<Artist> findByNameIn(Iterable<String> names);
+
     public Optional<Artist> findByNameAndFolderIn(String name, Iterable<MusicFolder> folders);
 
     public List<Artist> findByFolderInAndPresentTrue(Iterable<MusicFolder> folders, Sort sort);
@@ -59,4 +62,10 @@ public interface ArtistRepository extends JpaRepository<Artist, Integer> {
     @Query("UPDATE Artist a SET a.present = false WHERE a.lastScanned < :lastScanned")
     public void markNonPresent(@Param("lastScanned") Instant lastScanned);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE Artist a SET a.present = false WHERE a.present = true AND NOT EXISTS "
+            + "(SELECT s FROM ScanSeen s WHERE s.generation = :generation AND s.entityType = :entityType AND s.entityId = a.id)")
+    public int markNonPresent(@Param("generation") long generation, @Param("entityType") ScanSeen.EntityType entityType);
+
 }
@@ -0,0 +1,70 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.repository;
+
+import org.airsonic.player.domain.entity.MediaFileRating;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface MediaFileRatingRepository extends JpaRepository<MediaFileRating, Integer> {
+
+    /**
+     * Adds to the rating sum and count of a media file in place, so concurrent ratings don't overwrite each other.
+     *
+     * @return the number of updated rows, 0 if the media file has no ratings yet
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaFileRating r SET r.ratingSum = r.ratingSum + :sum, r.ratingCount = r.ratingCount + :count WHERE r.mediaFileId = :mediaFileId")
+    public int addRatings(@Param("mediaFileId") int mediaFileId, @Param("sum") int sum, @Param("count") int count);
+
+    /**
+     * Adds a media file without ratings, for {@link #addRatings} to add its first rating to. Runs in a transaction of
+     * its own, so if a concurrent first rating added it already, only this insert fails and not the transaction of
+     * the caller.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("INSERT INTO MediaFileRating (mediaFileId, ratingSum, ratingCount) VALUES (:mediaFileId, 0, 0)")
+    public int insertUnrated(@Param("mediaFileId") int mediaFileId);
+
+    /**
+     * Subtracts the ratings of the user from the media files they rated. Used before the user, and with it its
+     * ratings, is deleted.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaFileRating r SET r.ratingSum = r.ratingSum - "
+            + "(SELECT u.rating FROM UserRating u WHERE u.username = :username AND u.mediaFileId = r.mediaFileId), "
+            + "r.ratingCount = r.ratingCount - 1 "
+            + "WHERE r.mediaFileId IN (SELECT u.mediaFileId FROM UserRating u WHERE u.username = :username)")
+    public int removeRatingsOfUser(@Param("username") String username);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MediaFileRating r WHERE r.ratingCount < 1")
+    public int deleteUnrated();
+
+}
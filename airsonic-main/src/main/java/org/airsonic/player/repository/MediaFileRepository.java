@@ -21,6 +21,7 @@ package org.airsonic.player.repository;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MediaFile.MediaType;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
@@ -42,6 +43,13 @@ public interface MediaFileRepository extends JpaRepository<MediaFile, Integer> {
 
     public List<MediaFile> findByIdInAndFolderInAndMediaTypeAndPresentTrue(Iterable<Integer> ids, Iterable<MusicFolder> folders, MediaType mediaType);
 
+    /**
+     * Returns rated media files ordered by their average rating, highest first.
+     */
+    @Query("SELECT m FROM MediaFile m, MediaFileRating r WHERE r.mediaFileId = m.id AND m.folder IN :folders "
+            + "AND m.mediaType = :mediaType AND m.present = true ORDER BY r.ratingSum * 1.0 / r.ratingCount DESC, m.id")
+    public List<MediaFile> findHighestRated(@Param("folders") Iterable<MusicFolder> folders, @Param("mediaType") MediaType mediaType, Pageable page);
+
     public List<MediaFile> findByPath(String path);
 
     public List<MediaFile> findByLastScannedBeforeAndPresentTrue(Instant lastScanned);
@@ -52,6 +60,9 @@ public interface MediaFileRepository extends JpaRepository<MediaFile, Integer> {
 
     public List<MediaFile> findByMediaTypeInAndArtistAndPresentTrue(List<MediaType> mediaTypes, String artist, Pageable page);
 
+    @Query("SELECT m.id FROM MediaFile m WHERE m.mediaType IN :mediaTypes AND m.artist = :artist AND m.present = true ORDER BY m.id")
+    public List<Integer> findIdsByMediaTypeInAndArtistAndPresentTrue(@Param("mediaTypes") List<MediaType> mediaTypes, @Param("artist") String artist);
+
     public List<MediaFile> findByFolder(MusicFolder folder);
 
     public List<MediaFile> findByFolderAndPresentTrue(MusicFolder folder);
@@ -98,6 +109,12 @@ public interface MediaFileRepository extends JpaRepository<MediaFile, Integer> {
 
     public List<MediaFile> findAll(Specification<MediaFile> spec, Pageable page);
 
+    @Query("SELECT MIN(m.id) FROM MediaFile m")
+    public Integer findMinId();
+
+    @Query("SELECT MAX(m.id) FROM MediaFile m")
+    public Integer findMaxId();
+
     @Transactional
     public void deleteAllByPresentFalse();
 
@@ -106,13 +123,15 @@ public interface MediaFileRepository extends JpaRepository<MediaFile, Integer> {
 
     @Modifying
     @Transactional
-    @Query("UPDATE MediaFile m SET m.present = true, m.lastScanned = :lastScanned WHERE m.folder = :folder AND m.path IN :paths")
-    public int markPresent(@Param("folder") MusicFolder folder, @Param("paths") Iterable<String> paths, @Param("lastScanned") Instant lastScanned);
+    @Query("UPDATE MediaFile m SET m.present = true, m.lastScanned = :lastScanned WHERE m.id IN "
+            + "(SELECT s.entityId FROM ScanSeen s WHERE s.generation = :generation AND s.entityType = :entityType)")
+    public int markPresent(@Param("generation") long generation, @Param("entityType") ScanSeen.EntityType entityType, @Param("lastScanned") Instant lastScanned);
 
     @Modifying
     @Transactional
-    @Query("UPDATE MediaFile m SET m.present = false, m.childrenLastUpdated = :childrenLastUpdated WHERE m.lastScanned < :lastScanned")
-    public void markNonPresent(@Param("childrenLastUpdated") Instant childrenLastUpdated, @Param("lastScanned") Instant lastScanned);
+    @Query("UPDATE MediaFile m SET m.present = false, m.childrenLastUpdated = :childrenLastUpdated WHERE m.present = true AND NOT EXISTS "
+            + "(SELECT s FROM ScanSeen s WHERE s.generation = :generation AND s.entityType = :entityType AND s.entityId = m.id)")
+    public int markNonPresent(@Param("generation") long generation, @Param("entityType") ScanSeen.EntityType entityType, @Param("childrenLastUpdated") Instant childrenLastUpdated);
 
     /**
      * Rewrites the path separators of all media file paths in the given folder, e.g. from
@@ -10,11 +10,12 @@ import org.springframework.data.jpa.domain.Specification;
 import jakarta.persistence.criteria.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class MediaFileSpecifications {
 
-    public static Specification<MediaFile> matchCriteria(RandomSearchCriteria criteria, String username, String databaseType) {
+    public static Specification<MediaFile> matchCriteria(RandomSearchCriteria criteria, String username) {
         return (Root<MediaFile> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
             List<Predicate> predicates = new ArrayList<>();
 
@@ -112,6 +113,15 @@ public class MediaFileSpecifications {
                     predicates.add(cb.lessThanOrEqualTo(root.get("playCount"), criteria.getMaxPlayCount()));
                 }
             }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Orders media files randomly. This sorts every matching row, so it is only meant for small result sets.
+     */
+    public static Specification<MediaFile> randomOrder(String databaseType) {
+        return (Root<MediaFile> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
             String randomFunctionName;
             switch (databaseType.toLowerCase()) {
                 case "postgresql":
@@ -126,7 +136,11 @@ public class MediaFileSpecifications {
             }
             Expression<Double> randomFunction = cb.function(randomFunctionName, Double.class);
             query.orderBy(cb.asc(randomFunction));
-            return cb.and(predicates.toArray(new Predicate[0]));
+            return cb.conjunction();
         };
     }
+
+    public static Specification<MediaFile> idIn(Collection<Integer> ids) {
+        return (Root<MediaFile> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> root.get("id").in(ids);
+    }
 }
@@ -20,6 +20,8 @@ public interface PodcastEpisodeRepository extends JpaRepository<PodcastEpisode,
 
     Optional<PodcastEpisode> findByChannelAndEpisodeGuid(PodcastChannel channel, String episodeGuid);
 
+    List<PodcastEpisode> findByChannelAndEpisodeGuidIsNotNull(PodcastChannel channel);
+
     Optional<PodcastEpisode> findByChannelAndTitleAndPublishDate(PodcastChannel channel, String title, Instant publishDate);
 
     @Query("SELECT pe FROM PodcastEpisode pe WHERE pe.channel = :channel ORDER BY pe.id")
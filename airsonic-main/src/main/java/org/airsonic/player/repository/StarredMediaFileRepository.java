@@ -42,6 +42,8 @@ public interface StarredMediaFileRepository extends JpaRepository<StarredMediaFi
 
     public List<StarredMediaFile> findByUsername(String username);
 
+    public List<StarredMediaFile> findByUsernameAndMediaFileIdIn(String username, Iterable<Integer> mediaFileIds);
+
     public List<StarredMediaFile> findByUsernameAndMediaFileMediaTypeAndMediaFileFolderInAndMediaFilePresentTrue(
             String username, MediaType mediaType, Iterable<MusicFolder> folders, Pageable page);
 
@@ -22,11 +22,14 @@ package org.airsonic.player.repository;
 import org.airsonic.player.domain.entity.UserRating;
 import org.airsonic.player.domain.entity.UserRatingKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.LockModeType;
+
 import java.util.List;
 import java.util.Optional;
 
@@ -35,8 +38,17 @@ public interface UserRatingRepository extends JpaRepository<UserRating, UserRati
 
     public Optional<UserRating> findOptByUsernameAndMediaFileId(String username, int mediaFileId);
 
+    /**
+     * Like {@link #findOptByUsernameAndMediaFileId}, but locks the rating until the end of the transaction, so
+     * concurrent changes of the same rating are applied one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    public Optional<UserRating> findForUpdateByUsernameAndMediaFileId(String username, int mediaFileId);
+
     public Integer countByUsernameAndMediaFileIdIn(String username, Iterable<Integer> mediaFileIds);
 
+    public List<UserRating> findByUsernameAndMediaFileIdIn(String username, Iterable<Integer> mediaFileIds);
+
     public List<UserRating> findByUsernameAndRatingBetween(String username, Integer fromRating, Integer toRating);
 
     @Query("SELECT AVG(u.rating) FROM UserRating u WHERE u.mediaFileId = :mediaFileId")
@@ -5,11 +5,13 @@ import org.airsonic.player.controller.SubsonicRESTController.ErrorCode;
 import org.airsonic.player.domain.UserCredential;
 import org.airsonic.player.repository.UserCredentialRepository;
 import org.airsonic.player.service.SecurityService.UserDetail;
+import org.airsonic.player.service.cache.AuthenticationCache;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -24,11 +26,29 @@ public class MultipleCredsMatchingAuthenticationProvider extends DaoAuthenticati
     public static final String SALT_TOKEN_MECHANISM_SPECIALIZATION = "salttoken";
 
     private final UserCredentialRepository userCredentialRepository;
+    private final AuthenticationCache authenticationCache;
 
-    public MultipleCredsMatchingAuthenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder, UserCredentialRepository userCredentialRepository) {
+    public MultipleCredsMatchingAuthenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+            UserCredentialRepository userCredentialRepository, AuthenticationCache authenticationCache) {
         super(userDetailsService);
         super.setPasswordEncoder(passwordEncoder);
         this.userCredentialRepository = userCredentialRepository;
+        this.authenticationCache = authenticationCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        // clients of the REST API send their credentials with every request, skip loading the user and hashing
+        if (authentication instanceof UsernamePasswordAuthenticationToken token) {
+            UserDetails cached = authenticationCache.get(token);
+            if (cached != null) {
+                // same account checks as for a loaded user, entries are dropped when the user changes
+                getPreAuthenticationChecks().check(cached);
+                getPostAuthenticationChecks().check(cached);
+                return createSuccessAuthentication(cached, authentication, cached);
+            }
+        }
+        return super.authenticate(authentication);
     }
 
 
@@ -95,6 +115,8 @@ public class MultipleCredsMatchingAuthenticationProvider extends DaoAuthenticati
                 }
             });
         }
+
+        authenticationCache.put(authentication, userDetails, expiration);
     }
 
 }
@@ -3,6 +3,7 @@ package org.airsonic.player.service;
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.airsonic.player.domain.entity.StarredAlbum;
 import org.airsonic.player.repository.AlbumRepository;
 import org.airsonic.player.repository.OffsetBasedPageRequest;
@@ -15,9 +16,15 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
@@ -68,6 +75,41 @@ public class AlbumService {
         return albumRepository.findByArtistAndName(mediaFile.getAlbumArtist(), mediaFile.getAlbumName()).orElse(null);
     }
 
+    /**
+     * Get the albums of the given media files, with one query
+     *
+     * @param mediaFiles media files to get albums for
+     * @return albums by media file id. Media files without album are missing.
+     */
+    public Map<Integer, Album> getAlbumsByMediaFiles(Collection<MediaFile> mediaFiles) {
+        Set<String> artists = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            if (mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
+                artists.add(mediaFile.getAlbumArtist());
+                names.add(mediaFile.getAlbumName());
+            }
+        }
+        if (artists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // the query matches any combination of artist and name, so the pairs are matched here
+        Map<List<String>, Album> albums = new HashMap<>();
+        for (Album album : albumRepository.findByArtistInAndNameIn(artists, names)) {
+            albums.putIfAbsent(List.of(album.getArtist(), album.getName()), album);
+        }
+        Map<Integer, Album> result = new HashMap<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            if (mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
+                Album album = albums.get(List.of(mediaFile.getAlbumArtist(), mediaFile.getAlbumName()));
+                if (album != null) {
+                    result.put(mediaFile.getId(), album);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Get albums sorted by id
      *
@@ -357,15 +399,13 @@ public class AlbumService {
     }
 
     /**
-     * mark all albums as non present that were last scanned before lastScanned
+     * mark all albums as non present that were not seen by the scan with the given generation
      *
-     * @param lastScanned last scanned date
+     * @param generation scan generation the seen albums were staged with
      */
     @Transactional
-    public void markNonPresent(Instant lastScanned) {
-        if (albumRepository.existsByLastScannedBeforeAndPresentTrue(lastScanned)) {
-            albumRepository.markNonPresent(lastScanned);
-        }
+    public void markNonPresent(long generation) {
+        albumRepository.markNonPresent(generation, ScanSeen.EntityType.ALBUM);
     }
 
     /**
@@ -379,4 +419,16 @@ public class AlbumService {
         return album;
     }
 
+    /**
+     * Save albums to database in a single transaction. Stored albums are loaded with one query up front,
+     * so their updates can be sent to the database in JDBC batches.
+     *
+     * @param albums albums to save
+     */
+    @Transactional
+    public void saveAll(List<Album> albums) {
+        albumRepository.findAllById(albums.stream().map(Album::getId).filter(Objects::nonNull).toList());
+        albumRepository.saveAll(albums);
+    }
+
 }
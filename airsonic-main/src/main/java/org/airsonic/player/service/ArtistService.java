@@ -21,6 +21,7 @@ package org.airsonic.player.service;
 import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.airsonic.player.domain.entity.StarredArtist;
 import org.airsonic.player.repository.ArtistRepository;
 import org.airsonic.player.repository.OffsetBasedPageRequest;
@@ -38,9 +39,14 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ArtistService {
@@ -100,6 +106,21 @@ public class ArtistService {
         return artistRepository.findByName(artistName).orElse(null);
     }
 
+    /**
+     * Get artists by name, with one query
+     *
+     * @param artistNames artist names
+     * @return artists by name. Unknown names are missing.
+     */
+    public Map<String, Artist> getArtists(Collection<String> artistNames) {
+        List<String> names = artistNames.stream().filter(StringUtils::hasLength).distinct().collect(Collectors.toList());
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return artistRepository.findByNameIn(names).stream()
+                .collect(Collectors.toMap(Artist::getName, Function.identity(), (a, b) -> a));
+    }
+
     /**
      * Get artist by name and music folders
      *
@@ -198,15 +219,13 @@ public class ArtistService {
     }
 
     /**
-     * Mark artists that are not present
+     * Mark artists that were not seen by the scan with the given generation as not present
      *
-     * @param lastScanned last scanned date
+     * @param generation scan generation the seen artists were staged with
      */
     @Transactional
-    public void markNonPresent(Instant lastScanned) {
-        if (artistRepository.existsByLastScannedBeforeAndPresentTrue(lastScanned)) {
-            artistRepository.markNonPresent(lastScanned);
-        }
+    public void markNonPresent(long generation) {
+        artistRepository.markNonPresent(generation, ScanSeen.EntityType.ARTIST);
     }
 
     /**
@@ -221,6 +240,18 @@ public class ArtistService {
         return artist;
     }
 
+    /**
+     * Save artists in a single transaction. Stored artists are loaded with one query up front,
+     * so their updates can be sent to the database in JDBC batches.
+     *
+     * @param artists artists to save
+     */
+    @Transactional
+    public void saveAll(List<Artist> artists) {
+        artistRepository.findAllById(artists.stream().map(Artist::getId).filter(Objects::nonNull).toList());
+        artistRepository.saveAll(artists);
+    }
+
     /**
      * Get artist image URL
      *
@@ -50,15 +50,15 @@ public class AudioScrobblerService {
 
     /**
      * Registers the given media file at audio scrobble service.
-     * This method returns immediately, the actual registration is done by separate threads.
+     * This method returns immediately, the actual registration is done by separate threads. It holds no lock, so
+     * concurrent plays of different users do not wait on each other.
      *
      * @param mediaFile  The media file to register.
      * @param username   The user which played the music file.
      * @param submission Whether this is a submission or a now playing notification.
      * @param time       Event time, or {@code null} to use current time.
      */
-
-    public synchronized void register(MediaFile mediaFile, String username, boolean submission, Instant time) {
+    public void register(MediaFile mediaFile, String username, boolean submission, Instant time) {
         if (mediaFile == null || mediaFile.isVideo()) {
             return;
         }
@@ -38,6 +38,7 @@ import org.airsonic.player.domain.dto.VideoCoverArtRequest;
 import org.airsonic.player.repository.AlbumRepository;
 import org.airsonic.player.repository.ArtistRepository;
 import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.service.transcoding.TranscodeScheduler;
 import org.airsonic.player.util.ImageUtil;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.io.FilenameUtils;
@@ -343,6 +344,7 @@ public class CoverArtCreateService {
         TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, videoSettings);
         String command = settingsService.getVideoImageCommand();
         parameters.setTranscoding(new Transcoding(null, null, null, null, command, null, null, false));
+        parameters.setKind(TranscodeScheduler.Kind.IMAGE);
         return transcodingService.getTranscodedInputStream(parameters);
     }
 }
@@ -31,7 +31,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -150,6 +154,33 @@ public class CoverArtService {
         return art;
     }
 
+    /**
+     * Returns the cover art of the given media files. Art missing from the cache is loaded with one query.
+     *
+     * @param ids media file ids
+     * @return cover art by media file id, {@link CoverArt#NULL_ART} for media files without art
+     */
+    public Map<Integer, CoverArt> getMediaFileArts(Collection<Integer> ids) {
+        Map<Integer, CoverArt> arts = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            CoverArt art = coverArtCache.getCoverArt(EntityType.MEDIA_FILE, id);
+            if (art != null) {
+                arts.put(id, art);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (CoverArt art : coverArtRepository.findByEntityTypeAndEntityIdIn(EntityType.MEDIA_FILE, missing)) {
+                arts.put(art.getEntityId(), art);
+                coverArtCache.putCoverArt(art);
+            }
+            missing.forEach(id -> arts.putIfAbsent(id, CoverArt.NULL_ART));
+        }
+        return arts;
+    }
+
     @Nullable
     public Path getMediaFileArtPath(int id) {
         CoverArt art = getMediaFileArt(id);
@@ -32,7 +32,17 @@ import org.subsonic.restapi.ArtistID3;
 import org.subsonic.restapi.Child;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class JaxbContentService {
@@ -75,10 +85,13 @@ public class JaxbContentService {
     }
 
     public org.subsonic.restapi.Artist createJaxbArtist(MediaFile artist, String username) {
+        return createJaxbArtist(artist, mediaFileService.getMediaFileStarredDate(artist, username));
+    }
+
+    private org.subsonic.restapi.Artist createJaxbArtist(MediaFile artist, Instant starred) {
         org.subsonic.restapi.Artist result = new org.subsonic.restapi.Artist();
         result.setId(String.valueOf(artist.getId()));
         result.setName(artist.getTitle() != null ? artist.getTitle() : artist.getArtist());
-        Instant starred = mediaFileService.getMediaFileStarredDate(artist, username);
         result.setStarred(jaxbWriter.convertDate(starred));
         // TODO: add rating. https://opensubsonic.netlify.app/docs/responses/artist/
         return result;
@@ -130,26 +143,157 @@ public class JaxbContentService {
     }
 
     public <T extends Child> T createJaxbChild(T child, Player player, MediaFile mediaFile, String username) {
+        return createJaxbChild(child, player, mediaFile, getAnnotations(mediaFile, username));
+    }
+
+    /**
+     * Creates the children of a list response. The annotations of all media files are loaded up front with a few
+     * queries, instead of a handful of queries per media file.
+     *
+     * @param player     player of the request
+     * @param mediaFiles media files to create children for
+     * @param username   user of the request
+     * @return children in the order of the media files
+     */
+    public List<Child> createJaxbChildren(Player player, List<MediaFile> mediaFiles, String username) {
+        MediaFileAnnotations annotations = getAnnotations(mediaFiles, username);
+        return mediaFiles.stream()
+                .map(mediaFile -> createJaxbChild(new Child(), player, mediaFile, annotations))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Creates the artists of a list response, loading the starred dates of all of them with one query.
+     *
+     * @param artists  artist directories
+     * @param username user of the request
+     * @return artists in the order of the given ones
+     */
+    public List<org.subsonic.restapi.Artist> createJaxbArtists(List<MediaFile> artists, String username) {
+        MediaFileAnnotations annotations = getUserAnnotations(artists, username);
+        return artists.stream()
+                .map(artist -> createJaxbArtist(artist, annotations.getStarredDate(artist)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Loads the starred dates and ratings of the given media files for the user.
+     *
+     * @param mediaFiles media files to annotate
+     * @param username   user name
+     * @return annotations holding starred dates, user ratings and average ratings
+     */
+    public MediaFileAnnotations getUserAnnotations(Collection<MediaFile> mediaFiles, String username) {
+        MediaFileAnnotations annotations = new MediaFileAnnotations();
+        List<Integer> ids = mediaFiles.stream().map(MediaFile::getId).distinct().collect(Collectors.toList());
+        mediaFileService.getMediaFileStarredDates(ids, username).forEach(annotations::putStarredDate);
+
+        ratingService.getRatingsForUser(username, ids).forEach(annotations::putUserRating);
+        ratingService.getAverageRatings(ids).forEach(annotations::putAverageRating);
+        return annotations;
+    }
+
+    /**
+     * Loads everything {@link #createJaxbChild} needs for the given media files: starred dates, ratings, parents,
+     * albums, artists and cover art presence. Media files sharing a parent directory, album or artist only cost one
+     * lookup for it.
+     *
+     * @param mediaFiles media files to annotate
+     * @param username   user name
+     * @return the annotations
+     */
+    public MediaFileAnnotations getAnnotations(Collection<MediaFile> mediaFiles, String username) {
+        MediaFileAnnotations annotations = getUserAnnotations(mediaFiles, username);
+
+        // parents are looked up through the media file cache, once per directory
+        Map<List<Object>, Optional<MediaFile>> parents = new HashMap<>();
+        Map<Integer, Boolean> roots = new HashMap<>();
+        Set<Integer> artDirectoryIds = new HashSet<>();
+        List<MediaFile> files = new ArrayList<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            MediaFile parent = parents.computeIfAbsent(
+                    Arrays.asList(mediaFile.getFolder() == null ? null : mediaFile.getFolder().getId(), mediaFile.getParentPath()),
+                    k -> Optional.ofNullable(mediaFileService.getParentOf(mediaFile))).orElse(null);
+            if (parent != null) {
+                annotations.putParent(mediaFile.getId(), parent, roots.computeIfAbsent(parent.getId(), id -> isRoot(parent)));
+            }
+            MediaFile dir = mediaFile.isDirectory() ? mediaFile : parent;
+            if (dir != null) {
+                artDirectoryIds.add(dir.getId());
+            }
+            if (mediaFile.isFile()) {
+                files.add(mediaFile);
+            }
+        }
+        coverArtService.getMediaFileArts(artDirectoryIds).forEach((id, art) -> {
+            if (!CoverArt.NULL_ART.equals(art)) {
+                annotations.putCoverArt(id);
+            }
+        });
+
+        if (!files.isEmpty()) {
+            albumService.getAlbumsByMediaFiles(files).forEach(annotations::putAlbum);
+            Map<String, org.airsonic.player.domain.Artist> artists = artistService.getArtists(
+                    files.stream().map(MediaFile::getArtist).filter(Objects::nonNull).collect(Collectors.toSet()));
+            for (MediaFile file : files) {
+                if (file.getArtist() != null) {
+                    annotations.putArtist(file.getId(), artists.get(file.getArtist()));
+                }
+            }
+        }
+        return annotations;
+    }
+
+    private MediaFileAnnotations getAnnotations(MediaFile mediaFile, String username) {
+        MediaFileAnnotations annotations = new MediaFileAnnotations();
         MediaFile parent = mediaFileService.getParentOf(mediaFile);
-        child.setId(String.valueOf(mediaFile.getId()));
+        if (Objects.nonNull(parent)) {
+            annotations.putParent(mediaFile.getId(), parent, isRoot(parent));
+        }
+        MediaFile dir = mediaFile.isDirectory() ? mediaFile : parent;
+        if (dir != null && !CoverArt.NULL_ART.equals(coverArtService.getMediaFileArt(dir.getId()))) {
+            annotations.putCoverArt(dir.getId());
+        }
+        annotations.putStarredDate(mediaFile.getId(), mediaFileService.getMediaFileStarredDate(mediaFile, username));
+        annotations.putUserRating(mediaFile.getId(), ratingService.getRatingForUser(username, mediaFile));
+        annotations.putAverageRating(mediaFile.getId(), ratingService.getAverageRating(mediaFile));
+        if (mediaFile.isFile()) {
+            annotations.putAlbum(mediaFile.getId(), albumService.getAlbumByMediaFile(mediaFile));
+            annotations.putArtist(mediaFile.getId(), artistService.getArtist(mediaFile.getArtist()));
+        }
+        return annotations;
+    }
+
+    private boolean isRoot(MediaFile mediaFile) {
         try {
-            if (Objects.nonNull(parent) && !mediaFileService.isRoot(parent)) {
-                child.setParent(String.valueOf(parent.getId()));
-            }
+            return mediaFileService.isRoot(mediaFile);
         } catch (SecurityException x) {
             // Ignored.
+            return true;
+        }
+    }
+
+    private <T extends Child> T createJaxbChild(T child, Player player, MediaFile mediaFile, MediaFileAnnotations annotations) {
+        MediaFile parent = annotations.getParent(mediaFile);
+        child.setId(String.valueOf(mediaFile.getId()));
+        Integer parentId = annotations.getParentId(mediaFile);
+        if (parentId != null) {
+            child.setParent(String.valueOf(parentId));
         }
         child.setTitle(mediaFile.getName());
         child.setAlbum(mediaFile.getAlbumName());
         child.setArtist(mediaFile.getArtist());
         child.setIsDir(mediaFile.isDirectory());
-        child.setCoverArt(findCoverArt(mediaFile, parent));
+        MediaFile dir = mediaFile.isDirectory() ? mediaFile : parent;
+        if (dir != null && annotations.hasCoverArt(dir.getId())) {
+            child.setCoverArt(String.valueOf(dir.getId()));
+        }
         child.setYear(mediaFile.getYear());
         child.setGenre(mediaFile.getGenre());
         child.setCreated(jaxbWriter.convertDate(mediaFile.getCreated()));
-        child.setStarred(jaxbWriter.convertDate(mediaFileService.getMediaFileStarredDate(mediaFile, username)));
-        child.setUserRating(ratingService.getRatingForUser(username, mediaFile));
-        child.setAverageRating(ratingService.getAverageRating(mediaFile));
+        child.setStarred(jaxbWriter.convertDate(annotations.getStarredDate(mediaFile)));
+        child.setUserRating(annotations.getUserRating(mediaFile));
+        child.setAverageRating(annotations.getAverageRating(mediaFile));
         child.setPlayCount((long) mediaFile.getPlayCount());
 
         if (mediaFile.isFile()) {
@@ -165,12 +309,12 @@ public class JaxbContentService {
             child.setIsVideo(mediaFile.isVideo());
             child.setPath(mediaFile.getPath());
 
-            Album album = albumService.getAlbumByMediaFile(mediaFile);
+            Album album = annotations.getAlbum(mediaFile);
 
             if (album != null) {
                 child.setAlbumId(String.valueOf(album.getId()));
             }
-            org.airsonic.player.domain.Artist artist = artistService.getArtist(mediaFile.getArtist());
+            org.airsonic.player.domain.Artist artist = annotations.getArtist(mediaFile);
             if (artist != null) {
                 child.setArtistId(String.valueOf(artist.getId()));
             }
@@ -201,12 +345,4 @@ public class JaxbContentService {
         }
         return child;
     }
-
-    private String findCoverArt(MediaFile mediaFile, MediaFile parent) {
-        MediaFile dir = mediaFile.isDirectory() ? mediaFile : parent;
-        if (dir != null && !CoverArt.NULL_ART.equals(coverArtService.getMediaFileArt(dir.getId()))) {
-            return String.valueOf(dir.getId());
-        }
-        return null;
-    }
 }
@@ -124,6 +124,7 @@ public class JukeboxLegacySubsonicService implements AudioPlayer.Listener {
                     TranscodingService.Parameters parameters = new TranscodingService.Parameters(file, new VideoTranscodingSettings(0, 0, offset, duration));
                     String command = settingsService.getJukeboxCommand();
                     parameters.setTranscoding(new Transcoding(null, "Jukebox", null, null, command, null, null, false));
+                    parameters.setUsername(player == null ? null : player.getUsername());
                     in = transcodingService.getTranscodedInputStream(parameters);
                     audioPlayer = audioPlayerFactory.createAudioPlayer(in, this);
                     audioPlayer.setGain(gain);
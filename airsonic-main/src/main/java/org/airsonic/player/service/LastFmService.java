@@ -32,6 +32,7 @@ import org.springframework.stereotype.Service;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -48,6 +49,7 @@ public class LastFmService {
     private static final String LAST_FM_KEY = "ece4499898a9440896dfdce5dab26bbf";
     private static final long CACHE_TIME_TO_LIVE_MILLIS = 6 * 30 * 24 * 3600 * 1000L; // 6 months
     private static final Logger LOG = LoggerFactory.getLogger(LastFmService.class);
+    private static final int SIMILAR_SONGS_PER_ARTIST = 1000;
 
     private final MediaFileService mediaFileService;
     private final ArtistRepository artistRepository;
@@ -174,6 +176,9 @@ public class LastFmService {
     /**
      * Returns songs from similar artists, using last.fm REST API. Typically used for artist radio features.
      *
+     * <p>Songs are sampled from the song ids of the artist and the similar artists, each artist weighted by its number
+     * of songs up to {@value #SIMILAR_SONGS_PER_ARTIST}, and only the sampled songs are read.
+     *
      * @param artist       The artist.
      * @param count        Max number of songs to return.
      * @param musicFolders Only return songs from artists in these folders.
@@ -182,36 +187,83 @@ public class LastFmService {
     public List<MediaFile> getSimilarSongs(org.airsonic.player.domain.Artist artist, int count,
                                            List<MusicFolder> musicFolders) {
 
-        List<MediaFile> similarSongs = new ArrayList<MediaFile>(mediaFileService.getSongsByArtist(0, 1000, artist.getName()));
+        List<int[]> songIds = new ArrayList<>();
+        songIds.add(mediaFileService.getSongIdsByArtist(artist.getName()));
         for (org.airsonic.player.domain.Artist similarArtist : getSimilarArtists(artist, 100, false, musicFolders)) {
-            similarSongs.addAll(mediaFileService.getSongsByArtist(0, 1000, similarArtist.getName()));
+            songIds.add(mediaFileService.getSongIdsByArtist(similarArtist.getName()));
         }
-        Collections.shuffle(similarSongs);
-        return similarSongs.subList(0, Math.min(count, similarSongs.size()));
+        return mediaFileService.getPresentMediaFiles(sampleSongIds(songIds, SIMILAR_SONGS_PER_ARTIST, count));
     }
 
     /**
      * Returns songs from similar artists, using last.fm REST API. Typically used for artist radio features.
      *
+     * <p>Songs are sampled from the song ids of the artist and the similar artists, each artist weighted by its number
+     * of songs up to {@code count}, and only the sampled songs are read.
+     *
      * @param mediaFile    The media file (song, album or artist).
      * @param count        Max number of songs to return.
      * @param musicFolders Only return songs from artists present in these folders.
      * @return Songs from similar artists;
      */
     public List<MediaFile> getSimilarSongsByMediaFile(MediaFile mediaFile, int count, List<MusicFolder> musicFolders) {
-        List<MediaFile> similarSongs = new ArrayList<MediaFile>();
+        List<int[]> songIds = new ArrayList<>();
 
         String artistName = getArtistName(mediaFile);
         MediaFile artist = mediaFileService.getArtistByName(artistName, musicFolders);
         if (artist != null) {
-            similarSongs.addAll(mediaFileService.getRandomSongsForParent(artist, count));
+            songIds.add(mediaFileService.getSongIdsForParent(artist));
         }
 
         for (MediaFile similarArtist : getSimilarArtistsByMediaFile(mediaFile, 100, false, musicFolders)) {
-            similarSongs.addAll(mediaFileService.getRandomSongsForParent(similarArtist, count));
+            songIds.add(mediaFileService.getSongIdsForParent(similarArtist));
+        }
+        return mediaFileService.getPresentMediaFiles(sampleSongIds(songIds, count, count));
+    }
+
+    /**
+     * Picks distinct song ids at random, as if sampling without replacement from a pool holding up to {@code cap}
+     * songs of each id list. The id lists are not modified; picked positions are tracked with a sparse Fisher-Yates
+     * shuffle per list.
+     *
+     * @param songIds The song ids of each artist.
+     * @param cap     Max number of songs of one artist in the pool.
+     * @param count   Max number of ids to return.
+     * @return The picked ids, in random order.
+     */
+    static List<Integer> sampleSongIds(List<int[]> songIds, int cap, int count) {
+        int[] remaining = new int[songIds.size()];
+        long total = 0;
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = Math.min(songIds.get(i).length, Math.max(0, cap));
+            total += remaining[i];
+        }
+
+        List<Map<Integer, Integer>> swaps = new ArrayList<>();
+        songIds.forEach(ids -> swaps.add(new HashMap<>()));
+        int[] picked = new int[remaining.length];
+        Set<Integer> result = new LinkedHashSet<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (result.size() < count && total > 0) {
+            // pick an artist in proportion to its songs left in the pool, then one of its unpicked songs
+            long r = random.nextLong(total);
+            int i = 0;
+            while (r >= remaining[i]) {
+                r -= remaining[i++];
+            }
+            int[] ids = songIds.get(i);
+            Map<Integer, Integer> swapped = swaps.get(i);
+            int last = ids.length - 1 - picked[i];
+            int pos = random.nextInt(last + 1);
+            int index = swapped.getOrDefault(pos, pos);
+            swapped.put(pos, swapped.getOrDefault(last, last));
+            picked[i]++;
+            remaining[i]--;
+            total--;
+            // the same song may be listed for several artists
+            result.add(ids[index]);
         }
-        Collections.shuffle(similarSongs);
-        return similarSongs.subList(0, Math.min(count, similarSongs.size()));
+        return new ArrayList<>(result);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2025 (C) Y.Tory
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+
+import jakarta.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-user annotations of a list of media files, loaded up front by {@link JaxbContentService} so that REST list
+ * responses don't query them file by file.
+ *
+ * <p>Everything is keyed by media file id. Values that were not loaded, or don't exist, are {@code null}.
+ */
+public class MediaFileAnnotations {
+
+    private final Map<Integer, MediaFile> parents = new HashMap<>();
+    private final Set<Integer> rootParentIds = new HashSet<>();
+    private final Map<Integer, Instant> starredDates = new HashMap<>();
+    private final Map<Integer, Integer> userRatings = new HashMap<>();
+    private final Map<Integer, Double> averageRatings = new HashMap<>();
+    private final Map<Integer, Album> albums = new HashMap<>();
+    private final Map<Integer, Artist> artists = new HashMap<>();
+    private final Set<Integer> coverArtIds = new HashSet<>();
+
+    @Nullable
+    public MediaFile getParent(MediaFile mediaFile) {
+        return parents.get(mediaFile.getId());
+    }
+
+    /**
+     * @return the id of the parent of the media file, or {@code null} if it has none or its parent is a music folder
+     *         root
+     */
+    @Nullable
+    public Integer getParentId(MediaFile mediaFile) {
+        MediaFile parent = getParent(mediaFile);
+        return parent == null || rootParentIds.contains(parent.getId()) ? null : parent.getId();
+    }
+
+    @Nullable
+    public Instant getStarredDate(MediaFile mediaFile) {
+        return starredDates.get(mediaFile.getId());
+    }
+
+    @Nullable
+    public Integer getUserRating(MediaFile mediaFile) {
+        return userRatings.get(mediaFile.getId());
+    }
+
+    @Nullable
+    public Double getAverageRating(MediaFile mediaFile) {
+        return averageRatings.get(mediaFile.getId());
+    }
+
+    @Nullable
+    public Album getAlbum(MediaFile mediaFile) {
+        return albums.get(mediaFile.getId());
+    }
+
+    @Nullable
+    public Artist getArtist(MediaFile mediaFile) {
+        return artists.get(mediaFile.getId());
+    }
+
+    /**
+     * @return whether the directory with the given id has cover art
+     */
+    public boolean hasCoverArt(int directoryId) {
+        return coverArtIds.contains(directoryId);
+    }
+
+    void putParent(int mediaFileId, MediaFile parent, boolean root) {
+        if (parent != null) {
+            parents.put(mediaFileId, parent);
+            if (root) {
+                rootParentIds.add(parent.getId());
+            }
+        }
+    }
+
+    void putStarredDate(int mediaFileId, Instant starredDate) {
+        if (starredDate != null) {
+            starredDates.put(mediaFileId, starredDate);
+        }
+    }
+
+    void putUserRating(int mediaFileId, Integer rating) {
+        if (rating != null) {
+            userRatings.put(mediaFileId, rating);
+        }
+    }
+
+    void putAverageRating(int mediaFileId, Double rating) {
+        if (rating != null) {
+            averageRatings.put(mediaFileId, rating);
+        }
+    }
+
+    void putAlbum(int mediaFileId, Album album) {
+        if (album != null) {
+            albums.put(mediaFileId, album);
+        }
+    }
+
+    void putArtist(int mediaFileId, Artist artist) {
+        if (artist != null) {
+            artists.put(mediaFileId, artist);
+        }
+    }
+
+    void putCoverArt(int directoryId) {
+        coverArtIds.add(directoryId);
+    }
+}
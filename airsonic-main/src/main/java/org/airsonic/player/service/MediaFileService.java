@@ -29,6 +29,7 @@ import org.airsonic.player.domain.*;
 import org.airsonic.player.domain.CoverArt.EntityType;
 import org.airsonic.player.domain.MediaFile.MediaType;
 import org.airsonic.player.domain.MusicFolder.Type;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.airsonic.player.domain.entity.StarredMediaFile;
 import org.airsonic.player.i18n.LocaleResolver;
 import org.airsonic.player.repository.AlbumRepository;
@@ -61,15 +62,19 @@ import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -84,9 +89,11 @@ import java.time.format.FormatStyle;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -128,12 +135,21 @@ public class MediaFileService {
     @Autowired
     private FFmpegParser ffmpegParser;
 
+    private static final int RANDOM_PROBE_ROUNDS = 3;
+    private static final int RANDOM_PROBE_BATCH_SIZE = 1000;
+
     private final double DURATION_EPSILON = 1e-2;
 
     private final Set<String> CUE_EXTENSIONS = Set.of("cue", "flac");
 
     private final Map<Integer, Pair<Integer, Instant>> lastPlayed = new ConcurrentHashMap<>();
 
+    // sorted song ids of artists and artist directories, dropped when a scan completes
+    private final Map<String, int[]> artistSongIds = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> descendantSongIds = new ConcurrentHashMap<>();
+    // incremented by clearSongIds, so id lists read before the clear are not kept
+    private final AtomicLong songIdGeneration = new AtomicLong();
+
     private boolean hasBOM(byte[] bom, int bytesRead) {
         return bytesRead == 3 && bom[0] == (byte) 0xEF && bom[1] == (byte) 0xBB && bom[2] == (byte) 0xBF;
     }
@@ -185,27 +201,26 @@ public class MediaFileService {
 
         // Look in database.
         if (result == null) {
-        // Look in database.
-            result = mediaFileRepository.findByPathAndFolderAndStartPosition(relativePath.toString(), folder, startPosition)
-                .map(file -> checkLastModified(file, minimizeDiskAccess))
-                .orElseGet(() -> {
-                    if (!Files.exists(folder.getPath().resolve(relativePath))) {
-                        return null;
-                    }
-                    if (startPosition == null || startPosition > MediaFile.NOT_INDEXED) {
-                        return null;
-                    }
-                    // Not found in database, must read from disk.
-                    MediaFile mediaFile = createMediaFileByFile(relativePath, folder);
-                    // Put in database.
-                    if (mediaFile != null) {
-                        updateMediaFile(mediaFile);
-                    }
-                    return mediaFile;
-                });
+            long stamp = mediaFileCache.stamp();
+            result = mediaFileRepository.findByPathAndFolderAndStartPosition(relativePath.toString(), folder, startPosition).orElse(null);
+            if (result != null) {
+                if (needsUpdate(result, minimizeDiskAccess)) {
+                    result = checkLastModified(result, minimizeDiskAccess);
+                    // written by this thread, so as fresh as anything read from now on
+                    stamp = mediaFileCache.stamp();
+                }
+            } else if (Files.exists(folder.getPath().resolve(relativePath)) && startPosition != null && startPosition <= MediaFile.NOT_INDEXED) {
+                // Not found in database, must read from disk.
+                result = createMediaFileByFile(relativePath, folder);
+                // Put in database.
+                if (result != null) {
+                    updateMediaFile(result);
+                    stamp = mediaFileCache.stamp();
+                }
+            }
 
             // cache the result
-            mediaFileCache.putMediaFileByPath(relativePath, folder, startPosition, result);
+            mediaFileCache.putMediaFileByPath(relativePath, folder, startPosition, result, stamp);
         }
         return result;
     }
@@ -231,8 +246,15 @@ public class MediaFileService {
         if (Objects.isNull(id)) return null;
         MediaFile result = ignoreCache ? null : mediaFileCache.getMediaFileById(id);
         if (result == null) {
-            result = mediaFileRepository.findById(id).map(mediaFile -> checkLastModified(mediaFile, settingsService.isFastCacheEnabled())).orElse(null);
-            mediaFileCache.putMediaFileById(id, result);
+            long stamp = mediaFileCache.stamp();
+            boolean minimizeDiskAccess = settingsService.isFastCacheEnabled();
+            result = mediaFileRepository.findById(id).orElse(null);
+            if (result != null && needsUpdate(result, minimizeDiskAccess)) {
+                result = checkLastModified(result, minimizeDiskAccess);
+                // written by this thread, so as fresh as anything read from now on
+                stamp = mediaFileCache.stamp();
+            }
+            mediaFileCache.putMediaFileById(id, result, stamp);
         }
         return result;
     }
@@ -443,6 +465,79 @@ public class MediaFileService {
         return mediaFileRepository.findByMediaTypeInAndArtistAndPresentTrue(MediaType.audioTypes(), artist, new OffsetBasedPageRequest(offset, count, Sort.by("id")));
     }
 
+    /**
+     * Returns the ids of the present songs by a given artist, in ascending order. The ids are kept until a scan
+     * completes.
+     *
+     * @param artist The artist name.
+     * @return Ids of the songs by the artist. Must not be modified.
+     */
+    public int[] getSongIdsByArtist(String artist) {
+        if (artist == null) {
+            return new int[0];
+        }
+        return getSongIds(artistSongIds, artist, () -> mediaFileRepository
+            .findIdsByMediaTypeInAndArtistAndPresentTrue(MediaType.audioTypes(), artist).stream()
+            .mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Returns the ids of the songs below a given directory, in ascending order. Video files are not included.
+     * The ids are kept until a scan completes.
+     *
+     * @param parent The parent, typically an artist directory.
+     * @return Ids of the descendant songs. Must not be modified.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public int[] getSongIdsForParent(MediaFile parent) {
+        if (parent == null || parent.getId() == null) {
+            return new int[0];
+        }
+        return getSongIds(descendantSongIds, parent.getId(), () -> getDescendantsOf(parent, false).stream()
+            .filter(m -> !m.isVideo() && m.getId() != null)
+            .mapToInt(MediaFile::getId).sorted().toArray());
+    }
+
+    /**
+     * Drops the kept song ids of artists and directories. Called when a scan completes.
+     */
+    public void clearSongIds() {
+        songIdGeneration.incrementAndGet();
+        artistSongIds.clear();
+        descendantSongIds.clear();
+    }
+
+    private <K> int[] getSongIds(Map<K, int[]> songIds, K key, Supplier<int[]> loader) {
+        int[] ids = songIds.get(key);
+        if (ids != null) {
+            return ids;
+        }
+        long loadedAt = songIdGeneration.get();
+        ids = loader.get();
+        songIds.put(key, ids);
+        if (songIdGeneration.get() != loadedAt) {
+            // a scan completed while loading
+            songIds.remove(key, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the present media files with the given ids, read in one query.
+     *
+     * @param ids The media file ids.
+     * @return The present media files, in the order of the given ids.
+     */
+    public List<MediaFile> getPresentMediaFiles(Collection<Integer> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        Map<Integer, MediaFile> byId = mediaFileRepository.findAllById(ids).stream()
+            .filter(MediaFile::isPresent)
+            .collect(Collectors.toMap(MediaFile::getId, Function.identity()));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     /**
      * Returns song by a given artist and title.
      * @param artist The artist name.
@@ -575,6 +670,37 @@ public class MediaFileService {
         return genreRepository.saveAll(genres);
     }
 
+    /**
+     * apply the genre counts of a partial scan
+     *
+     * @param rescanned genre counts of the rescanned files
+     * @param previous  genre counts of the same files before they were rescanned
+     * @return The updated genres.
+     */
+    @Transactional
+    public List<Genre> adjustGenres(List<Genre> rescanned, List<Genre> previous) {
+        Map<String, int[]> deltas = new HashMap<>();
+        rescanned.forEach(g -> {
+            int[] delta = deltas.computeIfAbsent(g.getName(), k -> new int[2]);
+            delta[0] += g.getSongCount();
+            delta[1] += g.getAlbumCount();
+        });
+        previous.forEach(g -> {
+            int[] delta = deltas.computeIfAbsent(g.getName(), k -> new int[2]);
+            delta[0] -= g.getSongCount();
+            delta[1] -= g.getAlbumCount();
+        });
+        List<Genre> updated = deltas.entrySet().stream()
+            .filter(e -> e.getValue()[0] != 0 || e.getValue()[1] != 0)
+            .map(e -> {
+                Genre current = genreRepository.findById(e.getKey()).orElseGet(() -> new Genre(e.getKey()));
+                return new Genre(e.getKey(), Math.max(0, current.getSongCount() + e.getValue()[0]),
+                        Math.max(0, current.getAlbumCount() + e.getValue()[1]));
+            })
+            .collect(Collectors.toList());
+        return genreRepository.saveAll(updated);
+    }
+
     /**
      * Returns the most frequently played albums.
      *
@@ -726,13 +852,63 @@ public class MediaFileService {
     /**
      * Returns random songs matching search criteria.
      *
+     * Random ids are probed in batches, each matched by a single primary key lookup, so the cost grows with the
+     * number of songs asked for rather than with the library. The batches are sized by the share of probed ids that
+     * matched so far. Only when the criteria match too few ids to find enough songs this way are the remaining
+     * songs picked by sorting the matches randomly.
+     *
      */
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public List<MediaFile> getRandomSongs(RandomSearchCriteria criteria, String username) {
-        if (criteria == null || CollectionUtils.isEmpty(criteria.getMusicFolders())) {
+        if (criteria == null || CollectionUtils.isEmpty(criteria.getMusicFolders()) || criteria.getCount() <= 0) {
+            return Collections.emptyList();
+        }
+        int count = criteria.getCount();
+        Specification<MediaFile> matchCriteria = MediaFileSpecifications.matchCriteria(criteria, username);
+        Map<Integer, MediaFile> result = new LinkedHashMap<>();
+
+        Integer minId = mediaFileRepository.findMinId();
+        Integer maxId = mediaFileRepository.findMaxId();
+        if (minId == null || maxId == null) {
             return Collections.emptyList();
         }
-        return mediaFileRepository.findAll(MediaFileSpecifications.matchCriteria(criteria, username, settingsService.getDatabaseType()), Pageable.ofSize(criteria.getCount()));
+        long span = (long) maxId - minId + 1;
+        long probed = 0;
+        for (int round = 0; round < RANDOM_PROBE_ROUNDS && result.size() < count && probed < span; round++) {
+            int needed = count - result.size();
+            // assume every probe matches until some have been made
+            double matchRate = probed == 0 ? 1.0 : (double) (result.size() + 1) / (probed + 1);
+            int batchSize = (int) Math.min(Math.min(RANDOM_PROBE_BATCH_SIZE, span - probed), Math.ceil(needed / matchRate));
+            Set<Integer> ids = new HashSet<>();
+            while (ids.size() < batchSize) {
+                int id = (int) (minId + ThreadLocalRandom.current().nextLong(span));
+                if (!result.containsKey(id)) {
+                    ids.add(id);
+                }
+            }
+            probed += ids.size();
+            for (MediaFile mediaFile : mediaFileRepository.findAll(matchCriteria.and(MediaFileSpecifications.idIn(ids)), Pageable.ofSize(ids.size()))) {
+                if (result.size() < count) {
+                    result.put(mediaFile.getId(), mediaFile);
+                }
+            }
+        }
+
+        if (result.size() < count) {
+            // selective criteria, so there are few matches to sort
+            Specification<MediaFile> spec = matchCriteria.and(MediaFileSpecifications.randomOrder(settingsService.getDatabaseType()));
+            // the songs found so far may come up again
+            int size = (int) Math.min(Integer.MAX_VALUE, (long) count + result.size());
+            for (MediaFile mediaFile : mediaFileRepository.findAll(spec, Pageable.ofSize(size))) {
+                if (result.size() < count) {
+                    result.putIfAbsent(mediaFile.getId(), mediaFile);
+                }
+            }
+        }
+
+        List<MediaFile> songs = new ArrayList<>(result.values());
+        Collections.shuffle(songs);
+        return songs;
     }
 
     /**
@@ -746,6 +922,21 @@ public class MediaFileService {
         return starredMediaFileRepository.findByUsernameAndMediaFile(username, mediaFile).map(StarredMediaFile::getCreated).orElse(null);
     }
 
+    /**
+     * Returns the dates the given media files were starred by the user, with one query.
+     *
+     * @param mediaFileIds ids of the media files
+     * @param username     user name
+     * @return starred dates by media file id. Media files that are not starred are missing.
+     */
+    public Map<Integer, Instant> getMediaFileStarredDates(Collection<Integer> mediaFileIds, String username) {
+        if (mediaFileIds.isEmpty() || username == null) {
+            return Collections.emptyMap();
+        }
+        return starredMediaFileRepository.findByUsernameAndMediaFileIdIn(username, mediaFileIds).stream()
+                .collect(Collectors.toMap(s -> s.getMediaFile().getId(), StarredMediaFile::getCreated, (a, b) -> a));
+    }
+
     public void populateStarredDate(List<MediaFile> mediaFiles, String username) {
         for (MediaFile mediaFile : mediaFiles) {
             populateStarredDate(mediaFile, username);
@@ -1325,11 +1516,6 @@ public class MediaFileService {
         updateMediaFile(mediaFile);
     }
 
-    public void setMemoryCacheEnabled(boolean memoryCacheEnabled) {
-        mediaFileCache.clear();
-        mediaFileCache.setEnabled(memoryCacheEnabled);
-    }
-
     /**
      * get Cue sheet from cue file absolute path
      *
@@ -1456,6 +1642,43 @@ public class MediaFileService {
     }
 
 
+    /**
+     * Returns the stored media files of a directory and everything below it, as known to the database.
+     * The disk is not accessed.
+     *
+     * @param folder       The music folder.
+     * @param relativePath The path of the directory relative to the music folder.
+     * @return The present media files of the directory, including the directory itself.
+     */
+    public List<MediaFile> getStoredMediaFilesInDirectory(MusicFolder folder, String relativePath) {
+        List<MediaFile> result = new ArrayList<>();
+        if (relativePath.isEmpty()) {
+            result.addAll(mediaFileRepository.findByFolderAndPresentTrue(folder));
+        } else {
+            result.addAll(mediaFileRepository.findByFolderAndPath(folder, relativePath));
+            result.addAll(mediaFileRepository.findByFolderAndPathStartsWith(folder, relativePath + File.separator));
+        }
+        result.removeIf(m -> !m.isPresent());
+        return result;
+    }
+
+    /**
+     * Returns a stored directory and the stored files directly in it, but not its subdirectories, as known to the
+     * database. The disk is not accessed.
+     *
+     * @param folder       The music folder.
+     * @param relativePath The path of the directory relative to the music folder.
+     * @return The present media files of the directory, including the directory itself.
+     */
+    public List<MediaFile> getStoredFilesOfDirectory(MusicFolder folder, String relativePath) {
+        List<MediaFile> result = new ArrayList<>(mediaFileRepository.findByFolderAndPath(folder, relativePath));
+        mediaFileRepository.findByFolderAndParentPathAndPresentTrue(folder, relativePath).stream()
+                .filter(m -> !m.isDirectory())
+                .forEach(result::add);
+        result.removeIf(m -> !m.isPresent());
+        return result;
+    }
+
     /**
      * Returns all media files that are children, grand-children etc of a given media file.
      * Directories are not included in the result.
@@ -1487,7 +1710,7 @@ public class MediaFileService {
 
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public void updateMediaFile(@Nonnull MediaFile mediaFile) {
-        mediaFileCache.removeMediaFile(mediaFile);
+        evictFromCache(mediaFile);
         if (mediaFile.getId() != null && mediaFileRepository.existsById(mediaFile.getId())) {
             mediaFileRepository.save(mediaFile);
         } else {
@@ -1511,6 +1734,57 @@ public class MediaFileService {
         coverArtService.persistIfNeeded(mediaFile);
     }
 
+    /**
+     * Updates the given media files in a single transaction. Files that were already stored are loaded with
+     * one query up front, so their updates can be sent to the database in JDBC batches.
+     *
+     * @param mediaFiles The media files to update.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public void updateMediaFiles(@Nonnull List<MediaFile> mediaFiles) {
+        List<MediaFile> stored = new ArrayList<>(mediaFiles.size());
+        for (MediaFile mediaFile : mediaFiles) {
+            evictFromCache(mediaFile);
+            if (mediaFile.getId() == null) {
+                updateMediaFile(mediaFile);
+            } else {
+                stored.add(mediaFile);
+            }
+        }
+        // brings the stored rows into the persistence context, the saves below then need no further selects
+        mediaFileRepository.findAllById(stored.stream().map(MediaFile::getId).collect(Collectors.toList()));
+        mediaFileRepository.saveAll(stored);
+        stored.forEach(coverArtService::persistIfNeeded);
+    }
+
+    /**
+     * Removes the media file from the cache now and, within a transaction, again once the transaction is done.
+     * Readers that loaded the old row before the commit would otherwise cache it again.
+     */
+    private void evictFromCache(MediaFile mediaFile) {
+        mediaFileCache.removeMediaFile(mediaFile);
+        afterTransaction(() -> mediaFileCache.removeMediaFile(mediaFile));
+    }
+
+    /**
+     * Clears the cache now and, within a transaction, again once the transaction is done.
+     */
+    private void clearCache() {
+        mediaFileCache.clear();
+        afterTransaction(mediaFileCache::clear);
+    }
+
+    private static void afterTransaction(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
     /**
      * Increments the play count and last played date for the given media file and its
      * directory and album.
@@ -1624,54 +1898,30 @@ public class MediaFileService {
     }
 
     /**
-     * mark media files present
+     * Marks the media files seen by the scan with the given generation as present, in a single update.
      *
-     * @param paths paths to mark present by folder id
-     * @param lastScanned last scanned time
-     * @return true if success, false otherwise
+     * @param generation  scan generation the seen media files were staged with
+     * @param lastScanned last scanned time to set
+     * @return number of media files marked present
      */
     @Transactional
-    public boolean markPresent(Map<Integer, Set<String>> paths, Instant lastScanned) {
-
-        final int BATCH_SIZE = 30000;
-
-        if (CollectionUtils.isEmpty(paths)) {
-            return true;
-        }
-        try {
-            paths.entrySet().parallelStream().map(e -> {
-                MusicFolder folder = mediaFolderService.getMusicFolderById(e.getKey());
-                if (folder == null) {
-                    return true;
-                }
-                Set<String> pathsInFolder = e.getValue();
-                int batches = (pathsInFolder.size() - 1) / BATCH_SIZE;
-                List<String> pathsInFolderList = new ArrayList<>(pathsInFolder);
-                Integer savedCount = IntStream.rangeClosed(0, batches).parallel().map(b -> {
-                    try {
-                        List<String> subList = pathsInFolderList.subList(b * BATCH_SIZE, Math.min((b + 1) * BATCH_SIZE, pathsInFolderList.size()));
-                        return mediaFileRepository.markPresent(folder, subList, lastScanned);
-                    } catch (Exception ex) {
-                        LOG.warn("Error marking media files present", ex);
-                        return 0;
-                    }
-                }).sum();
-                return savedCount == pathsInFolder.size();
-            }).reduce(true, (a, b) -> a && b);
-            return true;
-        } catch (Exception e) {
-            LOG.warn("Error marking media files present", e);
-            return false;
-        }
+    public int markPresent(long generation, Instant lastScanned) {
+        int count = mediaFileRepository.markPresent(generation, ScanSeen.EntityType.MEDIA_FILE, lastScanned);
+        clearCache();
+        return count;
     }
 
     /**
-     * mark media files non present
-     * @param lastScanned last scanned time before which media files are marked non present
+     * Marks all media files not seen by the scan with the given generation as non present, in a single update.
+     *
+     * @param generation scan generation the seen media files were staged with
+     * @return number of media files marked non present
      */
     @Transactional
-    public void markNonPresent(Instant lastScanned) {
-        mediaFileRepository.markNonPresent(Instant.ofEpochMilli(1), lastScanned);
+    public int markNonPresent(long generation) {
+        int count = mediaFileRepository.markNonPresent(generation, ScanSeen.EntityType.MEDIA_FILE, Instant.ofEpochMilli(1));
+        clearCache();
+        return count;
     }
 
     /**
@@ -1685,7 +1935,7 @@ public class MediaFileService {
         if (file == null) {
             return null;
         }
-        mediaFileCache.removeMediaFile(file);
+        evictFromCache(file);
         file.setPresent(false);
         file.setChildrenLastUpdated(Instant.ofEpochMilli(1));
         mediaFileRepository.save(file);
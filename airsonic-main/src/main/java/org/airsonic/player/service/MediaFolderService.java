@@ -9,13 +9,12 @@ import org.airsonic.player.repository.CoverArtRepository;
 import org.airsonic.player.repository.MediaFileRepository;
 import org.airsonic.player.repository.MusicFolderRepository;
 import org.airsonic.player.repository.UserRepository;
-import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.service.cache.MediaFileCache;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -31,6 +30,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -49,8 +50,16 @@ public class MediaFolderService {
     private MediaFileRepository mediaFileRepository;
     @Autowired
     private CoverArtRepository coverArtRepository;
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    /**
+     * How long the existence of the music folders is trusted before it is checked again.
+     */
+    private static final long EXISTENCE_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(10);
 
-    private List<MusicFolder> cachedMusicFolders;
+    private volatile MusicFolderTrie cachedMusicFolders;
+    private final ReentrantLock cachedMusicFoldersLock = new ReentrantLock();
     private final ConcurrentMap<String, List<MusicFolder>> cachedMusicFoldersPerUser = new ConcurrentHashMap<>();
 
     /**
@@ -70,14 +79,39 @@ public class MediaFolderService {
      * @return Possibly empty list of all music folders.
      */
     public List<MusicFolder> getAllMusicFolders(boolean includeDisabled, boolean includeNonExisting) {
-        if (cachedMusicFolders == null) {
-            cachedMusicFolders = musicFolderRepository.findByDeleted(false);
-        }
-        return cachedMusicFolders.stream()
-                .filter(folder -> (includeDisabled || folder.isEnabled()) && (includeNonExisting || Files.exists(folder.getPath())))
+        MusicFolderTrie folders = getMusicFolderTrie();
+        return folders.getFolders().stream()
+                .filter(folder -> (includeDisabled || folder.isEnabled()) && (includeNonExisting || folders.exists(folder)))
                 .toList();
     }
 
+    /**
+     * Returns the cached music folders. Their existence is checked again once it is older than
+     * {@link #EXISTENCE_CHECK_INTERVAL}; meanwhile other threads keep using the previous check.
+     */
+    private MusicFolderTrie getMusicFolderTrie() {
+        MusicFolderTrie folders = cachedMusicFolders;
+        if (folders != null && System.nanoTime() - folders.getCreated() < EXISTENCE_CHECK_INTERVAL) {
+            return folders;
+        }
+        if (folders == null) {
+            cachedMusicFoldersLock.lock();
+        } else if (!cachedMusicFoldersLock.tryLock()) {
+            return folders;
+        }
+        try {
+            folders = cachedMusicFolders;
+            if (folders == null || System.nanoTime() - folders.getCreated() >= EXISTENCE_CHECK_INTERVAL) {
+                List<MusicFolder> all = folders == null ? musicFolderRepository.findByDeleted(false) : folders.getFolders();
+                folders = new MusicFolderTrie(all, folder -> Files.exists(folder.getPath()));
+                cachedMusicFolders = folders;
+            }
+            return folders;
+        } finally {
+            cachedMusicFoldersLock.unlock();
+        }
+    }
+
     public List<MusicFolder> getAllMusicFolders(boolean includeDisabled, boolean includeNonExisting, boolean includeDeleted) {
         return Streams.concat(
                 getAllMusicFolders(includeDisabled, includeNonExisting).stream(),
@@ -403,9 +437,8 @@ public class MediaFolderService {
         cachedMusicFoldersPerUser.clear();
     }
 
-    @CacheEvict(cacheNames = { "mediaFilePathCache", "mediaFileIdCache" }, allEntries = true)
     public void clearMediaFileCache() {
-        // TODO: optimize cache eviction
+        mediaFileCache.clear();
     }
 
     /**
@@ -503,10 +536,7 @@ public class MediaFolderService {
      * @return Music folder that contains the file, or null if no music folder contains the file.
      */
     public Optional<MusicFolder> getMusicFolderForFile(Path file, boolean includeDisabled, boolean includeNonExisting) {
-        return getAllMusicFolders(includeDisabled, includeNonExisting).stream()
-                .filter(folder -> FileUtil.isFileInFolder(file, folder.getPath()))
-                .sorted(Comparator.comparing(folder -> folder.getPath().getNameCount(), Comparator.reverseOrder()))
-                .findFirst();
+        return Optional.ofNullable(getMusicFolderTrie().find(file, includeDisabled, includeNonExisting));
     }
 
     /**
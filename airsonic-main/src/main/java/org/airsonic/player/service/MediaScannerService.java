@@ -23,9 +23,15 @@ package org.airsonic.player.service;
 import org.airsonic.player.config.AirsonicScanConfig;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.domain.CoverArt.EntityType;
+import org.airsonic.player.service.scanner.DirtyDirectoryJournal;
+import org.airsonic.player.service.scanner.MediaFolderWatcher;
+import org.airsonic.player.service.scanner.ScanWriteBuffer;
 import org.airsonic.player.service.search.IndexManager;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.subsonic.restapi.ScanStatus;
@@ -58,9 +64,14 @@ import java.util.stream.Stream;
 public class MediaScannerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MediaScannerService.class);
+    // an incremental scan is postponed for at most this many watch delays after the first change
+    private static final long MAX_DELAY_FACTOR = 10;
 
     private final AtomicBoolean scanning = new AtomicBoolean(false);
     private final AtomicBoolean mediaScaninng = new AtomicBoolean(false);
+    private final AtomicBoolean incrementalScanPending = new AtomicBoolean(false);
+    private volatile long firstChangeNanos;
+    private volatile long lastChangeNanos;
 
     public MediaScannerService(
         SettingsService settingsService,
@@ -73,7 +84,11 @@ public class MediaScannerService {
         AlbumService albumService,
         TaskSchedulingService taskService,
         SimpMessagingTemplate messagingTemplate,
-        AirsonicScanConfig scanConfig
+        AirsonicScanConfig scanConfig,
+        DirtyDirectoryJournal dirtyDirectoryJournal,
+        MediaFolderWatcher mediaFolderWatcher,
+        ScanWriteBuffer writeBuffer,
+        MusicIndexService musicIndexService
     ) {
         this.settingsService = settingsService;
         this.indexManager = indexManager;
@@ -86,6 +101,10 @@ public class MediaScannerService {
         this.taskService = taskService;
         this.messagingTemplate = messagingTemplate;
         this.scanConfig = scanConfig;
+        this.dirtyDirectoryJournal = dirtyDirectoryJournal;
+        this.mediaFolderWatcher = mediaFolderWatcher;
+        this.writeBuffer = writeBuffer;
+        this.musicIndexService = musicIndexService;
         init();
     }
 
@@ -100,6 +119,10 @@ public class MediaScannerService {
     private final TaskSchedulingService taskService;
     private final SimpMessagingTemplate messagingTemplate;
     private final AirsonicScanConfig scanConfig;
+    private final DirtyDirectoryJournal dirtyDirectoryJournal;
+    private final MediaFolderWatcher mediaFolderWatcher;
+    private final ScanWriteBuffer writeBuffer;
+    private final MusicIndexService musicIndexService;
 
     private int scannerParallelism;
     private LongAdder scanCount = new LongAdder();
@@ -146,6 +169,62 @@ public class MediaScannerService {
         }
     }
 
+    /**
+     * Start watching the music folders for changes, if enabled.
+     * Changes recorded in the journal before a restart are scanned right away.
+     */
+    @EventListener
+    public void startWatching(ApplicationReadyEvent event) {
+        if (!scanConfig.isWatch()) {
+            return;
+        }
+        mediaFolderWatcher.setChangeListener(this::scheduleIncrementalScan);
+        CompletableFuture.runAsync(() -> {
+            mediaFolderWatcher.watchAll();
+            if (!dirtyDirectoryJournal.snapshot().isEmpty()) {
+                scheduleIncrementalScan();
+            }
+        });
+    }
+
+    /**
+     * Schedule an incremental scan once the music folders did not change for the configured watch delay.
+     * Every call postpones the scan again, so a burst of changes results in a single scan, but folders that keep
+     * changing are scanned anyway ten watch delays after their first change. The pending task is never cancelled,
+     * it reschedules itself until the folders are quiet.
+     */
+    public void scheduleIncrementalScan() {
+        long now = System.nanoTime();
+        lastChangeNanos = now;
+        if (incrementalScanPending.compareAndSet(false, true)) {
+            firstChangeNanos = now;
+            taskService.scheduleOnce("mediascanner-IncrementalTask", this::runIncrementalScan,
+                    Instant.now().plusSeconds(scanConfig.getWatchDelay()), false);
+        }
+    }
+
+    void runIncrementalScan() {
+        long remainingNanos = getRemainingDelayNanos(System.nanoTime(), firstChangeNanos, lastChangeNanos,
+                TimeUnit.SECONDS.toNanos(scanConfig.getWatchDelay()));
+        if (remainingNanos > 0) {
+            taskService.scheduleOnce("mediascanner-IncrementalTask", this::runIncrementalScan,
+                    Instant.now().plusNanos(remainingNanos), false);
+            return;
+        }
+        // changes from here on schedule a new scan
+        incrementalScanPending.set(false);
+        scanChangedDirectories();
+    }
+
+    /**
+     * @return how long an incremental scan still waits for the folders to be quiet, or 0 or less if it runs now
+     */
+    static long getRemainingDelayNanos(long nowNanos, long firstChangeNanos, long lastChangeNanos, long delayNanos) {
+        long quietRemaining = delayNanos - (nowNanos - lastChangeNanos);
+        long maxRemaining = MAX_DELAY_FACTOR * delayNanos - (nowNanos - firstChangeNanos);
+        return Math.min(quietRemaining, maxRemaining);
+    }
+
     boolean neverScanned() {
         return indexManager.getStatistics() == null;
     }
@@ -215,6 +294,8 @@ public class MediaScannerService {
         boolean isFullScan = settingsService.getFullScan();
         long timeoutSeconds = isFullScan ? scanConfig.getFullTimeout() : scanConfig.getTimeout();
         MediaLibraryStatistics statistics = new MediaLibraryStatistics();
+        // a full scan covers every change recorded so far
+        DirtyDirectoryJournal.Snapshot changes = dirtyDirectoryJournal.snapshot();
         LOG.info("Starting media library scan with timeout {} seconds.", timeoutSeconds);
         CompletableFuture.runAsync(() -> {
             doScanLibrary(pool, statistics);
@@ -227,8 +308,16 @@ public class MediaScannerService {
                         LOG.error("Media library scan failed.", e);
                     } else {
                         LOG.info("Media library scan completed.");
+                        if (isMediaScanning()) {
+                            dirtyDirectoryJournal.complete(changes);
+                        }
                     }
                     setMediaScanning(false);
+                    musicIndexService.clearSnapshots();
+                    mediaFileService.clearSongIds();
+                    if (scanConfig.isWatch()) {
+                        mediaFolderWatcher.watchAll();
+                    }
                 })
                 .thenRunAsync(() -> playlistFileService.importPlaylists(), pool)
                 .whenComplete((r,e) -> {
@@ -239,6 +328,174 @@ public class MediaScannerService {
                 });
     }
 
+    /**
+     * Scans only the directories recorded as changed by the folder watcher.
+     * Falls back to a full scan if change events were lost or the library has never been scanned.
+     * The scanning is done asynchronously, i.e., this method returns immediately.
+     */
+    public synchronized void scanChangedDirectories() {
+        if (isScanning()) {
+            // changes stay in the journal, try again after the running scan
+            scheduleIncrementalScan();
+            return;
+        }
+        DirtyDirectoryJournal.Snapshot changes = dirtyDirectoryJournal.snapshot();
+        if (changes.isEmpty()) {
+            return;
+        }
+        MediaLibraryStatistics previousStatistics = indexManager.getStatistics();
+        if (changes.isFullScanRequired() || previousStatistics == null) {
+            LOG.info("Changes in the media library cannot be scanned incrementally. Starting full scan.");
+            scanLibrary();
+            return;
+        }
+        setScanning(true);
+        setMediaScanning(true);
+
+        ForkJoinPool pool = new ForkJoinPool(scannerParallelism, mediaScannerThreadFactory, null, true);
+
+        long timeoutSeconds = scanConfig.getTimeout();
+        MediaLibraryStatistics statistics = new MediaLibraryStatistics();
+        LOG.info("Starting incremental media library scan with timeout {} seconds.", timeoutSeconds);
+        CompletableFuture.runAsync(() -> {
+            doScanChangedDirectories(pool, changes, statistics);
+        }, pool)
+                .orTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .whenComplete((r, e) -> {
+                    if (e instanceof TimeoutException) {
+                        LOG.warn("Incremental media library scan timed out after {} seconds.", timeoutSeconds);
+                    } else if (e != null) {
+                        LOG.error("Incremental media library scan failed.", e);
+                    } else if (isMediaScanning()) {
+                        dirtyDirectoryJournal.complete(changes);
+                        LOG.info("Incremental media library scan completed.");
+                    }
+                    setMediaScanning(false);
+                    musicIndexService.clearSnapshots();
+                    mediaFileService.clearSongIds();
+                    // library totals are only recalculated by a full scan
+                    previousStatistics.setScanDate(statistics.getScanDate());
+                    indexManager.stopIndexing(previousStatistics);
+                    setScanning(false);
+                    pool.shutdown();
+                });
+    }
+
+    private void doScanChangedDirectories(ForkJoinPool pool, DirtyDirectoryJournal.Snapshot changes, MediaLibraryStatistics statistics) {
+        Map<String, AtomicInteger> albumCount = new ConcurrentHashMap<>();
+        Map<String, Artist> artists = new ConcurrentHashMap<>();
+        Map<String, Album> albums = new ConcurrentHashMap<>();
+        Set<Integer> albumsInDb = Collections.synchronizedSet(new HashSet<>());
+        Map<Integer, CoverArt> coverArtCache = new ConcurrentHashMap<>();
+        // genre counts and album/artist names of the changed directories before and after the scan
+        Genres previousGenres = new Genres();
+        Genres genres = new Genres();
+        Set<Pair<String, String>> affectedAlbums = ConcurrentHashMap.newKeySet();
+        Set<String> affectedArtists = ConcurrentHashMap.newKeySet();
+
+        scanCount.reset();
+        writeBuffer.start(statistics.getScanDate().toEpochMilli());
+        indexManager.startIndexing();
+
+        changes.getDirectories().forEach((folderId, directories) -> {
+            MusicFolder musicFolder = mediaFolderService.getMusicFolderById(folderId);
+            if (musicFolder == null) {
+                return;
+            }
+            directories.parallelStream().forEach(directory -> {
+                LOG.debug("Scanning changed directory {} in folder {}", directory, musicFolder.getName());
+                mediaFileService.getStoredMediaFilesInDirectory(musicFolder, directory).forEach(m -> {
+                    updateGenres(m, previousGenres);
+                    collectAlbumAndArtist(m, affectedAlbums, affectedArtists);
+                });
+                scanChangedDirectory(pool, directory, musicFolder, statistics, albumCount, artists, albums,
+                        albumsInDb, genres, coverArtCache, true);
+            });
+        });
+        // directories whose files changed, their subdirectories are left alone
+        changes.getChangedDirectories().forEach((folderId, directories) -> {
+            MusicFolder musicFolder = mediaFolderService.getMusicFolderById(folderId);
+            if (musicFolder == null) {
+                return;
+            }
+            directories.parallelStream().forEach(directory -> {
+                LOG.debug("Scanning files of changed directory {} in folder {}", directory, musicFolder.getName());
+                mediaFileService.getStoredFilesOfDirectory(musicFolder, directory).forEach(m -> {
+                    updateGenres(m, previousGenres);
+                    collectAlbumAndArtist(m, affectedAlbums, affectedArtists);
+                });
+                scanChangedDirectory(pool, directory, musicFolder, statistics, albumCount, artists, albums,
+                        albumsInDb, genres, coverArtCache, false);
+            });
+        });
+
+        writeBuffer.flush();
+        if (!isMediaScanning()) {
+            LOG.info("Scan cancelled.");
+            writeBuffer.finish();
+            return;
+        }
+
+        LOG.info("Scanned {} changed entries. Updating albums, artists and genres.", scanCount.longValue());
+        mediaFileService.markPresent(writeBuffer.getGeneration(), statistics.getScanDate());
+        writeBuffer.finish();
+        albums.values().forEach(a -> affectedAlbums.add(Pair.of(a.getArtist(), a.getName())));
+        affectedArtists.addAll(artists.keySet());
+
+        // counts can only be derived from the stored songs, since only a part of the library was scanned
+        affectedAlbums.forEach(key -> albumService.getAlbumByArtistAndName(key.getLeft(), key.getRight()).ifPresent(album -> {
+            List<MediaFile> songs = mediaFileService.getSongsForAlbum(album.getArtist(), album.getName());
+            album.setSongCount(songs.size());
+            album.setDuration(songs.stream().map(MediaFile::getDuration).filter(Objects::nonNull).mapToDouble(Double::doubleValue).sum());
+            album.setPresent(!songs.isEmpty());
+            Album saved = albumService.save(album);
+            coverArtService.persistIfNeeded(saved);
+            indexManager.index(saved);
+        }));
+        List<MusicFolder> allFolders = mediaFolderService.getAllMusicFolders();
+        affectedArtists.forEach(name -> Optional.ofNullable(artistService.getArtist(name)).ifPresent(artist -> {
+            int n = albumService.getAlbumsByArtist(name, allFolders).size();
+            artist.setAlbumCount(n);
+            artist.setPresent(n > 0);
+            Artist saved = artistService.save(artist);
+            coverArtService.persistIfNeeded(saved);
+            indexManager.index(saved, saved.getFolder());
+        }));
+        mediaFileService.adjustGenres(genres.getGenres(), previousGenres.getGenres());
+    }
+
+    private void scanChangedDirectory(ForkJoinPool pool, String directory, MusicFolder musicFolder,
+            MediaLibraryStatistics statistics, Map<String, AtomicInteger> albumCount, Map<String, Artist> artists,
+            Map<String, Album> albums, Set<Integer> albumsInDb, Genres genres, Map<Integer, CoverArt> coverArtCache,
+            boolean recursive) {
+        MediaFile file = mediaFileService.getMediaFile(Paths.get(directory), musicFolder, false);
+        if (file == null) {
+            return;
+        }
+        if (!file.isPresent()) {
+            // removed from disk together with everything below it
+            mediaFileService.delete(file);
+            return;
+        }
+        MediaFile parent = mediaFileService.getParentOf(file, true);
+        MediaFile grandParent = parent == null ? null : mediaFileService.getParentOf(parent, true);
+        scanFile(pool, grandParent, parent, file, musicFolder, statistics, albumCount, artists, albums,
+                albumsInDb, genres, coverArtCache, true, recursive);
+    }
+
+    private void collectAlbumAndArtist(MediaFile file, Set<Pair<String, String>> albums, Set<String> artists) {
+        if (!file.isAudio()) {
+            return;
+        }
+        String artist = file.getAlbumArtist() != null ? file.getAlbumArtist() : file.getArtist();
+        if (artist != null && file.getAlbumName() != null) {
+            albums.add(Pair.of(artist, file.getAlbumName()));
+        }
+        if (file.getAlbumArtist() != null) {
+            artists.add(file.getAlbumArtist());
+        }
+    }
+
     private void doScanLibrary(ForkJoinPool pool, MediaLibraryStatistics statistics) {
         LOG.info("Starting to scan media library.");
         LOG.debug("New last scan date is {}", statistics.getScanDate());
@@ -252,9 +509,9 @@ public class MediaScannerService {
             Genres genres = new Genres();
 
             scanCount.reset();
+            writeBuffer.start(statistics.getScanDate().toEpochMilli());
 
             indexManager.startIndexing();
-            mediaFileService.setMemoryCacheEnabled(false);
 
             // Prepare a cover art cache and fetch artwork for all scans.
             Map<Integer, CoverArt> coverArtCache = new ConcurrentHashMap<>();
@@ -272,43 +529,54 @@ public class MediaScannerService {
             LOG.info("Scanned media library with {} entries.", scanCount.longValue());
 
             if (!isMediaScanning()) {
+                writeBuffer.flush();
+                writeBuffer.finish();
                 LOG.info("Scan cancelled.");
                 return;
             }
 
-            LOG.info("Persisting albums");
+            LOG.info("Persisting albums and artists");
+            albums.values().forEach(writeBuffer::saveAlbum);
+            artists.values().forEach(writeBuffer::saveArtist);
+            writeBuffer.flush();
+            // ids are only known once written
+            albums.values().forEach(writeBuffer::markSeen);
+            artists.values().forEach(writeBuffer::markSeen);
+            writeBuffer.flush();
+            long generation = writeBuffer.getGeneration();
+            LOG.info("Persisted {} rows in {}s of write time ({} rows/s)", writeBuffer.getRowsWritten(),
+                    writeBuffer.getWriteSeconds(), writeBuffer.getRowsPerSecond());
+
             CompletableFuture<Void> albumPersistence = CompletableFuture
                     .allOf(albums.values().stream()
                             .distinct()
-                            .map(a -> CompletableFuture.supplyAsync(() -> {
-                                return albumService.save(a);
-                            }, pool).thenAcceptAsync(coverArtService::persistIfNeeded))
+                            .map(a -> CompletableFuture.runAsync(() -> coverArtService.persistIfNeeded(a), pool))
                             .toArray(CompletableFuture[]::new))
                     .thenRunAsync(() -> {
                         LOG.info("Marking non-present albums.");
-                        albumService.markNonPresent(statistics.getScanDate());
+                        albumService.markNonPresent(generation);
                     }, pool)
                     .thenRunAsync(() -> LOG.info("Album persistence complete"), pool);
 
-            LOG.info("Persisting artists");
             CompletableFuture<Void> artistPersistence = CompletableFuture
                     .allOf(artists.values().stream()
                             .distinct()
-                            .map(a -> CompletableFuture.supplyAsync(() -> {
-                                return artistService.save(a);
-                            }, pool).thenAcceptAsync(coverArtService::persistIfNeeded))
+                            .map(a -> CompletableFuture.runAsync(() -> coverArtService.persistIfNeeded(a), pool))
                             .toArray(CompletableFuture[]::new))
                     .thenRunAsync(() -> {
                         LOG.info("Marking non-present artists.");
-                        artistService.markNonPresent(statistics.getScanDate());
+                        artistService.markNonPresent(generation);
                     }, pool)
                     .thenRunAsync(() -> LOG.info("Artist persistence complete"), pool);
 
             LOG.info("Persisting media files");
             CompletableFuture<Void> mediaFilePersistence = CompletableFuture
                     .runAsync(() -> {
+                        LOG.info("Marking present media files.");
+                        int present = mediaFileService.markPresent(generation, statistics.getScanDate());
                         LOG.info("Marking non-present media files.");
-                        mediaFileService.markNonPresent(statistics.getScanDate());
+                        int nonPresent = mediaFileService.markNonPresent(generation);
+                        LOG.info("Marked {} media files present and {} non-present", present, nonPresent);
                     }, pool)
                     .thenRunAsync(() -> LOG.info("Media file persistence complete"), pool);
 
@@ -322,12 +590,12 @@ public class MediaScannerService {
                     }, pool);
 
             CompletableFuture.allOf(albumPersistence, artistPersistence, mediaFilePersistence, genrePersistence).join();
+            writeBuffer.finish();
             LOG.info("Completed media library scan.");
 
         } catch (Throwable x) {
             LOG.error("Failed to scan media library.", x);
         } finally {
-            mediaFileService.setMemoryCacheEnabled(true);
             if (settingsService.getClearFullScanSettingAfterScan()) {
                 settingsService.setClearFullScanSettingAfterScan(null);
                 settingsService.setFullScan(null);
@@ -345,6 +613,17 @@ public class MediaScannerService {
     private void scanFile(ForkJoinPool pool, MediaFile grandParent, MediaFile parent, MediaFile file, MusicFolder musicFolder, MediaLibraryStatistics statistics,
             Map<String, AtomicInteger> albumCount, Map<String, Artist> artists, Map<String, Album> albums,
             Set<Integer> albumsInDb, Genres genres, Map<Integer, CoverArt> coverArtCache, boolean fetchArtwork) {
+        scanFile(pool, grandParent, parent, file, musicFolder, statistics, albumCount, artists, albums, albumsInDb,
+                genres, coverArtCache, fetchArtwork, true);
+    }
+
+    /**
+     * @param recursive whether the subdirectories of a directory are scanned, or only the files directly in it
+     */
+    private void scanFile(ForkJoinPool pool, MediaFile grandParent, MediaFile parent, MediaFile file, MusicFolder musicFolder, MediaLibraryStatistics statistics,
+            Map<String, AtomicInteger> albumCount, Map<String, Artist> artists, Map<String, Album> albums,
+            Set<Integer> albumsInDb, Genres genres, Map<Integer, CoverArt> coverArtCache, boolean fetchArtwork,
+            boolean recursive) {
 
         if (!isMediaScanning()) {
             LOG.debug("Scan cancelled.");
@@ -354,23 +633,26 @@ public class MediaScannerService {
         scanCount.increment();
         if (scanCount.intValue() % 250 == 0) {
             broadcastScanStatus();
-            LOG.info("Scanned media library with {} entries.", scanCount.intValue());
+            LOG.info("Scanned media library with {} entries. Persisted {} rows ({} rows/s).", scanCount.intValue(),
+                    writeBuffer.getRowsWritten(), writeBuffer.getRowsPerSecond());
         }
 
         // Update the root folder if it has changed
         if (!musicFolder.getId().equals(file.getFolder().getId())) {
             file.setFolder(musicFolder);
-            mediaFileService.updateMediaFile(file);
+            writeBuffer.updateMediaFile(file);
         }
 
         indexManager.index(file, musicFolder);
 
         try {
             if (file.isDirectory()) {
+                // also refreshes which children the directory has
                 try (Stream<MediaFile> children = mediaFileService.getChildrenOf(file, true, true, false, false)
                         .parallelStream()) {
-                    children.forEach(child -> scanFile(pool, parent, file, child, musicFolder, statistics, albumCount,
-                            artists, albums, albumsInDb, genres, coverArtCache, fetchArtwork));
+                    children.filter(child -> recursive || !child.isDirectory())
+                            .forEach(child -> scanFile(pool, parent, file, child, musicFolder, statistics, albumCount,
+                                    artists, albums, albumsInDb, genres, coverArtCache, fetchArtwork));
                 }
             } else {
                 if (musicFolder.getType() == MusicFolder.Type.MEDIA) {
@@ -380,9 +662,10 @@ public class MediaScannerService {
                 statistics.incrementSongs(1);
             }
 
-            if (file.isPresent() && (file.getLastScanned() == null || file.getLastScanned().isBefore(statistics.getScanDate()))) {
+            if (file.isPresent()) {
+                // stored for all seen files with a single update once the scan is done
                 file.setLastScanned(statistics.getScanDate());
-                mediaFileService.updateMediaFile(file);
+                writeBuffer.markSeen(file);
             }
             updateGenres(file, genres);
 
@@ -491,16 +774,14 @@ public class MediaScannerService {
         if (firstEncounter.get()) {
             album.setFolder(musicFolder);
             albumCount.computeIfAbsent(artist, k -> new AtomicInteger(0)).incrementAndGet();
-            Album saved = albumService.save(album);
-            // ensure the map contains the persisted instance (with id)
-            albums.put(file.getAlbumName() + "|" + artist, saved);
-            indexManager.index(saved);
+            // indexed once written
+            writeBuffer.saveAlbum(album);
         }
 
         // Update the file's album artist, if necessary.
         if (!Objects.equals(album.getArtist(), file.getAlbumArtist())) {
             file.setAlbumArtist(album.getArtist());
-            mediaFileService.updateMediaFile(file);
+            writeBuffer.updateMediaFile(file);
         }
     }
 
@@ -546,10 +827,8 @@ public class MediaScannerService {
 
         if (firstEncounter.get()) {
             artist.setFolder(musicFolder);
-            Artist saved = artistService.save(artist);
-            // ensure the map contains the persisted instance (with id)
-            artists.put(file.getAlbumArtist(), saved);
-            indexManager.index(saved, musicFolder);
+            // indexed once written
+            writeBuffer.saveArtist(artist);
         }
 
         // directory structure is /artist/album/track
@@ -0,0 +1,218 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Snapshot of the music folders, with a trie of their path components to find the folder of a file.
+ *
+ * <p>A lookup walks the components of the file path down the trie, so it takes time proportional to the depth of the
+ * path, no matter how many folders there are. It compares the components in place and doesn't allocate for the usual
+ * normalized paths. Whether a folder exists is checked once, when the snapshot is built.
+ */
+final class MusicFolderTrie {
+
+    // paths are compared like Path.startsWith does on this platform
+    private static final boolean IGNORE_CASE = File.separatorChar == '\\';
+
+    private final List<MusicFolder> folders;
+    private final Set<Integer> existing = new HashSet<>();
+    private final Node root = new Node();
+    private final long created = System.nanoTime();
+
+    MusicFolderTrie(List<MusicFolder> folders, Predicate<MusicFolder> exists) {
+        this.folders = folders;
+        for (MusicFolder folder : folders) {
+            boolean folderExists = exists.test(folder);
+            if (folderExists) {
+                existing.add(folder.getId());
+            }
+            if (folder.getPath() != null) {
+                add(normalize(folder.getPath()), folder, folderExists);
+            }
+        }
+    }
+
+    /**
+     * @return all folders of the snapshot
+     */
+    List<MusicFolder> getFolders() {
+        return folders;
+    }
+
+    /**
+     * @return whether the folder existed when the snapshot was built
+     */
+    boolean exists(MusicFolder folder) {
+        return existing.contains(folder.getId());
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the snapshot was built
+     */
+    long getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the folder that contains the given file. If several folders contain it, the one with the longest path
+     * is returned.
+     *
+     * @param file               file to find the folder of
+     * @param includeDisabled    whether disabled folders are considered
+     * @param includeNonExisting whether folders that don't exist are considered
+     * @return the folder, or {@code null} if no folder contains the file
+     */
+    MusicFolder find(Path file, boolean includeDisabled, boolean includeNonExisting) {
+        if (file == null) {
+            return null;
+        }
+        String path = file.toString();
+        if (!isNormalized(path)) {
+            path = normalize(file);
+        }
+        MusicFolder found = null;
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.child(path, start, end);
+            if (node == null) {
+                return found;
+            }
+            for (int i = 0; i < node.folders.length; i++) {
+                if ((includeDisabled || node.folders[i].isEnabled()) && (includeNonExisting || node.exists[i])) {
+                    found = node.folders[i];
+                    break;
+                }
+            }
+            // a trailing slash is only left on roots
+            if (end >= path.length() - 1) {
+                return found;
+            }
+            start = end + 1;
+        }
+    }
+
+    private void add(String path, MusicFolder folder, boolean exists) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            Node child = node.child(path, start, end);
+            if (child == null) {
+                child = node.addChild(path.substring(start, end));
+            }
+            node = child;
+            if (end >= path.length() - 1) {
+                break;
+            }
+            start = end + 1;
+        }
+        node.addFolder(folder, exists);
+    }
+
+    /**
+     * Converts the path to the form the trie is built from: forward slashes, no redundant components and no trailing
+     * slash, except for the root.
+     */
+    static String normalize(Path path) {
+        String unix = Paths.get(FilenameUtils.separatorsToUnix(path.toString())).normalize().toString();
+        return FilenameUtils.separatorsToUnix(unix);
+    }
+
+    /**
+     * @return whether {@link #normalize(Path)} would return the path unchanged
+     */
+    static boolean isNormalized(String path) {
+        if (path.indexOf('\\') >= 0) {
+            return false;
+        }
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            int length = end - start;
+            // an empty component is only allowed for the leading slash
+            if ((length == 0 && start != 0 && !(end == path.length() && path.length() == 1))
+                    || (length == 1 && path.charAt(start) == '.')
+                    || (length == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.')) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static final class Node {
+        private static final Node[] NO_NODES = new Node[0];
+        private static final String[] NO_NAMES = new String[0];
+
+        private String[] names = NO_NAMES;
+        private Node[] children = NO_NODES;
+        private MusicFolder[] folders = new MusicFolder[0];
+        private boolean[] exists = new boolean[0];
+
+        private Node child(String path, int start, int end) {
+            int length = end - start;
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                if (name.length() == length && path.regionMatches(IGNORE_CASE, start, name, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node addChild(String name) {
+            Node child = new Node();
+            names = Arrays.copyOf(names, names.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            names[names.length - 1] = name;
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        private void addFolder(MusicFolder folder, boolean folderExists) {
+            folders = Arrays.copyOf(folders, folders.length + 1);
+            exists = Arrays.copyOf(exists, exists.length + 1);
+            folders[folders.length - 1] = folder;
+            exists[exists.length - 1] = folderExists;
+        }
+    }
+}
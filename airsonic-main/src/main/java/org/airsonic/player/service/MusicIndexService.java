@@ -29,6 +29,9 @@ import java.io.Serializable;
 import java.nio.file.Paths;
 import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -37,6 +40,10 @@ import static java.util.stream.Collectors.toList;
 /**
  * Provides services for grouping artists by index.
  *
+ * <p>Indexed artists are kept as immutable snapshots per set of music folders and index settings (locale, index
+ * expression, ignored articles and shortcuts), so sorting names with the collator only happens when a snapshot is
+ * built. Snapshots are dropped when a scan completes; a change of the index settings simply leads to other snapshots.
+ *
  * @author Sindre Mehus
  */
 @Service
@@ -45,17 +52,71 @@ public class MusicIndexService {
     private SettingsService settingsService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private ArtistService artistService;
+
+    private final Map<IndexKey, SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>>> fileSnapshots = new ConcurrentHashMap<>();
+    private final Map<IndexKey, SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>>> artistSnapshots = new ConcurrentHashMap<>();
+    // incremented by clearSnapshots, so snapshots built from data older than the clear are not kept
+    private final AtomicLong generation = new AtomicLong();
 
     /**
      * Returns a map from music indexes to sorted lists of artists that are direct children of the given music folders.
      *
      * @param folders The music folders.
      * @param refresh Whether to look for updates by checking the last-modified timestamp of the music folders.
-     * @return A map from music indexes to sets of artists that are direct children of this music file.
+     * @return A map from music indexes to sets of artists that are direct children of this music file. Not modifiable.
      */
     public SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> getIndexedArtists(List<MusicFolder> folders, boolean refresh) {
-        List<MusicIndex.SortableArtistWithMediaFiles> artists = createSortableArtists(folders, refresh);
-        return sortArtists(artists);
+        IndexKey key = createIndexKey(folders);
+        if (refresh) {
+            // the folders are checked for changes, so the snapshot is built again
+            fileSnapshots.remove(key);
+        }
+        return getSnapshot(fileSnapshots, key, () -> sortArtists(createSortableArtists(folders, refresh)));
+    }
+
+    /**
+     * Returns a map from music indexes to sorted lists of the present ID3 artists of the given music folders.
+     *
+     * @param folders The music folders.
+     * @return A map from music indexes to sorted artists. Not modifiable.
+     */
+    public SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> getIndexedId3Artists(List<MusicFolder> folders) {
+        return getSnapshot(artistSnapshots, createIndexKey(folders),
+            () -> sortArtists(createSortableArtists(artistService.getAlphabeticalArtists(folders))));
+    }
+
+    /**
+     * Drops all snapshots of indexed artists. Called when a scan completes.
+     */
+    public void clearSnapshots() {
+        generation.incrementAndGet();
+        fileSnapshots.clear();
+        artistSnapshots.clear();
+    }
+
+    private <T extends SortableArtist> SortedMap<MusicIndex, List<T>> getSnapshot(Map<IndexKey, SortedMap<MusicIndex, List<T>>> snapshots,
+            IndexKey key, Supplier<SortedMap<MusicIndex, List<T>>> builder) {
+        SortedMap<MusicIndex, List<T>> snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        long builtAt = generation.get();
+        SortedMap<MusicIndex, List<T>> built = builder.get();
+        built.replaceAll((index, artists) -> Collections.unmodifiableList(artists));
+        snapshot = Collections.unmodifiableSortedMap(built);
+        snapshots.put(key, snapshot);
+        if (generation.get() != builtAt) {
+            // a scan completed while building
+            snapshots.remove(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    private IndexKey createIndexKey(List<MusicFolder> folders) {
+        return new IndexKey(folders.stream().map(MusicFolder::getId).sorted().collect(toList()), settingsService.getLocale(),
+                settingsService.getIndexString(), settingsService.getIgnoredArticles(), settingsService.getShortcuts());
     }
 
     public SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> getIndexedArtists(List<Artist> artists) {
@@ -235,6 +296,13 @@ public class MusicIndexService {
         this.mediaFileService = mediaFileService;
     }
 
+    public void setArtistService(ArtistService artistService) {
+        this.artistService = artistService;
+    }
+
+    private record IndexKey(List<Integer> folderIds, Locale locale, String indexString, String ignoredArticles, String shortcuts) {
+    }
+
     private static class MusicIndexComparator implements Comparator<MusicIndex>, Serializable {
 
         private List<MusicIndex> indexes;
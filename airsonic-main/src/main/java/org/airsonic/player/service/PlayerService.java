@@ -20,6 +20,7 @@
 package org.airsonic.player.service;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
 import org.airsonic.player.command.PlayerSettingsCommand;
 import org.airsonic.player.domain.PlayQueue;
 import org.airsonic.player.domain.Player;
@@ -45,10 +46,14 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.ServletRequestUtils;
 
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceUtil;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -56,11 +61,20 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Provides services for maintaining the set of players.
  *
+ * <p>Players are resolved from an in-memory registry indexed by id and by username and IP address, so requests don't
+ * go to the database or wait for each other to find their player. The registry holds immutable snapshots; callers
+ * get copies they are free to modify. Changes to the username, IP address, type and last seen time of a player
+ * caused by requests are written to the database in the background.
+ *
  * @author Sindre Mehus
  * @see Player
  */
@@ -70,6 +84,8 @@ public class PlayerService {
 
     private static final String COOKIE_NAME = "player";
     private static final int COOKIE_EXPIRY = 365 * 24 * 3600; // One year
+    private static final Duration SEEN_WRITE_INTERVAL = Duration.ofSeconds(10);
+    private static final PersistenceUtil PERSISTENCE_UTIL = Persistence.getPersistenceUtil();
 
     private static final Logger LOG = LoggerFactory.getLogger(PlayerService.class);
 
@@ -81,11 +97,31 @@ public class PlayerService {
     private PlayerRepository playerRepository;
     @Autowired
     private AsyncWebSocketClient asyncWebSocketClient;
+    @Autowired
+    private TaskSchedulingService taskService;
+
+    // snapshots of all players by id. They are replaced, never modified.
+    private final Map<Integer, Player> players = new ConcurrentHashMap<>();
+    // ids of non-REST players by username and IP address, lowest first
+    private final Map<String, NavigableSet<Integer>> playersByUserAndIp = new ConcurrentHashMap<>();
+    // ids of players whose seen data has not been written yet
+    private final Set<Integer> unwrittenPlayers = ConcurrentHashMap.newKeySet();
+    // guards creating players, so concurrent first requests of a client don't create two
+    private final Striped<Lock> createLocks = Striped.lock(64);
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
 
     @EventListener
     @Transactional
     public void onApplicationEvent(ApplicationReadyEvent event) {
         deleteOldPlayers(60);
+        taskService.scheduleFixedDelayTask("player-seen-write", () -> writeSeenPlayers(),
+                Instant.now().plus(SEEN_WRITE_INTERVAL), SEEN_WRITE_INTERVAL, true);
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        writeSeenPlayers();
     }
 
     private Map<Integer, PlayQueue> playlists = Collections.synchronizedMap(new HashMap<Integer, PlayQueue>());
@@ -110,9 +146,17 @@ public class PlayerService {
      */
     private void deleteOldPlayers(int days) {
         LOG.info("Deleting old players");
+        // players seen since the last write are not old
+        writeSeenPlayers();
         playerRepository.deleteAllByNameIsNullAndClientIdIsNullAndLastSeenIsNull();
         Instant lastSeen = Instant.now().minus(days, ChronoUnit.DAYS);
         playerRepository.deleteAllByNameIsNullAndClientIdIsNullAndLastSeenBefore(lastSeen);
+        // reloaded on next use
+        synchronized (loadLock) {
+            loaded = false;
+            players.clear();
+            playersByUserAndIp.clear();
+        }
         LOG.info("Complete Deleting old players");
     }
 
@@ -125,7 +169,7 @@ public class PlayerService {
         return getPlayer(request, response, null, username, remoteControlEnabled, isStreamRequest);
     }
 
-    public synchronized Player getPlayer(HttpServletRequest request, HttpServletResponse response,
+    public Player getPlayer(HttpServletRequest request, HttpServletResponse response,
             Integer playerId, String username, boolean remoteControlEnabled, boolean isStreamRequest) throws Exception {
         return getPlayer(request, response, playerId, username, request.getHeader("user-agent"), remoteControlEnabled, isStreamRequest, false);
     }
@@ -144,7 +188,7 @@ public class PlayerService {
      * @param isWebSocketRequest   Whether the HTTP request is a request for a WebSocket.
      * @return The player associated with the given HTTP request. Never <code>null</code>.
      */
-    public synchronized Player getPlayer(HttpServletRequest request, HttpServletResponse response,
+    public Player getPlayer(HttpServletRequest request, HttpServletResponse response,
             Integer playerId, String username, String userAgent, boolean remoteControlEnabled, boolean isStreamRequest, boolean isWebSocketRequest) throws Exception {
 
         Player player = getPlayerById(playerId);
@@ -178,13 +222,25 @@ public class PlayerService {
         }
 
         // If no player was found, create it.
+        boolean created = false;
         if (player == null) {
-            player = new Player();
-            player.setLastSeen(Instant.now());
-            populatePlayer(player, username, request.getRemoteAddr(), userAgent, isStreamRequest);
-            player = createPlayer(player);
-        } else if (populatePlayer(player, username, request.getRemoteAddr(), userAgent, isStreamRequest)) {
-            updatePlayer(player);
+            Lock lock = createLocks.get(userAndIpKey(username, request.getRemoteAddr()));
+            lock.lock();
+            try {
+                player = getNonRestPlayerByIpAddressAndUsername(request.getRemoteAddr(), username);
+                if (player == null) {
+                    player = new Player();
+                    player.setLastSeen(Instant.now());
+                    populatePlayer(player, username, request.getRemoteAddr(), userAgent, isStreamRequest);
+                    player = createPlayer(player);
+                    created = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!created) {
+            player = updateSeen(player.getId(), username, request.getRemoteAddr(), userAgent, isStreamRequest, player);
         }
 
         // Set cookie in response.
@@ -229,6 +285,155 @@ public class PlayerService {
         return isUpdate;
     }
 
+    /**
+     * Applies the data of a request to the registered player. The change is written to the database later. Players
+     * that aren't registered are updated right away.
+     *
+     * @return copy of the registered player, or {@code fallback} if it is not registered
+     */
+    private Player updateSeen(int id, String username, String remoteAddress, String userAgent, boolean isStreamRequest, Player fallback) {
+        Player updated = players.computeIfPresent(id, (k, current) -> {
+            Player candidate = copyOf(current);
+            if (!populatePlayer(candidate, username, remoteAddress, userAgent, isStreamRequest)) {
+                return current;
+            }
+            unindex(current);
+            index(candidate);
+            unwrittenPlayers.add(k);
+            return candidate;
+        });
+        if (updated == null) {
+            if (populatePlayer(fallback, username, remoteAddress, userAgent, isStreamRequest)) {
+                updatePlayer(fallback);
+            }
+            return fallback;
+        }
+        Player player = copyOf(updated);
+        addPlaylist(player);
+        return player;
+    }
+
+    /**
+     * Writes the seen data of players changed by requests to the database.
+     */
+    void writeSeenPlayers() {
+        for (Integer id : List.copyOf(unwrittenPlayers)) {
+            unwrittenPlayers.remove(id);
+            Player player = players.get(id);
+            if (player == null) {
+                continue;
+            }
+            try {
+                playerRepository.updateSeen(id, player.getUsername(), player.getIpAddress(), player.getType(), player.getLastSeen());
+            } catch (Exception e) {
+                LOG.warn("Could not write player {}", id, e);
+                continue;
+            }
+            if (player.getUsername() != null) {
+                asyncWebSocketClient.sendToUser(player.getUsername(), "/queue/players/updated",
+                        ImmutableMap.of("id", player.getId(), "description", player.getShortDescription(), "tech", player.getTechnology()));
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (!loaded) {
+                // players registered since are newer than the loaded ones
+                playerRepository.findAll().forEach(p -> {
+                    if (players.putIfAbsent(p.getId(), copyOf(p)) == null) {
+                        index(p);
+                    }
+                });
+                loaded = true;
+            }
+        }
+    }
+
+    private void register(Player player) {
+        if (player.getId() == null) {
+            return;
+        }
+        Player snapshot = copyOf(player);
+        players.compute(player.getId(), (k, current) -> {
+            if (current != null) {
+                unindex(current);
+            }
+            index(snapshot);
+            return snapshot;
+        });
+    }
+
+    private void unregister(int id) {
+        unwrittenPlayers.remove(id);
+        players.computeIfPresent(id, (k, current) -> {
+            unindex(current);
+            return null;
+        });
+    }
+
+    private void index(Player player) {
+        if (player.getClientId() == null && player.getIpAddress() != null) {
+            playersByUserAndIp.computeIfAbsent(userAndIpKey(player.getUsername(), player.getIpAddress()),
+                k -> new ConcurrentSkipListSet<>()).add(player.getId());
+        }
+    }
+
+    private void unindex(Player player) {
+        if (player.getClientId() == null && player.getIpAddress() != null) {
+            playersByUserAndIp.computeIfPresent(userAndIpKey(player.getUsername(), player.getIpAddress()), (k, ids) -> {
+                ids.remove(player.getId());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private static String userAndIpKey(String username, String ipAddress) {
+        return username + "\u0000" + ipAddress;
+    }
+
+    private static Player copyOf(Player player) {
+        Player copy = new Player();
+        copy.setId(player.getId());
+        copy.setName(player.getName());
+        copy.setTechnology(player.getTechnology());
+        copy.setClientId(player.getClientId());
+        copy.setType(player.getType());
+        copy.setUsername(player.getUsername());
+        copy.setIpAddress(player.getIpAddress());
+        copy.setDynamicIp(player.getDynamicIp());
+        copy.setAutoControlEnabled(player.getAutoControlEnabled());
+        copy.setM3uBomEnabled(player.getM3uBomEnabled());
+        copy.setLastSeen(player.getLastSeen());
+        copy.setTranscodeScheme(player.getTranscodeScheme());
+        // a collection that isn't loaded can't be copied, and is left alone when the copy is saved
+        copy.setTranscodings(PERSISTENCE_UTIL.isLoaded(player, "transcodings")
+                ? new ArrayList<>(player.getTranscodings()) : player.getTranscodings());
+        return copy;
+    }
+
+    /**
+     * Saves the active transcodings of the given players. Only the transcodings of the registered players are
+     * replaced, so seen data that has not been written yet is kept.
+     *
+     * @param changed The players whose transcodings changed.
+     */
+    @Transactional
+    public void saveTranscodings(List<Player> changed) {
+        playerRepository.saveAll(changed);
+        for (Player player : changed) {
+            List<Transcoding> transcodings = new ArrayList<>(player.getTranscodings());
+            players.computeIfPresent(player.getId(), (k, current) -> {
+                Player candidate = copyOf(current);
+                candidate.setTranscodings(transcodings);
+                return candidate;
+            });
+        }
+    }
+
     /**
      * Updates the given player.
      *
@@ -236,7 +441,9 @@ public class PlayerService {
      */
     @Transactional
     public void updatePlayer(Player player) {
+        unwrittenPlayers.remove(player.getId());
         playerRepository.save(player);
+        register(player);
         if (player.getUsername() != null) {
             asyncWebSocketClient.sendToUser(player.getUsername(), "/queue/players/updated",
                     ImmutableMap.of("id", player.getId(), "description", player.getShortDescription(), "tech", player.getTechnology()));
@@ -252,11 +459,15 @@ public class PlayerService {
     public Player getPlayerById(Integer id) {
         if (id == null) {
             return null;
-        } else {
-            Optional<Player> optPlayer = playerRepository.findById(id);
-            optPlayer.ifPresent(p -> addPlaylist(p));
-            return optPlayer.orElse(null);
         }
+        ensureLoaded();
+        Player snapshot = players.get(id);
+        if (snapshot == null) {
+            return null;
+        }
+        Player player = copyOf(snapshot);
+        addPlaylist(player);
+        return player;
     }
 
     /**
@@ -281,15 +492,21 @@ public class PlayerService {
         if (ipAddress == null) {
             return null;
         }
-        for (Player player : getAllPlayers()) {
-            boolean isRest = player.getClientId() != null;
-            boolean ipMatches = ipAddress.equals(player.getIpAddress());
-            boolean userMatches = username == null || username.equals(player.getUsername());
-            if (!isRest && ipMatches && userMatches) {
-                return player;
+        ensureLoaded();
+        Integer id = null;
+        if (username != null) {
+            NavigableSet<Integer> ids = playersByUserAndIp.get(userAndIpKey(username, ipAddress));
+            id = ids == null || ids.isEmpty() ? null : ids.first();
+        } else {
+            for (Player player : players.values()) {
+                boolean isRest = player.getClientId() != null;
+                boolean ipMatches = ipAddress.equals(player.getIpAddress());
+                if (!isRest && ipMatches && (id == null || player.getId() < id)) {
+                    id = player.getId();
+                }
             }
         }
-        return null;
+        return getPlayerById(id);
     }
 
     /**
@@ -371,6 +588,7 @@ public class PlayerService {
     @Transactional
     public void removePlayerById(int id) {
         playerRepository.findById(id).ifPresentOrElse(player -> {
+            unregister(id);
             playlists.remove(id);
             playerRepository.delete(player);
             asyncWebSocketClient.send("/topic/players/deleted", id);
@@ -447,6 +665,7 @@ public class PlayerService {
 
         // Add player to playlist map.
         addPlaylist(saved);
+        register(saved);
 
         if (saved != null && saved.getUsername() != null) {
             asyncWebSocketClient.sendToUser(saved.getUsername(), "/queue/players/created",
@@ -492,6 +711,8 @@ public class PlayerService {
             player.setTechnology(PlayerTechnology.valueOf(command.getTechnologyName()));
             player.setTranscodings(transcodingRepository.findAllById(command.getActiveTranscodingIds()));
             playerRepository.save(player);
+            unwrittenPlayers.remove(player.getId());
+            register(player);
             addPlaylist(player);
             return player;
         }).orElse(null);
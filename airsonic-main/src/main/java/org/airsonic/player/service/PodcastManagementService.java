@@ -60,7 +60,7 @@ public class PodcastManagementService {
 
     private void init() {
         try {
-            // Clean up partial downloads and reset status
+            // Reset interrupted downloads and channel status
             podcastPersistenceService.cleanDownloadingEpisodes();
             List<Integer> resetedChannelIds = podcastPersistenceService.resetChannelStatus(PodcastStatus.DOWNLOADING);
             for (Integer channelId: resetedChannelIds) {
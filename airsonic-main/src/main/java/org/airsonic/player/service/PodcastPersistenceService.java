@@ -57,6 +57,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -88,6 +89,9 @@ public class PodcastPersistenceService {
 
     private Predicate<PodcastEpisode> filterAllowed;
 
+    // episodes deleted while being downloaded, checked by the download loop
+    private final Set<Integer> cancelledDownloads = ConcurrentHashMap.newKeySet();
+
     public PodcastPersistenceService(
         SecurityService securityService,
         MediaFileService mediaFileService,
@@ -111,7 +115,7 @@ public class PodcastPersistenceService {
 
 
     /**
-     * clean up partial downloads and reset channel status
+     * reset interrupted downloads, so that they are resumed on the next refresh
      */
     public void cleanDownloadingEpisodes() {
         podcastChannelRepository.findAll()
@@ -119,8 +123,9 @@ public class PodcastPersistenceService {
             .flatMap(c -> podcastEpisodeRepository.findByChannelAndStatus(c, PodcastStatus.DOWNLOADING).stream())
             .filter(filterAllowed)
             .forEach(e -> {
-                deleteEpisode(e, false);
-                LOG.info("Deleted Podcast episode '{}' since download was interrupted.", e.getTitle());
+                e.setStatus(PodcastStatus.NEW);
+                podcastEpisodeRepository.save(e);
+                LOG.info("Reset Podcast episode '{}' since download was interrupted.", e.getTitle());
             });
 
     }
@@ -206,6 +211,24 @@ public class PodcastPersistenceService {
         );
     }
 
+    /**
+     * set validators of the last fetched RSS document to channel and save
+     *
+     * @param channel channel to set validators
+     * @param etag ETag header of the RSS document, may be null
+     * @param lastModified Last-Modified header of the RSS document, may be null
+     */
+    @Transactional
+    public void setChannelValidators(PodcastChannel channel, @Nullable String etag, @Nullable String lastModified) {
+        podcastChannelRepository.findById(channel.getId()).ifPresent(
+            c -> {
+                c.setEtag(etag);
+                c.setLastModified(lastModified);
+                podcastChannelRepository.save(c);
+            }
+        );
+    }
+
     /**
      * set completed status to channel and save
      *
@@ -494,6 +517,7 @@ public class PodcastPersistenceService {
             }
             episode.setStatus(PodcastStatus.DOWNLOADING);
             podcastEpisodeRepository.save(episode);
+            cancelledDownloads.remove(episode.getId());
             return episode;
         }).orElseGet(() -> {
             LOG.info("Podcast episode with id {} not found", episodeId);
@@ -502,10 +526,15 @@ public class PodcastPersistenceService {
     }
 
 
-    public boolean isEpisodeDeleted(Integer episodeId) {
-        return podcastEpisodeRepository.findById(episodeId)
-            .filter(ep -> ep.getStatus() != PodcastStatus.DELETED)
-            .isEmpty();
+    /**
+     * Returns whether the episode was deleted since its download started. Only checks memory, so it can be called
+     * for every chunk written.
+     *
+     * @param episodeId episode id
+     * @return true if the download should stop
+     */
+    public boolean isDownloadCancelled(Integer episodeId) {
+        return cancelledDownloads.contains(episodeId);
     }
 
     /**
@@ -568,6 +597,9 @@ public class PodcastPersistenceService {
             podcastEpisodeRepository.findByChannel(channel).parallelStream()
                 .filter(filterAllowed)
                 .forEach(episode -> {
+                    if (episode.getStatus() == PodcastStatus.DOWNLOADING) {
+                        cancelledDownloads.add(episode.getId());
+                    }
                     MediaFile mediaFile = episode.getMediaFile();
                     if (mediaFile != null) {
                         FileUtil.delete(mediaFile.getFullPath());
@@ -612,6 +644,10 @@ public class PodcastPersistenceService {
             return;
         }
 
+        if (episode.getStatus() == PodcastStatus.DOWNLOADING) {
+            cancelledDownloads.add(episode.getId());
+        }
+
         // Delete file and update mediaFile
         MediaFile file = episode.getMediaFile();
         if (file != null) {
@@ -619,6 +655,19 @@ public class PodcastPersistenceService {
             mediaFileService.delete(file);
         }
 
+        // Delete what a failed download left to resume from
+        MediaFile channelMediaFile = episode.getChannel() == null ? null : episode.getChannel().getMediaFile();
+        if (channelMediaFile != null) {
+            Path channelDir = channelMediaFile.getFullPath();
+            for (Path partFile : List.of(PodcastUtil.getPartFile(channelDir, episode.getId()),
+                    PodcastUtil.getSegmentedPartFile(channelDir, episode.getId()),
+                    PodcastUtil.getPartValidatorFile(channelDir, episode.getId()))) {
+                if (Files.exists(partFile)) {
+                    FileUtil.delete(partFile);
+                }
+            }
+        }
+
         if (logicalDelete) {
             episode.setStatus(PodcastStatus.DELETED);
             episode.setErrorMessage(null);
@@ -641,6 +690,19 @@ public class PodcastPersistenceService {
                 .orElse(null);
     }
 
+    /**
+     * Returns the GUIDs of all episodes of the channel, to check new episodes against in one go.
+     *
+     * @param channel The Podcast channel.
+     * @return The GUIDs, modifiable.
+     */
+    public Set<String> getEpisodeGuids(PodcastChannel channel) {
+        return podcastEpisodeRepository.findByChannelAndEpisodeGuidIsNotNull(channel).stream()
+                .filter(filterAllowed)
+                .map(PodcastEpisode::getEpisodeGuid)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
     public PodcastEpisode getEpisodeByTitleAndDate(PodcastChannel channel, String title, Instant date) {
         return podcastEpisodeRepository.findByChannelAndTitleAndPublishDate(channel, title, date)
                 .filter(filterAllowed)
@@ -22,25 +22,28 @@ package org.airsonic.player.service;
 
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.MediaFileRating;
 import org.airsonic.player.domain.entity.UserRating;
+import org.airsonic.player.repository.MediaFileRatingRepository;
 import org.airsonic.player.repository.MediaFileRepository;
+import org.airsonic.player.repository.OffsetBasedPageRequest;
 import org.airsonic.player.repository.UserRatingRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
-import static java.util.stream.Collectors.groupingBy;
-
 /**
  * Provides services for user ratings.
  *
@@ -57,6 +60,8 @@ public class RatingService {
     private UserRatingRepository userRatingRepository;
     @Autowired
     private MediaFileRepository mediaFileRepository;
+    @Autowired
+    private MediaFileRatingRepository mediaFileRatingRepository;
 
     /**
      * Returns the highest rated albums.
@@ -69,24 +74,45 @@ public class RatingService {
     @Transactional(readOnly = true)
     public List<MediaFile> getHighestRatedAlbums(int offset, int count, List<MusicFolder> musicFolders) {
 
-        if (count < 1 || musicFolders.isEmpty()) {
+        List<MusicFolder> enabledFolders = musicFolders.stream().filter(MusicFolder::isEnabled).collect(Collectors.toList());
+        if (count < 1 || enabledFolders.isEmpty()) {
             return Collections.emptyList();
         }
-        Map<Integer, Double> averagePerMediaFileId = userRatingRepository.findAll().stream().collect(groupingBy(UserRating::getMediaFileId, Collectors.averagingDouble(UserRating::getRating)));
-
-        List<MediaFile> sortedAlbums = averagePerMediaFileId.entrySet().stream().map(entry -> {
-            return mediaFileRepository.findByIdAndFolderInAndMediaTypeAndPresentTrue(entry.getKey(), musicFolders, MediaFile.MediaType.ALBUM).map(file -> {
-                file.setAverageRating(entry.getValue());
-                return file;
-            }).orElse(null);
-        }).filter(file -> Objects.nonNull(file) && securityService.isReadAllowed(file, true))
-            .sorted(Comparator.comparing(MediaFile::getAverageRating).reversed())
-            .collect(Collectors.toList());
-
-        if (offset >= sortedAlbums.size()) {
-            return Collections.emptyList();
+
+        // albums missing on disk are only known after loading them, so the offset counts readable albums and pages
+        // are fetched until enough of them are found
+        List<MediaFile> albums = new ArrayList<>();
+        int skipped = 0;
+        long pageStart = 0;
+        int pageSize = (int) Math.min(Integer.MAX_VALUE, (long) offset + count);
+        while (albums.size() < count) {
+            List<MediaFile> page = mediaFileRepository.findHighestRated(enabledFolders, MediaFile.MediaType.ALBUM,
+                    new OffsetBasedPageRequest(pageStart, pageSize, Sort.unsorted()));
+            for (MediaFile album : page) {
+                if (albums.size() == count) {
+                    break;
+                }
+                if (!securityService.isReadAllowed(album, true)) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    albums.add(album);
+                }
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            pageStart += pageSize;
+            pageSize = count;
         }
-        return sortedAlbums.subList(offset, Math.min(offset + count, sortedAlbums.size()));
+        if (albums.isEmpty()) {
+            return albums;
+        }
+        Map<Integer, Double> averageRatings = getAverageRatings(albums.stream().map(MediaFile::getId).collect(Collectors.toList()));
+        albums.forEach(album -> album.setAverageRating(averageRatings.get(album.getId())));
+        return albums;
     }
 
     /**
@@ -101,18 +127,50 @@ public class RatingService {
         if (username == null || mediaFile == null) {
             return;
         }
+        // locked, so the delta of a concurrent change of the same rating is taken from this one
+        Integer oldRating = userRatingRepository.findForUpdateByUsernameAndMediaFileId(username, mediaFile.getId()).map(UserRating::getRating).orElse(null);
         if (rating == null) {
             userRatingRepository.deleteByUsernameAndMediaFileId(username, mediaFile.getId());
+            if (oldRating != null) {
+                addRatings(mediaFile.getId(), -oldRating, -1);
+            }
         } else {
             UserRating userRating = new UserRating(username, mediaFile.getId(), rating);
             try {
                 userRatingRepository.save(userRating);
             } catch (Exception e) {
                 LOG.error("Failed to save rating for user {} and media file {}", username, mediaFile.getId(), e);
+                return;
+            }
+            if (oldRating == null) {
+                addRatings(mediaFile.getId(), rating, 1);
+            } else if (!oldRating.equals(rating)) {
+                addRatings(mediaFile.getId(), rating - oldRating, 0);
             }
         }
     }
 
+    /**
+     * Adds to the rating aggregate of a media file, creating it for its first rating and removing it with its last.
+     */
+    private void addRatings(int mediaFileId, int sum, int count) {
+        int updated = mediaFileRatingRepository.addRatings(mediaFileId, sum, count);
+        if (updated == 0 && count > 0) {
+            // first rating of the media file, which a concurrent first rating may be adding as well
+            try {
+                mediaFileRatingRepository.insertUnrated(mediaFileId);
+            } catch (DataIntegrityViolationException e) {
+                LOG.debug("Ratings of media file {} were added concurrently", mediaFileId);
+            }
+            updated = mediaFileRatingRepository.addRatings(mediaFileId, sum, count);
+        }
+        if (updated == 0) {
+            LOG.warn("Could not add rating {} to media file {}", sum, mediaFileId);
+        } else if (count < 0) {
+            mediaFileRatingRepository.deleteUnrated();
+        }
+    }
+
     /**
      * Returns the average rating for the given music file.
      *
@@ -124,7 +182,40 @@ public class RatingService {
         if (mediaFile == null) {
             return null;
         }
-        return userRatingRepository.getAverageRatingByMediaFileId(mediaFile.getId());
+        return mediaFileRatingRepository.findById(mediaFile.getId()).map(MediaFileRating::getAverageRating).orElse(null);
+    }
+
+    /**
+     * Returns the average ratings of the given music files, with one query.
+     *
+     * @param mediaFileIds ids of the music files.
+     * @return The average ratings by music file id. Music files without ratings are left out.
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, Double> getAverageRatings(Collection<Integer> mediaFileIds) {
+        if (mediaFileIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return mediaFileRatingRepository.findAllById(mediaFileIds).stream()
+                .filter(r -> r.getRatingCount() > 0)
+                .collect(Collectors.toMap(MediaFileRating::getMediaFileId, MediaFileRating::getAverageRating));
+    }
+
+    /**
+     * Returns the ratings of the given user for the given music files, with one query.
+     *
+     * @param username     The user name.
+     * @param mediaFileIds ids of the music files.
+     * @return The ratings by music file id. Music files the user didn't rate are left out.
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, Integer> getRatingsForUser(String username, Collection<Integer> mediaFileIds) {
+        if (username == null || mediaFileIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return userRatingRepository.findByUsernameAndMediaFileIdIn(username, mediaFileIds).stream()
+                .filter(r -> r.getRating() != null)
+                .collect(Collectors.toMap(UserRating::getMediaFileId, UserRating::getRating));
     }
 
     /**
@@ -30,10 +30,12 @@ import org.airsonic.player.domain.User;
 import org.airsonic.player.domain.User.Role;
 import org.airsonic.player.domain.UserCredential;
 import org.airsonic.player.domain.UserCredential.App;
+import org.airsonic.player.repository.MediaFileRatingRepository;
 import org.airsonic.player.repository.UserCredentialRepository;
 import org.airsonic.player.repository.UserRepository;
 import org.airsonic.player.security.PasswordDecoder;
 import org.airsonic.player.security.PasswordEncoderConfig;
+import org.airsonic.player.service.cache.AuthenticationCache;
 import org.airsonic.player.service.cache.UserCache;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -103,7 +105,11 @@ public class SecurityService implements UserDetailsService {
     @Autowired
     private UserCredentialRepository userCredentialRepository;
     @Autowired
+    private MediaFileRatingRepository mediaFileRatingRepository;
+    @Autowired
     private UserCache userCache;
+    @Autowired
+    private AuthenticationCache authenticationCache;
 
     /**
      * Locates the user based on the username.
@@ -197,6 +203,7 @@ public class SecurityService implements UserDetailsService {
             LOG.warn("Can't update credentials for a non-existent user {}", username);
             return false;
         }
+        authenticationCache.invalidate(username);
 
         List<Boolean> failures = new ArrayList<>();
         user.ifPresent(u -> {
@@ -245,6 +252,7 @@ public class SecurityService implements UserDetailsService {
             return;
         }
         userCache.removeUser(username);
+        authenticationCache.invalidate(username);
         userRepository.findByUsername(username).ifPresentOrElse(u -> {
             u.setLdapAuthenticated(false);
             userRepository.save(u);
@@ -313,6 +321,7 @@ public class SecurityService implements UserDetailsService {
         }
         try {
             userCredentialRepository.delete(creds);
+            authenticationCache.invalidate(creds.getUser().getUsername());
         } catch (Exception e) {
             LOG.info("Can't delete a credential", e);
             return false;
@@ -544,6 +553,10 @@ public class SecurityService implements UserDetailsService {
             throw new SelfDeletionException();
         }
         userCache.removeUser(username);
+        authenticationCache.invalidate(username);
+        // the user's ratings are deleted by cascade, so take them out of the rating aggregates first
+        mediaFileRatingRepository.removeRatingsOfUser(username);
+        mediaFileRatingRepository.deleteUnrated();
         userRepository.deleteById(username);
         LOG.info("User {} deleted by {}", username, currentUsername);
     }
@@ -694,6 +707,7 @@ public class SecurityService implements UserDetailsService {
                 createAirsonicCredentialToUser(user, command.getPassword(), "Created by admin");
         }
         userCache.removeUser(command.getUsername());
+        authenticationCache.invalidate(command.getUsername());
         return user;
     }
 
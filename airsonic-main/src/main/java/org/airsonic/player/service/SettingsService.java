@@ -89,6 +89,7 @@ public class SettingsService {
     private static final String KEY_CLEAR_FULL_SCAN_SETTING_AFTER_SCAN = "ClearFullScanSettingAfterScan";
     private static final String KEY_TRANSCODE_ESTIMATE_TIME_PADDING = "TranscodeEstimateTimePadding";
     private static final String KEY_TRANSCODE_ESTIMATE_BYTE_PADDING = "TranscodeEstimateBytePadding";
+    private static final String KEY_TRANSCODE_PRE_ROLL = "TranscodePreRoll";
     private static final String KEY_DB_BACKUP_INTERVAL = "DbBackupUpdateInterval";
     private static final String KEY_DB_BACKUP_RETENTION_COUNT = "DbBackupRetentionCount";
     private static final String KEY_PODCAST_UPDATE_INTERVAL = "PodcastUpdateInterval";
@@ -196,6 +197,7 @@ public class SettingsService {
     private static final boolean DEFAULT_CLEAR_FULL_SCAN_SETTING_AFTER_SCAN = false;
     private static final long DEFAULT_TRANSCODE_ESTIMATE_TIME_PADDING = 2000;
     private static final long DEFAULT_TRANSCODE_ESTIMATE_BYTE_PADDING = 0;
+    private static final long DEFAULT_TRANSCODE_PRE_ROLL = 10;
     private static final int DEFAULT_DB_BACKUP_INTERVAL = -1;
     private static final int DEFAULT_DB_BACKUP_RETENTION_COUNT = 2;
     private static final int DEFAULT_PODCAST_UPDATE_INTERVAL = 24;
@@ -814,6 +816,17 @@ public class SettingsService {
         setLong(KEY_TRANSCODE_ESTIMATE_BYTE_PADDING, bytes);
     };
 
+    /**
+     * Returns how many seconds before the end of a song in a play queue the stream of the next song is opened.
+     */
+    public long getTranscodePreRoll() {
+        return getLong(KEY_TRANSCODE_PRE_ROLL, DEFAULT_TRANSCODE_PRE_ROLL);
+    }
+
+    public void setTranscodePreRoll(Long seconds) {
+        setLong(KEY_TRANSCODE_PRE_ROLL, seconds);
+    }
+
     public int getDbBackupInterval() {
         return getInt(KEY_DB_BACKUP_INTERVAL, DEFAULT_DB_BACKUP_INTERVAL);
     }
@@ -26,6 +26,11 @@ import org.airsonic.player.domain.*;
 import org.airsonic.player.io.TranscodeInputStream;
 import org.airsonic.player.repository.PlayerRepository;
 import org.airsonic.player.repository.TranscodingRepository;
+import org.airsonic.player.service.transcoding.TranscodeCache;
+import org.airsonic.player.service.transcoding.TranscodeMultiplexer;
+import org.airsonic.player.service.transcoding.TranscodeRejectedException;
+import org.airsonic.player.service.transcoding.TranscodeScheduler;
+import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
 import org.apache.commons.lang3.StringUtils;
@@ -40,6 +45,7 @@ import java.awt.Dimension;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -72,9 +78,17 @@ public class TranscodingService {
     @Autowired
     private PlayerRepository playerRepository;;
     @Autowired
+    private PlayerService playerService;
+    @Autowired
     private TranscodingRepository transcodingRepository;
     @Autowired
     private PersonalSettingsService personalSettingsService;
+    @Autowired
+    private TranscodeMultiplexer transcodeMultiplexer;
+    @Autowired
+    private TranscodeCache transcodeCache;
+    @Autowired
+    private TranscodeScheduler transcodeScheduler;
 
     /**
      * Returns all transcodings.
@@ -116,7 +130,7 @@ public class TranscodingService {
     @Transactional
     public void setTranscodingsForPlayer(Player player, List<Transcoding> transcodings) {
         player.setTranscodings(transcodings);
-        playerRepository.save(player);
+        playerService.saveTranscodings(List.of(player));
     }
 
     /**
@@ -131,7 +145,7 @@ public class TranscodingService {
         if (transcoding.isDefaultActive()) {
             List<Player> players = playerRepository.findAll();
             players.forEach(player -> player.getTranscodings().add(saved));
-            playerRepository.saveAll(players);
+            playerService.saveTranscodings(players);
         }
     }
 
@@ -148,7 +162,7 @@ public class TranscodingService {
             players.forEach(player -> {
                 player.getTranscodings().remove(transcoding);
             });
-            playerRepository.saveAll(players);
+            playerService.saveTranscodings(players);
             transcodingRepository.delete(transcoding);
         }, () -> {
                 LOG.warn("Transcoding with id {} not found", id);
@@ -242,6 +256,7 @@ public class TranscodingService {
                                     VideoTranscodingSettings videoTranscodingSettings) {
 
         Parameters parameters = new Parameters(mediaFile, videoTranscodingSettings);
+        parameters.setUsername(player == null ? null : player.getUsername());
         String suffix = mediaFile.getFormat();
 
         TranscodeScheme transcodeScheme = getTranscodeScheme(player);
@@ -270,8 +285,11 @@ public class TranscodingService {
         }
 
         parameters.setMaxBitRate(maxBitRate);
-        parameters.setExpectedLength(getExpectedLength(parameters));
-        parameters.setRangeAllowed(isRangeAllowed(parameters));
+
+        // The exact length of cached output is known, so any range can be served
+        Long cachedLength = transcodeCache.getLength(parameters);
+        parameters.setExpectedLength(cachedLength != null ? cachedLength : getExpectedLength(parameters));
+        parameters.setRangeAllowed(cachedLength != null || isRangeAllowed(parameters));
         return parameters;
     }
 
@@ -286,19 +304,49 @@ public class TranscodingService {
      *
      * If neither transcoding nor downsampling is needed the file might still be split in case of indexed tracks.
      *
-     * Otherwise, a normal input stream to the original file is returned.
+     * Otherwise, a normal input stream to the original file is returned. The original file is also returned if the
+     * transcoder fails to start, but not if it can't be started because too many transcodes are running.
      *
      * @param parameters As returned by {@link #getParameters}.
      * @return A possible transcoded or downsampled input stream.
+     * @throws TranscodeRejectedException If the transcode waited too long to be started.
      * @throws IOException If an I/O error occurs.
      */
     public InputStream getTranscodedInputStream(Parameters parameters) throws IOException {
+        return getTranscodedInputStream(parameters, false);
+    }
+
+    /**
+     * Like {@link #getTranscodedInputStream(Parameters)}, but a transcoding is shared with other callers asking for
+     * the same media file with the same parameters, so they are all served by a single transcoder process.
+     *
+     * @param parameters As returned by {@link #getParameters}.
+     * @return A possible transcoded or downsampled input stream.
+     * @throws TranscodeRejectedException If the transcode waited too long to be started.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream getSharedTranscodedInputStream(Parameters parameters) throws IOException {
+        return getTranscodedInputStream(parameters, true);
+    }
+
+    private InputStream getTranscodedInputStream(Parameters parameters, boolean shared) throws IOException {
         try {
 
             if (parameters.getTranscoding() != null) {
-                return createTranscodedInputStream(parameters);
+                InputStream cached = transcodeCache.open(parameters);
+                if (cached != null) {
+                    return cached;
+                }
+                TranscodeMultiplexer.Transcoder transcoder = () -> {
+                    TranscodeInputStream in = createTranscodedInputStream(parameters);
+                    return transcodeCache.tee(parameters, in, in.onExit());
+                };
+                return shared ? transcodeMultiplexer.open(parameters, transcoder) : transcoder.start();
             }
 
+        } catch (TranscodeRejectedException | InterruptedIOException x) {
+            // the transcoder is fine but the server is busy, the client must not get the original file instead
+            throw x;
         } catch (IOException x) {
             LOG.warn("Transcoder failed for {} in folder {}. Using original file", parameters.getMediaFile().getPath(), parameters.getMediaFile().getFolder().getId(), x);
         } catch (Exception x) {
@@ -325,13 +373,14 @@ public class TranscodingService {
     }
 
     /**
-     * Returns an input stream by applying the given transcoding to the given music file.
+     * Returns an input stream by applying the given transcoding to the given music file. Waits until the
+     * {@link TranscodeScheduler} admits the transcode, and holds its permit until all processes of it have ended.
      *
      * @param parameters Transcoding parameters.
      * @return The transcoded input stream.
-     * @throws IOException If an I/O error occurs.
+     * @throws IOException If an I/O error occurs, or the transcode was not admitted in time.
      */
-    private InputStream createTranscodedInputStream(Parameters parameters)
+    private TranscodeInputStream createTranscodedInputStream(Parameters parameters)
             throws IOException {
 
         Transcoding transcoding = parameters.getTranscoding();
@@ -339,19 +388,43 @@ public class TranscodingService {
         VideoTranscodingSettings videoTranscodingSettings = parameters.getVideoTranscodingSettings();
         MediaFile mediaFile = parameters.getMediaFile();
 
-        TranscodeInputStream in = createTranscodeInputStream(transcoding.getStep1(), maxBitRate, videoTranscodingSettings, mediaFile, null);
+        TranscodeScheduler.Permit permit = transcodeScheduler.acquire(getKind(parameters), parameters.getUsername());
+        TranscodeInputStream in = null;
+        try {
+            in = createTranscodeInputStream(transcoding.getStep1(), maxBitRate, videoTranscodingSettings, mediaFile, null);
 
-        if (transcoding.getStep2() != null) {
-            in = createTranscodeInputStream(transcoding.getStep2(), maxBitRate, videoTranscodingSettings, mediaFile, in);
-        }
+            if (transcoding.getStep2() != null) {
+                in = createTranscodeInputStream(transcoding.getStep2(), maxBitRate, videoTranscodingSettings, mediaFile, in);
+            }
 
-        if (transcoding.getStep3() != null) {
-            in = createTranscodeInputStream(transcoding.getStep3(), maxBitRate, videoTranscodingSettings, mediaFile, in);
+            if (transcoding.getStep3() != null) {
+                in = createTranscodeInputStream(transcoding.getStep3(), maxBitRate, videoTranscodingSettings, mediaFile, in);
+            }
+        } catch (IOException | RuntimeException e) {
+            // closing the last step stops the ones feeding it
+            FileUtil.closeQuietly(in);
+            permit.close();
+            throw e;
         }
 
+        in.onExit().whenComplete((succeeded, e) -> permit.close());
         return in;
     }
 
+    /**
+     * Returns the kind of the given transcode, for its priority in the {@link TranscodeScheduler}.
+     */
+    static TranscodeScheduler.Kind getKind(Parameters parameters) {
+        if (parameters.getKind() != null) {
+            return parameters.getKind();
+        }
+        VideoTranscodingSettings video = parameters.getVideoTranscodingSettings();
+        if (video != null && video.getHlsSegmentFilename() != null) {
+            return TranscodeScheduler.Kind.HLS;
+        }
+        return parameters.getMediaFile().isVideo() ? TranscodeScheduler.Kind.VIDEO : TranscodeScheduler.Kind.AUDIO;
+    }
+
     /**
      * Creates a transcoded input stream by interpreting the given command line string.
      * This includes the following:
@@ -689,6 +762,8 @@ public class TranscodingService {
         private final VideoTranscodingSettings videoTranscodingSettings;
         private Integer maxBitRate;
         private Transcoding transcoding;
+        private String username;
+        private TranscodeScheduler.Kind kind;
 
         public Parameters(MediaFile mediaFile, VideoTranscodingSettings videoTranscodingSettings) {
             this.mediaFile = mediaFile;
@@ -743,5 +818,27 @@ public class TranscodingService {
         public VideoTranscodingSettings getVideoTranscodingSettings() {
             return videoTranscodingSettings;
         }
+
+        /**
+         * @return user the transcode is for, or {@code null} if it isn't for a particular user
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        /**
+         * @return kind of the transcode, or {@code null} to tell it from the media file and video settings
+         */
+        public TranscodeScheduler.Kind getKind() {
+            return kind;
+        }
+
+        public void setKind(TranscodeScheduler.Kind kind) {
+            this.kind = kind;
+        }
     }
 }
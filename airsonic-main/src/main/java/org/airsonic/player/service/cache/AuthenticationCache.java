@@ -0,0 +1,154 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import org.airsonic.player.security.UsernameSaltedTokenAuthenticationToken;
+import org.airsonic.player.spring.CacheConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Remembers successful username and password or salted token authentications for a short time, so clients that
+ * send their credentials with every request don't cause a database lookup and a password hash check each time.
+ *
+ * <p>Entries are keyed by a digest of the username, the mechanism and the presented credentials; the credentials
+ * themselves are not kept. An entry expires after the configured time to live, or when the credential it was
+ * checked against expires, whichever comes first. Changing or deleting the credentials or roles of a user drops
+ * its entries. Failed authentications are never cached.
+ */
+@Component
+public class AuthenticationCache {
+
+    private final CacheManager cacheManager;
+
+    public AuthenticationCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        if (getCache() != null) {
+            this.cacheManager.enableStatistics(CacheConfiguration.AUTHENTICATION_CACHE, true);
+        }
+    }
+
+    /**
+     * Returns the user an identical authentication was successful for.
+     *
+     * @param authentication authentication request
+     * @return the authenticated user, or {@code null} if there is no valid entry
+     */
+    public UserDetails get(UsernamePasswordAuthenticationToken authentication) {
+        Cache<String, Entry> cache = getCache();
+        String key = key(authentication);
+        if (cache == null || key == null) {
+            return null;
+        }
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.getCredentialExpiration() != null && !entry.getCredentialExpiration().isAfter(Instant.now())) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry.getUserDetails();
+    }
+
+    /**
+     * Remembers a successful authentication.
+     *
+     * @param authentication       authentication request
+     * @param userDetails          the authenticated user
+     * @param credentialExpiration expiration of the credential that matched, may be {@code null}
+     */
+    public void put(UsernamePasswordAuthenticationToken authentication, UserDetails userDetails, Instant credentialExpiration) {
+        Cache<String, Entry> cache = getCache();
+        String key = key(authentication);
+        if (cache == null || key == null) {
+            return;
+        }
+        cache.put(key, new Entry(userDetails, credentialExpiration));
+    }
+
+    /**
+     * Drops all entries of the given user. Called when its credentials or roles change.
+     *
+     * @param username name of the user
+     */
+    public void invalidate(String username) {
+        Cache<String, Entry> cache = getCache();
+        if (cache == null) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for (Cache.Entry<String, Entry> entry : cache) {
+            if (Objects.equals(entry.getValue().getUserDetails().getUsername(), username)) {
+                keys.add(entry.getKey());
+            }
+        }
+        keys.forEach(cache::remove);
+    }
+
+    public void clear() {
+        Cache<String, Entry> cache = getCache();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the cache, or {@code null} if caching authentications is disabled
+     */
+    private Cache<String, Entry> getCache() {
+        return cacheManager.getCache(CacheConfiguration.AUTHENTICATION_CACHE, String.class, Entry.class);
+    }
+
+    private static String key(UsernamePasswordAuthenticationToken authentication) {
+        if (authentication.getName() == null || authentication.getCredentials() == null) {
+            return null;
+        }
+        String mechanism = authentication instanceof UsernameSaltedTokenAuthenticationToken ? "salttoken" : "password";
+        return DigestUtils.sha256Hex(mechanism + '\u0000' + authentication.getName() + '\u0000' + authentication.getCredentials());
+    }
+
+    public static class Entry {
+        private final UserDetails userDetails;
+        private final Instant credentialExpiration;
+
+        public Entry(UserDetails userDetails, Instant credentialExpiration) {
+            this.userDetails = userDetails;
+            this.credentialExpiration = credentialExpiration;
+        }
+
+        public UserDetails getUserDetails() {
+            return userDetails;
+        }
+
+        public Instant getCredentialExpiration() {
+            return credentialExpiration;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.airsonic.player.service.cache;
+
+import org.airsonic.player.io.StoredZipResource;
+import org.airsonic.player.spring.CacheConfiguration;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+
+/**
+ * CRCs of downloaded files, so that zip downloads resumed in the middle don't have to read the files before the
+ * resumed range again. A file is identified by its path, size and modification time.
+ */
+@Component
+public class FileCrcCache implements StoredZipResource.CrcStore {
+
+    private final CacheManager cacheManager;
+
+    public FileCrcCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        this.cacheManager.enableStatistics(CacheConfiguration.FILE_CRC_CACHE, true);
+    }
+
+    public void clear() {
+        cacheManager.getCache(CacheConfiguration.FILE_CRC_CACHE).clear();
+    }
+
+    @Override
+    public Long getCrc(StoredZipResource.Entry entry) {
+        return cacheManager.getCache(CacheConfiguration.FILE_CRC_CACHE, String.class, Long.class)
+                .get(generateKey(entry));
+    }
+
+    @Override
+    public void putCrc(StoredZipResource.Entry entry, long crc) {
+        cacheManager.getCache(CacheConfiguration.FILE_CRC_CACHE, String.class, Long.class)
+                .put(generateKey(entry), crc);
+    }
+
+    private String generateKey(StoredZipResource.Entry entry) {
+        return entry.path() + "|" + entry.size() + "|" + entry.lastModified();
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded in-memory cache keyed by primitive ints.
+ *
+ * <p>Entries live in open addressing tables of int keys, so lookups neither box the key nor allocate. The cache is
+ * bounded by the total weight of its values, as estimated by the given weigher, instead of by entry count. It is
+ * split into segments with their own lock and weight budget. When a segment is over budget, entries are evicted in
+ * CLOCK order, i.e. entries read since the clock hand last passed them get a second chance.
+ *
+ * @param <V> value type
+ */
+public class IntObjectCache<V> {
+
+    /**
+     * Called for every evicted entry. It runs while the segment is locked, so a concurrent {@link #remove(int)} of the
+     * evicted key returns only once the listener is done. The listener must not call back into the cache.
+     */
+    @FunctionalInterface
+    public interface EvictionListener<V> {
+        void onEviction(int key, V value);
+    }
+
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final ToIntFunction<V> weigher;
+    private final EvictionListener<V> evictionListener;
+    private final long maxWeight;
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public IntObjectCache(long maxWeight, ToIntFunction<V> weigher, EvictionListener<V> evictionListener) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+        this.segments = (Segment[]) new IntObjectCache.Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxWeight / SEGMENTS));
+        }
+    }
+
+    public V get(int key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    public void put(int key, V value) {
+        int h = hash(key);
+        segmentFor(h).put(key, h, value, weigher.applyAsInt(value));
+    }
+
+    public V remove(int key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(int h) {
+        return segments[h >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private final class Segment {
+
+        private final long maxWeight;
+        private int[] keys;
+        private Object[] values;
+        private int[] weights;
+        private boolean[] referenced;
+        private int size;
+        private long weight;
+        private int hand;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            weights = new int[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(int key, int h) {
+            int i = indexOf(key, h);
+            if (i < 0) {
+                return null;
+            }
+            referenced[i] = true;
+            return (V) values[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void put(int key, int h, V value, int entryWeight) {
+            if (entryWeight > maxWeight) {
+                // would evict everything else and still not fit
+                V previous = remove(key, h);
+                if (previous != null) {
+                    evicted(key, previous);
+                }
+                return;
+            }
+            int i = indexOf(key, h);
+            if (i >= 0) {
+                values[i] = value;
+                weight += entryWeight - weights[i];
+                weights[i] = entryWeight;
+                referenced[i] = true;
+            } else {
+                if ((size + 1) * 2 > values.length) {
+                    resize(values.length * 2);
+                }
+                i = h & (values.length - 1);
+                while (values[i] != null) {
+                    i = (i + 1) & (values.length - 1);
+                }
+                keys[i] = key;
+                values[i] = value;
+                weights[i] = entryWeight;
+                referenced[i] = true;
+                size++;
+                weight += entryWeight;
+            }
+            while (weight > maxWeight && size > 0) {
+                if (hand >= values.length) {
+                    hand = 0;
+                }
+                if (values[hand] == null) {
+                    hand++;
+                } else if (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand++;
+                } else {
+                    int evictedKey = keys[hand];
+                    V evictedValue = (V) values[hand];
+                    // another entry may be shifted into this slot, so the hand stays
+                    deleteAt(hand);
+                    evicted(evictedKey, evictedValue);
+                }
+            }
+        }
+
+        private void evicted(int key, V value) {
+            evictions.increment();
+            evictionListener.onEviction(key, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(int key, int h) {
+            int i = indexOf(key, h);
+            if (i < 0) {
+                return null;
+            }
+            V value = (V) values[i];
+            deleteAt(i);
+            return value;
+        }
+
+        synchronized void clear() {
+            allocate(INITIAL_CAPACITY);
+            size = 0;
+            weight = 0;
+            hand = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        private int indexOf(int key, int h) {
+            int mask = values.length - 1;
+            int i = h & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        // backward shift deletion keeps probe sequences intact without tombstones
+        private void deleteAt(int i) {
+            int mask = values.length - 1;
+            weight -= weights[i];
+            size--;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = hash(keys[j]) & mask;
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    weights[i] = weights[j];
+                    referenced[i] = referenced[j];
+                    i = j;
+                }
+            }
+            values[i] = null;
+            weights[i] = 0;
+            referenced[i] = false;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            int[] oldWeights = weights;
+            boolean[] oldReferenced = referenced;
+            allocate(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < oldValues.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                    weights[i] = oldWeights[j];
+                    referenced[i] = oldReferenced[j];
+                }
+            }
+            hand = 0;
+        }
+    }
+}
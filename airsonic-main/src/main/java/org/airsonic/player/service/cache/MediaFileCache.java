@@ -1,83 +1,182 @@
 package org.airsonic.player.service.cache;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.airsonic.player.config.AirsonicCacheConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.spring.CacheConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import jakarta.annotation.Nonnull;
+import javax.cache.Cache;
 import javax.cache.CacheManager;
 
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
-
+/**
+ * Two-level cache of media files by id and by path.
+ *
+ * <p>The first level lives on the heap in an {@link IntObjectCache}, bounded by the estimated memory use of the
+ * cached media files. Paths are an index into the first level: a path lookup resolves to an id, so every media file
+ * is held once no matter how it was looked up, and the path keys reuse the path strings of the cached media files.
+ *
+ * <p>If configured, media files evicted from the first level are moved to an off-heap Ehcache, from where id
+ * lookups promote them back to the heap.
+ *
+ * <p>The cache stays enabled while the library is scanned. To keep a reader from caching a row that a concurrent
+ * write has just replaced, readers take a {@link #stamp()} before loading from the database and pass it to the put
+ * methods. Every removal records the stamp it happened at for the id and path of the media file; a put is undone if
+ * its media file was removed after the stamp was taken.
+ */
 @Component
-public class MediaFileCache {
+public class MediaFileCache implements MeterBinder {
 
-    private final CacheManager cacheManager;
+    private static final Logger LOG = LoggerFactory.getLogger(MediaFileCache.class);
 
-    public MediaFileCache(CacheManager cacheManager) {
-        this.cacheManager = cacheManager;
-        this.cacheManager.enableStatistics(CacheConfiguration.MEDIA_FILE_PATH_CACHE, true);
-        this.cacheManager.enableStatistics(CacheConfiguration.MEDIA_FILE_ID_CACHE, true);
-    }
+    private static final String ID_CACHE_NAME = "mediaFileIdCache";
+    private static final String PATH_CACHE_NAME = "mediaFilePathCache";
+    private static final int INVALIDATION_STRIPES = 4096;
+
+    private final IntObjectCache<MediaFile> idCache;
+    private final Map<PathKey, Integer> pathIndex = new ConcurrentHashMap<>();
+    private final Cache<Integer, MediaFile> offHeapCache;
+
+    private final LongAdder idHits = new LongAdder();
+    private final LongAdder idMisses = new LongAdder();
+    private final LongAdder pathHits = new LongAdder();
+    private final LongAdder pathMisses = new LongAdder();
+    private final LongAdder offHeapHits = new LongAdder();
+    private final LongAdder offHeapMisses = new LongAdder();
 
     private final AtomicBoolean enabled = new AtomicBoolean(true);
 
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLongArray invalidatedAt = new AtomicLongArray(INVALIDATION_STRIPES);
+    private volatile long clearedAt;
+
+    public MediaFileCache(AirsonicCacheConfig cacheConfig, CacheManager cacheManager) {
+        this.idCache = new IntObjectCache<>(cacheConfig.getMediaFileHeapSize() * 1024L * 1024L, MediaFileCache::estimateSize, this::onEviction);
+        this.offHeapCache = cacheConfig.getMediaFileOffHeapSize() > 0
+                ? cacheManager.getCache(CacheConfiguration.MEDIA_FILE_OFFHEAP_CACHE, Integer.class, MediaFile.class)
+                : null;
+        LOG.info("Media file cache uses {} MB of heap{}", cacheConfig.getMediaFileHeapSize(),
+                offHeapCache == null ? "" : " and " + cacheConfig.getMediaFileOffHeapSize() + " MB off heap");
+    }
+
     public void clear() {
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_PATH_CACHE).clear();
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_ID_CACHE).clear();
+        clearedAt = invalidations.incrementAndGet();
+        idCache.clear();
+        pathIndex.clear();
+        if (offHeapCache != null) {
+            offHeapCache.clear();
+        }
     }
 
     public void clearPathCache() {
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_PATH_CACHE).clear();
+        clearedAt = invalidations.incrementAndGet();
+        pathIndex.clear();
     }
 
     public void clearIdCache() {
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_ID_CACHE).clear();
+        clear();
     }
 
     public MediaFile getMediaFileByPath(Path path, MusicFolder musicFolder, Double startPosition) {
         if (isDisabled() || path == null || musicFolder == null) {
             return null;
         }
-        String key = generatePathKey(path, musicFolder, startPosition);
-        return cacheManager.getCache(CacheConfiguration.MEDIA_FILE_PATH_CACHE, String.class, MediaFile.class).get(key);
+        PathKey key = new PathKey(musicFolder.getId(), path.toString(), startPosition);
+        Integer id = pathIndex.get(key);
+        MediaFile mediaFile = id == null ? null : idCache.get(id);
+        if (mediaFile == null || !key.matches(mediaFile)) {
+            // the media file was evicted or has been moved since the path was indexed
+            if (id != null) {
+                pathIndex.remove(key, id);
+            }
+            pathMisses.increment();
+            return null;
+        }
+        pathHits.increment();
+        return mediaFile;
+    }
+
+    /**
+     * Returns the current stamp. Take it before loading a media file that is going to be cached.
+     *
+     * @return stamp to pass to the put methods
+     */
+    public long stamp() {
+        return invalidations.get();
     }
 
-    public void putMediaFileByPath(Path path, MusicFolder musicFolder, Double startPosition, MediaFile mediaFile) {
+    /**
+     * Caches a media file loaded by path, unless it has been removed from the cache since the stamp was taken.
+     *
+     * @param stamp stamp taken before the media file was loaded
+     */
+    public void putMediaFileByPath(Path path, MusicFolder musicFolder, Double startPosition, MediaFile mediaFile, long stamp) {
         if (isDisabled() || mediaFile == null || path == null || musicFolder == null) {
             return;
         }
-        String key = generatePathKey(path, musicFolder, startPosition);
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_PATH_CACHE, String.class, MediaFile.class).put(key, mediaFile);
+        put(mediaFile, stamp);
     }
 
     public MediaFile getMediaFileById(Integer id) {
         if (isDisabled() || id == null) {
             return null;
         }
-        return cacheManager.getCache(CacheConfiguration.MEDIA_FILE_ID_CACHE, Integer.class, MediaFile.class).get(id);
+        MediaFile mediaFile = idCache.get(id);
+        if (mediaFile == null && offHeapCache != null) {
+            mediaFile = getOffHeap(id);
+        }
+        if (mediaFile == null) {
+            idMisses.increment();
+        } else {
+            idHits.increment();
+        }
+        return mediaFile;
     }
 
-    public void putMediaFileById(Integer id, MediaFile mediaFile) {
+    /**
+     * Caches a media file loaded by id, unless it has been removed from the cache since the stamp was taken.
+     *
+     * @param stamp stamp taken before the media file was loaded
+     */
+    public void putMediaFileById(Integer id, MediaFile mediaFile, long stamp) {
         if (isDisabled() || mediaFile == null || id == null) {
             return;
         }
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_ID_CACHE, Integer.class, MediaFile.class).put(id,
-                mediaFile);
+        put(mediaFile, stamp);
     }
 
     public void removeMediaFile(MediaFile mediaFile) {
-        if (isDisabled() || mediaFile == null) {
+        if (mediaFile == null) {
             return;
         }
-        cacheManager.getCache(CacheConfiguration.MEDIA_FILE_PATH_CACHE, String.class, MediaFile.class)
-                .remove(generatePathKey(mediaFile.getRelativePath(), mediaFile.getFolder(), mediaFile.getStartPosition()));
+        // recorded before removing, so a concurrent put either sees it or is removed below
+        long stamp = invalidations.incrementAndGet();
+        if (hasFolder(mediaFile)) {
+            PathKey key = PathKey.of(mediaFile);
+            invalidatedAt.accumulateAndGet(stripe(key.hashCode()), stamp, Math::max);
+            pathIndex.remove(key);
+        }
         if (mediaFile.getId() != null) {
-            cacheManager.getCache(CacheConfiguration.MEDIA_FILE_ID_CACHE, Integer.class, MediaFile.class)
-                .remove(mediaFile.getId());
+            invalidatedAt.accumulateAndGet(stripe(mediaFile.getId()), stamp, Math::max);
+            idCache.remove(mediaFile.getId());
+            if (offHeapCache != null) {
+                offHeapCache.remove(mediaFile.getId());
+            }
         }
     }
 
@@ -85,13 +184,142 @@ public class MediaFileCache {
         this.enabled.set(enabled);
     }
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindGets(registry, ID_CACHE_NAME, idHits, idMisses);
+        bindGets(registry, PATH_CACHE_NAME, pathHits, pathMisses);
+        Gauge.builder("cache.size", idCache, IntObjectCache::size)
+            .tags("cache", ID_CACHE_NAME)
+            .description("The number of entries in this cache")
+            .register(registry);
+        Gauge.builder("cache.size", pathIndex, Map::size)
+            .tags("cache", PATH_CACHE_NAME)
+            .description("The number of entries in this cache")
+            .register(registry);
+        Gauge.builder("cache.heap.weight", idCache, IntObjectCache::weight)
+            .tags("cache", ID_CACHE_NAME)
+            .description("The estimated memory used by this cache")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", idCache, IntObjectCache::evictionCount)
+            .tags("cache", ID_CACHE_NAME)
+            .description("The number of times the cache was at capacity and an entry was evicted")
+            .register(registry);
+        if (offHeapCache != null) {
+            bindGets(registry, CacheConfiguration.MEDIA_FILE_OFFHEAP_CACHE, offHeapHits, offHeapMisses);
+        }
+    }
+
+    private static void bindGets(MeterRegistry registry, String cacheName, LongAdder hits, LongAdder misses) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+            .tags("cache", cacheName, "result", "hit")
+            .description("The number of times cache lookup methods have returned a cached value")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+            .tags("cache", cacheName, "result", "miss")
+            .description("The number of times cache lookup methods have not returned a value")
+            .register(registry);
+    }
+
+    private void put(MediaFile mediaFile, long stamp) {
+        if (mediaFile.getId() == null || !hasFolder(mediaFile)) {
+            return;
+        }
+        int id = mediaFile.getId();
+        PathKey key = PathKey.of(mediaFile);
+        idCache.put(id, mediaFile);
+        pathIndex.put(key, id);
+        // checked after inserting, see removeMediaFile
+        if (clearedAt > stamp || invalidatedAt.get(stripe(id)) > stamp || invalidatedAt.get(stripe(key.hashCode())) > stamp) {
+            pathIndex.remove(key, id);
+            idCache.remove(id);
+        }
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (INVALIDATION_STRIPES - 1);
+    }
+
+    private MediaFile getOffHeap(int id) {
+        long stamp = stamp();
+        MediaFile mediaFile;
+        try {
+            mediaFile = offHeapCache.getAndRemove(id);
+        } catch (RuntimeException e) {
+            LOG.debug("Could not read media file {} from the off-heap cache", id, e);
+            mediaFile = null;
+        }
+        if (mediaFile == null || !hasFolder(mediaFile)) {
+            // the music folder of the media file is gone
+            offHeapMisses.increment();
+            return null;
+        }
+        offHeapHits.increment();
+        put(mediaFile, stamp);
+        return mediaFile;
+    }
+
+    private void onEviction(int id, MediaFile mediaFile) {
+        if (hasFolder(mediaFile)) {
+            pathIndex.remove(PathKey.of(mediaFile), id);
+        }
+        if (offHeapCache != null && isEnabled()) {
+            try {
+                offHeapCache.put(id, mediaFile);
+            } catch (RuntimeException e) {
+                LOG.debug("Could not move media file {} to the off-heap cache", id, e);
+            }
+        }
+    }
+
+    private static boolean hasFolder(MediaFile mediaFile) {
+        return mediaFile.getFolder() != null && mediaFile.getFolder().getId() != null;
+    }
+
+    private boolean isEnabled() {
+        return enabled.get();
+    }
 
     private boolean isDisabled() {
-        return !enabled.get();
+        return !isEnabled();
+    }
+
+    /**
+     * Rough estimate of the heap used by a cached media file, including its path index entry.
+     */
+    static int estimateSize(MediaFile mediaFile) {
+        // object headers, boxed numbers, instants and the index entries
+        int size = 512;
+        size += estimateSize(mediaFile.getPath());
+        size += estimateSize(mediaFile.getFormat());
+        size += estimateSize(mediaFile.getTitle());
+        size += estimateSize(mediaFile.getAlbumName());
+        size += estimateSize(mediaFile.getArtist());
+        size += estimateSize(mediaFile.getAlbumArtist());
+        size += estimateSize(mediaFile.getGenre());
+        size += estimateSize(mediaFile.getParentPath());
+        size += estimateSize(mediaFile.getIndexPath());
+        size += estimateSize(mediaFile.getComment());
+        size += estimateSize(mediaFile.getMusicBrainzReleaseId());
+        size += estimateSize(mediaFile.getMusicBrainzRecordingId());
+        return size;
     }
 
-    private String generatePathKey(@Nonnull Path path, @Nonnull MusicFolder musicFolder, Double startPosition) {
-        return path.toString().concat("-").concat(musicFolder.getId().toString()).concat("-").concat(startPosition == null ? "" : startPosition.toString());
+    private static int estimateSize(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
     }
 
+    private record PathKey(int folderId, String path, Double startPosition) {
+
+        static PathKey of(MediaFile mediaFile) {
+            return new PathKey(mediaFile.getFolder().getId(), mediaFile.getPath(), mediaFile.getStartPosition());
+        }
+
+        boolean matches(MediaFile mediaFile) {
+            return hasFolder(mediaFile)
+                    && folderId == mediaFile.getFolder().getId()
+                    && path.equals(mediaFile.getPath())
+                    && Objects.equals(startPosition, mediaFile.getStartPosition());
+        }
+    }
 }
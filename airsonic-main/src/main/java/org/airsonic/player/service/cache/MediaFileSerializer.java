@@ -0,0 +1,219 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.function.IntFunction;
+
+/**
+ * Serializes media files for the off-heap tier of the {@link MediaFileCache}.
+ *
+ * <p>Only the persistent fields and the starred date are written. The music folder is written as its id and resolved
+ * again when reading, so a media file read back refers to the same folder instance as the rest of the application.
+ * Media files whose folder no longer exists are read back without a folder.
+ */
+public class MediaFileSerializer implements Serializer<MediaFile> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final IntFunction<MusicFolder> folderResolver;
+
+    public MediaFileSerializer(IntFunction<MusicFolder> folderResolver) {
+        this.folderResolver = folderResolver;
+    }
+
+    @Override
+    public ByteBuffer serialize(MediaFile mediaFile) throws SerializerException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            writeInteger(out, mediaFile.getId());
+            writeString(out, mediaFile.getPath());
+            writeInteger(out, mediaFile.getFolder() == null ? null : mediaFile.getFolder().getId());
+            writeString(out, mediaFile.getMediaType() == null ? null : mediaFile.getMediaType().name());
+            writeDouble(out, mediaFile.getStartPosition());
+            writeString(out, mediaFile.getFormat());
+            writeString(out, mediaFile.getTitle());
+            writeString(out, mediaFile.getAlbumName());
+            writeString(out, mediaFile.getArtist());
+            writeString(out, mediaFile.getAlbumArtist());
+            writeInteger(out, mediaFile.getDiscNumber());
+            writeInteger(out, mediaFile.getTrackNumber());
+            writeInteger(out, mediaFile.getYear());
+            writeString(out, mediaFile.getGenre());
+            writeInteger(out, mediaFile.getBitRate());
+            out.writeBoolean(mediaFile.isVariableBitRate());
+            writeDouble(out, mediaFile.getDuration());
+            writeLong(out, mediaFile.getFileSize());
+            writeInteger(out, mediaFile.getWidth());
+            writeInteger(out, mediaFile.getHeight());
+            writeString(out, mediaFile.getParentPath());
+            writeString(out, mediaFile.getIndexPath());
+            out.writeInt(mediaFile.getPlayCount());
+            writeInstant(out, mediaFile.getLastPlayed());
+            writeString(out, mediaFile.getComment());
+            writeInstant(out, mediaFile.getCreated());
+            writeInstant(out, mediaFile.getChanged());
+            writeInstant(out, mediaFile.getLastScanned());
+            writeInstant(out, mediaFile.getStarredDate());
+            writeInstant(out, mediaFile.getChildrenLastUpdated());
+            out.writeBoolean(mediaFile.isPresent());
+            out.writeInt(mediaFile.getVersion());
+            writeString(out, mediaFile.getMusicBrainzReleaseId());
+            writeString(out, mediaFile.getMusicBrainzRecordingId());
+        } catch (IOException e) {
+            throw new SerializerException("Could not serialize media file " + mediaFile.getId(), e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Override
+    public MediaFile read(ByteBuffer binary) throws SerializerException {
+        byte[] bytes = new byte[binary.remaining()];
+        binary.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte formatVersion = in.readByte();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new SerializerException("Unknown media file format version " + formatVersion);
+            }
+            MediaFile mediaFile = new MediaFile();
+            mediaFile.setId(readInteger(in));
+            mediaFile.setPath(readString(in));
+            Integer folderId = readInteger(in);
+            mediaFile.setFolder(folderId == null ? null : folderResolver.apply(folderId));
+            String mediaType = readString(in);
+            mediaFile.setMediaType(mediaType == null ? null : MediaFile.MediaType.valueOf(mediaType));
+            mediaFile.setStartPosition(readDouble(in));
+            mediaFile.setFormat(readString(in));
+            mediaFile.setTitle(readString(in));
+            mediaFile.setAlbumName(readString(in));
+            mediaFile.setArtist(readString(in));
+            mediaFile.setAlbumArtist(readString(in));
+            mediaFile.setDiscNumber(readInteger(in));
+            mediaFile.setTrackNumber(readInteger(in));
+            mediaFile.setYear(readInteger(in));
+            mediaFile.setGenre(readString(in));
+            mediaFile.setBitRate(readInteger(in));
+            mediaFile.setVariableBitRate(in.readBoolean());
+            mediaFile.setDuration(readDouble(in));
+            mediaFile.setFileSize(readLong(in));
+            mediaFile.setWidth(readInteger(in));
+            mediaFile.setHeight(readInteger(in));
+            mediaFile.setParentPath(readString(in));
+            mediaFile.setIndexPath(readString(in));
+            mediaFile.setPlayCount(in.readInt());
+            mediaFile.setLastPlayed(readInstant(in));
+            mediaFile.setComment(readString(in));
+            mediaFile.setCreated(readInstant(in));
+            mediaFile.setChanged(readInstant(in));
+            mediaFile.setLastScanned(readInstant(in));
+            mediaFile.setStarredDate(readInstant(in));
+            mediaFile.setChildrenLastUpdated(readInstant(in));
+            mediaFile.setPresent(in.readBoolean());
+            mediaFile.setVersion(in.readInt());
+            mediaFile.setMusicBrainzReleaseId(readString(in));
+            mediaFile.setMusicBrainzRecordingId(readString(in));
+            return mediaFile;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializerException("Could not read media file", e);
+        }
+    }
+
+    @Override
+    public boolean equals(MediaFile mediaFile, ByteBuffer binary) throws SerializerException {
+        return serialize(mediaFile).equals(binary);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getEpochSecond());
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+}
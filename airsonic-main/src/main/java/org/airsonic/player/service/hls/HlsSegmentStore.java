@@ -0,0 +1,119 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.hls;
+
+import org.airsonic.player.config.AirsonicHlsConfig;
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the HLS segments transcoded by all {@link HlsSession}s and deletes the least recently used ones
+ * once they take up more disk space than configured.
+ *
+ * <p>Sessions are shared by all players, and segments of a session outlive its transcoder process, so players
+ * switching variants or seeking back get segments that were transcoded before without running the transcoder again.
+ */
+@Component
+public class HlsSegmentStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HlsSegmentStore.class);
+
+    private final AirsonicHlsConfig hlsConfig;
+    private final AirsonicHomeConfig homeConfig;
+
+    // access ordered, so iteration starts with the least recently used segment
+    private final LinkedHashMap<Path, Long> segments = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    public HlsSegmentStore(AirsonicHlsConfig hlsConfig, AirsonicHomeConfig homeConfig) {
+        this.hlsConfig = hlsConfig;
+        this.homeConfig = homeConfig;
+    }
+
+    /**
+     * @return directory holding the directories of all sessions
+     */
+    public Path getRootDirectory() {
+        return homeConfig.getAirsonicHome().resolve("hls");
+    }
+
+    /**
+     * Adds a completed segment, deleting the least recently used segments if the store is full.
+     *
+     * @param segment segment file
+     * @param size size of the segment file in bytes
+     */
+    public synchronized void add(Path segment, long size) {
+        Long previous = segments.put(segment, size);
+        totalSize += size - (previous == null ? 0 : previous);
+        long maxSize = hlsConfig.getCacheSize() * 1024L * 1024L;
+        Iterator<Map.Entry<Path, Long>> it = segments.entrySet().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            if (eldest.getKey().equals(segment)) {
+                continue;
+            }
+            LOG.debug("Evicting HLS segment {}", eldest.getKey());
+            FileUtil.delete(eldest.getKey());
+            totalSize -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * Marks a segment as used.
+     *
+     * @param segment segment file
+     * @return whether the segment is still stored
+     */
+    public synchronized boolean touch(Path segment) {
+        return segments.get(segment) != null;
+    }
+
+    /**
+     * Forgets all segments of a session, whose directory is about to be deleted.
+     *
+     * @param directory directory of the session
+     */
+    public synchronized void removeAll(Path directory) {
+        Iterator<Map.Entry<Path, Long>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getKey().startsWith(directory)) {
+                totalSize -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return total size of the stored segments in bytes
+     */
+    public synchronized long getSize() {
+        return totalSize;
+    }
+}
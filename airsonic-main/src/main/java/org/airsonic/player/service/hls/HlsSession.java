@@ -1,10 +1,12 @@
 package org.airsonic.player.service.hls;
 
 import com.google.common.io.MoreFiles;
+import org.airsonic.player.config.AirsonicHlsConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.VideoTranscodingSettings;
 import org.airsonic.player.io.InputStreamReaderThread;
 import org.airsonic.player.io.TranscodeInputStream;
+import org.airsonic.player.service.PathWatcherService;
 import org.airsonic.player.service.TranscodingService;
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.Util;
@@ -13,19 +15,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
-import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * The HLS segments of one variant of a media file, shared by all players, and the transcoder processes producing them.
+ *
+ * <p>Completed segments are kept in the {@link HlsSegmentStore} until they are evicted, so seeking back or switching
+ * back to a variant doesn't run the transcoder again. Each requester, usually a player, has a transcoder of its own,
+ * so requesters at different positions don't stop each other's transcoder. A transcoder runs a configurable number of
+ * segments ahead of the last segment its requester asked for and is stopped once it gets there. A requester only
+ * starts a transcoder if a requested segment is neither stored nor about to be produced by any transcoder.
+ *
+ * <p>Each transcoder process writes into a work directory of its own. A segment is complete once the transcoder
+ * lists it in its playlist, starts the next segment or exits normally. Completed segments are moved into the session
+ * directory. The work directory is watched for these changes, and request threads waiting for a segment are woken as
+ * soon as it is complete. In case change events are lost, it is also rescanned every couple of seconds while waiting.
+ */
 public class HlsSession {
     private final Logger LOG;
 
@@ -33,99 +53,321 @@ public class HlsSession {
 
     private static final long SESSION_TIMEOUT_SECONDS = 120L;
 
+    private static final long RESCAN_INTERVAL_MILLIS = 2000L;
+
+    private static final String PLAYLIST_FILENAME = "out.m3u8";
+
     private final Key sessionKey;
 
     private final MediaFile mediaFile;
 
     private final TranscodingService transcodingService;
 
-    private final Path hlsRootDirectory;
+    private final PathWatcherService pathWatcherService;
+
+    private final HlsSegmentStore segmentStore;
+
+    private final AirsonicHlsConfig hlsConfig;
+
+    // guarded by itself, notified whenever a segment completes or a transcoder exits
+    private final NavigableSet<Integer> completedSegments = new TreeSet<>();
 
-    private Process process;
+    // guarded by completedSegments, by requester
+    private final Map<String, Transcode> transcodes = new HashMap<>();
 
-    private ScheduledFuture<?> destroySessionFuture;
+    // guarded by completedSegments, by requester
+    private final Map<String, Integer> lastRequestedSegments = new HashMap<>();
 
-    public HlsSession(Key sessionKey, MediaFile mediaFile, TranscodingService transcodingService, Path hlsRootDirectory) {
+    // guarded by completedSegments
+    private boolean destroyed;
+
+    private volatile long lastAccess;
+
+    private ScheduledFuture<?> stopProcessFuture;
+
+    public HlsSession(Key sessionKey, MediaFile mediaFile, TranscodingService transcodingService,
+            PathWatcherService pathWatcherService, HlsSegmentStore segmentStore, AirsonicHlsConfig hlsConfig) {
         this.LOG = LoggerFactory.getLogger(HlsSession.class.toString() + "-" + sessionKey.id());
         this.LOG.info("Creating HLS session {}: {}", sessionKey.id(), sessionKey);
         this.sessionKey = sessionKey;
         this.mediaFile = mediaFile;
         this.transcodingService = transcodingService;
-        this.hlsRootDirectory = hlsRootDirectory;
+        this.pathWatcherService = pathWatcherService;
+        this.segmentStore = segmentStore;
+        this.hlsConfig = hlsConfig;
+        this.lastAccess = currentTimeMillis();
     }
 
-    public Path waitForSegment(int segmentIndex, long timeoutMillis) throws Exception {
-        this.LOG.debug("Requesting hls segment {}", segmentIndex);
-        scheduleSessionDestruction();
-        Path segment = getSegment(segmentIndex);
-        if (segment != null) {
-            this.LOG.debug("Segment {} already produced.", segmentIndex);
+    /**
+     * Returns the given segment, once it is produced.
+     *
+     * @param requester     identifies the requester, usually the player
+     * @param segmentIndex  the segment
+     * @param timeoutMillis how long to wait for the segment
+     * @return the segment file, or {@code null} if it could not be produced in time
+     */
+    public Path waitForSegment(String requester, int segmentIndex, long timeoutMillis) throws Exception {
+        this.LOG.debug("Requesting hls segment {} for {}", segmentIndex, requester);
+        scheduleProcessStop();
+        long timeout = currentTimeMillis() + timeoutMillis;
+        long nextRescan = currentTimeMillis() + RESCAN_INTERVAL_MILLIS;
+        synchronized (completedSegments) {
+            lastRequestedSegments.put(requester, segmentIndex);
+            Path segment = getSegment(segmentIndex);
+            if (segment != null) {
+                this.LOG.debug("Segment {} already produced.", segmentIndex);
+                lookAhead(requester, segmentIndex + 1);
+                return segment;
+            }
+            Transcode started = null;
+            while (segment == null && !destroyed) {
+                if (!isProducing(segmentIndex)) {
+                    if (started != null && started.exited && !started.stopped) {
+                        // the transcoder started for it ended without producing it
+                        break;
+                    }
+                    // not transcoded yet, or evicted before it could be served
+                    started = startProcess(requester, segmentIndex);
+                }
+                long now = currentTimeMillis();
+                if (now >= timeout) {
+                    break;
+                }
+                if (now >= nextRescan) {
+                    // change events may have been lost
+                    new ArrayList<>(transcodes.values()).forEach(this::rescanSegments);
+                    nextRescan = now + RESCAN_INTERVAL_MILLIS;
+                } else {
+                    this.LOG.debug("Segment {} not yet produced. Waiting.", segmentIndex);
+                    completedSegments.wait(Math.min(timeout, nextRescan) - now);
+                }
+                segment = getSegment(segmentIndex);
+            }
+            if (segment != null) {
+                this.LOG.debug("Segment {} produced.", segmentIndex);
+            } else {
+                this.LOG.warn("Timed out for segment {}", segmentIndex);
+            }
             return segment;
         }
-        if (!isProcessAlive()) {
-            startProcess(segmentIndex);
-        } else {
-            Integer latestCompleted = getLatestCompletedSegmentIndex();
-            if (latestCompleted != null
-                    && (segmentIndex < latestCompleted.intValue() || segmentIndex > latestCompleted.intValue() + 2)) {
-                destroySession();
-                startProcess(segmentIndex);
+    }
+
+    /**
+     * Starts transcoding the look-ahead window following the given segment, unless it is stored or being
+     * transcoded already. Returns immediately.
+     *
+     * @param requester    identifies the requester, usually the player
+     * @param segmentIndex first segment of the window
+     */
+    public void prepare(String requester, int segmentIndex) throws IOException {
+        scheduleProcessStop();
+        synchronized (completedSegments) {
+            lastRequestedSegments.put(requester, segmentIndex);
+            lookAhead(requester, segmentIndex);
+        }
+    }
+
+    /**
+     * @return milliseconds since a segment was last requested or prepared
+     */
+    public long getIdleMillis() {
+        return currentTimeMillis() - lastAccess;
+    }
+
+    private synchronized void scheduleProcessStop() {
+        lastAccess = currentTimeMillis();
+        if (this.stopProcessFuture != null)
+            this.stopProcessFuture.cancel(false);
+        this.stopProcessFuture = EXECUTOR.schedule(() -> {
+            synchronized (completedSegments) {
+                transcodes.values().forEach(this::stopProcess);
             }
+        }, SESSION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void destroySession() {
+        this.LOG.debug("Destroying hls session");
+        synchronized (this) {
+            if (this.stopProcessFuture != null)
+                this.stopProcessFuture.cancel(false);
         }
-        long timeout = currentTimeMillis() + timeoutMillis;
-        while (segment == null && currentTimeMillis() < timeout && isProcessAlive()) {
-            this.LOG.debug("Segment {} not yet produced. Waiting.", segmentIndex);
-            Thread.sleep(2000L);
-            segment = getSegment(segmentIndex);
+        synchronized (completedSegments) {
+            destroyed = true;
+            transcodes.values().forEach(this::stopProcess);
+            completedSegments.notifyAll();
+            completedSegments.clear();
+            segmentStore.removeAll(getDirectory());
+            FileUtil.delete(getDirectory());
+        }
+    }
+
+    // must hold the completedSegments lock
+    private Path getSegment(int segmentIndex) {
+        if (!completedSegments.contains(segmentIndex)) {
+            return null;
         }
-        if (segment != null) {
-            this.LOG.debug("Segment {} produced.", segmentIndex);
-        } else {
-            this.LOG.warn("Timed out for segment {}", segmentIndex);
+        Path segment = getDirectory().resolve(segmentIndex + ".ts");
+        if (!segmentStore.touch(segment)) {
+            // evicted
+            completedSegments.remove(segmentIndex);
+            return null;
         }
         return segment;
     }
 
-    private synchronized void scheduleSessionDestruction() {
-        if (this.destroySessionFuture != null)
-            this.destroySessionFuture.cancel(false);
-        this.destroySessionFuture = EXECUTOR.schedule(() -> this.destroySession(), SESSION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    // must hold the completedSegments lock
+    private void lookAhead(String requester, int segmentIndex) throws IOException {
+        if (destroyed) {
+            return;
+        }
+        int last = Math.min(segmentIndex + hlsConfig.getLookAhead() - 1, getLastSegmentIndex());
+        for (int i = segmentIndex; i <= last; i++) {
+            if (getSegment(i) == null) {
+                if (!isProducing(i)) {
+                    startProcess(requester, i);
+                }
+                return;
+            }
+        }
     }
 
-    public void destroySession() {
-        this.LOG.debug("Destroying hls session");
-        killProcess();
-        FileUtil.delete(getDirectory());
+    /**
+     * @return whether a running transcoder is going to produce the given segment soon
+     */
+    // must hold the completedSegments lock
+    private boolean isProducing(int segmentIndex) {
+        return transcodes.values().stream().anyMatch(t -> isRunning(t) && segmentIndex >= t.nextSegmentIndex
+                && segmentIndex <= t.nextSegmentIndex + hlsConfig.getLookAhead());
     }
 
-    private Path getSegment(int segmentIndex) {
-        SortedSet<Integer> segmentIndexes = getCompletedSegmentIndexes();
-        return segmentIndexes.contains(Integer.valueOf(segmentIndex)) ? getDirectory().resolve(segmentIndex + ".ts") : null;
+    private int getLastSegmentIndex() {
+        Double duration = mediaFile.getDuration();
+        if (duration == null || sessionKey.getDuration() == null || sessionKey.getDuration() <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.ceil(duration / sessionKey.getDuration()) - 1;
     }
 
-    private Integer getLatestCompletedSegmentIndex() {
-        SortedSet<Integer> completed = getCompletedSegmentIndexes();
-        return completed.isEmpty() ? null : completed.last();
+    // must hold the completedSegments lock
+    private void segmentCompleted(Transcode source, int segmentIndex) {
+        Path work = source.workDirectory.resolve(segmentIndex + ".ts");
+        if (getSegment(segmentIndex) != null || !Files.exists(work)) {
+            // produced before, or by an earlier event
+            source.nextSegmentIndex = Math.max(source.nextSegmentIndex, segmentIndex + 1);
+            return;
+        }
+        Path segment = getDirectory().resolve(segmentIndex + ".ts");
+        try {
+            Files.move(work, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            segmentStore.add(segment, Files.size(segment));
+        } catch (IOException e) {
+            LOG.warn("Could not store segment {}", segmentIndex, e);
+            return;
+        }
+        this.LOG.trace("Segment {} completed", segmentIndex);
+        completedSegments.add(segmentIndex);
+        source.nextSegmentIndex = Math.max(source.nextSegmentIndex, segmentIndex + 1);
+        completedSegments.notifyAll();
+
+        Integer lastRequested = lastRequestedSegments.get(source.owner);
+        if (!source.stopped && lastRequested != null && segmentIndex >= lastRequested + hlsConfig.getLookAhead()) {
+            this.LOG.debug("Look-ahead up to segment {} for {} done", segmentIndex, source.owner);
+            stopProcess(source);
+        }
     }
 
-    private SortedSet<Integer> getCompletedSegmentIndexes() {
-        try (Stream<Path> children = Files.list(getDirectory())) {
-            SortedSet<Integer> result = children.filter(Files::isRegularFile)
-                    .filter(c -> "ts".equals(MoreFiles.getFileExtension(c))).map(MoreFiles::getNameWithoutExtension)
-                    .map(Integer::valueOf).collect(Collectors.toCollection(() -> new TreeSet<>()));
-            if (!result.isEmpty() && isProcessAlive()) {
-                result.remove(result.last());
+    /**
+     * Marks all segment files in the work directory of the given transcoder as complete, except the last one if it
+     * may still be written.
+     */
+    // must hold the completedSegments lock
+    private void rescanSegments(Transcode source) {
+        if (source == null) {
+            return;
+        }
+        readPlaylist(source);
+        try (Stream<Path> children = Files.list(source.workDirectory)) {
+            NavigableSet<Integer> found = children.filter(Files::isRegularFile)
+                    .map(HlsSession::getSegmentIndex)
+                    .filter(Objects::nonNull)
+                    .collect(TreeSet::new, TreeSet::add, TreeSet::addAll);
+            if (!found.isEmpty() && !source.finished) {
+                found.pollLast();
             }
-            return result;
+            found.forEach(i -> segmentCompleted(source, i));
         } catch (IOException e) {
-            LOG.warn("Could not retrieve directory list for {} to find segment files", getDirectory(), e);
+            LOG.debug("Could not retrieve directory list for {} to find segment files", source.workDirectory, e);
+        }
+    }
+
+    private void handleDirectoryChange(Transcode source, Path dir, WatchEvent<Path> event) {
+        Path file = dir.resolve(event.context());
+        synchronized (completedSegments) {
+            if (PLAYLIST_FILENAME.equals(file.getFileName().toString())) {
+                readPlaylist(source);
+                return;
+            }
+            // the transcoder only starts a segment once the previous one is done
+            Integer segmentIndex = getSegmentIndex(file);
+            if (segmentIndex != null && segmentIndex > source.firstSegmentIndex) {
+                segmentCompleted(source, segmentIndex - 1);
+            }
+        }
+    }
+
+    private void handleOverflow(Transcode source, Path dir, WatchEvent<Path> event) {
+        synchronized (completedSegments) {
+            rescanSegments(source);
+        }
+    }
+
+    private void handleExit(Transcode source) {
+        synchronized (completedSegments) {
+            // the last segment is only complete if the transcoder got to the end
+            source.finished = !source.stopped && source.process.exitValue() == 0;
+            rescanSegments(source);
+            pathWatcherService.invalidateWatcher(source.watcherId);
+            FileUtil.delete(source.workDirectory);
+            source.exited = true;
+            transcodes.remove(source.owner, source);
+            completedSegments.notifyAll();
+        }
+    }
+
+    /**
+     * Marks the segments listed in the playlist written by the transcoder as complete.
+     */
+    // must hold the completedSegments lock
+    private void readPlaylist(Transcode source) {
+        Path playlist = source.workDirectory.resolve(PLAYLIST_FILENAME);
+        if (!Files.exists(playlist)) {
+            return;
+        }
+        try (Stream<String> lines = Files.lines(playlist)) {
+            lines.filter(line -> !line.startsWith("#"))
+                    .map(line -> getSegmentIndex(Path.of(line.trim())))
+                    .filter(Objects::nonNull)
+                    .forEach(i -> segmentCompleted(source, i));
+        } catch (IOException | RuntimeException e) {
+            // replaced or half written, the next change or rescan picks it up
+            LOG.debug("Could not read playlist {}", playlist, e);
+        }
+    }
 
-            return Collections.emptySortedSet();
+    private static Integer getSegmentIndex(Path file) {
+        Path name = file.getFileName();
+        if (name == null || !"ts".equals(MoreFiles.getFileExtension(name))) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(MoreFiles.getNameWithoutExtension(name));
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
     private Path getDirectory() {
-        Path dir = getHlsRootDirectory().resolve(this.sessionKey.id());
+        Path dir = segmentStore.getRootDirectory().resolve(this.sessionKey.id());
         if (!Files.exists(dir)) {
             try {
                 dir = Files.createDirectories(dir);
@@ -138,61 +380,136 @@ public class HlsSession {
         return dir;
     }
 
-    public Path getHlsRootDirectory() {
-        return hlsRootDirectory;
+    /**
+     * Starts a transcoder for the given requester, replacing the one it had before. The process is launched on
+     * another thread, as it may wait to be admitted by the transcode scheduler, and the transcoder counts as producing
+     * its segments in the meantime.
+     */
+    // must hold the completedSegments lock
+    private Transcode startProcess(String requester, int segmentIndex) throws IOException {
+        stopProcess(transcodes.get(requester));
+
+        Path workDirectory = Files.createTempDirectory(getDirectory(), "work");
+        Transcode started = new Transcode(requester, segmentIndex, workDirectory, "HLS session " + this.sessionKey.id() + " " + workDirectory.getFileName());
+        try {
+            pathWatcherService.setWatcher(started.watcherId, workDirectory,
+                    (d, e) -> handleDirectoryChange(started, d, e), (d, e) -> { },
+                    (d, e) -> handleDirectoryChange(started, d, e), (d, e) -> handleOverflow(started, d, e));
+        } catch (IOException e) {
+            LOG.warn("Could not watch {}, segments are picked up by rescanning it", workDirectory, e);
+        }
+
+        transcodes.put(requester, started);
+        Thread.ofVirtual().name("hls-start-" + this.sessionKey.id()).start(() -> launchProcess(started));
+        return started;
     }
 
-    private void startProcess(int segmentIndex) throws IOException {
-        String[] size = StringUtils.split(this.sessionKey.getSize(), "x");
-        VideoTranscodingSettings vts = new VideoTranscodingSettings(
-                Integer.valueOf(size[0]), Integer.valueOf(size[1]),
-                segmentIndex * this.sessionKey.getDuration(), this.sessionKey.getDuration(),
-                (this.sessionKey.getAudioTrack() == null) ? 1 : this.sessionKey.getAudioTrack(), segmentIndex,
-                getDirectory().resolve("%d.ts").toString(), getDirectory().resolve("out.m3u8").toString());
-        TranscodingService.Parameters parameters = transcodingService.getParameters(mediaFile, null, this.sessionKey.getMaxBitRate(), "ts", vts);
-        TranscodeInputStream in = (TranscodeInputStream) transcodingService.getTranscodedInputStream(parameters);
-
-        process = in.getProcess();
-        (new InputStreamReaderThread(process.getInputStream(), getClass().getSimpleName(), true)).start();
+    /**
+     * Launches the process of a transcoder without holding the completedSegments lock, then publishes it under the
+     * lock, unless the transcoder was stopped in the meantime.
+     */
+    private void launchProcess(Transcode started) {
+        int segmentIndex = started.firstSegmentIndex;
+        Path workDirectory = started.workDirectory;
+        InputStream stream = null;
+        try {
+            String[] size = StringUtils.split(this.sessionKey.getSize(), "x");
+            VideoTranscodingSettings vts = new VideoTranscodingSettings(
+                    Integer.valueOf(size[0]), Integer.valueOf(size[1]),
+                    segmentIndex * this.sessionKey.getDuration(), this.sessionKey.getDuration(),
+                    (this.sessionKey.getAudioTrack() == null) ? 1 : this.sessionKey.getAudioTrack(), segmentIndex,
+                    workDirectory.resolve("%d.ts").toString(), workDirectory.resolve(PLAYLIST_FILENAME).toString());
+            TranscodingService.Parameters parameters = transcodingService.getParameters(mediaFile, null, this.sessionKey.getMaxBitRate(), "ts", vts);
+            this.LOG.debug("Transcoding from segment {} for {}", segmentIndex, started.owner);
+            stream = transcodingService.getTranscodedInputStream(parameters);
+        } catch (Exception e) {
+            this.LOG.warn("Could not start transcoder for segment {}", segmentIndex, e);
+        }
+        synchronized (completedSegments) {
+            if (!(stream instanceof TranscodeInputStream in)) {
+                // the transcoder failed or was not admitted in time, or the original file came back instead
+                FileUtil.closeQuietly(stream);
+                pathWatcherService.invalidateWatcher(started.watcherId);
+                FileUtil.delete(workDirectory);
+                started.exited = true;
+                transcodes.remove(started.owner, started);
+                completedSegments.notifyAll();
+                return;
+            }
+            started.process = in.getProcess();
+            (new InputStreamReaderThread(started.process.getInputStream(), getClass().getSimpleName(), true)).start();
+            started.process.onExit().thenRun(() -> handleExit(started));
+            if (started.stopped || destroyed) {
+                // replaced or no longer needed while it was starting
+                started.process.destroy();
+            }
+        }
     }
 
-    private void killProcess() {
-        if (this.process != null) {
-            this.LOG.info("Killing hls process");
+    // must hold the completedSegments lock
+    private void stopProcess(Transcode transcode) {
+        if (transcode == null || transcode.exited) {
+            return;
+        }
+        if (transcode.process == null) {
+            // still starting, the process is destroyed once it is launched
+            transcode.stopped = true;
+        } else if (transcode.process.isAlive()) {
+            this.LOG.info("Killing hls process of {}", transcode.owner);
+            transcode.stopped = true;
             try {
-                this.process.destroy();
+                transcode.process.destroy();
             } catch (Exception e) {
                 this.LOG.error("Failed to kill hls process", e);
             }
         }
     }
 
-    private boolean isProcessAlive() {
-        if (this.process == null)
-            return false;
-        try {
-            this.process.exitValue();
-            return false;
-        } catch (IllegalThreadStateException e) {
-            return true;
-        }
+    /**
+     * @return whether the transcoder is starting or running, and was not stopped
+     */
+    private static boolean isRunning(Transcode transcode) {
+        return transcode != null && !transcode.stopped && !transcode.exited
+                && (transcode.process == null || transcode.process.isAlive());
     }
 
     private long currentTimeMillis() {
         return System.nanoTime() / 1000000L;
     }
 
+    /**
+     * A transcoder process and the segments it produces.
+     */
+    private static class Transcode {
+        private final String owner;
+        private final int firstSegmentIndex;
+        private final Path workDirectory;
+        private final String watcherId;
+        // null while starting
+        private Process process;
+        private int nextSegmentIndex;
+        private boolean stopped;
+        private boolean finished;
+        private boolean exited;
+
+        private Transcode(String owner, int firstSegmentIndex, Path workDirectory, String watcherId) {
+            this.owner = owner;
+            this.firstSegmentIndex = firstSegmentIndex;
+            this.nextSegmentIndex = firstSegmentIndex;
+            this.workDirectory = workDirectory;
+            this.watcherId = watcherId;
+        }
+    }
+
     public static class Key {
         private final int mediaFileId;
-        private final String playerId;
         private final int maxBitRate;
         private final String size;
         private final Integer duration;
         private final Integer audioTrack;
 
-        public Key(int mediaFileId, String playerId, int maxBitRate, String size, Integer duration, Integer audioTrack) {
+        public Key(int mediaFileId, int maxBitRate, String size, Integer duration, Integer audioTrack) {
             this.mediaFileId = mediaFileId;
-            this.playerId = playerId;
             this.maxBitRate = maxBitRate;
             this.size = size;
             this.duration = duration;
@@ -207,10 +524,6 @@ public class HlsSession {
             return this.mediaFileId;
         }
 
-        public String getPlayerId() {
-            return this.playerId;
-        }
-
         public int getMaxBitRate() {
             return this.maxBitRate;
         }
@@ -236,19 +549,18 @@ public class HlsSession {
                 return false;
             }
             Key key = (Key) o;
-            return this.mediaFileId == key.mediaFileId && Objects.equals(this.playerId, key.playerId)
-                    && Objects.equals(this.maxBitRate, key.maxBitRate) && Objects.equals(this.size, key.size)
+            return this.mediaFileId == key.mediaFileId && Objects.equals(this.maxBitRate, key.maxBitRate) && Objects.equals(this.size, key.size)
                     && Objects.equals(this.audioTrack, key.audioTrack) && Objects.equals(this.duration, key.duration);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(this.mediaFileId, this.playerId, this.maxBitRate, this.size, this.duration, this.audioTrack);
+            return Objects.hash(this.mediaFileId, this.maxBitRate, this.size, this.duration, this.audioTrack);
         }
 
         @Override
         public String toString() {
-            return "{mediaFileId=" + this.mediaFileId + ", playerId='" + this.playerId + '\'' + ", maxBitRate='"
+            return "{mediaFileId=" + this.mediaFileId + ", maxBitRate='"
                     + this.maxBitRate + '\'' + ", size='" + this.size + '\'' + ", duration='" + this.duration + '\''
                     + ", audioTrack=" + this.audioTrack + '}';
         }
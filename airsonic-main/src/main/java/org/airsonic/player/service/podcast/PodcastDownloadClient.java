@@ -20,6 +20,7 @@
  */
 package org.airsonic.player.service.podcast;
 
+import org.airsonic.player.config.AirsonicPodcastConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.PodcastChannel;
@@ -38,29 +39,47 @@ import org.airsonic.player.util.StringUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.AdviceMode;
-import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Downloads podcast episodes to a hidden part file in the channel directory, which is moved in place when complete.
+ * A part file left by a failed download is resumed with a range request, which only continues the download if the
+ * episode didn't change since. Large episodes can be downloaded with several range requests in parallel, see
+ * {@link AirsonicPodcastConfig}, into a file of their own that is only renamed to the part file when complete.
+ */
 @Service
 @EnableAsync(mode = AdviceMode.ASPECTJ)
 public class PodcastDownloadClient {
@@ -82,6 +101,13 @@ public class PodcastDownloadClient {
     @Autowired
     private SecurityService securityService;
 
+    @Autowired
+    private AirsonicPodcastConfig podcastConfig;
+
+    @Autowired
+    @Qualifier("PodcastHttpClient")
+    private CloseableHttpClient httpClient;
+
     @Async("PodcastDownloadThreadPool")
     public CompletableFuture<Void> downloadEpisode(Integer episodeId) {
 
@@ -96,61 +122,14 @@ public class PodcastDownloadClient {
             LOG.info("Starting to download Podcast from {}", episode.getUrl());
 
             PodcastChannel channel = episode.getChannel();
-            RequestConfig requestConfig = RequestConfig.custom()
-                    .setConnectTimeout(2 * 60 * 1000) // 2 minutes
-                    .setSocketTimeout(10 * 60 * 1000) // 10 minutes
-                    // Workaround HttpClient circular redirects, which some feeds use (with query
-                    // parameters)
-                    .setCircularRedirectsAllowed(true)
-                    // Workaround HttpClient not understanding latest RFC-compliant cookie 'expires'
-                    // attributes
-                    .setCookieSpec(CookieSpecs.STANDARD)
-                    .build();
-            HttpGet method = new HttpGet(episode.getUrl());
-            method.setConfig(requestConfig);
-            method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
-            Pair<Path, MusicFolder> episodeFile = createEpisodeFile(channel, episode);
-            Path relativeFile = episodeFile.getLeft();
-            MusicFolder folder = episodeFile.getRight();
-            Path filePath = folder.getPath().resolve(relativeFile);
-
-            try (CloseableHttpClient client = HttpClients.createDefault();
-                    CloseableHttpResponse response = client.execute(method);
-                    InputStream in = response.getEntity().getContent();
-                    OutputStream out = new BufferedOutputStream(Files.newOutputStream(filePath))) {
-
-                // Check if the server responded with a 200 OK status code.
-                if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value()) {
-                    throw new IOException("Failed to download Podcast from " + episode.getUrl() + ". Status code: "
-                            + response.getStatusLine().getStatusCode());
-                }
-
-                episode.setBytesDownloaded(0L);
-                episode.setErrorMessage(null);
-                podcastPersistenceService.updateEpisode(episode);
+            Path partFile = getPartFile(channel, episode);
 
-                long bytesDownloaded = 0L;
-                byte[] buffer = new byte[8192];
-                int n;
-                long nextLogCount = 30000L;
-
-                while ((n = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, n);
-                    bytesDownloaded += n;
-
-                    if (bytesDownloaded > nextLogCount) {
-                        // Abort download if episode was deleted by user.
-                        if (podcastPersistenceService.isEpisodeDeleted(episodeId)) {
-                            break;
-                        }
-                        episode.setBytesDownloaded(bytesDownloaded);
-                        podcastPersistenceService.updateEpisode(episode);
-                        nextLogCount += 30000L;
-                    }
-                }
+            try {
+                long bytesDownloaded = download(episode, partFile);
                 episode.setBytesDownloaded(bytesDownloaded);
                 LOG.info("Downloaded {} bytes from Podcast {}", bytesDownloaded, episode.getUrl());
             } catch (Exception x) {
+                // the part file is kept to resume from
                 LOG.warn("Failed to download Podcast from {}", episode.getUrl(), x);
                 episode.setStatus(PodcastStatus.ERROR);
                 episode.setErrorMessage(PodcastUtil.getErrorMessage(x));
@@ -159,25 +138,42 @@ public class PodcastDownloadClient {
             }
 
             // Abort download if episode was deleted by user.
-            if (podcastPersistenceService.isEpisodeDeleted(episodeId)) {
+            if (podcastPersistenceService.isDownloadCancelled(episodeId)) {
                 LOG.info("Podcast {} was deleted. Aborting download.", episode.getUrl());
-                FileUtil.delete(filePath);
+                FileUtil.delete(partFile);
+                FileUtil.delete(getValidatorFile(partFile, episode));
+                return result;
+            }
+
+            Pair<Path, MusicFolder> episodeFile = createEpisodeFile(channel, episode);
+            Path relativeFile = episodeFile.getLeft();
+            MusicFolder folder = episodeFile.getRight();
+            try {
+                Files.move(partFile, folder.getPath().resolve(relativeFile), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException x) {
+                LOG.warn("Failed to move downloaded Podcast {} in place", episode.getUrl(), x);
+                FileUtil.delete(folder.getPath().resolve(relativeFile));
+                episode.setStatus(PodcastStatus.ERROR);
+                episode.setErrorMessage(PodcastUtil.getErrorMessage(x));
+                podcastPersistenceService.updateEpisode(episode);
+                return result;
+            }
+            FileUtil.delete(getValidatorFile(partFile, episode));
+
+            MediaFile file = mediaFileService.getMediaFile(relativeFile, folder);
+            episode.setMediaFile(file);
+            // Parser may not be able to determine duration for some formats.
+            if (file.getDuration() == null) {
+                String errorMessage = "Failed to get duration for " + file;
+                LOG.warn(errorMessage);
+                episode.setStatus(PodcastStatus.ERROR);
+                episode.setErrorMessage(errorMessage);
+                podcastPersistenceService.updateEpisode(episode);
             } else {
-                MediaFile file = mediaFileService.getMediaFile(relativeFile, folder);
-                episode.setMediaFile(file);
-                // Parser may not be able to determine duration for some formats.
-                if (file.getDuration() == null) {
-                    String errorMessage = "Failed to get duration for " + file;
-                    LOG.warn(errorMessage);
-                    episode.setStatus(PodcastStatus.ERROR);
-                    episode.setErrorMessage(errorMessage);
-                    podcastPersistenceService.updateEpisode(episode);
-                } else {
-                    updateTags(file, episode);
-                    episode.setStatus(PodcastStatus.COMPLETED);
-                    podcastPersistenceService.updateEpisode(episode);
-                    podcastPersistenceService.deleteObsoleteEpisodes(channel);
-                }
+                updateTags(file, episode);
+                episode.setStatus(PodcastStatus.COMPLETED);
+                podcastPersistenceService.updateEpisode(episode);
+                podcastPersistenceService.deleteObsoleteEpisodes(channel);
             }
         } else {
             LOG.info("Episode with id {} not found", episodeId);
@@ -185,6 +181,251 @@ public class PodcastDownloadClient {
         return result;
     }
 
+    /**
+     * Downloads the episode to the part file, resuming from what is already in it.
+     *
+     * @return the size of the downloaded episode
+     */
+    private long download(PodcastEpisode episode, Path partFile) throws IOException {
+        // what an interrupted segmented download left is not usable
+        FileUtil.delete(getSegmentedPartFile(partFile, episode));
+        Path validatorFile = getValidatorFile(partFile, episode);
+        long offset = Files.exists(partFile) ? Files.size(partFile) : 0L;
+        HttpGet method = createRequest(episode.getUrl());
+        if (offset > 0) {
+            method.addHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            String validator = Files.exists(validatorFile) ? Files.readString(validatorFile).trim() : "";
+            if (!validator.isEmpty()) {
+                // the complete episode is sent instead if it changed
+                method.addHeader(HttpHeaders.IF_RANGE, validator);
+            }
+        }
+        try (CloseableHttpResponse response = httpClient.execute(method)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (offset > 0 && statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+                    && getTotalLength(response) == offset) {
+                // completely downloaded before
+                return offset;
+            }
+            if (offset > 0 && statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+                LOG.info("Resuming download of Podcast {} at byte {}", episode.getUrl(), offset);
+            } else if (statusCode == HttpStatus.SC_OK) {
+                // the server ignored the range, if any, or the episode changed
+                offset = 0L;
+            } else {
+                throw new IOException("Failed to download Podcast from " + episode.getUrl() + ". Status code: "
+                        + statusCode);
+            }
+
+            long contentLength = response.getEntity().getContentLength();
+            DownloadProgress progress = new DownloadProgress(episode, offset);
+            int segments = podcastConfig.getSegments();
+            String validator = getValidator(response);
+            if (offset == 0 && segments > 1 && contentLength >= podcastConfig.getSegmentThreshold() * 1024L * 1024L
+                    && isRangeSupported(response)) {
+                // let the segments request their own ranges
+                method.abort();
+                FileUtil.delete(partFile);
+                FileUtil.delete(validatorFile);
+                return downloadSegments(episode, partFile, contentLength, segments, validator, progress);
+            }
+            if (offset == 0) {
+                if (validator != null) {
+                    Files.writeString(validatorFile, validator);
+                } else {
+                    FileUtil.delete(validatorFile);
+                }
+            }
+            try (InputStream in = response.getEntity().getContent();
+                    FileChannel out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (offset == 0) {
+                    out.truncate(0);
+                }
+                copy(episode, in, out, offset, progress);
+            }
+            return progress.getBytesDownloaded();
+        }
+    }
+
+    /**
+     * Downloads the episode in parallel range requests. Since the file they are written to has holes until all
+     * segments are done, it is only renamed to the part file when complete, and deleted if one of them fails.
+     */
+    private long downloadSegments(PodcastEpisode episode, Path partFile, long length, int segments,
+            String validator, DownloadProgress progress) throws IOException {
+        Path segmentedFile = getSegmentedPartFile(partFile, episode);
+        long segmentLength = (length + segments - 1) / segments;
+        try (FileChannel out = FileChannel.open(segmentedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (long start = 0; start < length; start += segmentLength) {
+                long first = start;
+                long last = Math.min(start + segmentLength, length) - 1;
+                futures.add(CompletableFuture.runAsync(() -> downloadSegment(episode, out, first, last, validator, progress), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            LOG.info("Downloaded Podcast {} in {} segments", episode.getUrl(), futures.size());
+        } catch (CompletionException x) {
+            FileUtil.delete(segmentedFile);
+            throw x.getCause() instanceof IOException ? (IOException) x.getCause() : new IOException(x.getCause());
+        }
+        Files.move(segmentedFile, partFile, StandardCopyOption.REPLACE_EXISTING);
+        return progress.getBytesDownloaded();
+    }
+
+    private void downloadSegment(PodcastEpisode episode, FileChannel out, long first, long last, String validator,
+            DownloadProgress progress) {
+        HttpGet method = createRequest(episode.getUrl());
+        method.addHeader(HttpHeaders.RANGE, "bytes=" + first + "-" + last);
+        if (validator != null) {
+            // segments of another version of the episode are not sent as a range
+            method.addHeader(HttpHeaders.IF_RANGE, validator);
+        }
+        try (CloseableHttpResponse response = httpClient.execute(method);
+                InputStream in = response.getEntity().getContent()) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException("Failed to download Podcast from " + episode.getUrl() + " at byte " + first
+                        + ". Status code: " + response.getStatusLine().getStatusCode());
+            }
+            long position = copy(episode, in, out, first, progress);
+            if (position != last + 1 && !podcastPersistenceService.isDownloadCancelled(episode.getId())) {
+                throw new IOException("Incomplete segment of Podcast " + episode.getUrl() + " at byte " + first);
+            }
+        } catch (IOException x) {
+            throw new CompletionException(x);
+        }
+    }
+
+    /**
+     * Copies the response to the file, starting at the given position, until the response ends or the download is
+     * cancelled.
+     *
+     * @return the position after the last byte written
+     */
+    private long copy(PodcastEpisode episode, InputStream in, FileChannel out, long position,
+            DownloadProgress progress) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(podcastConfig.getBufferSize() * 1024);
+        ReadableByteChannel source = Channels.newChannel(in);
+        while (!podcastPersistenceService.isDownloadCancelled(episode.getId()) && source.read(buffer) != -1) {
+            // fill the buffer before writing, so that writes are large
+            if (buffer.hasRemaining()) {
+                continue;
+            }
+            position += write(buffer, out, position, progress);
+        }
+        return position + write(buffer, out, position, progress);
+    }
+
+    private int write(ByteBuffer buffer, FileChannel out, long position, DownloadProgress progress) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer, position + written);
+        }
+        buffer.clear();
+        progress.add(written);
+        return written;
+    }
+
+    private HttpGet createRequest(String url) {
+        HttpGet method = new HttpGet(url);
+        method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
+        return method;
+    }
+
+    /**
+     * @return the strong ETag of the response, or else its Last-Modified date, or {@code null} if it has neither
+     */
+    private String getValidator(HttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified == null ? null : lastModified.getValue();
+    }
+
+    private boolean isRangeSupported(HttpResponse response) {
+        Header acceptRanges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+        return acceptRanges != null && "bytes".equalsIgnoreCase(acceptRanges.getValue());
+    }
+
+    /**
+     * @return the complete length from the Content-Range header, or -1 if unknown
+     */
+    private long getTotalLength(HttpResponse response) {
+        Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        if (contentRange == null) {
+            return -1L;
+        }
+        String value = contentRange.getValue();
+        try {
+            return Long.parseLong(StringUtils.substringAfterLast(value, "/").trim());
+        } catch (NumberFormatException x) {
+            return -1L;
+        }
+    }
+
+    private static Path getSegmentedPartFile(Path partFile, PodcastEpisode episode) {
+        return PodcastUtil.getSegmentedPartFile(partFile.getParent(), episode.getId());
+    }
+
+    private static Path getValidatorFile(Path partFile, PodcastEpisode episode) {
+        return PodcastUtil.getPartValidatorFile(partFile.getParent(), episode.getId());
+    }
+
+    private Path getPartFile(PodcastChannel channel, PodcastEpisode episode) {
+        MediaFile channelMediaFile = channel.getMediaFile();
+        MusicFolder folder = channelMediaFile.getFolder();
+        Path partFile = PodcastUtil.getPartFile(channelMediaFile.getFullPath(), episode.getId());
+        if (!securityService.isWriteAllowed(folder.getPath().relativize(partFile), folder)) {
+            throw new SecurityException("Access denied to file " + partFile);
+        }
+        return partFile;
+    }
+
+    /**
+     * Progress of a download, saved to the episode at most once per configured interval.
+     */
+    private class DownloadProgress {
+
+        private final PodcastEpisode episode;
+        private final AtomicLong bytesDownloaded;
+        private final long interval = TimeUnit.SECONDS.toNanos(podcastConfig.getProgressInterval());
+        private long nextUpdate;
+
+        DownloadProgress(PodcastEpisode episode, long bytesDownloaded) {
+            this.episode = episode;
+            this.bytesDownloaded = new AtomicLong(bytesDownloaded);
+            episode.setBytesDownloaded(bytesDownloaded);
+            episode.setErrorMessage(null);
+            podcastPersistenceService.updateEpisode(episode);
+            nextUpdate = System.nanoTime() + interval;
+        }
+
+        long getBytesDownloaded() {
+            return bytesDownloaded.get();
+        }
+
+        void add(int bytes) {
+            long total = bytesDownloaded.addAndGet(bytes);
+            if (System.nanoTime() - nextUpdate >= 0) {
+                update(total);
+            }
+        }
+
+        private synchronized void update(long total) {
+            long now = System.nanoTime();
+            if (now - nextUpdate < 0) {
+                return;
+            }
+            nextUpdate = now + interval;
+            episode.setBytesDownloaded(total);
+            podcastPersistenceService.updateEpisode(episode);
+        }
+    }
+
     private void updateTags(MediaFile file, PodcastEpisode episode) {
         try {
             Path fullPath = file.getFullPath();
@@ -17,19 +17,21 @@ import org.airsonic.player.util.PodcastUtil;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.AdviceMode;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -45,6 +47,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.airsonic.player.util.XMLUtil.createSAXBuilder;
@@ -76,6 +79,10 @@ public class PodcastRefresher {
     @Autowired
     private AsyncWebSocketClient asyncWebSocketClient;
 
+    @Autowired
+    @Qualifier("PodcastHttpClient")
+    private CloseableHttpClient httpClient;
+
     /**
      * refresh channel
      *
@@ -93,24 +100,38 @@ public class PodcastRefresher {
             return CompletableFuture.completedFuture(false);
         }
         asyncWebSocketClient.send("/topic/podcasts/updated", channel.getId());
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(2 * 60 * 1000) // 2 minutes
-                .setSocketTimeout(10 * 60 * 1000) // 10 minutes
-                .build();
         HttpGet method = new HttpGet(channel.getUrl());
-        method.setConfig(requestConfig);
         method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
-        try (CloseableHttpClient client = HttpClients.createDefault();
-                CloseableHttpResponse response = client.execute(method);
-                InputStream in = response.getEntity().getContent()) {
-
-            Document document = createSAXBuilder().build(in);
-            Element channelElement = document.getRootElement().getChild("channel");
-
-            podcastPersistenceService.updateChannelByElement(channel, channelElement);
-            asyncWebSocketClient.send("/topic/podcasts/updated", channel.getId());
-            downloadImage(channel);
-            refreshEpisodes(channel, channelElement.getChildren("item"));
+        // Only fetch the RSS document if it changed since the last complete refresh. The validators are
+        // stored after the episodes, so a failed refresh is never skipped.
+        if (channel.getMediaFile() != null) {
+            if (channel.getEtag() != null) {
+                method.addHeader(HttpHeaders.IF_NONE_MATCH, channel.getEtag());
+            }
+            if (channel.getLastModified() != null) {
+                method.addHeader(HttpHeaders.IF_MODIFIED_SINCE, channel.getLastModified());
+            }
+        }
+        try (CloseableHttpResponse response = httpClient.execute(method)) {
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                LOG.info("Podcast channel {} not modified since last refresh", channel.getUrl());
+                EntityUtils.consume(response.getEntity());
+            } else {
+                Element channelElement;
+                try (InputStream in = response.getEntity().getContent()) {
+                    Document document = createSAXBuilder().build(in);
+                    channelElement = document.getRootElement().getChild("channel");
+                    // read to the end so that the connection goes back to the pool
+                    EntityUtils.consume(response.getEntity());
+                }
+
+                podcastPersistenceService.updateChannelByElement(channel, channelElement);
+                asyncWebSocketClient.send("/topic/podcasts/updated", channel.getId());
+                downloadImage(channel);
+                refreshEpisodes(channel, channelElement.getChildren("item"));
+                podcastPersistenceService.setChannelValidators(channel, getHeaderValue(response, HttpHeaders.ETAG),
+                        getHeaderValue(response, HttpHeaders.LAST_MODIFIED));
+            }
         } catch (Exception x) {
             LOG.warn("Failed to get/parse RSS file for Podcast channel {}", channel.getUrl(), x);
             podcastPersistenceService.setChannelError(channel, PodcastUtil.getErrorMessage(x));
@@ -125,6 +146,11 @@ public class PodcastRefresher {
         return CompletableFuture.completedFuture(true);
     }
 
+    private String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
     private String formatDuration(String duration) {
         if (duration == null)
             return null;
@@ -165,8 +191,7 @@ public class PodcastRefresher {
 
         HttpGet method = new HttpGet(imageUrl);
         method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
-        try (CloseableHttpClient client = HttpClients.createDefault();
-                CloseableHttpResponse response = client.execute(method);
+        try (CloseableHttpResponse response = httpClient.execute(method);
                 InputStream in = response.getEntity().getContent()) {
             Path filePath = channelDir.resolve("cover." + getCoverArtSuffix(response));
             Files.copy(in, filePath, StandardCopyOption.REPLACE_EXISTING);
@@ -199,6 +224,9 @@ public class PodcastRefresher {
         }
 
         AtomicInteger counter = new AtomicInteger(downloadCount);
+        // GUIDs of the existing episodes, also collecting the ones created below so duplicates in the feed are skipped
+        Set<String> guids = ConcurrentHashMap.newKeySet();
+        guids.addAll(podcastPersistenceService.getEpisodeGuids(channel));
 
         episodeElements.parallelStream()
                 .map(episodeElement -> {
@@ -220,7 +248,7 @@ public class PodcastRefresher {
 
                     // make sure episode with same guid doesn't exist
                     if (StringUtils.isNotBlank(guid)) {
-                        if (podcastPersistenceService.getEpisodeByGuid(channel, guid) != null) {
+                        if (!guids.add(guid)) {
                             LOG.info("Episode already exists for episode {} by guid {}", title, guid);
                             return null;
                         }
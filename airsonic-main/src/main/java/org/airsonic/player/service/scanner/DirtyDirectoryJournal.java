@@ -0,0 +1,285 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scanner;
+
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable record of the directories that changed since the last scan. A directory is either dirty, i.e. it has to be
+ * rescanned with everything below it, or only its own entries changed, so its subdirectories need not be rescanned.
+ *
+ * <p>Every change is appended to {@code scan-journal.txt} in the Airsonic home directory before it is
+ * acknowledged, so changes observed by the folder watcher survive a restart. Entries are only removed
+ * once a scan that covered them has completed successfully. A folder whose change events overflowed is
+ * recorded as well; such a folder can only be reconciled by a full scan.
+ */
+@Component
+public class DirtyDirectoryJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirtyDirectoryJournal.class);
+
+    private static final String JOURNAL_FILE = "scan-journal.txt";
+    private static final String DIRTY = "D";
+    private static final String CHANGED = "C";
+    private static final String OVERFLOW = "O";
+
+    private final Path journalFile;
+    private final Map<Integer, Set<String>> directories = new HashMap<>();
+    private final Map<Integer, Set<String>> changedDirectories = new HashMap<>();
+    private final Set<Integer> overflowedFolders = new HashSet<>();
+
+    public DirtyDirectoryJournal(AirsonicHomeConfig homeConfig) {
+        this.journalFile = homeConfig.getAirsonicHome().resolve(JOURNAL_FILE);
+        load();
+    }
+
+    /**
+     * Records a directory to be rescanned with everything below it, e.g. one that was created or deleted.
+     *
+     * @param folderId     id of the music folder containing the directory
+     * @param relativePath path of the directory relative to the music folder
+     */
+    public synchronized void markDirty(int folderId, String relativePath) {
+        if (directories.computeIfAbsent(folderId, k -> new HashSet<>()).add(relativePath)) {
+            append(DIRTY, folderId, relativePath);
+        }
+    }
+
+    /**
+     * Records a directory whose own entries changed, e.g. a file in it was modified.
+     *
+     * @param folderId     id of the music folder containing the directory
+     * @param relativePath path of the directory relative to the music folder
+     */
+    public synchronized void markChanged(int folderId, String relativePath) {
+        if (changedDirectories.computeIfAbsent(folderId, k -> new HashSet<>()).add(relativePath)) {
+            append(CHANGED, folderId, relativePath);
+        }
+    }
+
+    /**
+     * Records that change events for a music folder were lost.
+     *
+     * @param folderId id of the music folder
+     */
+    public synchronized void markOverflow(int folderId) {
+        if (overflowedFolders.add(folderId)) {
+            append(OVERFLOW, folderId, "");
+        }
+    }
+
+    /**
+     * Returns a copy of the pending changes. The changes stay in the journal until {@link #complete(Snapshot)} is called.
+     *
+     * @return snapshot of the pending changes
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(copy(directories), copy(changedDirectories), new HashSet<>(overflowedFolders));
+    }
+
+    private static Map<Integer, Set<String>> copy(Map<Integer, Set<String>> directories) {
+        Map<Integer, Set<String>> copy = new HashMap<>();
+        directories.forEach((folderId, paths) -> copy.put(folderId, new HashSet<>(paths)));
+        return copy;
+    }
+
+    /**
+     * Removes the changes of the given snapshot from the journal. Changes recorded after the snapshot was taken are kept.
+     *
+     * @param snapshot snapshot covered by a successful scan
+     */
+    public synchronized void complete(Snapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        removeAll(directories, snapshot.directories);
+        removeAll(changedDirectories, snapshot.changedDirectories);
+        overflowedFolders.removeAll(snapshot.overflowedFolders);
+        rewrite();
+    }
+
+    private static void removeAll(Map<Integer, Set<String>> directories, Map<Integer, Set<String>> completed) {
+        completed.forEach((folderId, paths) -> {
+            Set<String> pending = directories.get(folderId);
+            if (pending != null) {
+                pending.removeAll(paths);
+                if (pending.isEmpty()) {
+                    directories.remove(folderId);
+                }
+            }
+        });
+    }
+
+    private void load() {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    int folderId = Integer.parseInt(parts[1]);
+                    if (DIRTY.equals(parts[0])) {
+                        directories.computeIfAbsent(folderId, k -> new HashSet<>()).add(URLDecoder.decode(parts[2], StandardCharsets.UTF_8));
+                    } else if (CHANGED.equals(parts[0])) {
+                        changedDirectories.computeIfAbsent(folderId, k -> new HashSet<>()).add(URLDecoder.decode(parts[2], StandardCharsets.UTF_8));
+                    } else if (OVERFLOW.equals(parts[0])) {
+                        overflowedFolders.add(folderId);
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOG.debug("Ignoring malformed scan journal entry: {}", line);
+                }
+            }
+            LOG.info("Loaded {} changed directories from scan journal {}", directories.values().stream().mapToInt(Set::size).sum()
+                    + changedDirectories.values().stream().mapToInt(Set::size).sum(), journalFile);
+        } catch (IOException e) {
+            LOG.warn("Could not read scan journal {}", journalFile, e);
+        }
+    }
+
+    private void append(String type, int folderId, String relativePath) {
+        try {
+            Files.writeString(journalFile, toLine(type, folderId, relativePath), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOG.warn("Could not write scan journal {}", journalFile, e);
+        }
+    }
+
+    private void rewrite() {
+        StringBuilder content = new StringBuilder();
+        overflowedFolders.forEach(folderId -> content.append(toLine(OVERFLOW, folderId, "")));
+        directories.forEach((folderId, paths) -> paths.forEach(path -> content.append(toLine(DIRTY, folderId, path))));
+        changedDirectories.forEach((folderId, paths) -> paths.forEach(path -> content.append(toLine(CHANGED, folderId, path))));
+        try {
+            Path tmp = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+            Files.writeString(tmp, content, StandardCharsets.UTF_8);
+            Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not write scan journal {}", journalFile, e);
+        }
+    }
+
+    private static String toLine(String type, int folderId, String relativePath) {
+        return type + "\t" + folderId + "\t" + URLEncoder.encode(relativePath, StandardCharsets.UTF_8) + "\n";
+    }
+
+    /**
+     * Immutable view of the changes pending at a point in time.
+     */
+    public static class Snapshot {
+        private final Map<Integer, Set<String>> directories;
+        private final Map<Integer, Set<String>> changedDirectories;
+        private final Set<Integer> overflowedFolders;
+
+        Snapshot(Map<Integer, Set<String>> directories, Map<Integer, Set<String>> changedDirectories,
+                Set<Integer> overflowedFolders) {
+            this.directories = directories;
+            this.changedDirectories = changedDirectories;
+            this.overflowedFolders = overflowedFolders;
+        }
+
+        public boolean isEmpty() {
+            return directories.isEmpty() && changedDirectories.isEmpty() && overflowedFolders.isEmpty();
+        }
+
+        /**
+         * @return true if change events were lost for any folder and only a full scan can catch up
+         */
+        public boolean isFullScanRequired() {
+            return !overflowedFolders.isEmpty();
+        }
+
+        /**
+         * Returns the changed directories per music folder id. Directories nested in another changed
+         * directory are left out, since rescanning the ancestor covers them.
+         *
+         * @return changed directories by music folder id
+         */
+        public Map<Integer, List<String>> getDirectories() {
+            Map<Integer, List<String>> result = new HashMap<>();
+            directories.forEach((folderId, paths) -> result.put(folderId, collapse(paths)));
+            return result;
+        }
+
+        /**
+         * Returns the directories whose own entries changed per music folder id. Directories in or below a dirty
+         * directory are left out, since rescanning that one covers them.
+         *
+         * @return directories to rescan without their subdirectories by music folder id
+         */
+        public Map<Integer, List<String>> getChangedDirectories() {
+            Map<Integer, List<String>> result = new HashMap<>();
+            changedDirectories.forEach((folderId, paths) -> {
+                Set<String> dirty = directories.getOrDefault(folderId, Collections.emptySet());
+                if (dirty.contains("")) {
+                    return;
+                }
+                List<String> changed = paths.stream()
+                        .filter(path -> dirty.stream().map(Paths::get).noneMatch(Paths.get(path)::startsWith))
+                        .toList();
+                if (!changed.isEmpty()) {
+                    result.put(folderId, changed);
+                }
+            });
+            return result;
+        }
+
+        static List<String> collapse(Set<String> paths) {
+            if (paths.contains("")) {
+                return Collections.singletonList("");
+            }
+            // shortest paths first, so an ancestor is always accepted before its descendants
+            List<Path> accepted = new ArrayList<>();
+            List<String> result = new ArrayList<>();
+            paths.stream().sorted(Comparator.comparingInt(String::length)).forEach(path -> {
+                Path current = Paths.get(path);
+                if (accepted.stream().noneMatch(current::startsWith)) {
+                    accepted.add(current);
+                    result.add(path);
+                }
+            });
+            return result;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scanner;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.MediaFolderService;
+import org.airsonic.player.service.PathWatcherService;
+import org.airsonic.player.service.SettingsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Watches all directories of the enabled music folders and records changes in the {@link DirtyDirectoryJournal}.
+ *
+ * <p>{@link java.nio.file.WatchService} is not recursive, so every directory below a music folder gets its own
+ * watcher. Newly created directories are picked up as they appear. Directories that cannot be watched (e.g. when
+ * the inotify watch limit is reached) are only covered by the periodic full scan.
+ */
+@Component
+public class MediaFolderWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MediaFolderWatcher.class);
+
+    private static final String WATCHER_ID_PREFIX = "Music folder watcher ";
+
+    private final PathWatcherService pathWatcherService;
+    private final MediaFolderService mediaFolderService;
+    private final SettingsService settingsService;
+    private final DirtyDirectoryJournal journal;
+
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private volatile Runnable changeListener = () -> { };
+
+    public MediaFolderWatcher(PathWatcherService pathWatcherService, MediaFolderService mediaFolderService,
+            SettingsService settingsService, DirtyDirectoryJournal journal) {
+        this.pathWatcherService = pathWatcherService;
+        this.mediaFolderService = mediaFolderService;
+        this.settingsService = settingsService;
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the callback invoked after a change has been recorded in the journal.
+     *
+     * @param changeListener callback, must be cheap as it runs on the watcher threads
+     */
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Registers watchers for all directories of the enabled music folders and drops watchers of directories that are
+     * no longer part of any music folder.
+     */
+    public void watchAll() {
+        List<MusicFolder> folders = mediaFolderService.getAllMusicFolders();
+        watchedDirectories.stream()
+            .filter(dir -> !Files.isDirectory(dir) || folders.stream().noneMatch(f -> dir.startsWith(f.getPath())))
+            .forEach(this::unwatch);
+        folders.forEach(folder -> watchTree(folder.getPath()));
+        LOG.info("Watching {} directories in {} music folders for changes", watchedDirectories.size(), folders.size());
+    }
+
+    /**
+     * Removes all watchers registered by this class.
+     */
+    public void unwatchAll() {
+        watchedDirectories.forEach(this::unwatch);
+    }
+
+    private void watchTree(Path root) {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            dirs.filter(Files::isDirectory)
+                .filter(dir -> !isIgnored(dir))
+                .forEach(this::watch);
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Could not watch all directories below {}. Changes will be picked up by the next full scan", root, e);
+        }
+    }
+
+    private void watch(Path dir) {
+        if (!watchedDirectories.add(dir)) {
+            return;
+        }
+        try {
+            pathWatcherService.setWatcher(WATCHER_ID_PREFIX + dir, dir, this::handleCreated, this::handleDeleted, this::handleModified, this::handleOverflow);
+        } catch (IOException e) {
+            watchedDirectories.remove(dir);
+            LOG.warn("Could not watch {}. Changes will be picked up by the next full scan", dir, e);
+        }
+    }
+
+    private void unwatch(Path dir) {
+        if (watchedDirectories.remove(dir)) {
+            pathWatcherService.invalidateWatcher(WATCHER_ID_PREFIX + dir);
+        }
+    }
+
+    /**
+     * Whether a file or directory is skipped by the scanner, so changing it doesn't need a scan. Like the scanner,
+     * this skips hidden files, such as the partial downloads of podcast episodes, and files matching the exclude
+     * pattern.
+     */
+    private boolean isIgnored(Path path) {
+        Path name = path.getFileName();
+        if (name == null) {
+            return false;
+        }
+        String fileName = name.toString();
+        if (settingsService.getExcludePattern() != null && settingsService.getExcludePattern().matcher(fileName).find()) {
+            return true;
+        }
+        return (fileName.startsWith(".") && !fileName.startsWith("..")) || fileName.startsWith("@eaDir")
+                || "Thumbs.db".equals(fileName);
+    }
+
+    private void handleCreated(Path dir, WatchEvent<Path> event) {
+        Path child = dir.resolve(event.context());
+        if (isIgnored(child)) {
+            return;
+        }
+        if (Files.isDirectory(child)) {
+            watchTree(child);
+            // only the new directory is scanned with everything below it, not its siblings
+            markDirty(child);
+        }
+        markChanged(dir);
+    }
+
+    private void handleDeleted(Path dir, WatchEvent<Path> event) {
+        Path child = dir.resolve(event.context());
+        if (isIgnored(child)) {
+            return;
+        }
+        boolean wasWatched = watchedDirectories.contains(child);
+        watchedDirectories.stream().filter(d -> d.startsWith(child)).forEach(this::unwatch);
+        if (wasWatched) {
+            // removed with everything below it
+            markDirty(child);
+        }
+        markChanged(dir);
+    }
+
+    private void handleModified(Path dir, WatchEvent<Path> event) {
+        if (!isIgnored(dir.resolve(event.context()))) {
+            markChanged(dir);
+        }
+    }
+
+    private void handleOverflow(Path dir, WatchEvent<Path> event) {
+        mediaFolderService.getMusicFolderForFile(dir, false, false).ifPresent(folder -> {
+            LOG.warn("Change events lost for music folder {}. A full scan will be started", folder.getName());
+            journal.markOverflow(folder.getId());
+            changeListener.run();
+        });
+    }
+
+    private void markDirty(Path dir) {
+        mediaFolderService.getMusicFolderForFile(dir, false, false).ifPresent(folder -> {
+            journal.markDirty(folder.getId(), folder.getPath().relativize(dir).toString());
+            changeListener.run();
+        });
+    }
+
+    private void markChanged(Path dir) {
+        mediaFolderService.getMusicFolderForFile(dir, false, false).ifPresent(folder -> {
+            journal.markChanged(folder.getId(), folder.getPath().relativize(dir).toString());
+            changeListener.run();
+        });
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scanner;
+
+import org.airsonic.player.config.AirsonicScanConfig;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.entity.ScanSeen;
+import org.airsonic.player.repository.ScanSeenRepository;
+import org.airsonic.player.service.AlbumService;
+import org.airsonic.player.service.ArtistService;
+import org.airsonic.player.service.MediaFileService;
+import org.airsonic.player.service.search.IndexManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Collects the media files, albums and artists changed by the media scanner and writes them to the database in
+ * batches, instead of one transaction per entity.
+ *
+ * <p>It also stages the ids of everything the scan has seen in the {@code scan_seen} table, tagged with the scan
+ * generation, so presence can be reconciled with one update per entity type once the scan is done.
+ *
+ * <p>An entity queued several times before it is written is only written once. Once a batch is full, the scanner
+ * thread that filled it writes it. Only one batch per entity type is written at a time; while that happens other
+ * scanner threads keep queueing, until the queue holds several batches and they have to wait. Scanner threads of a
+ * fork join pool wait as a managed blocker, so the pool can start another worker meanwhile.
+ */
+@Component
+public class ScanWriteBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanWriteBuffer.class);
+
+    /**
+     * Number of batches that may be queued per entity type before scanner threads have to wait for a write.
+     */
+    private static final int MAX_QUEUED_BATCHES = 4;
+
+    private final AirsonicScanConfig scanConfig;
+
+    private final Stage<MediaFile> mediaFiles;
+    private final Stage<Album> albums;
+    private final Stage<Artist> artists;
+    private final Stage<ScanSeen> seen;
+    private final ScanSeenRepository scanSeenRepository;
+
+    private final Map<ScanSeen.EntityType, BitSet> seenIds = new EnumMap<>(ScanSeen.EntityType.class);
+    private volatile long generation;
+
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+
+    public ScanWriteBuffer(AirsonicScanConfig scanConfig, MediaFileService mediaFileService, AlbumService albumService,
+            ArtistService artistService, IndexManager indexManager, ScanSeenRepository scanSeenRepository) {
+        this.scanConfig = scanConfig;
+        this.scanSeenRepository = scanSeenRepository;
+        this.mediaFiles = new Stage<>("media files", mediaFileService::updateMediaFiles, mediaFileService::updateMediaFile);
+        this.albums = new Stage<>("albums", batch -> {
+            albumService.saveAll(batch);
+            batch.forEach(indexManager::index);
+        }, album -> {
+            albumService.save(album);
+            indexManager.index(album);
+        });
+        this.artists = new Stage<>("artists", batch -> {
+            artistService.saveAll(batch);
+            batch.forEach(a -> indexManager.index(a, a.getFolder()));
+        }, artist -> {
+            artistService.save(artist);
+            indexManager.index(artist, artist.getFolder());
+        });
+        this.seen = new Stage<>("seen entries", scanSeenRepository::saveAll, scanSeenRepository::save);
+    }
+
+    /**
+     * Resets the write statistics and drops entries staged by earlier scans. Called when a scan starts.
+     *
+     * @param generation generation of the starting scan
+     */
+    public void start(long generation) {
+        this.generation = generation;
+        synchronized (seenIds) {
+            seenIds.clear();
+        }
+        scanSeenRepository.deleteAllInBatch();
+        rowsWritten.reset();
+        writeNanos.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Drops the entries staged by the scan. Called once presence has been reconciled.
+     */
+    public void finish() {
+        scanSeenRepository.deleteAllInBatch();
+    }
+
+    /**
+     * @return generation of the running scan
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stages a media file as seen by the running scan.
+     *
+     * @param mediaFile stored media file
+     */
+    public void markSeen(MediaFile mediaFile) {
+        markSeen(ScanSeen.EntityType.MEDIA_FILE, mediaFile.getId());
+    }
+
+    /**
+     * Stages an album as seen by the running scan. The album must have been written already.
+     *
+     * @param album stored album
+     */
+    public void markSeen(Album album) {
+        markSeen(ScanSeen.EntityType.ALBUM, album.getId());
+    }
+
+    /**
+     * Stages an artist as seen by the running scan. The artist must have been written already.
+     *
+     * @param artist stored artist
+     */
+    public void markSeen(Artist artist) {
+        markSeen(ScanSeen.EntityType.ARTIST, artist.getId());
+    }
+
+    private void markSeen(ScanSeen.EntityType type, Integer id) {
+        if (id == null) {
+            LOG.debug("Not staging {} without id", type);
+            return;
+        }
+        synchronized (seenIds) {
+            BitSet ids = seenIds.computeIfAbsent(type, t -> new BitSet());
+            if (ids.get(id)) {
+                return;
+            }
+            ids.set(id);
+        }
+        seen.add(new ScanSeen(generation, type, id));
+    }
+
+    /**
+     * Queues a changed media file.
+     *
+     * @param mediaFile media file to update
+     */
+    public void updateMediaFile(MediaFile mediaFile) {
+        mediaFiles.add(mediaFile);
+    }
+
+    /**
+     * Queues a new or changed album. The album is indexed once it has been written.
+     *
+     * @param album album to save
+     */
+    public void saveAlbum(Album album) {
+        albums.add(album);
+    }
+
+    /**
+     * Queues a new or changed artist. The artist is indexed once it has been written.
+     *
+     * @param artist artist to save
+     */
+    public void saveArtist(Artist artist) {
+        artists.add(artist);
+    }
+
+    /**
+     * Writes everything queued so far. Returns once all of it is in the database.
+     */
+    public void flush() {
+        mediaFiles.flush();
+        albums.flush();
+        artists.flush();
+        seen.flush();
+    }
+
+    /**
+     * @return number of rows written since the scan started
+     */
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * @return rows written per second of scan time since the scan started
+     */
+    public long getRowsPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : rowsWritten.sum() * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * @return seconds spent writing since the scan started, summed over all threads
+     */
+    public long getWriteSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(writeNanos.sum());
+    }
+
+    private class Stage<T> {
+
+        private final String name;
+        private final Consumer<List<T>> batchWriter;
+        private final Consumer<T> singleWriter;
+        private final Set<T> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        private Stage(String name, Consumer<List<T>> batchWriter, Consumer<T> singleWriter) {
+            this.name = name;
+            this.batchWriter = batchWriter;
+            this.singleWriter = singleWriter;
+        }
+
+        private void add(T entity) {
+            int batchSize = scanConfig.getBatchSize();
+            int size;
+            synchronized (pending) {
+                pending.add(entity);
+                size = pending.size();
+            }
+            if (size < batchSize) {
+                return;
+            }
+            if (size >= batchSize * MAX_QUEUED_BATCHES) {
+                lockForWrite();
+            } else if (!writeLock.tryLock()) {
+                // another thread is writing, it picks up this batch when it is done
+                return;
+            }
+            try {
+                List<T> batch;
+                while (!(batch = drain(batchSize, batchSize)).isEmpty()) {
+                    write(batch);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void flush() {
+            int batchSize = scanConfig.getBatchSize();
+            lockForWrite();
+            try {
+                List<T> batch;
+                while (!(batch = drain(1, batchSize)).isEmpty()) {
+                    write(batch);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void lockForWrite() {
+            if (writeLock.tryLock()) {
+                return;
+            }
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() {
+                        writeLock.lock();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return writeLock.isHeldByCurrentThread() || writeLock.tryLock();
+                    }
+                });
+            } catch (InterruptedException e) {
+                // not thrown by an uninterruptible blocker, but keep the lock contract
+                Thread.currentThread().interrupt();
+                if (!writeLock.isHeldByCurrentThread()) {
+                    writeLock.lock();
+                }
+            }
+        }
+
+        private List<T> drain(int min, int max) {
+            synchronized (pending) {
+                if (pending.size() < min) {
+                    return Collections.emptyList();
+                }
+                List<T> batch = new ArrayList<>(Math.min(max, pending.size()));
+                Iterator<T> it = pending.iterator();
+                while (it.hasNext() && batch.size() < max) {
+                    batch.add(it.next());
+                    it.remove();
+                }
+                return batch;
+            }
+        }
+
+        // only called while holding the write lock, so an entity is never written by two threads at once
+        private void write(List<T> batch) {
+            long start = System.nanoTime();
+            try {
+                batchWriter.accept(batch);
+            } catch (Exception e) {
+                LOG.warn("Could not write batch of {} {}, writing them one by one", batch.size(), name, e);
+                batch.forEach(entity -> {
+                    try {
+                        singleWriter.accept(entity);
+                    } catch (Exception x) {
+                        LOG.warn("Could not write {}", entity, x);
+                    }
+                });
+            }
+            writeNanos.add(System.nanoTime() - start);
+            rowsWritten.add(batch.size());
+        }
+    }
+}
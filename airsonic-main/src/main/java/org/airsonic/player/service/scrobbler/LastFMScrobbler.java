@@ -19,51 +19,62 @@
  */
 package org.airsonic.player.service.scrobbler;
 
+import org.airsonic.player.config.AirsonicHomeConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides services for "audioscrobbling" at www.last.fm.
  * <br/>
  * See https://www.last.fm/api/submissions
+ * <p>
+ * The session of the handshake is kept per user until Last.fm rejects it or the password changes, and submissions
+ * are sent in batches through a {@link ScrobblePipeline}.
  */
 @Component
 public class LastFMScrobbler {
 
     private static final Logger LOG = LoggerFactory.getLogger(LastFMScrobbler.class);
-    private static final int MAX_PENDING_REGISTRATION = 2000;
 
-    private RegistrationThread thread;
-    private final LinkedBlockingQueue<RegistrationData> queue = new LinkedBlockingQueue<RegistrationData>();
-    private final RequestConfig requestConfig = RequestConfig.custom()
-            .setConnectTimeout(15000)
-            .setSocketTimeout(15000)
-            .build();
+    private final CloseableHttpClient httpClient;
+    private final ScrobblePipeline pipeline;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public LastFMScrobbler(AirsonicHomeConfig homeConfig, @Qualifier("ScrobblerHttpClient") CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.pipeline = new ScrobblePipeline("Last.fm", homeConfig.getAirsonicHome().resolve("lastfm-scrobbles.journal"),
+                new LastFMClient());
+    }
 
+    @PreDestroy
+    public void close() {
+        pipeline.close();
+    }
 
     /**
      * Registers the given media file at www.last.fm. This method returns immediately, the actual registration is done
@@ -75,77 +86,60 @@ public class LastFMScrobbler {
      * @param submission Whether this is a submission or a now playing notification.
      * @param time       Event time, or {@code null} to use current time.
      */
-    public synchronized void register(MediaFile mediaFile, String username, String password, boolean submission, Instant time) {
-        if (thread == null) {
-            thread = new RegistrationThread();
-            thread.start();
-        }
-
-        if (queue.size() >= MAX_PENDING_REGISTRATION) {
-            LOG.warn("Last.fm scrobbler queue is full. Ignoring {}", mediaFile);
-            return;
-        }
-
-        RegistrationData registrationData = createRegistrationData(mediaFile, username, password, submission, time);
-        if (registrationData == null) {
-            return;
-        }
-
-        try {
-            queue.put(registrationData);
-        } catch (InterruptedException x) {
-            LOG.warn("Interrupted while queuing Last.fm scrobble: {}", x.toString());
-        }
+    public void register(MediaFile mediaFile, String username, String password, boolean submission, Instant time) {
+        pipeline.register(new ScrobblePipeline.Account(username, username, password), Scrobble.of(mediaFile, time), submission);
     }
 
-    private RegistrationData createRegistrationData(MediaFile mediaFile, String username, String password, boolean submission, Instant time) {
-        RegistrationData reg = new RegistrationData();
-        reg.username = username;
-        reg.password = password;
-        reg.artist = mediaFile.getArtist();
-        reg.album = mediaFile.getAlbumName();
-        reg.title = mediaFile.getTitle();
-        reg.duration = mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration());
-        reg.time = time == null ? Instant.now() : time;
-        reg.submission = submission;
-
-        return reg;
-    }
+    private class LastFMClient implements ScrobblePipeline.Client {
 
-    /**
-     * Scrobbles the given song data at last.fm, using the protocol defined at http://www.last.fm/api/submissions.
-     *
-     * @param registrationData Registration data for the song.
-     */
-    private void scrobble(RegistrationData registrationData) throws URISyntaxException, ClientProtocolException, IOException {
-        if (registrationData == null) {
-            return;
-        }
+        /**
+         * Scrobbles the given songs at last.fm, using the protocol defined at http://www.last.fm/api/submissions.
+         */
+        @Override
+        public void submit(ScrobblePipeline.Account account, List<Scrobble> scrobbles) throws IOException {
+            Session session = getSession(account);
+            String[] lines = registerSubmissions(scrobbles, session);
+            if (lines[0].startsWith("BADSESSION")) {
+                sessions.remove(account.key(), session);
+                lines = registerSubmissions(scrobbles, getSession(account));
+            }
 
-        String[] lines = authenticate(registrationData);
-        if (lines == null) {
-            return;
+            if (lines[0].startsWith("OK")) {
+                LOG.info("Successfully registered {} submissions for user {} at Last.fm: {}",
+                          scrobbles.size(), account.name(), scrobbles.get(scrobbles.size() - 1).time());
+            } else if (lines[0].startsWith("BADSESSION")) {
+                throw new IOException("Invalid Last.fm session");
+            } else {
+                throw new IOException("Last.fm submission failed: " + lines[0]);
+            }
         }
 
-        String sessionId = lines[1];
-        String nowPlayingUrl = lines[2];
-        String submissionUrl = lines[3];
+        @Override
+        public void nowPlaying(ScrobblePipeline.Account account, Scrobble scrobble) throws IOException {
+            Session session = getSession(account);
+            String[] lines = registerNowPlaying(scrobble, session);
+            if (lines[0].startsWith("BADSESSION")) {
+                sessions.remove(account.key(), session);
+                lines = registerNowPlaying(scrobble, getSession(account));
+            }
 
-        if (registrationData.submission) {
-            lines = registerSubmission(registrationData, sessionId, submissionUrl);
-        } else {
-            lines = registerNowPlaying(registrationData, sessionId, nowPlayingUrl);
+            if (lines[0].startsWith("OK")) {
+                LOG.info("Successfully registered now playing for song '{}' for user {} at Last.fm: {}",
+                          scrobble.title(), account.name(), scrobble.time());
+            } else {
+                LOG.warn("Failed to register now playing for song '{}' at Last.fm: {}", scrobble.title(), lines[0]);
+            }
         }
+    }
 
-        if (lines[0].startsWith("FAILED")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm: {}", registrationData.title, lines[0]);
-        } else if (lines[0].startsWith("BADSESSION")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm.  Invalid session.", registrationData.title);
-        } else if (lines[0].startsWith("OK")) {
-            LOG.info("Successfully registered {} for song '{}' for user {} at Last.fm: {}",
-                      registrationData.submission ? "submission" : "now playing",
-                      registrationData.title, registrationData.username, registrationData.time);
+    private Session getSession(ScrobblePipeline.Account account) throws IOException {
+        Session session = sessions.get(account.key());
+        if (session == null || !session.password().equals(account.secret())) {
+            String[] lines = authenticate(account);
+            session = new Session(account.secret(), lines[1], lines[2], lines[3]);
+            sessions.put(account.key(), session);
         }
+        return session;
     }
 
     /**
@@ -156,76 +150,75 @@ public class LastFMScrobbler {
      * Line 2: URL to use for now playing, e.g., "https://post.audioscrobbler.com:80/np_1.2"
      * Line 3: URL to use for submissions, e.g., "https://post2.audioscrobbler.com:80/protocol_1.2"
      * <p/>
-     * If authentication fails, <code>null</code> is returned.
+     * If authentication fails, an {@link IOException} is thrown, so the registration is tried again later.
      */
-    private String[] authenticate(RegistrationData registrationData) throws URISyntaxException, ClientProtocolException, IOException {
+    private String[] authenticate(ScrobblePipeline.Account account) throws IOException {
         String clientId = "sub";
         String clientVersion = "0.1";
         long timestamp = System.currentTimeMillis() / 1000L;
-        String authToken = calculateAuthenticationToken(registrationData.password, timestamp);
-        URI uri = new URI("http",
-                /* userInfo= */ null, "post.audioscrobbler.com", -1,
-                "/",
-                String.format("hs=true&p=1.2.1&c=%s&v=%s&u=%s&t=%s&a=%s",
-                        clientId, clientVersion, registrationData.username,
-                        timestamp, authToken),
-                /* fragment= */ null);
+        String authToken = calculateAuthenticationToken(account.secret(), timestamp);
+        URI uri;
+        try {
+            uri = new URI("http",
+                    /* userInfo= */ null, "post.audioscrobbler.com", -1,
+                    "/",
+                    String.format("hs=true&p=1.2.1&c=%s&v=%s&u=%s&t=%s&a=%s",
+                            clientId, clientVersion, account.name(),
+                            timestamp, authToken),
+                    /* fragment= */ null);
+        } catch (URISyntaxException x) {
+            throw new IOException(x);
+        }
 
         String[] lines = executeGetRequest(uri);
 
         if (lines[0].startsWith("BANNED")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm. Client version is banned.", registrationData.title);
-            return null;
+            throw new IOException("Last.fm client version is banned");
         }
 
         if (lines[0].startsWith("BADAUTH")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm. Wrong username or password.", registrationData.title);
-            return null;
+            throw new IOException("Wrong Last.fm username or password");
         }
 
         if (lines[0].startsWith("BADTIME")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm. Bad timestamp, please check local clock.", registrationData.title);
-            return null;
-        }
-
-        if (lines[0].startsWith("FAILED")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm: {}", registrationData.title, lines[0]);
-            return null;
+            throw new IOException("Bad Last.fm timestamp, please check local clock");
         }
 
-        if (!lines[0].startsWith("OK")) {
-            LOG.warn("Failed to scrobble song '{}' at Last.fm.  Unknown response: {}", registrationData.title, lines[0]);
-            return null;
+        if (!lines[0].startsWith("OK") || lines.length < 4) {
+            throw new IOException("Last.fm handshake failed: " + lines[0]);
         }
 
         return lines;
     }
 
-    private String[] registerSubmission(RegistrationData registrationData, String sessionId, String url) throws UnsupportedEncodingException, ClientProtocolException, IOException {
+    private String[] registerSubmissions(List<Scrobble> scrobbles, Session session) throws UnsupportedEncodingException, ClientProtocolException, IOException {
         Map<String, String> params = new HashMap<String, String>();
-        params.put("s", sessionId);
-        params.put("a[0]", registrationData.artist);
-        params.put("t[0]", registrationData.title);
-        params.put("i[0]", String.valueOf(registrationData.time.getEpochSecond()));
-        params.put("o[0]", "P");
-        params.put("r[0]", "");
-        params.put("l[0]", String.valueOf(registrationData.duration));
-        params.put("b[0]", registrationData.album);
-        params.put("n[0]", "");
-        params.put("m[0]", "");
-        return executePostRequest(url, params);
+        params.put("s", session.id());
+        for (int i = 0; i < scrobbles.size(); i++) {
+            Scrobble scrobble = scrobbles.get(i);
+            params.put("a[" + i + "]", scrobble.artist());
+            params.put("t[" + i + "]", scrobble.title());
+            params.put("i[" + i + "]", String.valueOf(scrobble.time().getEpochSecond()));
+            params.put("o[" + i + "]", "P");
+            params.put("r[" + i + "]", "");
+            params.put("l[" + i + "]", String.valueOf(scrobble.duration()));
+            params.put("b[" + i + "]", scrobble.album());
+            params.put("n[" + i + "]", "");
+            params.put("m[" + i + "]", "");
+        }
+        return executePostRequest(session.submissionUrl(), params);
     }
 
-    private String[] registerNowPlaying(RegistrationData registrationData, String sessionId, String url) throws UnsupportedEncodingException, ClientProtocolException, IOException {
+    private String[] registerNowPlaying(Scrobble scrobble, Session session) throws UnsupportedEncodingException, ClientProtocolException, IOException {
         Map<String, String> params = new HashMap<String, String>();
-        params.put("s", sessionId);
-        params.put("a", registrationData.artist);
-        params.put("t", registrationData.title);
-        params.put("b", registrationData.album);
-        params.put("l", String.valueOf(registrationData.duration));
+        params.put("s", session.id());
+        params.put("a", scrobble.artist());
+        params.put("t", scrobble.title());
+        params.put("b", scrobble.album());
+        params.put("l", String.valueOf(scrobble.duration()));
         params.put("n", "");
         params.put("m", "");
-        return executePostRequest(url, params);
+        return executePostRequest(session.nowPlayingUrl(), params);
     }
 
     // the Audioscrobbler 1.2.1 submission protocol mandates this MD5 construction
@@ -236,9 +229,7 @@ public class LastFMScrobbler {
     }
 
     private String[] executeGetRequest(URI url) throws IOException, ClientProtocolException {
-        HttpGet method = new HttpGet(url);
-        method.setConfig(requestConfig);
-        return executeRequest(method);
+        return executeRequest(new HttpGet(url));
     }
 
     private String[] executePostRequest(String url, Map<String, String> parameters) throws UnsupportedEncodingException, ClientProtocolException, IOException {
@@ -249,63 +240,19 @@ public class LastFMScrobbler {
 
         HttpPost request = new HttpPost(url);
         request.setEntity(new UrlEncodedFormEntity(params, StringUtil.ENCODING_UTF8));
-        request.setConfig(requestConfig);
         return executeRequest(request);
     }
 
     private String[] executeRequest(HttpUriRequest request) throws ClientProtocolException, IOException {
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            ResponseHandler<String> responseHandler = new BasicResponseHandler();
-            String response = client.execute(request, responseHandler);
-            return response.split("\\r?\\n");
-        }
+        ResponseHandler<String> responseHandler = new BasicResponseHandler();
+        String response = httpClient.execute(request, responseHandler);
+        return response.split("\\r?\\n");
     }
 
-    private class RegistrationThread extends Thread {
-        private RegistrationThread() {
-            super("LastFMScrobbler Registration");
-        }
-
-        @Override
-        public void run() {
-            while (true) {
-                RegistrationData registrationData = null;
-                try {
-                    registrationData = queue.take();
-                    scrobble(registrationData);
-                } catch (IOException x) {
-                    handleNetworkError(registrationData, x.toString());
-                } catch (Exception x) {
-                    LOG.warn("Error in Last.fm registration: {}", x.toString());
-                }
-            }
-        }
-
-        private void handleNetworkError(RegistrationData registrationData, String errorMessage) {
-            try {
-                queue.put(registrationData);
-                LOG.info("Last.fm registration for '{}' encountered network error: {}.  Will try again later. In queue: {}",
-                         registrationData.title, errorMessage, queue.size());
-            } catch (InterruptedException x) {
-                LOG.error("Failed to reschedule Last.fm registration for '{}': {}", registrationData.title, x.toString());
-            }
-            try {
-                sleep(60L * 1000L);  // Wait 60 seconds.
-            } catch (InterruptedException x) {
-                LOG.error("Failed to sleep after Last.fm registration failure for '{}': {}", registrationData.title, x.toString());
-            }
-        }
-    }
-
-    private static class RegistrationData {
-        private String username;
-        private String password;
-        private String artist;
-        private String album;
-        private String title;
-        private int duration;
-        private Instant time;
-        public boolean submission;
+    /**
+     * Result of a handshake, valid until Last.fm answers BADSESSION.
+     */
+    private record Session(String password, String id, String nowPlayingUrl, String submissionUrl) {
     }
 
 }
@@ -20,37 +20,53 @@
  */
 package org.airsonic.player.service.scrobbler;
 
+import org.airsonic.player.config.AirsonicHomeConfig;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.util.Util;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Provides services for "audioscrobbling" at listenbrainz.org.
  * <br/>
  * See https://listenbrainz.readthedocs.io/
+ * <p>
+ * Listens are sent in batches through a {@link ScrobblePipeline}, several of them as one import.
  */
 @Component
 public class ListenBrainzScrobbler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ListenBrainzScrobbler.class);
-    private static final int MAX_PENDING_REGISTRATION = 2000;
+    private static final String DEFAULT_URL = "https://api.listenbrainz.org/1/submit-listens";
+
+    private final CloseableHttpClient httpClient;
+    private final ScrobblePipeline pipeline;
 
-    private RegistrationThread thread;
-    private final LinkedBlockingQueue<RegistrationData> queue = new LinkedBlockingQueue<RegistrationData>();
+    public ListenBrainzScrobbler(AirsonicHomeConfig homeConfig, @Qualifier("ScrobblerHttpClient") CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.pipeline = new ScrobblePipeline("ListenBrainz", homeConfig.getAirsonicHome().resolve("listenbrainz-scrobbles.journal"),
+                new ListenBrainzClient());
+    }
+
+    @PreDestroy
+    public void close() {
+        pipeline.close();
+    }
 
     /**
      * Registers the given media file at listenbrainz.org. This method returns
@@ -62,175 +78,96 @@ public class ListenBrainzScrobbler {
      * @param submission Whether this is a submission or a now playing notification.
      * @param time       Event time, or {@code null} to use current time.
      */
-    public synchronized void register(MediaFile mediaFile, String url, String token, boolean submission, Instant time) {
-        if (thread == null) {
-            thread = new RegistrationThread();
-            thread.start();
-        }
-
-        if (queue.size() >= MAX_PENDING_REGISTRATION) {
-            LOG.warn("ListenBrainz scrobbler queue is full. Ignoring '{}'", mediaFile.getTitle());
+    public void register(MediaFile mediaFile, String url, String token, boolean submission, Instant time) {
+        if (token == null) {
             return;
         }
-
-        RegistrationData registrationData = createRegistrationData(mediaFile, url, token, submission, time);
-        if (registrationData == null) {
-            return;
-        }
-
-        try {
-            queue.put(registrationData);
-        } catch (InterruptedException x) {
-            LOG.warn("Interrupted while queuing ListenBrainz scrobble", x);
-        }
+        String submitUrl = url == null ? DEFAULT_URL : url;
+        // the journal only names the account, so the token is hashed
+        String key = submitUrl + "#" + DigestUtils.sha256Hex(token);
+        pipeline.register(new ScrobblePipeline.Account(key, submitUrl, token), Scrobble.of(mediaFile, time), submission);
     }
 
-    private RegistrationData createRegistrationData(MediaFile mediaFile, String url, String token, boolean submission, Instant time) {
-        RegistrationData reg = new RegistrationData();
-        reg.url = url == null ? "https://api.listenbrainz.org/1/submit-listens" : url;
-        reg.token = token;
-        reg.artist = mediaFile.getArtist();
-        reg.album = mediaFile.getAlbumName();
-        reg.title = mediaFile.getTitle();
-        reg.musicBrainzReleaseId = mediaFile.getMusicBrainzReleaseId();
-        reg.musicBrainzRecordingId = mediaFile.getMusicBrainzRecordingId();
-        reg.trackNumber = mediaFile.getTrackNumber();
-        reg.duration = mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration());
-        reg.time = time == null ? Instant.now() : time;
-        reg.submission = submission;
-
-        return reg;
-    }
+    private class ListenBrainzClient implements ScrobblePipeline.Client {
 
-    /**
-     * Scrobbles the given song data at listenbrainz.org, using the protocol defined at https://listenbrainz.readthedocs.io/en/latest/dev/api.html.
-     *
-     * @param registrationData Registration data for the song.
-     */
-    private void scrobble(RegistrationData registrationData) throws ClientProtocolException, IOException {
-        if (registrationData == null || registrationData.token == null) {
-            return;
+        /**
+         * Scrobbles the given songs at listenbrainz.org, using the protocol defined at https://listenbrainz.readthedocs.io/en/latest/dev/api.html.
+         */
+        @Override
+        public void submit(ScrobblePipeline.Account account, List<Scrobble> scrobbles) throws IOException {
+            Map<String, Object> content = new HashMap<String, Object>();
+            content.put("listen_type", scrobbles.size() == 1 ? "single" : "import");
+            List<Map<String, Object>> payloads = new ArrayList<Map<String, Object>>();
+            for (Scrobble scrobble : scrobbles) {
+                Map<String, Object> payload = createPayload(scrobble);
+                payload.put("listened_at", Long.valueOf(scrobble.time().getEpochSecond()));
+                payloads.add(payload);
+            }
+            content.put("payload", payloads);
+
+            int status = executeJsonPostRequest(account.name(), account.secret(), Util.toJson(content));
+            if (status == 200) {
+                LOG.info("Successfully registered {} submissions at ListenBrainz ({}): {}",
+                        scrobbles.size(), account.name(), scrobbles.get(scrobbles.size() - 1).time());
+            } else if (status == 400) {
+                // malformed listens are not accepted on a later attempt either
+                LOG.warn("ListenBrainz ({}) rejected {} submissions", account.name(), scrobbles.size());
+            } else {
+                throw new IOException("ListenBrainz responded with status " + status);
+            }
         }
 
-        if (!submit(registrationData)) {
-            LOG.warn("Failed to scrobble song '{}' at ListenBrainz ({}).", registrationData.title, registrationData.url);
-        } else {
-            LOG.info("Successfully registered {} for song '{}' at ListenBrainz ({}): {}",
-                    (registrationData.submission ? "submission" : "now playing"), registrationData.title,
-                    registrationData.url, registrationData.time);
+        @Override
+        public void nowPlaying(ScrobblePipeline.Account account, Scrobble scrobble) throws IOException {
+            Map<String, Object> content = new HashMap<String, Object>();
+            content.put("listen_type", "playing_now");
+            content.put("payload", List.of(createPayload(scrobble)));
+
+            if (executeJsonPostRequest(account.name(), account.secret(), Util.toJson(content)) == 200) {
+                LOG.info("Successfully registered now playing for song '{}' at ListenBrainz ({}): {}",
+                        scrobble.title(), account.name(), scrobble.time());
+            } else {
+                LOG.warn("Failed to register now playing for song '{}' at ListenBrainz ({}).", scrobble.title(), account.name());
+            }
         }
     }
-    /**
-     * Returns if submission succeeds.
-     */
-    private boolean submit(RegistrationData registrationData) throws ClientProtocolException, IOException {
+
+    private Map<String, Object> createPayload(Scrobble scrobble) {
         Map<String, Object> additional_info = new HashMap<String, Object>();
-        additional_info.computeIfAbsent("release_mbid", k -> registrationData.musicBrainzReleaseId);
-        additional_info.computeIfAbsent("recording_mbid", k -> registrationData.musicBrainzRecordingId);
-        additional_info.computeIfAbsent("tracknumber", k -> registrationData.trackNumber);
+        additional_info.computeIfAbsent("release_mbid", k -> scrobble.musicBrainzReleaseId());
+        additional_info.computeIfAbsent("recording_mbid", k -> scrobble.musicBrainzRecordingId());
+        additional_info.computeIfAbsent("tracknumber", k -> scrobble.trackNumber());
 
         Map<String, Object> track_metadata = new HashMap<String, Object>();
         if (additional_info.size() > 0) {
             track_metadata.put("additional_info", additional_info);
         }
-        track_metadata.computeIfAbsent("artist_name", k -> registrationData.artist);
-        track_metadata.computeIfAbsent("track_name", k -> registrationData.title);
-        track_metadata.computeIfAbsent("release_name", k -> registrationData.album);
+        track_metadata.computeIfAbsent("artist_name", k -> scrobble.artist());
+        track_metadata.computeIfAbsent("track_name", k -> scrobble.title());
+        track_metadata.computeIfAbsent("release_name", k -> scrobble.album());
 
         Map<String, Object> payload = new HashMap<String, Object>();
         if (track_metadata.size() > 0) {
             payload.put("track_metadata", track_metadata);
         }
-
-        Map<String, Object> content = new HashMap<String, Object>();
-
-        if (registrationData.submission) {
-            payload.put("listened_at", Long.valueOf(registrationData.time.getEpochSecond()));
-            content.put("listen_type", "single");
-        } else {
-            content.put("listen_type", "playing_now");
-        }
-
-        List<Map<String, Object>> payloads = new ArrayList<Map<String, Object>>();
-        payloads.add(payload);
-        content.put("payload", payloads);
-
-        String json = Util.toJson(content);
-
-        return executeJsonPostRequest(registrationData.url, registrationData.token, json);
+        return payload;
     }
 
-    private boolean executeJsonPostRequest(String url, String token, String json) throws ClientProtocolException, IOException {
+    private int executeJsonPostRequest(String url, String token, String json) throws ClientProtocolException, IOException {
         HttpPost request = new HttpPost(url);
         request.setEntity(new StringEntity(json, "UTF-8"));
         request.setHeader("Authorization", "token " + token);
         request.setHeader("Content-type", "application/json; charset=utf-8");
 
-        return executeRequest(request);
-    }
-
-    private boolean executeRequest(HttpUriRequest request) throws ClientProtocolException, IOException {
-        try (CloseableHttpClient client = HttpClients.createDefault();
-                CloseableHttpResponse resp = client.execute(request);) {
-            boolean ok = resp.getStatusLine().getStatusCode() == 200;
-            if (!ok) {
-                LOG.warn("Failed to execute ListenBrainz request: {}", resp.getEntity().toString());
+        try (CloseableHttpResponse resp = httpClient.execute(request)) {
+            int status = resp.getStatusLine().getStatusCode();
+            // read fully, so the connection goes back to the pool
+            String body = resp.getEntity() == null ? "" : EntityUtils.toString(resp.getEntity());
+            if (status != 200) {
+                LOG.warn("Failed to execute ListenBrainz request: {}", body);
             }
-
-            return ok;
+            return status;
         }
     }
 
-    private class RegistrationThread extends Thread {
-        private RegistrationThread() {
-            super("ListenBrainzScrobbler Registration");
-        }
-
-        @Override
-        public void run() {
-            while (true) {
-                RegistrationData registrationData = null;
-                try {
-                    registrationData = queue.take();
-                    scrobble(registrationData);
-                } catch (ClientProtocolException x) {
-                    LOG.warn("Failed to scrobble '{}' to ListenBrainz.", registrationData == null ? null : registrationData.title, x);
-                } catch (IOException x) {
-                    handleNetworkError(registrationData, x);
-                } catch (Exception x) {
-                    LOG.warn("Error in ListenBrainz registration: {}", x.toString());
-                }
-            }
-        }
-
-        private void handleNetworkError(RegistrationData registrationData, Exception error) {
-            try {
-                queue.put(registrationData);
-                LOG.info("ListenBrainz registration for '{}' encountered network error. Will try again later. In queue: {}", registrationData.title, queue.size(), error);
-            } catch (InterruptedException x) {
-                LOG.error("Failed to reschedule ListenBrainz registration for '{}'", registrationData.title, x);
-            }
-            try {
-                sleep(60L * 1000L);  // Wait 60 seconds.
-            } catch (InterruptedException x) {
-                LOG.error("Failed to sleep after ListenBrainz registration failure for '{}'", registrationData.title, x);
-            }
-        }
-    }
-
-    @SuppressWarnings("unused")
-    private static class RegistrationData {
-        private String url;
-        private String token;
-        private String artist;
-        private String album;
-        private String title;
-        private String musicBrainzReleaseId;
-        private String musicBrainzRecordingId;
-        private Integer trackNumber;
-        private int duration;
-        private Instant time;
-        public boolean submission;
-    }
-
 }
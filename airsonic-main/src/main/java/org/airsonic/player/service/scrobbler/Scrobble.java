@@ -0,0 +1,50 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scrobbler;
+
+import org.airsonic.player.domain.MediaFile;
+
+import java.time.Instant;
+
+/**
+ * A played song, as submitted to a scrobble service. Holds no credentials, so it can be written to a journal.
+ *
+ * @param artist                 Artist name.
+ * @param album                  Album name.
+ * @param title                  Song title.
+ * @param musicBrainzReleaseId   MusicBrainz release id, or {@code null}.
+ * @param musicBrainzRecordingId MusicBrainz recording id, or {@code null}.
+ * @param trackNumber            Track number, or {@code null}.
+ * @param duration               Duration in seconds.
+ * @param time                   When the song was played.
+ */
+public record Scrobble(String artist, String album, String title, String musicBrainzReleaseId,
+        String musicBrainzRecordingId, Integer trackNumber, int duration, Instant time) {
+
+    /**
+     * @param mediaFile The played media file.
+     * @param time      Event time, or {@code null} to use current time.
+     */
+    public static Scrobble of(MediaFile mediaFile, Instant time) {
+        return new Scrobble(mediaFile.getArtist(), mediaFile.getAlbumName(), mediaFile.getTitle(),
+                mediaFile.getMusicBrainzReleaseId(), mediaFile.getMusicBrainzRecordingId(), mediaFile.getTrackNumber(),
+                mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration()),
+                time == null ? Instant.now() : time);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scrobbler;
+
+import org.airsonic.player.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only file of the scrobbles waiting to be submitted, so they survive a restart.
+ *
+ * <p>Each line either adds an entry ({@code +} followed by the entry as JSON) or removes submitted entries
+ * ({@code -} followed by their sequence numbers). The file is rewritten with only the pending entries when it is
+ * loaded and once the removed entries outnumber the pending ones. A line cut short by a crash is skipped on load.
+ * Credentials are never written; entries only name their account.
+ */
+class ScrobbleJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrobbleJournal.class);
+    private static final int COMPACT_THRESHOLD = 100;
+
+    /**
+     * @param seq      Sequence number, unique within the journal.
+     * @param account  Key of the account the scrobble is submitted to.
+     * @param scrobble The scrobble.
+     */
+    record Entry(long seq, String account, Scrobble scrobble) {
+    }
+
+    private final Path file;
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private long nextSeq;
+    private int removedSinceCompact;
+
+    ScrobbleJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the pending entries from the file, and rewrites it with only those.
+     *
+     * @return The pending entries, oldest first.
+     */
+    synchronized List<Entry> load() {
+        pending.clear();
+        if (Files.exists(file)) {
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    readLine(line);
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to read scrobble journal {}", file, e);
+            }
+        }
+        compact();
+        return new ArrayList<>(pending.values());
+    }
+
+    private void readLine(String line) {
+        if (line.startsWith("+")) {
+            Entry entry = Util.fromJson(line.substring(1), Entry.class);
+            if (entry == null || entry.scrobble() == null) {
+                LOG.warn("Skipping unreadable line of scrobble journal {}", file);
+                return;
+            }
+            pending.put(entry.seq(), entry);
+            nextSeq = Math.max(nextSeq, entry.seq() + 1);
+        } else if (line.startsWith("-")) {
+            for (String seq : line.substring(1).split(",")) {
+                try {
+                    pending.remove(Long.parseLong(seq.trim()));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Skipping unreadable line of scrobble journal {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a scrobble to the journal.
+     *
+     * @param account  Key of the account the scrobble is submitted to.
+     * @param scrobble The scrobble.
+     * @return The added entry.
+     */
+    synchronized Entry append(String account, Scrobble scrobble) {
+        Entry entry = new Entry(nextSeq++, account, scrobble);
+        pending.put(entry.seq(), entry);
+        write("+" + Util.toJson(entry));
+        return entry;
+    }
+
+    /**
+     * Removes submitted or discarded entries from the journal.
+     *
+     * @param entries The entries to remove.
+     */
+    synchronized void remove(Collection<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        entries.forEach(entry -> pending.remove(entry.seq()));
+        removedSinceCompact += entries.size();
+        if (removedSinceCompact < COMPACT_THRESHOLD || removedSinceCompact <= pending.size() || !compact()) {
+            write("-" + entries.stream().map(entry -> String.valueOf(entry.seq())).collect(Collectors.joining(",")));
+        }
+    }
+
+    private void write(String line) {
+        try {
+            Files.writeString(file, line + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOG.warn("Failed to write scrobble journal {}", file, e);
+        }
+    }
+
+    private boolean compact() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, pending.values().stream().map(entry -> "+" + Util.toJson(entry)).collect(Collectors.toList()),
+                    StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            removedSinceCompact = 0;
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to rewrite scrobble journal {}", file, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scrobbler;
+
+import org.airsonic.player.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Submits the scrobbles of one scrobble service for all accounts.
+ *
+ * <p>Scrobbles are queued per account and written to a {@link ScrobbleJournal} until submitted, in batches of up to
+ * {@value #BATCH_SIZE}. When an account fails with an {@link IOException}, only that account backs off, from
+ * {@link #MIN_BACKOFF} doubling up to {@link #MAX_BACKOFF}; new credentials for it end the backoff. Now playing
+ * notifications are not journaled, and only the latest one of an account is kept.
+ *
+ * <p>Credentials are only held in memory, so scrobbles read from the journal at startup wait until their account
+ * registers again.
+ */
+class ScrobblePipeline implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrobblePipeline.class);
+
+    static final int BATCH_SIZE = 50;
+    static final Duration MIN_BACKOFF = Duration.ofSeconds(30);
+    static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    private static final int MAX_PENDING_REGISTRATION = 2000;
+
+    /**
+     * An account at the scrobble service.
+     *
+     * @param key    Identifies the account in the journal. Must not contain credentials.
+     * @param name   User name or URL of the account, for the client and for logging.
+     * @param secret Password or token of the account.
+     */
+    record Account(String key, String name, String secret) {
+    }
+
+    /**
+     * Talks to the scrobble service.
+     */
+    interface Client {
+
+        /**
+         * Submits played songs. Returns normally when they are submitted, or when the service rejected them for good.
+         *
+         * @throws IOException if the songs should be submitted again later.
+         */
+        void submit(Account account, List<Scrobble> scrobbles) throws IOException;
+
+        /**
+         * Notifies the service of the song being played.
+         *
+         * @throws IOException if the notification failed.
+         */
+        void nowPlaying(Account account, Scrobble scrobble) throws IOException;
+    }
+
+    private final String service;
+    private final ScrobbleJournal journal;
+    private final Client client;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, AccountQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * @param service     Name of the scrobble service, for logging.
+     * @param journalFile File of the journal.
+     * @param client      Client of the scrobble service.
+     */
+    ScrobblePipeline(String service, Path journalFile, Client client) {
+        this(service, new ScrobbleJournal(journalFile), client,
+                Executors.newSingleThreadScheduledExecutor(Util.getDaemonThreadfactory(service + "-scrobbler-")));
+    }
+
+    // Package-private for tests: lets a fixture inject a controllable executor.
+    ScrobblePipeline(String service, ScrobbleJournal journal, Client client, ScheduledExecutorService executor) {
+        this.service = service;
+        this.journal = journal;
+        this.client = client;
+        this.executor = executor;
+        for (ScrobbleJournal.Entry entry : journal.load()) {
+            queues.computeIfAbsent(entry.account(), k -> new AccountQueue()).pending.add(entry);
+        }
+        if (!queues.isEmpty()) {
+            LOG.info("{} scrobbles of {} accounts are waiting to be submitted to {}",
+                    queues.values().stream().mapToInt(queue -> queue.pending.size()).sum(), queues.size(), service);
+        }
+    }
+
+    /**
+     * Queues a scrobble. Returns immediately, the scrobble is submitted by a separate thread.
+     *
+     * @param account    The account.
+     * @param scrobble   The scrobble.
+     * @param submission Whether this is a submission or a now playing notification.
+     */
+    void register(Account account, Scrobble scrobble, boolean submission) {
+        AccountQueue queue = queues.computeIfAbsent(account.key(), k -> new AccountQueue());
+        synchronized (queue) {
+            if (!account.equals(queue.account)) {
+                queue.account = account;
+                queue.failures = 0;
+                if (queue.retry != null) {
+                    queue.retry.cancel(false);
+                    queue.retry = null;
+                }
+            }
+            if (submission) {
+                if (queue.pending.size() >= MAX_PENDING_REGISTRATION) {
+                    LOG.warn("{} scrobbler queue of {} is full. Ignoring '{}'", service, account.name(), scrobble.title());
+                    return;
+                }
+                queue.pending.add(journal.append(account.key(), scrobble));
+            } else if (queue.retry == null) {
+                queue.nowPlaying = scrobble;
+            }
+            if (queue.retry != null || queue.queued) {
+                return;
+            }
+            queue.queued = true;
+        }
+        try {
+            executor.execute(() -> drain(queue, false));
+        } catch (RejectedExecutionException e) {
+            // closing down; the submissions are in the journal
+        }
+    }
+
+    private void drain(AccountQueue queue, boolean retry) {
+        Account account;
+        Scrobble nowPlaying;
+        synchronized (queue) {
+            if (retry) {
+                queue.retry = null;
+            } else {
+                queue.queued = false;
+                if (queue.retry != null) {
+                    // failed after this drain was queued
+                    return;
+                }
+            }
+            account = queue.account;
+            nowPlaying = queue.nowPlaying;
+            queue.nowPlaying = null;
+        }
+        if (account == null) {
+            return;
+        }
+
+        if (nowPlaying != null) {
+            try {
+                client.nowPlaying(account, nowPlaying);
+            } catch (IOException | RuntimeException e) {
+                LOG.info("Failed to register now playing '{}' for {} at {}: {}", nowPlaying.title(), account.name(), service, e.toString());
+            }
+        }
+
+        try {
+            List<ScrobbleJournal.Entry> batch;
+            while (!(batch = nextBatch(queue)).isEmpty()) {
+                try {
+                    client.submit(account, batch.stream().map(ScrobbleJournal.Entry::scrobble).collect(Collectors.toList()));
+                } catch (RuntimeException e) {
+                    LOG.warn("Error in {} registration for {}. Discarding {} scrobbles", service, account.name(), batch.size(), e);
+                }
+                synchronized (queue) {
+                    // only this thread takes entries, so the batch is still at the head
+                    batch.forEach(entry -> queue.pending.pollFirst());
+                    queue.failures = 0;
+                }
+                journal.remove(batch);
+            }
+        } catch (IOException e) {
+            backOff(queue, account, e);
+        }
+    }
+
+    private List<ScrobbleJournal.Entry> nextBatch(AccountQueue queue) {
+        synchronized (queue) {
+            List<ScrobbleJournal.Entry> batch = new ArrayList<>(Math.min(BATCH_SIZE, queue.pending.size()));
+            Iterator<ScrobbleJournal.Entry> it = queue.pending.iterator();
+            while (it.hasNext() && batch.size() < BATCH_SIZE) {
+                batch.add(it.next());
+            }
+            return batch;
+        }
+    }
+
+    private void backOff(AccountQueue queue, Account account, IOException error) {
+        Duration delay;
+        int pending;
+        synchronized (queue) {
+            if (!account.equals(queue.account)) {
+                // new credentials arrived while submitting, so try them right away
+                if (!queue.queued && queue.retry == null) {
+                    queue.queued = true;
+                    execute(() -> drain(queue, false), Duration.ZERO);
+                }
+                return;
+            }
+            queue.failures++;
+            delay = backoff(queue.failures);
+            queue.retry = execute(() -> drain(queue, true), delay);
+            pending = queue.pending.size();
+        }
+        LOG.info("{} registration for {} encountered error: {}. Will try again in {}s. In queue: {}",
+                service, account.name(), error.toString(), delay.toSeconds(), pending);
+    }
+
+    static Duration backoff(int failures) {
+        Duration delay = MIN_BACKOFF.multipliedBy(1L << Math.min(failures - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private ScheduledFuture<?> execute(Runnable task, Duration delay) {
+        try {
+            return executor.schedule(task, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closing down; the submissions are in the journal
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static class AccountQueue {
+        // null until the account registers, for scrobbles read from the journal
+        private Account account;
+        private final Deque<ScrobbleJournal.Entry> pending = new ArrayDeque<>();
+        private Scrobble nowPlaying;
+        private int failures;
+        // set while a drain is waiting in the executor
+        private boolean queued;
+        // set while backing off
+        private ScheduledFuture<?> retry;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.search;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks a uniform random sample of the documents matching a query, in random order.
+ *
+ * <p>Matches are neither scored nor sorted. Each collector keeps a reservoir of at most {@code count} doc ids, so
+ * memory grows with the sample rather than with the matches. The reservoirs of the slices of a concurrent search are
+ * merged in proportion to the number of matches each slice saw.
+ */
+class RandomSampleCollectorManager implements CollectorManager<RandomSampleCollectorManager.RandomSampleCollector, int[]> {
+
+    private final int count;
+
+    RandomSampleCollectorManager(int count) {
+        this.count = Math.max(0, count);
+    }
+
+    @Override
+    public RandomSampleCollector newCollector() {
+        return new RandomSampleCollector(count);
+    }
+
+    @Override
+    public int[] reduce(Collection<RandomSampleCollector> collectors) {
+        List<RandomSampleCollector> slices = List.copyOf(collectors);
+        long[] unpicked = new long[slices.size()];
+        long total = 0;
+        int available = 0;
+        for (int i = 0; i < unpicked.length; i++) {
+            unpicked[i] = slices.get(i).seen;
+            total += unpicked[i];
+            available += slices.get(i).size;
+        }
+
+        // pick a slice in proportion to its unpicked matches, then a random doc of its reservoir
+        int[] result = new int[Math.min(count, available)];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int n = 0; n < result.length; n++) {
+            long r = random.nextLong(total);
+            int i = 0;
+            while (r >= unpicked[i]) {
+                r -= unpicked[i++];
+            }
+            RandomSampleCollector slice = slices.get(i);
+            int pos = random.nextInt(slice.size);
+            result[n] = slice.sample[pos];
+            slice.sample[pos] = slice.sample[--slice.size];
+            unpicked[i]--;
+            total--;
+        }
+        return result;
+    }
+
+    static class RandomSampleCollector extends SimpleCollector {
+
+        private final int count;
+        private int[] sample = new int[0];
+        private int size;
+        private long seen;
+        private int docBase;
+
+        private RandomSampleCollector(int count) {
+            this.count = count;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public void collect(int doc) {
+            if (size < count) {
+                if (size == sample.length) {
+                    sample = Arrays.copyOf(sample, (int) Math.min(count, Math.max(16L, sample.length * 2L)));
+                }
+                sample[size++] = docBase + doc;
+            } else {
+                long j = ThreadLocalRandom.current().nextLong(seen + 1);
+                if (j < count) {
+                    sample[(int) j] = docBase + doc;
+                }
+            }
+            seen++;
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+}
@@ -33,7 +33,6 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.util.*;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 import static org.airsonic.player.service.search.IndexType.*;
 import static org.springframework.util.ObjectUtils.isEmpty;
@@ -50,9 +49,6 @@ public class SearchServiceImpl implements SearchService {
     @Autowired
     private SearchServiceUtilities util;
 
-    // TODO Should be changed to SecureRandom?
-    private final Random random = new Random(System.currentTimeMillis());
-
     /**
      * Extracts the integer value from a TotalHits string.
      * The string is expected to be in the format "123 hits" or "123+ hits".
@@ -124,6 +120,10 @@ public class SearchServiceImpl implements SearchService {
     /**
      * Common processing of random method.
      *
+     * The index may still contain documents of entries that were removed from the database since the last scan, which
+     * the callback drops. More documents than requested are sampled, and the sample is drawn again with twice the size
+     * until enough documents resolve or all matches were sampled.
+     *
      * @param count Number of albums to return.
      * @param id2ListCallBack Callback to get D from id and store it in List
      */
@@ -131,21 +131,23 @@ public class SearchServiceImpl implements SearchService {
             int count, IndexSearcher searcher, Query query, BiConsumer<List<D>, Integer> id2ListCallBack)
             throws IOException {
 
-        List<Integer> docs = Arrays
-                .stream(searcher.search(query, Integer.MAX_VALUE).scoreDocs)
-                .map(sd -> sd.doc)
-                .collect(Collectors.toList());
-
-        List<D> result = new ArrayList<>();
         StoredFields storedFields = searcher.storedFields();
-        while (!docs.isEmpty() && result.size() < count) {
-            int randomPos = random.nextInt(docs.size());
-            Document document = storedFields.document(docs.get(randomPos));
-            id2ListCallBack.accept(result, util.getId.apply(document));
-            docs.remove(randomPos);
-        }
+        int sampleSize = (int) Math.min(Integer.MAX_VALUE, count * 2L);
+        while (true) {
+            int[] docs = searcher.search(query, new RandomSampleCollectorManager(sampleSize));
+
+            // the sample is in random order, so its head is a random sample as well
+            List<D> result = new ArrayList<>(Math.min(count, docs.length));
+            for (int i = 0; i < docs.length && result.size() < count; i++) {
+                Document document = storedFields.document(docs[i]);
+                id2ListCallBack.accept(result, util.getId.apply(document));
+            }
 
-        return result;
+            if (result.size() >= count || docs.length < sampleSize || sampleSize == Integer.MAX_VALUE) {
+                return result;
+            }
+            sampleSize = (int) Math.min(Integer.MAX_VALUE, sampleSize * 2L);
+        }
     }
 
     @Override
@@ -0,0 +1,381 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.service.TranscodingService.Parameters;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the output of completed transcodes on disk, so replaying or seeking in a transcoded track doesn't run the
+ * transcoder again.
+ *
+ * <p>Entries are keyed by media file, its modification time, the transcoding and the bit rate. They are written
+ * while the transcode is streamed to the first listener and only become visible once the transcoder has exited
+ * successfully. Incomplete, empty and failed output is discarded. The cache is bounded by the total size of its files; the least recently used files
+ * are deleted first. The modification time of a file is its last use, so the order survives restarts.
+ *
+ * <p>Video transcodes are not cached, as they depend on the requested time offset and size.
+ */
+@Component
+public class TranscodeCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TranscodeCache.class);
+
+    private static final String DIRECTORY_NAME = "transcodecache";
+    private static final String PART_SUFFIX = ".part";
+    // how long the end of the output may precede the exit of the transcoder
+    private static final long EXIT_TIMEOUT_SECONDS = 10;
+
+    private final AirsonicTranscodeConfig transcodeConfig;
+    private final AirsonicHomeConfig homeConfig;
+
+    // access ordered, so iteration starts with the least recently used file
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    private long totalSize;
+    private Path directory;
+
+    public TranscodeCache(AirsonicTranscodeConfig transcodeConfig, AirsonicHomeConfig homeConfig) {
+        this.transcodeConfig = transcodeConfig;
+        this.homeConfig = homeConfig;
+    }
+
+    /**
+     * Returns the length of the cached output of the given transcode.
+     *
+     * @param parameters transcode parameters
+     * @return length in bytes, or {@code null} if the output is not cached
+     */
+    public Long getLength(Parameters parameters) {
+        String name = fileName(parameters);
+        if (name == null || !isEnabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            load();
+            return entries.get(name);
+        }
+    }
+
+    /**
+     * Opens the cached output of the given transcode.
+     *
+     * @param parameters transcode parameters
+     * @return the cached output, or {@code null} if it is not cached
+     */
+    public InputStream open(Parameters parameters) {
+        String name = fileName(parameters);
+        if (name == null || !isEnabled()) {
+            return null;
+        }
+        Path file;
+        synchronized (entries) {
+            load();
+            if (entries.get(name) == null) {
+                return null;
+            }
+            file = directory.resolve(name);
+        }
+        try {
+            InputStream in = Files.newInputStream(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            LOG.debug("Serving {} from the transcode cache", name);
+            return in;
+        } catch (NoSuchFileException e) {
+            LOG.debug("{} was removed from the transcode cache", name);
+            remove(name);
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Could not read {} from the transcode cache", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Copies the given transcoder output into the cache while it is read. Once it has been read completely and the
+     * transcoder has exited successfully, it is added to the cache. If it is closed earlier, is empty or the transcoder
+     * failed, the copy is discarded.
+     *
+     * @param parameters transcode parameters
+     * @param transcoded transcoder output
+     * @param succeeded  completes with whether the transcoder exited successfully
+     * @return stream to read the transcoder output from. Might be {@code transcoded} itself if the output can't be
+     *         cached, or is already being cached by someone else.
+     */
+    public InputStream tee(Parameters parameters, InputStream transcoded, CompletableFuture<Boolean> succeeded) {
+        String name = fileName(parameters);
+        if (name == null || !isEnabled() || !writing.add(name)) {
+            return transcoded;
+        }
+        try {
+            Path part;
+            synchronized (entries) {
+                load();
+                part = Files.createTempFile(directory, name, PART_SUFFIX);
+            }
+            return new TeeInputStream(transcoded, name, part, succeeded);
+        } catch (IOException e) {
+            writing.remove(name);
+            LOG.warn("Could not add {} to the transcode cache", name, e);
+            return transcoded;
+        }
+    }
+
+    /**
+     * @return total size of the cached files in bytes
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return totalSize;
+        }
+    }
+
+    private boolean isEnabled() {
+        return transcodeConfig.getCacheSize() > 0;
+    }
+
+    /**
+     * @return name of the cache file of the given transcode, or {@code null} if it can't be cached
+     */
+    static String fileName(Parameters parameters) {
+        MediaFile mediaFile = parameters.getMediaFile();
+        Transcoding transcoding = parameters.getTranscoding();
+        if (transcoding == null || mediaFile.getId() == null || mediaFile.getChanged() == null
+                || parameters.getVideoTranscodingSettings() != null) {
+            return null;
+        }
+        // downsampling and splitting aren't stored transcodings, and commands of stored ones can be edited
+        String transcodingId = Objects.toString(transcoding.getId(), transcoding.getName());
+        int commands = Objects.hash(transcoding.getStep1(), transcoding.getStep2(), transcoding.getStep3());
+        String suffix = Objects.toString(transcoding.getTargetFormat(), "").replaceAll("[^A-Za-z0-9]", "");
+        return mediaFile.getId() + "-" + mediaFile.getChanged().toEpochMilli() + "-"
+                + transcodingId.replaceAll("[^A-Za-z0-9]", "") + "-" + Integer.toHexString(commands) + "-"
+                + parameters.getMaxBitRate() + "." + suffix;
+    }
+
+    // must hold the entries lock
+    private void load() {
+        if (directory != null) {
+            return;
+        }
+        Path dir = homeConfig.getAirsonicHome().resolve(DIRECTORY_NAME);
+        try {
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list.collect(Collectors.toList());
+            }
+            Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(PART_SUFFIX)) {
+                    // left over by a transcode that was running when the server stopped
+                    FileUtil.delete(file);
+                } else {
+                    attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+                }
+            }
+            attributes.entrySet().stream()
+                    .sorted(Comparator.comparing(e -> e.getValue().lastModifiedTime()))
+                    .forEach(e -> {
+                        entries.put(e.getKey().getFileName().toString(), e.getValue().size());
+                        totalSize += e.getValue().size();
+                    });
+            LOG.info("Transcode cache {} holds {} files of {} MB", dir, entries.size(), totalSize / 1024 / 1024);
+        } catch (IOException e) {
+            LOG.warn("Could not read transcode cache {}", dir, e);
+        }
+        directory = dir;
+        evict();
+    }
+
+    private void add(String name, Path part, long size) {
+        synchronized (entries) {
+            try {
+                Files.move(part, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.warn("Could not add {} to the transcode cache", name, e);
+                FileUtil.delete(part);
+                return;
+            }
+            Long previous = entries.put(name, size);
+            totalSize += size - (previous == null ? 0 : previous);
+            evict();
+        }
+        LOG.debug("Added {} to the transcode cache", name);
+    }
+
+    private void remove(String name) {
+        synchronized (entries) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalSize -= size;
+            }
+        }
+    }
+
+    // must hold the entries lock
+    private void evict() {
+        long maxSize = transcodeConfig.getCacheSize() * 1024L * 1024L;
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            // files being read can't be deleted on Windows. They are picked up again on the next start.
+            FileUtil.delete(directory.resolve(eldest.getKey()));
+            totalSize -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private class TeeInputStream extends FilterInputStream {
+
+        private final String name;
+        private final Path part;
+        private final OutputStream out;
+        private final CompletableFuture<Boolean> succeeded;
+        private long size;
+        private boolean done;
+
+        private TeeInputStream(InputStream in, String name, Path part, CompletableFuture<Boolean> succeeded)
+                throws IOException {
+            super(in);
+            this.name = name;
+            this.part = part;
+            this.succeeded = succeeded;
+            this.out = new BufferedOutputStream(Files.newOutputStream(part));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (done) {
+                return n;
+            }
+            try {
+                if (n == -1) {
+                    // waits for the exit before the end is passed on, as the reader stops the transcoder by closing
+                    if (size > 0 && hasSucceeded()) {
+                        done = true;
+                        out.close();
+                        writing.remove(name);
+                        add(name, part, size);
+                    } else {
+                        LOG.debug("Not adding {} to the transcode cache, the transcoder failed", name);
+                        discard();
+                    }
+                } else {
+                    out.write(b, off, n);
+                    size += n;
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not add {} to the transcode cache", name, e);
+                discard();
+            }
+            return n;
+        }
+
+        // everything has to pass through the cache file
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                discard();
+            }
+        }
+
+        private boolean hasSucceeded() {
+            try {
+                return succeeded.get(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+
+        private void discard() {
+            if (!done) {
+                done = true;
+                FileUtil.closeQuietly(out);
+                FileUtil.delete(part);
+                writing.remove(name);
+            }
+        }
+    }
+}
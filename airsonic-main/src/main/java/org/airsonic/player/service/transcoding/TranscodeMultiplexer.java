@@ -0,0 +1,256 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.domain.VideoTranscodingSettings;
+import org.airsonic.player.io.PipeStreams.SharedPipedInputStream;
+import org.airsonic.player.io.PipeStreams.SharedPipedOutputStream;
+import org.airsonic.player.service.TranscodingService.Parameters;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves identical transcodes requested by several players from a single transcoder process.
+ *
+ * <p>Transcodes are identified by the media file and everything that goes into the transcoder command line. The
+ * output of the process is written to a {@link SharedPipedOutputStream}, from which every listener reads on its own.
+ * Listeners that ask for a transcode that is already running join it as long as its beginning is still buffered, so
+ * they get the complete stream. Otherwise a new process is started. The process is stopped once its last listener
+ * has left.
+ */
+@Component
+public class TranscodeMultiplexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TranscodeMultiplexer.class);
+
+    /**
+     * Starts a transcoder process.
+     */
+    @FunctionalInterface
+    public interface Transcoder {
+        InputStream start() throws IOException;
+    }
+
+    private final AirsonicTranscodeConfig transcodeConfig;
+    private final Map<Key, SharedTranscode> transcodes = new ConcurrentHashMap<>();
+
+    public TranscodeMultiplexer(AirsonicTranscodeConfig transcodeConfig) {
+        this.transcodeConfig = transcodeConfig;
+    }
+
+    /**
+     * Returns the output of the transcode described by the given parameters, sharing the process with other
+     * listeners of the same transcode.
+     *
+     * @param parameters transcode parameters
+     * @param transcoder starts the process if no shared one can be joined
+     * @return stream of the transcoded data. Closing it leaves the shared transcode.
+     * @throws IOException if the process could not be started
+     */
+    public InputStream open(Parameters parameters, Transcoder transcoder) throws IOException {
+        Key key = transcodeConfig.isShareStreams() ? Key.of(parameters) : null;
+        if (key == null) {
+            return transcoder.start();
+        }
+        while (true) {
+            SharedTranscode transcode = transcodes.computeIfAbsent(key, SharedTranscode::new);
+            InputStream in = transcode.join(transcoder);
+            if (in != null) {
+                return in;
+            }
+            // too late to join, start over
+            transcodes.remove(key, transcode);
+        }
+    }
+
+    /**
+     * @return number of transcoder processes currently shared
+     */
+    public int getSharedTranscodeCount() {
+        return transcodes.size();
+    }
+
+    /**
+     * Identifies a transcode. Two transcodes with equal keys produce the same output.
+     */
+    record Key(int mediaFileId, Instant changed, String step1, String step2, String step3, Integer maxBitRate,
+            Integer width, Integer height, Integer timeOffset, Double duration, Integer audioTrackIndex) {
+
+        /**
+         * @return key of the transcode, or {@code null} if it can't be shared
+         */
+        static Key of(Parameters parameters) {
+            MediaFile mediaFile = parameters.getMediaFile();
+            Transcoding transcoding = parameters.getTranscoding();
+            if (transcoding == null || mediaFile.getId() == null) {
+                return null;
+            }
+            VideoTranscodingSettings video = parameters.getVideoTranscodingSettings();
+            if (video == null) {
+                return new Key(mediaFile.getId(), mediaFile.getChanged(), transcoding.getStep1(), transcoding.getStep2(),
+                        transcoding.getStep3(), parameters.getMaxBitRate(), null, null, null, null, null);
+            }
+            if (video.getHlsSegmentFilename() != null || video.getOutputFilename() != null) {
+                // writes to files of its own
+                return null;
+            }
+            return new Key(mediaFile.getId(), mediaFile.getChanged(), transcoding.getStep1(), transcoding.getStep2(),
+                    transcoding.getStep3(), parameters.getMaxBitRate(), video.getWidth(), video.getHeight(),
+                    video.getTimeOffset(), video.getDuration(), video.getAudioTrackIndex());
+        }
+    }
+
+    private class SharedTranscode {
+
+        private final Key key;
+        private SharedPipedOutputStream pipe;
+        private InputStream process;
+        private int listeners;
+        private boolean starting;
+        private boolean stopped;
+        private TranscodeRejectedException rejection;
+
+        private SharedTranscode(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Joins the transcode, starting its process if it isn't running yet. The process is started without holding
+         * the lock, as it may wait in the scheduler queue, so listeners can still leave and others wait for it.
+         *
+         * @return stream for a new listener, or {@code null} if this transcode can't be joined anymore
+         */
+        private InputStream join(Transcoder transcoder) throws IOException {
+            synchronized (this) {
+                awaitStarted();
+                if (stopped) {
+                    return null;
+                }
+                if (process != null) {
+                    return connect();
+                }
+                starting = true;
+            }
+            InputStream started;
+            try {
+                started = transcoder.start();
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    starting = false;
+                    stopped = true;
+                    // the others waited as long for the same queue, they are rejected too
+                    rejection = e instanceof TranscodeRejectedException r ? r : null;
+                    transcodes.remove(key, this);
+                    notifyAll();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                starting = false;
+                process = started;
+                pipe = new SharedPipedOutputStream(transcodeConfig.getSharedBufferSize() * 1024,
+                        TimeUnit.SECONDS.toMillis(transcodeConfig.getSlowReaderTimeout()));
+                Thread.ofVirtual().name("shared-transcode-" + key.mediaFileId()).start(this::copy);
+                notifyAll();
+                return connect();
+            }
+        }
+
+        // must hold the lock
+        private void awaitStarted() throws IOException {
+            try {
+                while (starting) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a shared transcode to start");
+            }
+            if (rejection != null) {
+                throw new TranscodeRejectedException(rejection.getMessage(), rejection.getRetryAfterSeconds());
+            }
+        }
+
+        // must hold the lock
+        private InputStream connect() {
+            SharedPipedInputStream reader = pipe.connect();
+            if (reader == null) {
+                return null;
+            }
+            listeners++;
+            if (listeners > 1) {
+                LOG.info("Joined transcode of media file {}, now shared by {} listeners", key.mediaFileId(), listeners);
+            }
+            return new Listener(reader);
+        }
+
+        private synchronized void leave(SharedPipedInputStream reader) {
+            reader.close();
+            if (--listeners == 0) {
+                stopped = true;
+                transcodes.remove(key, this);
+                // stops the process, which ends the copy thread
+                FileUtil.closeQuietly(process);
+                pipe.close();
+            }
+        }
+
+        private void copy() {
+            try {
+                process.transferTo(pipe);
+            } catch (IOException e) {
+                // Intentionally ignored. Happens when the last listener leaves.
+                LOG.debug("Shared transcode of media file {} ended", key.mediaFileId(), e);
+            } finally {
+                pipe.close();
+            }
+        }
+
+        private class Listener extends FilterInputStream {
+
+            private boolean closed;
+
+            private Listener(SharedPipedInputStream reader) {
+                super(reader);
+            }
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    leave((SharedPipedInputStream) in);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a transcode waited too long in the {@link TranscodeScheduler} queue and was not started. The server is
+ * busy, so the request should be retried later rather than served from the original file.
+ */
+public class TranscodeRejectedException extends IOException {
+
+    private final int retryAfterSeconds;
+
+    public TranscodeRejectedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return seconds after which the request may be retried
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of transcoder processes running at once.
+ *
+ * <p>Every transcode costs a number of units depending on its {@link Kind}, and transcodes are only started while
+ * their cost fits into the budget of {@link AirsonicTranscodeConfig#getConcurrency()}, and into the share of the user
+ * that asked for them. Transcodes that don't fit wait in a queue until enough running ones have ended. When units
+ * are freed, the waiting transcode of the most important kind is started first, and among those of the same kind the
+ * one of the user with the fewest running units, then the one waiting longest. A less important transcode may still
+ * be started if the freed units are too few for a more important one. A transcode that waited longer than
+ * {@link AirsonicTranscodeConfig#getQueueTimeout()} is rejected, and the caller should ask its client to retry later.
+ * Pre-rolls only wait for the budget, not for the share of their user.
+ */
+@Component
+public class TranscodeScheduler implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TranscodeScheduler.class);
+
+    /**
+     * Kinds of transcodes, from the most to the least important.
+     */
+    public enum Kind {
+        /** Audio streamed to a player, someone is waiting for it. */
+        AUDIO(1),
+        /** Video streamed to a player. */
+        VIDEO(2),
+        /** Video transcoded into HLS segments ahead of playback. */
+        HLS(2),
+        /** A frame grabbed from a video for cover art. */
+        IMAGE(1),
+        /**
+         * Audio of the next file of a play queue, started before the current one ends. It is not taken from the
+         * share of its user, who is still listening to the current file.
+         */
+        PRE_ROLL(1);
+
+        private final int cost;
+
+        Kind(int cost) {
+            this.cost = cost;
+        }
+
+        /**
+         * @return units of the budget a transcode of this kind takes
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * @return whether a transcode of this kind takes units from the share of its user
+         */
+        public boolean isShared() {
+            return this != PRE_ROLL;
+        }
+    }
+
+    private final AirsonicTranscodeConfig transcodeConfig;
+
+    // guarded by this
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<String, Integer> userUnits = new HashMap<>();
+    private int units;
+    private int running;
+    private long nextSequence;
+
+    private final Map<Kind, LongAdder> waits = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> waitNanos = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> timeouts = new EnumMap<>(Kind.class);
+
+    public TranscodeScheduler(AirsonicTranscodeConfig transcodeConfig) {
+        this.transcodeConfig = transcodeConfig;
+        for (Kind kind : Kind.values()) {
+            waits.put(kind, new LongAdder());
+            waitNanos.put(kind, new LongAdder());
+            timeouts.put(kind, new LongAdder());
+        }
+    }
+
+    /**
+     * Waits until a transcode may be started.
+     *
+     * @param kind     kind of the transcode
+     * @param username user the transcode is for, or {@code null} if it isn't for a particular user
+     * @return permit to close once the transcoder processes have ended
+     * @throws TranscodeRejectedException if the transcode waited too long
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public Permit acquire(Kind kind, String username) throws IOException {
+        long start = System.nanoTime();
+        long timeout = TimeUnit.SECONDS.toNanos(transcodeConfig.getQueueTimeout());
+        Waiter waiter;
+        synchronized (this) {
+            waiter = new Waiter(kind, username == null ? "" : username, cost(kind), nextSequence++);
+            waiters.add(waiter);
+            dispatch();
+            try {
+                while (!waiter.granted) {
+                    long remaining = timeout - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        waiters.remove(waiter);
+                        timeouts.get(kind).increment();
+                        // the units it was waiting for may fit a smaller one
+                        dispatch();
+                        throw new TranscodeRejectedException("Timed out after " + transcodeConfig.getQueueTimeout()
+                                + "s waiting for " + running + " running transcodes", transcodeConfig.getQueueTimeout());
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    release(waiter);
+                } else {
+                    waiters.remove(waiter);
+                    dispatch();
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a transcode");
+            }
+        }
+        long waited = System.nanoTime() - start;
+        waits.get(kind).increment();
+        waitNanos.get(kind).add(waited);
+        if (waited > TimeUnit.SECONDS.toNanos(1)) {
+            LOG.debug("{} transcode waited {}ms to start", kind, TimeUnit.NANOSECONDS.toMillis(waited));
+        }
+        return new Permit(waiter);
+    }
+
+    /**
+     * Cost of a kind, capped so that a single transcode always fits into an empty budget and share.
+     */
+    private int cost(Kind kind) {
+        return Math.min(kind.getCost(), kind.isShared() ? Math.min(getBudget(), getUserShare()) : getBudget());
+    }
+
+    /**
+     * @return units that may be taken by all running transcodes
+     */
+    int getBudget() {
+        int concurrency = transcodeConfig.getConcurrency();
+        return concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return units that may be taken by the running transcodes of a single user
+     */
+    int getUserShare() {
+        int userConcurrency = transcodeConfig.getUserConcurrency();
+        return userConcurrency > 0 ? userConcurrency : Math.max(1, (getBudget() + 1) / 2);
+    }
+
+    // must hold the lock
+    private void dispatch() {
+        int budget = getBudget();
+        int share = getUserShare();
+        boolean granted = false;
+        Waiter next;
+        while ((next = waiters.stream()
+                .filter(w -> units + w.cost <= budget
+                        && (!w.kind.isShared() || userUnits.getOrDefault(w.username, 0) + w.cost <= share))
+                .min(Comparator.<Waiter, Kind>comparing(w -> w.kind)
+                        .thenComparingInt(w -> userUnits.getOrDefault(w.username, 0))
+                        .thenComparingLong(w -> w.sequence))
+                .orElse(null)) != null) {
+            waiters.remove(next);
+            next.granted = true;
+            units += next.cost;
+            running++;
+            if (next.kind.isShared()) {
+                userUnits.merge(next.username, next.cost, Integer::sum);
+            }
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void release(Waiter waiter) {
+        units -= waiter.cost;
+        running--;
+        if (waiter.kind.isShared()) {
+            userUnits.computeIfPresent(waiter.username, (k, v) -> v == waiter.cost ? null : v - waiter.cost);
+        }
+        dispatch();
+    }
+
+    /**
+     * @return number of transcodes of the given kind waiting to be started
+     */
+    public synchronized int getQueueSize(Kind kind) {
+        return (int) waiters.stream().filter(w -> w.kind == kind).count();
+    }
+
+    /**
+     * @return number of transcodes started and not yet ended
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @return units of the budget taken by running transcodes
+     */
+    public synchronized int getRunningUnits() {
+        return units;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Kind kind : Kind.values()) {
+            String tag = kind.name().toLowerCase();
+            Gauge.builder("transcode.queue.size", this, s -> s.getQueueSize(kind))
+                .tags("kind", tag)
+                .description("The number of transcodes waiting to be started")
+                .register(registry);
+            FunctionTimer.builder("transcode.queue.wait", this, s -> s.waits.get(kind).sum(),
+                    s -> s.waitNanos.get(kind).sum(), TimeUnit.NANOSECONDS)
+                .tags("kind", tag)
+                .description("The time transcodes waited before they were started")
+                .register(registry);
+            FunctionCounter.builder("transcode.queue.timeouts", timeouts.get(kind), LongAdder::sum)
+                .tags("kind", tag)
+                .description("The number of transcodes that waited too long and were not started")
+                .register(registry);
+        }
+        Gauge.builder("transcode.running", this, TranscodeScheduler::getRunningCount)
+            .description("The number of transcodes running")
+            .register(registry);
+        Gauge.builder("transcode.running.units", this, TranscodeScheduler::getRunningUnits)
+            .description("The units of the transcode budget taken by running transcodes")
+            .register(registry);
+    }
+
+    /**
+     * Permission to run a transcode. Closing it frees its units for the next waiting transcode.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Waiter waiter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(Waiter waiter) {
+            this.waiter = waiter;
+        }
+
+        public Kind getKind() {
+            return waiter.kind;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(waiter);
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final Kind kind;
+        private final String username;
+        private final int cost;
+        private final long sequence;
+        // guarded by the scheduler
+        private boolean granted;
+
+        private Waiter(Kind kind, String username, int cost, long sequence) {
+            this.kind = kind;
+            this.username = username;
+            this.cost = cost;
+            this.sequence = sequence;
+        }
+    }
+}
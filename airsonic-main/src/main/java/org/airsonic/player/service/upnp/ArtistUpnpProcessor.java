@@ -24,10 +24,12 @@ import com.google.common.primitives.Ints;
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.MusicIndex;
 import org.airsonic.player.domain.ParamSearchResult;
 import org.airsonic.player.repository.AlbumRepository;
 import org.airsonic.player.repository.ArtistRepository;
 import org.airsonic.player.service.MediaFolderService;
+import org.airsonic.player.service.MusicIndexService;
 import org.airsonic.player.service.SearchService;
 import org.jupnp.support.model.BrowseResult;
 import org.jupnp.support.model.DIDLContent;
@@ -35,13 +37,13 @@ import org.jupnp.support.model.SortCriterion;
 import org.jupnp.support.model.container.Container;
 import org.jupnp.support.model.container.MusicArtist;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author Allen Petersen
@@ -60,6 +62,9 @@ public class ArtistUpnpProcessor extends UpnpContentProcessor <Artist, Album> {
     @Autowired
     private MediaFolderService mediaFolderService;
 
+    @Autowired
+    private MusicIndexService musicIndexService;
+
     @Autowired
     private UpnpProcessorRouter router;
 
@@ -88,11 +93,10 @@ public class ArtistUpnpProcessor extends UpnpContentProcessor <Artist, Album> {
         if (CollectionUtils.isEmpty(allFolders)) {
             return Collections.emptyList();
         }
-        List<Artist> allArtists = artistRepository.findByFolderInAndPresentTrue(allFolders, Sort.by(Sort.Direction.ASC, "name"));
-        // alpha artists doesn't quite work :P
-        allArtists.sort((Artist o1, Artist o2) -> o1.getName().replaceAll("\\W", "").compareToIgnoreCase(o2.getName().replaceAll("\\W", "")));
-
-        return allArtists;
+        return musicIndexService.getIndexedId3Artists(allFolders).values().stream()
+                .flatMap(List::stream)
+                .map(MusicIndex.SortableArtistWithArtist::getArtist)
+                .collect(Collectors.toList());
     }
 
     @Override
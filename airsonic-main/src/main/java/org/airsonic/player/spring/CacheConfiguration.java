@@ -1,17 +1,22 @@
 package org.airsonic.player.spring;
 
+import org.airsonic.player.config.AirsonicCacheConfig;
 import org.airsonic.player.config.AirsonicHomeConfig;
 import org.airsonic.player.domain.CoverArt;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.domain.User;
 import org.airsonic.player.domain.UserSettings;
+import org.airsonic.player.service.MediaFolderService;
+import org.airsonic.player.service.cache.AuthenticationCache;
+import org.airsonic.player.service.cache.MediaFileSerializer;
 import org.airsonic.player.service.cache.PlaylistCache.PlaylistUserList;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ConfigurationBuilder;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.event.CacheEvent;
 import org.ehcache.event.CacheEventListener;
 import org.ehcache.event.EventType;
@@ -20,6 +25,7 @@ import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
 import org.ehcache.jsr107.EhcacheCachingProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.AdviceMode;
@@ -38,15 +44,21 @@ public class CacheConfiguration {
 
     public static final String USER_CACHE = "userCache";
     public static final String USER_SETTINGS_CACHE = "userSettingsCache";
-    public static final String MEDIA_FILE_PATH_CACHE = "mediaFilePathCache";
-    public static final String MEDIA_FILE_ID_CACHE = "mediaFileIdCache";
+    public static final String MEDIA_FILE_OFFHEAP_CACHE = "mediaFileOffHeapCache";
     public static final String COVER_ART_CACHE = "coverArtCache";
     public static final String PLAYLIST_CACHE = "playlistCache";
     public static final String PLAYLIST_USERS_CACHE = "playlistUsersCache";
+    public static final String FILE_CRC_CACHE = "fileCrcCache";
+    public static final String AUTHENTICATION_CACHE = "authenticationCache";
 
 
     @Autowired
     private AirsonicHomeConfig homeConfig;
+    @Autowired
+    private AirsonicCacheConfig cacheConfig;
+    @Autowired
+    private ObjectProvider<MediaFolderService> mediaFolderService;
+
     @Bean
     public javax.cache.CacheManager jCacheCacheManager() {
         CachingProvider provider = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider");
@@ -65,7 +77,24 @@ public class CacheConfiguration {
 
         DefaultCacheEventListenerConfiguration cacheLogging = new DefaultCacheEventListenerConfiguration(EnumSet.allOf(EventType.class), CacheLogger.class);
 
-        return ConfigurationBuilder.newConfigurationBuilder()
+        ConfigurationBuilder builder = ConfigurationBuilder.newConfigurationBuilder();
+        if (cacheConfig.getMediaFileOffHeapSize() > 0) {
+            // second level of the MediaFileCache, the first level is on heap
+            builder = builder.withCache(MEDIA_FILE_OFFHEAP_CACHE,
+                    CacheConfigurationBuilder.newCacheConfigurationBuilder(Integer.class, MediaFile.class,
+                            ResourcePoolsBuilder.newResourcePoolsBuilder().offheap(cacheConfig.getMediaFileOffHeapSize(), MemoryUnit.MB))
+                            .withClassLoader(cl)
+                            .withValueSerializer(new MediaFileSerializer(id -> mediaFolderService.getObject().getMusicFolderById(id, true, true))));
+        }
+        if (cacheConfig.getAuthenticationSize() > 0) {
+            builder = builder.withCache(AUTHENTICATION_CACHE,
+                    CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, AuthenticationCache.Entry.class,
+                            ResourcePoolsBuilder.newResourcePoolsBuilder().heap(cacheConfig.getAuthenticationSize(), EntryUnit.ENTRIES))
+                            .withClassLoader(cl)
+                            .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(cacheConfig.getAuthenticationTimeToLive()))));
+        }
+
+        return builder
                 .withService(new DefaultPersistenceConfiguration(homeConfig.getAirsonicHome().resolve("cache").toFile()))
                 .withCache(USER_CACHE,
                         CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, User.class, pools)
@@ -77,16 +106,6 @@ public class CacheConfiguration {
                                 .withClassLoader(cl)
                                 .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofDays(2)))
                                 .withService(cacheLogging))
-                .withCache(MEDIA_FILE_PATH_CACHE,
-                        CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, MediaFile.class, pools)
-                                .withClassLoader(cl)
-                                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofHours(2)))
-                                .withService(cacheLogging))
-                .withCache(MEDIA_FILE_ID_CACHE,
-                        CacheConfigurationBuilder.newCacheConfigurationBuilder(Integer.class, MediaFile.class, pools)
-                                .withClassLoader(cl)
-                                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofHours(2)))
-                                .withService(cacheLogging))
                 .withCache(COVER_ART_CACHE,
                         CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, CoverArt.class, pools)
                                 .withClassLoader(cl)
@@ -102,6 +121,12 @@ public class CacheConfiguration {
                                 .withClassLoader(cl)
                                 .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofDays(10)))
                                 .withService(cacheLogging))
+                .withCache(FILE_CRC_CACHE,
+                        CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, Long.class,
+                                ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10000L, EntryUnit.ENTRIES))
+                                .withClassLoader(cl)
+                                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofDays(10)))
+                                .withService(cacheLogging))
                 .build();
     }
 
@@ -4,6 +4,7 @@ import org.apache.commons.lang3.Strings;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 public final class PodcastUtil {
 
@@ -24,6 +25,42 @@ public final class PodcastUtil {
     }
 
 
+    /**
+     * Get the file an episode is downloaded to before it is complete. It is hidden, so it is not scanned, and kept
+     * after a failed download to resume from.
+     *
+     * @param channelDir directory of the channel
+     * @param episodeId episode id
+     * @return partial download file
+     */
+    public static Path getPartFile(Path channelDir, int episodeId) {
+        return channelDir.resolve(".episode-" + episodeId + ".part");
+    }
+
+    /**
+     * Get the file an episode is downloaded to in parallel segments. It has holes until all segments are done, so
+     * unlike the part file it is never resumed from.
+     *
+     * @param channelDir directory of the channel
+     * @param episodeId episode id
+     * @return segmented download file
+     */
+    public static Path getSegmentedPartFile(Path channelDir, int episodeId) {
+        return channelDir.resolve(".episode-" + episodeId + ".segments.part");
+    }
+
+    /**
+     * Get the file the ETag or Last-Modified date of the episode in the part file is kept in, so a resumed download
+     * can tell whether the episode changed in the meantime.
+     *
+     * @param channelDir directory of the channel
+     * @param episodeId episode id
+     * @return validator file
+     */
+    public static Path getPartValidatorFile(Path channelDir, int episodeId) {
+        return channelDir.resolve(".episode-" + episodeId + ".part.validator");
+    }
+
     /**
      * Get error message from exception.
      * @param x exception
@@ -167,8 +167,8 @@ public class AlbumApiTest {
         when(jaxbContentService.createJaxbAlbum(any(), eq(testAlbum), eq(AIRSONIC_USER)))
             .thenReturn(testAlbumWithSongs);
         Child testSongChild = TestApiUtil.createTestMusicChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(testSong), eq(AIRSONIC_USER)))
-            .thenReturn(testSongChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(testSong)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(testSongChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("id", String.valueOf(testAlbumId))
@@ -342,8 +342,8 @@ public class AlbumApiTest {
         when(ratingService.getHighestRatedAlbums(eq(0), eq(10), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "highest")
@@ -381,8 +381,8 @@ public class AlbumApiTest {
             .thenReturn(List.of(testFolder));
 
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "recent")
@@ -418,8 +418,8 @@ public class AlbumApiTest {
         when(musicFolderService.getMusicFoldersForUser(eq(AIRSONIC_USER), any()))
             .thenReturn(List.of(testFolder));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "frequent")
@@ -455,8 +455,8 @@ public class AlbumApiTest {
         when(mediaFileService.getNewestAlbums(eq(0), eq(10), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "newest")
@@ -492,8 +492,8 @@ public class AlbumApiTest {
         when(mediaFileService.getStarredAlbums(eq(0), eq(10), eq(AIRSONIC_USER), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "starred")
@@ -529,8 +529,8 @@ public class AlbumApiTest {
         when(mediaFileService.getAlphabeticalAlbums(eq(0), eq(10), eq(true), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "alphabeticalByArtist")
@@ -566,8 +566,8 @@ public class AlbumApiTest {
         when(mediaFileService.getAlphabeticalAlbums(eq(0), eq(10), eq(false), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "alphabeticalByName")
@@ -604,8 +604,8 @@ public class AlbumApiTest {
         when(mediaFileService.getAlbumsByGenre(eq(0), eq(10), eq(genre), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "byGenre")
@@ -644,8 +644,8 @@ public class AlbumApiTest {
         when(mediaFileService.getAlbumsByYear(eq(0), eq(10), eq(fromYear), eq(toYear), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "byYear")
@@ -683,8 +683,8 @@ public class AlbumApiTest {
         when(searchService.getRandomAlbums(eq(10), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "random")
@@ -755,8 +755,8 @@ public class AlbumApiTest {
         when(mediaFileService.getMostFrequentlyPlayedAlbums(eq(0), eq(500), eq(List.of(testFolder))))
             .thenReturn(List.of(album));
         Child albumChild = TestApiUtil.createTestDirectoryChild();
-        when(jaxbContentService.createJaxbChild(any(), eq(album), eq(AIRSONIC_USER)))
-            .thenReturn(albumChild);
+        when(jaxbContentService.createJaxbChildren(any(), eq(List.of(album)), eq(AIRSONIC_USER)))
+            .thenReturn(List.of(albumChild));
 
         String response = mvc.perform(get(endpoint)
                 .param("type", "frequent")
@@ -437,11 +437,9 @@ public class ArtistApiTest {
                 List.of(new SortableArtistWithArtist(artist2.getName(), "Z Artist Two", artist2,
                         Collator.getInstance())));
 
-        when(artistService.getAlphabeticalArtists(List.of(testFolder)))
-                .thenReturn(artists);
         when(musicFolderService.getMusicFoldersForUser(eq(AIRSONIC_USER), eq(null)))
                 .thenReturn(List.of(testFolder));
-        when(musicIndexService.getIndexedArtists(artists))
+        when(musicIndexService.getIndexedId3Artists(List.of(testFolder)))
                 .thenReturn(indexedArtists);
         when(jaxbContentService.createJaxbArtist(any(ArtistID3.class), eq(artist1), eq(AIRSONIC_USER)))
                 .thenReturn(TestApiUtil.createTestArtistID3Full(artist1.getName()));
@@ -514,11 +512,9 @@ public class ArtistApiTest {
                 List.of(new SortableArtistWithArtist(artist2.getName(), "Z Artist Two", artist2,
                         Collator.getInstance())));
 
-        when(artistService.getAlphabeticalArtists(List.of(testFolder)))
-                .thenReturn(artists);
         when(musicFolderService.getMusicFoldersForUser(eq(AIRSONIC_USER), eq(1)))
                 .thenReturn(List.of(testFolder));
-        when(musicIndexService.getIndexedArtists(artists))
+        when(musicIndexService.getIndexedId3Artists(List.of(testFolder)))
                 .thenReturn(indexedArtists);
         when(jaxbContentService.createJaxbArtist(any(ArtistID3.class), eq(artist1), eq(AIRSONIC_USER)))
                 .thenReturn(TestApiUtil.createTestArtistID3Full(artist1.getName()));
@@ -583,9 +579,7 @@ public class ArtistApiTest {
         // mocking
         when(musicFolderService.getMusicFoldersForUser(eq(AIRSONIC_USER), eq(null)))
                 .thenReturn(List.of(testFolder));
-        when(artistService.getAlphabeticalArtists(List.of(testFolder)))
-                .thenReturn(List.of());
-        when(musicIndexService.getIndexedArtists(List.of()))
+        when(musicIndexService.getIndexedId3Artists(List.of(testFolder)))
                 .thenReturn(new TreeMap<>(musicIndexComparator));
 
         mvc.perform(get(endpoint)
@@ -700,8 +694,8 @@ public class ArtistApiTest {
         when(lastFmService.getSimilarArtistsByMediaFile(eq(mediaFile), eq(count), eq(includeNotPresent),
                 eq(List.of(testFolder))))
                 .thenReturn(List.of(similarFile));
-        when(jaxbContentService.createJaxbArtist(eq(similarFile), eq(AIRSONIC_USER)))
-                .thenReturn(TestApiUtil.createTestArtist("Similar Artist A"));
+        when(jaxbContentService.createJaxbArtists(eq(List.of(similarFile)), eq(AIRSONIC_USER)))
+                .thenReturn(List.of(TestApiUtil.createTestArtist("Similar Artist A")));
 
         // Build request
         var requestBuilder = get(endpoint)
@@ -21,6 +21,7 @@
 package org.airsonic.player.controller;
 
 import org.airsonic.player.config.AirsonicHomeConfig;
+import org.airsonic.player.service.TaskSchedulingService;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -46,10 +47,13 @@ public class HLSControllerTestCase {
     @Mock
     private AirsonicHomeConfig homeConfig;
 
+    @Mock
+    private TaskSchedulingService taskService;
+
     @Test
     public void testParseBitRate() throws Exception {
         when(homeConfig.getAirsonicHome()).thenReturn(Files.createTempDirectory("airsonicTest").toAbsolutePath());
-        HLSController controller = new HLSController(null, null, null, null, null, null, null, homeConfig);
+        HLSController controller = new HLSController(null, null, null, null, null, null, null, null, null, null, homeConfig, taskService);
 
         Pair<Integer, Dimension> pair = controller.parseBitRate("1000", null);
         assertEquals(1000, pair.getLeft().intValue());
@@ -0,0 +1,146 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.subsonic.restapi.MusicFolder;
+import org.subsonic.restapi.MusicFolders;
+import org.subsonic.restapi.Response;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JAXBWriterTest {
+
+    private final JAXBWriter jaxbWriter = new JAXBWriter();
+
+    @Test
+    void xmlIsWrittenToTheOutputStream() throws Exception {
+        MockHttpServletResponse response = write(request(null, null));
+
+        assertThat(response.getContentType()).startsWith("text/xml");
+        assertThat(response.getContentAsString())
+                .contains("<musicFolder id=\"1\" name=\"Music\"/>")
+                .doesNotContain("\n ");
+    }
+
+    @Test
+    void jsonIsWrittenToTheOutputStream() throws Exception {
+        MockHttpServletResponse response = write(request("json", null));
+
+        assertThat(response.getContentType()).startsWith("application/json");
+        assertThat(response.getContentAsString())
+                .startsWith("{\"subsonic-response\":{")
+                .contains("\"musicFolder\":[{\"id\":1,\"name\":\"Music\"}]");
+    }
+
+    @Test
+    void jsonpIsWrappedInCallback() throws Exception {
+        MockHttpServletResponse response = write(request("jsonp", "cb"));
+
+        assertThat(response.getContentType()).startsWith("application/javascript");
+        assertThat(response.getContentAsString()).startsWith("cb({\"subsonic-response\":").endsWith("});");
+    }
+
+    @Test
+    void serializedResponseMatchesWrittenResponse() throws Exception {
+        for (String format : new String[] {"xml", "json"}) {
+            MockHttpServletRequest request = request(format, null);
+            // twice, so the second round uses pooled marshallers
+            for (int i = 0; i < 2; i++) {
+                Entry<String, String> serialized = jaxbWriter.serializeForType(request, response());
+                MockHttpServletResponse written = write(request);
+                assertThat(written.getContentAsString()).isEqualTo(serialized.getValue());
+                assertThat(written.getContentType()).isEqualTo(serialized.getKey());
+            }
+        }
+    }
+
+    @Test
+    void failedResponseIsNotSentAsSuccessful() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                ServletOutputStream out = super.getOutputStream();
+                return new ServletOutputStream() {
+                    private int written;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        if (++written > 10) {
+                            throw new IOException("Marshalling failed");
+                        }
+                        out.write(b);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                    }
+                };
+            }
+        };
+
+        assertThatThrownBy(() -> jaxbWriter.writeResponse(request(null, null), response, response()))
+                .isInstanceOf(RuntimeException.class);
+
+        assertThat(response.getStatus()).isEqualTo(500);
+        assertThat(response.getContentAsString()).isEmpty();
+    }
+
+    private MockHttpServletResponse write(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        jaxbWriter.writeResponse(request, response, response());
+        return response;
+    }
+
+    private Response response() {
+        MusicFolder folder = new MusicFolder();
+        folder.setId(1);
+        folder.setName("Music");
+        MusicFolders folders = new MusicFolders();
+        folders.getMusicFolder().add(folder);
+        Response response = jaxbWriter.createResponse(true);
+        response.setMusicFolders(folders);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String format, String callback) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (format != null) {
+            request.setParameter("f", format);
+        }
+        if (callback != null) {
+            request.setParameter("callback", callback);
+        }
+        return request;
+    }
+}
@@ -176,6 +176,25 @@ public class PlayQueueTestCase {
         assertPlaylistEquals(playQueue, 0, "A", "B", "C");
     }
 
+    @Test
+    public void testGetNextFile() {
+        PlayQueue playQueue = createPlaylist(1, "A", "B", "C");
+        assertEquals("C", playQueue.getNextFile().getName());
+        assertPlaylistEquals(playQueue, 1, "A", "B", "C");
+        playQueue.next();
+        assertNull(playQueue.getNextFile());
+
+        playQueue.setRepeatStatus(RepeatStatus.QUEUE);
+        assertEquals("A", playQueue.getNextFile().getName());
+
+        playQueue.setRepeatStatus(RepeatStatus.TRACK);
+        assertEquals("C", playQueue.getNextFile().getName());
+
+        playQueue.setRepeatStatus(RepeatStatus.OFF);
+        playQueue.next();
+        assertNull(playQueue.getNextFile());
+    }
+
     @Test
     public void testPlayAfterEndReached() {
         PlayQueue playQueue = createPlaylist(2, "A", "B", "C");
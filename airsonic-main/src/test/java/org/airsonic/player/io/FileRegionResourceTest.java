@@ -0,0 +1,71 @@
+package org.airsonic.player.io;
+
+import org.airsonic.player.domain.TransferStatus;
+import org.airsonic.player.io.PipeStreams.MonitoredInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileRegionResourceTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private Path createFile(int size) throws IOException {
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) {
+            b[i] = (byte) i;
+        }
+        return Files.write(tempDir.resolve("file.flac"), b);
+    }
+
+    @Test
+    public void testReadRegion() throws IOException {
+        Path file = createFile(1000);
+        FileRegionResource resource = new FileRegionResource(file, 100L, 500L);
+
+        assertThat(resource.contentLength()).isEqualTo(500L);
+        try (InputStream in = resource.getInputStream()) {
+            assertThat(in.skip(50L)).isEqualTo(50L);
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(Files.readAllBytes(file), 150, 600));
+            assertThat(in.skip(10L)).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    public void testWholeFile() throws IOException {
+        Path file = createFile(1000);
+        FileRegionResource resource = new FileRegionResource(file);
+
+        assertThat(resource.contentLength()).isEqualTo(1000L);
+        assertThat(resource.getFilename()).isEqualTo("file.flac");
+        try (InputStream in = resource.getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    public void testMonitoredTransferIsCounted() throws IOException {
+        Path file = createFile(600 * 1024);
+        TransferStatus status = new TransferStatus(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream in = new MonitoredInputStream(new FileRegionResource(file).getInputStream(), null,
+                () -> status, s -> {}, (i, s) -> {})) {
+            assertThat(in.skip(1024L)).isEqualTo(1024L);
+            assertThat(in.transferTo(out)).isEqualTo(599 * 1024L);
+        }
+
+        assertThat(out.toByteArray()).isEqualTo(Arrays.copyOfRange(Files.readAllBytes(file), 1024, 600 * 1024));
+        assertThat(status.getBytesSkipped()).isEqualTo(1024L);
+        assertThat(status.getBytesTransferred()).isEqualTo(599 * 1024L);
+    }
+}
@@ -7,7 +7,10 @@ import org.airsonic.player.io.PipeStreams.MonitoredInputStream;
 import org.airsonic.player.io.PipeStreams.MonitoredResource;
 import org.airsonic.player.io.PipeStreams.PipedInputStream;
 import org.airsonic.player.io.PipeStreams.PipedOutputStream;
+import org.airsonic.player.io.PipeStreams.SharedPipedInputStream;
+import org.airsonic.player.io.PipeStreams.SharedPipedOutputStream;
 import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.LambdaUtils;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
@@ -18,8 +21,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class PipeStreamsTest {
@@ -89,6 +95,78 @@ public class PipeStreamsTest {
         }
     }
 
+    @Test
+    public void testSharedPipeStreams() throws Exception {
+        byte[] b = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 };
+        SharedPipedOutputStream pout = new SharedPipedOutputStream(8, 10000);
+        SharedPipedInputStream first = pout.connect();
+
+        // fills the buffer without overwriting anything, so a second reader can still join from the start
+        pout.write(b, 0, 8);
+        SharedPipedInputStream second = pout.connect();
+        assertThat(second).isNotNull();
+
+        Thread writer = new Thread(() -> {
+            try (SharedPipedOutputStream po = pout) {
+                po.write(b, 8, 10);
+            } catch (IOException e) {
+                fail("Should not throw IOException");
+            }
+        });
+        writer.start();
+
+        CompletableFuture<byte[]> secondRead = CompletableFuture.supplyAsync(LambdaUtils.uncheckSupplier(second::readAllBytes));
+        assertThat(first.readAllBytes()).isEqualTo(b);
+        assertThat(secondRead.get(10, TimeUnit.SECONDS)).isEqualTo(b);
+        writer.join();
+
+        // the beginning has been overwritten
+        assertThat(pout.connect()).isNull();
+    }
+
+    @Test
+    public void testSharedPipeStreamsDisconnectsStalledReader() throws Exception {
+        SharedPipedOutputStream pout = new SharedPipedOutputStream(4, 100);
+        SharedPipedInputStream stalled = pout.connect();
+        SharedPipedInputStream reader = pout.connect();
+
+        Thread writer = new Thread(() -> {
+            try (SharedPipedOutputStream po = pout) {
+                po.write(new byte[16]);
+            } catch (IOException e) {
+                fail("Should not throw IOException");
+            }
+        });
+        writer.start();
+
+        assertThat(reader.readAllBytes()).hasSize(16);
+        writer.join();
+        assertThatThrownBy(() -> stalled.read()).isInstanceOf(IOException.class);
+        assertThat(pout.getReaderCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSharedPipeStreamsKeepsSinglePausedReader() throws Exception {
+        SharedPipedOutputStream pout = new SharedPipedOutputStream(4, 100);
+        SharedPipedInputStream reader = pout.connect();
+
+        Thread writer = new Thread(() -> {
+            try (SharedPipedOutputStream po = pout) {
+                po.write(new byte[16]);
+            } catch (IOException e) {
+                fail("Should not throw IOException");
+            }
+        });
+        writer.start();
+
+        // pauses well beyond the timeout, the writer waits for it
+        Thread.sleep(500);
+        assertThat(writer.isAlive()).isTrue();
+        assertThat(reader.readAllBytes()).hasSize(16);
+        writer.join();
+        assertThat(pout.getReaderCount()).isEqualTo(1);
+    }
+
     @Test
     public void testMonitoredResource() throws Exception {
         TransferStatus status = new TransferStatus(null);
@@ -0,0 +1,199 @@
+package org.airsonic.player.io;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.PlayQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlayQueueInputStreamTest {
+
+    private static final int LENGTH = 1000;
+
+    @TempDir
+    private Path tempDir;
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final List<String> opened = new CopyOnWriteArrayList<>();
+    private final List<String> preRolled = new CopyOnWriteArrayList<>();
+    private final Map<String, CountDownLatch> openLatches = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> closed = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        for (String name : List.of("A", "B", "C")) {
+            openLatches.put(name, new CountDownLatch(1));
+            closed.put(name, new AtomicBoolean());
+        }
+    }
+
+    private MediaFile createFile(String name) throws IOException {
+        Files.write(tempDir.resolve(name), content(name));
+        MusicFolder folder = new MusicFolder();
+        folder.setId(0);
+        folder.setPath(tempDir);
+        MediaFile file = new MediaFile();
+        file.setPath(name);
+        file.setFolder(folder);
+        file.setDuration(10.0);
+        return file;
+    }
+
+    private static byte[] content(String name) {
+        byte[] b = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            b[i] = (byte) (name.charAt(0) + i);
+        }
+        return b;
+    }
+
+    private PlayQueueInputStream createStream(PlayQueue queue, long preRollSeconds) {
+        return createStream(queue, preRollSeconds, file -> {
+            preRolled.add(file.getPath());
+            return open(file);
+        });
+    }
+
+    private PlayQueueInputStream createStream(PlayQueue queue, long preRollSeconds,
+            Function<MediaFile, InputStream> preRollGenerator) {
+        return new PlayQueueInputStream(queue,
+            file -> events.add("start " + file.getPath()),
+            (readCount, file) -> events.add("end " + file.getPath()),
+            this::open,
+            preRollGenerator,
+            file -> LENGTH, preRollSeconds);
+    }
+
+    private InputStream open(MediaFile file) {
+        opened.add(file.getPath());
+        openLatches.get(file.getPath()).countDown();
+        return new ByteArrayInputStream(content(file.getPath())) {
+            @Override
+            public void close() {
+                closed.get(file.getPath()).set(true);
+            }
+        };
+    }
+
+    private static byte[] read(InputStream in, int len) throws IOException {
+        byte[] b = new byte[len];
+        int off = 0;
+        while (off < len) {
+            int n = in.read(b, off, Math.min(100, len - off));
+            if (n == -1) {
+                break;
+            }
+            off += n;
+        }
+        return off == len ? b : Arrays.copyOf(b, off);
+    }
+
+    @Test
+    public void testNextFileIsOpenedBeforeCurrentEnds() throws Exception {
+        PlayQueue queue = new PlayQueue();
+        queue.addFiles(true, createFile("A"), createFile("B"));
+
+        try (PlayQueueInputStream in = createStream(queue, 3)) {
+            read(in, 600);
+            assertThat(opened).containsExactly("A");
+
+            // 3 of 10 seconds left
+            read(in, 100);
+            assertThat(openLatches.get("B").await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(events).containsExactly("start A");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            assertThat(out.size()).isEqualTo(300 + LENGTH);
+        }
+
+        assertThat(opened).containsExactly("A", "B");
+        assertThat(preRolled).containsExactly("B");
+        assertThat(events).containsExactly("start A", "end A", "start B", "end B");
+    }
+
+    @Test
+    public void testPreRollOfSkippedFileIsDiscarded() throws Exception {
+        PlayQueue queue = new PlayQueue();
+        queue.addFiles(true, createFile("A"), createFile("B"), createFile("C"));
+
+        try (PlayQueueInputStream in = createStream(queue, 3)) {
+            read(in, 800);
+            assertThat(openLatches.get("B").await(5, TimeUnit.SECONDS)).isTrue();
+
+            // B is removed from the queue before A ends
+            queue.removeFileAt(1);
+            byte[] rest = read(in, 200 + LENGTH);
+            assertThat(Arrays.copyOfRange(rest, 200, rest.length)).isEqualTo(content("C"));
+        }
+
+        assertThat(opened).containsExactly("A", "B", "C");
+        assertThat(events).containsExactly("start A", "end A", "start C", "end C");
+        assertThat(closed.get("B").get()).isTrue();
+    }
+
+    @Test
+    public void testPreRollNotReadyInTimeIsCancelled() throws Exception {
+        PlayQueue queue = new PlayQueue();
+        queue.addFiles(true, createFile("A"), createFile("B"));
+        CountDownLatch preRollStarted = new CountDownLatch(1);
+        CountDownLatch preRollCancelled = new CountDownLatch(1);
+
+        // the pre-roll of B waits for the transcoder until it is interrupted
+        try (PlayQueueInputStream in = createStream(queue, 3, file -> {
+            preRollStarted.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                preRollCancelled.countDown();
+            }
+            throw new UncheckedIOException(new InterruptedIOException());
+        })) {
+            read(in, 800);
+            assertThat(preRollStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            byte[] rest = read(in, 200 + LENGTH);
+            assertThat(Arrays.copyOfRange(rest, 200, rest.length)).isEqualTo(content("B"));
+        }
+
+        assertThat(preRollCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(opened).containsExactly("A", "B");
+        assertThat(events).containsExactly("start A", "end A", "start B", "end B");
+    }
+
+    @Test
+    public void testWithoutPreRollNextFileIsOpenedAtEnd() throws Exception {
+        PlayQueue queue = new PlayQueue();
+        queue.addFiles(true, createFile("A"), createFile("B"));
+
+        try (PlayQueueInputStream in = createStream(queue, 0)) {
+            read(in, LENGTH);
+            assertThat(opened).containsExactly("A");
+            read(in, LENGTH);
+        }
+
+        assertThat(opened).containsExactly("A", "B");
+        assertThat(preRolled).isEmpty();
+    }
+}
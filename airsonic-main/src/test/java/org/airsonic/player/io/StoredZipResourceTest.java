@@ -0,0 +1,105 @@
+package org.airsonic.player.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StoredZipResourceTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final Map<String, Long> crcs = new HashMap<>();
+
+    private final StoredZipResource.CrcStore crcStore = new StoredZipResource.CrcStore() {
+        @Override
+        public Long getCrc(StoredZipResource.Entry entry) {
+            return crcs.get(entry.name());
+        }
+
+        @Override
+        public void putCrc(StoredZipResource.Entry entry, long crc) {
+            crcs.put(entry.name(), crc);
+        }
+    };
+
+    private List<StoredZipResource.Entry> createEntries() throws IOException {
+        Path dir = Files.createDirectory(tempDir.resolve("Album"));
+        Path first = Files.writeString(dir.resolve("01 - Éte.mp3"), "first song".repeat(1000));
+        Path second = Files.writeString(dir.resolve("02.mp3"), "second song".repeat(3000));
+        Path empty = Files.createFile(dir.resolve("cover.jpg"));
+        List<StoredZipResource.Entry> entries = new ArrayList<>();
+        entries.add(new StoredZipResource.Entry(dir, "Album/", 0L, Files.getLastModifiedTime(dir).toMillis()));
+        for (Path file : List.of(first, second, empty)) {
+            entries.add(new StoredZipResource.Entry(file, "Album/" + file.getFileName(), Files.size(file),
+                    Files.getLastModifiedTime(file).toMillis()));
+        }
+        return entries;
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        return crc.getValue();
+    }
+
+    @Test
+    public void testZipIsReadable() throws IOException {
+        List<StoredZipResource.Entry> entries = createEntries();
+        StoredZipResource resource = new StoredZipResource(entries, crcStore);
+        Path zipFile = tempDir.resolve("test.zip");
+        try (InputStream in = resource.getInputStream()) {
+            Files.copy(in, zipFile);
+        }
+
+        assertThat(Files.size(zipFile)).isEqualTo(resource.contentLength());
+        try (ZipFile zip = new ZipFile(zipFile.toFile(), StandardCharsets.UTF_8)) {
+            assertThat(zip.size()).isEqualTo(entries.size());
+            assertThat(zip.getEntry("Album/").isDirectory()).isTrue();
+            for (StoredZipResource.Entry entry : entries.subList(1, entries.size())) {
+                ZipEntry zipEntry = zip.getEntry(entry.name());
+                assertThat(zipEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+                assertThat(zipEntry.getSize()).isEqualTo(entry.size());
+                assertThat(zipEntry.getCrc()).isEqualTo(crc(entry.path()));
+                try (InputStream in = zip.getInputStream(zipEntry)) {
+                    assertThat(in.readAllBytes()).isEqualTo(Files.readAllBytes(entry.path()));
+                }
+            }
+        }
+        assertThat(crcs).hasSize(3);
+    }
+
+    @Test
+    public void testSkippedRangeMatchesFullStream() throws IOException {
+        StoredZipResource resource = new StoredZipResource(createEntries(), crcStore);
+        byte[] full;
+        try (InputStream in = resource.getInputStream()) {
+            full = in.readAllBytes();
+        }
+        crcs.clear();
+
+        // start in the middle of the second file, without any CRC known
+        int start = full.length / 2;
+        try (InputStream in = resource.getInputStream()) {
+            assertThat(in.skip(start)).isEqualTo(start);
+            byte[] rest = in.readAllBytes();
+            assertThat(rest).isEqualTo(Arrays.copyOfRange(full, start, full.length));
+        }
+        assertThat(crcs).hasSize(3);
+    }
+}
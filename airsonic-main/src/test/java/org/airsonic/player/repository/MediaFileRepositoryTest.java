@@ -24,6 +24,7 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MediaFile.MediaType;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.MusicFolder.Type;
+import org.airsonic.player.domain.entity.ScanSeen;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -43,6 +44,8 @@ import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit test of {@link MediaFileDao}.
@@ -60,6 +63,9 @@ public class MediaFileRepositoryTest {
     @Autowired
     MusicFolderRepository musicFolderRepository;
 
+    @Autowired
+    ScanSeenRepository scanSeenRepository;
+
     @Autowired
     JdbcTemplate jdbcTemplate;
 
@@ -89,6 +95,7 @@ public class MediaFileRepositoryTest {
 
     @AfterEach
     public void cleanUpAfter() {
+        jdbcTemplate.execute("DELETE FROM scan_seen");
         jdbcTemplate.execute("DELETE FROM media_file");
         musicFolderRepository.delete(testFolder);
     }
@@ -140,4 +147,39 @@ public class MediaFileRepositoryTest {
         assertEquals(0, wrongPathTracks.size());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testMarkPresentByScanGeneration() {
+        Instant before = Instant.now().minusSeconds(3600).truncatedTo(ChronoUnit.MICROS);
+        MediaFile seen = createMediaFile("seen.mp3", before);
+        MediaFile missing = createMediaFile("missing.mp3", before);
+        scanSeenRepository.saveAll(List.of(
+                new ScanSeen(2L, ScanSeen.EntityType.MEDIA_FILE, seen.getId()),
+                new ScanSeen(1L, ScanSeen.EntityType.MEDIA_FILE, missing.getId()),
+                new ScanSeen(2L, ScanSeen.EntityType.ALBUM, missing.getId())));
+
+        Instant scanned = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        assertEquals(1, mediaFileRepository.markPresent(2L, ScanSeen.EntityType.MEDIA_FILE, scanned));
+        assertEquals(1, mediaFileRepository.markNonPresent(2L, ScanSeen.EntityType.MEDIA_FILE, Instant.ofEpochMilli(1)));
+
+        MediaFile seenResult = mediaFileRepository.findById(seen.getId()).get();
+        assertTrue(seenResult.isPresent());
+        assertEquals(scanned, seenResult.getLastScanned());
+        MediaFile missingResult = mediaFileRepository.findById(missing.getId()).get();
+        assertFalse(missingResult.isPresent());
+        assertEquals(before, missingResult.getLastScanned());
+    }
+
+    private MediaFile createMediaFile(String path, Instant lastScanned) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setFolder(testFolder);
+        mediaFile.setPath(path);
+        mediaFile.setMediaType(MediaType.MUSIC);
+        mediaFile.setPresent(true);
+        mediaFile.setCreated(lastScanned);
+        mediaFile.setChanged(lastScanned);
+        mediaFile.setLastScanned(lastScanned);
+        mediaFile.setChildrenLastUpdated(lastScanned);
+        return mediaFileRepository.save(mediaFile);
+    }
+}
@@ -4,6 +4,13 @@ import org.airsonic.player.controller.SubsonicRESTController.APIException;
 import org.airsonic.player.domain.UserCredential;
 import org.airsonic.player.repository.UserCredentialRepository;
 import org.airsonic.player.service.SecurityService.UserDetail;
+import org.airsonic.player.service.cache.AuthenticationCache;
+import org.airsonic.player.spring.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,14 +18,23 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import java.net.URI;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
@@ -46,9 +62,23 @@ class MultipleCredsMatchingAuthenticationProviderTest {
     @Captor
     private ArgumentCaptor<UserCredential> userCredentialCaptor;
 
+    private CacheManager cacheManager;
+    private AuthenticationCache authenticationCache;
+
     @BeforeEach
     public void setup() {
-        provider = new MultipleCredsMatchingAuthenticationProvider(userDetailsService, passwordEncoder, userCredentialRepository);
+        cacheManager = Caching.getCachingProvider(EhcacheCachingProvider.class.getName())
+                .getCacheManager(URI.create("authentication-provider-test"), getClass().getClassLoader());
+        cacheManager.createCache(CacheConfiguration.AUTHENTICATION_CACHE, Eh107Configuration.fromEhcacheCacheConfiguration(
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, AuthenticationCache.Entry.class,
+                        ResourcePoolsBuilder.heap(10))));
+        authenticationCache = new AuthenticationCache(cacheManager);
+        provider = new MultipleCredsMatchingAuthenticationProvider(userDetailsService, passwordEncoder, userCredentialRepository, authenticationCache);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheManager.close();
     }
 
 
@@ -172,4 +202,46 @@ class MultipleCredsMatchingAuthenticationProviderTest {
 
         verify(userCredentialRepository, never()).save(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldSkipLookupAndHashingForCachedAuthentication() {
+        UserCredential credential = new UserCredential();
+        credential.setEncoder("bcrypt");
+        credential.setCredential("encoded");
+        UserDetail user = new UserDetail("user", List.of(credential), true, true, true, true,
+                List.of(new SimpleGrantedAuthority("IS_AUTHENTICATED_FULLY")));
+        when(userDetailsService.loadUserByUsername("user")).thenReturn(user);
+        when(passwordEncoder.matches(eq("pass"), eq("{bcrypt}encoded"))).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding(anyString())).thenReturn(false);
+
+        Authentication first = provider.authenticate(new UsernamePasswordAuthenticationToken("user", "pass"));
+        Authentication second = provider.authenticate(new UsernamePasswordAuthenticationToken("user", "pass"));
+
+        assertTrue(first.isAuthenticated());
+        assertTrue(second.isAuthenticated());
+        assertEquals("user", second.getName());
+        verify(userDetailsService, times(1)).loadUserByUsername("user");
+        verify(passwordEncoder, times(1)).matches(eq("pass"), anyString());
+
+        // other credentials are checked
+        assertThrows(BadCredentialsException.class, () -> provider.authenticate(new UsernamePasswordAuthenticationToken("user", "wrong")));
+
+        // credential changes drop cached authentications
+        authenticationCache.invalidate("user");
+        provider.authenticate(new UsernamePasswordAuthenticationToken("user", "pass"));
+        verify(passwordEncoder, times(2)).matches(eq("pass"), anyString());
+    }
+
+    @Test
+    void shouldCheckAccountOfCachedAuthentication() {
+        UserCredential credential = new UserCredential();
+        credential.setEncoder("bcrypt");
+        credential.setCredential("encoded");
+        UserDetail locked = new UserDetail("user", List.of(credential), true, true, true, false,
+                List.of(new SimpleGrantedAuthority("IS_AUTHENTICATED_FULLY")));
+        authenticationCache.put(new UsernamePasswordAuthenticationToken("user", "pass"), locked, null);
+
+        assertThrows(LockedException.class, () -> provider.authenticate(new UsernamePasswordAuthenticationToken("user", "pass")));
+        verify(userDetailsService, never()).loadUserByUsername(anyString());
+    }
+}
@@ -23,6 +23,7 @@ import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.CoverArt;
 import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.Player;
 import org.airsonic.player.domain.Playlist;
 import org.junit.jupiter.api.Nested;
@@ -36,8 +37,12 @@ import org.subsonic.restapi.ArtistID3;
 import org.subsonic.restapi.Child;
 import org.subsonic.restapi.MediaType;
 
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -322,6 +327,93 @@ class JaxbContentServiceTest {
         }
     }
 
+    @Nested
+    class CreateJaxbChildrenTest {
+
+        private MediaFile song(int id, MediaFile parent, String artist) {
+            MediaFile song = new MediaFile();
+            song.setId(id);
+            song.setFolder(parent.getFolder());
+            song.setPath(parent.getPath() + "/" + id + ".mp3");
+            song.setParentPath(parent.getPath());
+            song.setArtist(artist);
+            song.setAlbumArtist(artist);
+            song.setAlbumName("Album");
+            song.setMediaType(MediaFile.MediaType.MUSIC);
+            return song;
+        }
+
+        @Test
+        void createJaxbChildren_loadsAnnotationsOncePerList() {
+            Player player = mock(Player.class);
+            MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+            MediaFile parent = new MediaFile();
+            parent.setId(10);
+            parent.setFolder(folder);
+            parent.setPath("Artist/Album");
+            parent.setMediaType(MediaFile.MediaType.ALBUM);
+            MediaFile song1 = song(11, parent, "Artist");
+            MediaFile song2 = song(12, parent, "Artist");
+            Album album = new Album();
+            album.setId(77);
+            Artist artist = new Artist("Artist");
+            artist.setId(88);
+
+            when(mediaFileService.getMediaFileStarredDates(List.of(11, 12), "user")).thenReturn(Map.of(12, Instant.now()));
+            when(ratingService.getRatingsForUser("user", List.of(11, 12))).thenReturn(Map.of(11, 4));
+            when(ratingService.getAverageRatings(List.of(11, 12))).thenReturn(Map.of(11, 2.5, 12, 5.0));
+            when(mediaFileService.getParentOf(song1)).thenReturn(parent);
+            when(mediaFileService.isRoot(parent)).thenReturn(false);
+            when(coverArtService.getMediaFileArts(Set.of(10))).thenReturn(Map.of(10, new CoverArt()));
+            when(albumService.getAlbumsByMediaFiles(List.of(song1, song2))).thenReturn(Map.of(11, album, 12, album));
+            when(artistService.getArtists(Set.of("Artist"))).thenReturn(Map.of("Artist", artist));
+
+            List<Child> children = service.createJaxbChildren(player, List.of(song1, song2), "user");
+
+            assertThat(children).extracting(Child::getId).containsExactly("11", "12");
+            assertThat(children).extracting(Child::getParent).containsExactly("10", "10");
+            assertThat(children).extracting(Child::getCoverArt).containsExactly("10", "10");
+            assertThat(children).extracting(Child::getAlbumId).containsExactly("77", "77");
+            assertThat(children).extracting(Child::getArtistId).containsExactly("88", "88");
+            assertNull(children.get(0).getStarred());
+            assertNotNull(children.get(1).getStarred());
+            assertEquals(4, children.get(0).getUserRating());
+            assertNull(children.get(1).getUserRating());
+            assertEquals(2.5, children.get(0).getAverageRating());
+            assertEquals(5.0, children.get(1).getAverageRating());
+            verify(mediaFileService, times(1)).getParentOf(any(MediaFile.class));
+            verify(mediaFileService, never()).getMediaFileStarredDate(any(), any());
+            verify(ratingService, never()).getRatingForUser(any(), any());
+        }
+
+        @Test
+        void createJaxbChildren_rootParentIsNotExposed() {
+            Player player = mock(Player.class);
+            MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+            MediaFile root = new MediaFile();
+            root.setId(1);
+            root.setFolder(folder);
+            root.setPath("");
+            MediaFile dir = new MediaFile();
+            dir.setId(2);
+            dir.setFolder(folder);
+            dir.setPath("Artist");
+            dir.setParentPath("");
+            dir.setMediaType(MediaFile.MediaType.DIRECTORY);
+
+            when(mediaFileService.getParentOf(dir)).thenReturn(root);
+            when(mediaFileService.isRoot(root)).thenReturn(true);
+            when(coverArtService.getMediaFileArts(Set.of(2))).thenReturn(Map.of(2, CoverArt.NULL_ART));
+
+            List<Child> children = service.createJaxbChildren(player, List.of(dir), "user");
+
+            assertThat(children).hasSize(1);
+            assertNull(children.get(0).getParent());
+            assertNull(children.get(0).getCoverArt());
+            assertTrue(children.get(0).isIsDir());
+        }
+    }
+
     @Nested
     class CreateJaxbArtistFromMediaFileTest {
         @Test
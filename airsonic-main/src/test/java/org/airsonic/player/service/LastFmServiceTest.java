@@ -48,12 +48,17 @@ import org.mockito.quality.Strictness;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -125,6 +130,16 @@ public class LastFmServiceTest {
         when(mockedMediaFile.isFile()).thenReturn(false);
     }
 
+    @SuppressWarnings("unchecked")
+    private void setupPresentMediaFiles() {
+        when(mediaFileService.getPresentMediaFiles(any())).thenAnswer(invocation -> ((Collection<Integer>) invocation.getArgument(0))
+            .stream().map(id -> {
+                MediaFile song = new MediaFile();
+                song.setId(id);
+                return song;
+            }).toList());
+    }
+
     private void setupMockedMediaFileReturnTestArtist() {
         when(mockedMediaFile.getAlbumArtist()).thenReturn("testArtist");
         when(mockedMediaFile.isAlbum()).thenReturn(true);
@@ -239,14 +254,15 @@ public class LastFmServiceTest {
     @MockitoSettings(strictness = org.mockito.quality.Strictness.LENIENT)
     public void testGetSimilarSongs(int count, int expectedSize) {
         when(mockedArtist.getName()).thenReturn("testArtist");
-        when(mediaFileService.getSongsByArtist(0, 1000, "testArtist")).thenReturn(Arrays.asList(mockedMediaFile));
-        when(mediaFileService.getSongsByArtist(0, 1000, similarArtists.get(0))).thenReturn(Arrays.asList(new MediaFile()));
+        when(mediaFileService.getSongIdsByArtist("testArtist")).thenReturn(new int[] {1});
+        when(mediaFileService.getSongIdsByArtist(similarArtists.get(0))).thenReturn(new int[] {2});
+        setupPresentMediaFiles();
         when(mockedLastFmArtist1.getName()).thenReturn(similarArtists.get(0));
         when(mockedLastFmArtist2.getName()).thenReturn(similarArtistsWithNotPresent.get(0));
         when(mediaFileService.getArtistByName(startsWith("artist"), any())).thenReturn(new MediaFile());
         when(mockedInfoArtist.getWikiSummary()).thenReturn("testSummary");
         org.airsonic.player.domain.Artist artist = new org.airsonic.player.domain.Artist();
-        artist.setName("testArtist");
+        artist.setName(similarArtists.get(0));
         when(artistRepository.findByNameAndFolderIn(startsWith("artist"), any())).thenReturn(Optional.of(artist));
 
         try (MockedStatic<Artist> mockedStaticArtist = org.mockito.Mockito.mockStatic(Artist.class)) {
@@ -267,9 +283,12 @@ public class LastFmServiceTest {
         when(mediaFileService.getArtistByName(eq("testArtist"),any())).thenReturn(null);
         when(mockedLastFmArtist1.getName()).thenReturn(similarArtists.get(0));
         when(mockedLastFmArtist2.getName()).thenReturn(similarArtistsWithNotPresent.get(0));
-        when(mediaFileService.getArtistByName(startsWith("artist"), any())).thenReturn(new MediaFile());
+        MediaFile similarArtistMediaFile = new MediaFile();
+        similarArtistMediaFile.setId(20);
+        when(mediaFileService.getArtistByName(startsWith("artist"), any())).thenReturn(similarArtistMediaFile);
         when(mockedInfoArtist.getWikiSummary()).thenReturn("testSummary");
-        when(mediaFileService.getRandomSongsForParent(any(), eq(count))).thenReturn(Arrays.asList(mockedMediaFile));
+        when(mediaFileService.getSongIdsForParent(similarArtistMediaFile)).thenReturn(new int[] {2});
+        setupPresentMediaFiles();
 
         try (MockedStatic<Artist> mockedStaticArtist = org.mockito.Mockito.mockStatic(Artist.class)) {
             mockedStaticArtist.when(() -> Artist.getSimilar(eq("testArtist"), anyString())).thenReturn(Arrays.asList(mockedLastFmArtist1, mockedLastFmArtist2));
@@ -288,13 +307,18 @@ public class LastFmServiceTest {
     public void testGetSimilarSongsByMediaFileWithArtist(int count, int expectedSize) {
         setupMockedMediaFileReturnTestArtist();
         MediaFile artistMediaFile = new MediaFile();
+        artistMediaFile.setId(10);
         artistMediaFile.setArtist("testArtist");
         when(mediaFileService.getArtistByName(eq("testArtist"),any())).thenReturn(artistMediaFile);
+        when(mediaFileService.getSongIdsForParent(artistMediaFile)).thenReturn(new int[] {1});
         when(mockedLastFmArtist1.getName()).thenReturn(similarArtists.get(0));
         when(mockedLastFmArtist2.getName()).thenReturn(similarArtistsWithNotPresent.get(0));
-        when(mediaFileService.getArtistByName(startsWith("artist"), any())).thenReturn(new MediaFile());
+        MediaFile similarArtistMediaFile = new MediaFile();
+        similarArtistMediaFile.setId(20);
+        when(mediaFileService.getArtistByName(startsWith("artist"), any())).thenReturn(similarArtistMediaFile);
         when(mockedInfoArtist.getWikiSummary()).thenReturn("testSummary");
-        when(mediaFileService.getRandomSongsForParent(any(), eq(count))).thenReturn(Arrays.asList(mockedMediaFile));
+        when(mediaFileService.getSongIdsForParent(similarArtistMediaFile)).thenReturn(new int[] {2});
+        setupPresentMediaFiles();
 
         try (MockedStatic<Artist> mockedStaticArtist = org.mockito.Mockito.mockStatic(Artist.class)) {
             mockedStaticArtist.when(() -> Artist.getSimilar(eq("testArtist"), anyString())).thenReturn(Arrays.asList(mockedLastFmArtist1, mockedLastFmArtist2));
@@ -303,6 +327,38 @@ public class LastFmServiceTest {
         }
     }
 
+    @Test
+    public void testSampleSongIdsIsDistinctAndBounded() {
+        List<int[]> songIds = List.of(IntStream.range(0, 500).toArray(), IntStream.range(400, 600).toArray(), new int[0]);
+
+        List<Integer> actual = LastFmService.sampleSongIds(songIds, 1000, 100);
+
+        assertEquals(100, actual.size());
+        assertEquals(100, new HashSet<>(actual).size());
+        assertTrue(actual.stream().allMatch(id -> id >= 0 && id < 600));
+    }
+
+    @Test
+    public void testSampleSongIdsTakesEverySongWithinCap() {
+        List<int[]> songIds = List.of(new int[] {1, 2, 3}, new int[] {4, 5, 6, 7, 8});
+
+        List<Integer> capped = LastFmService.sampleSongIds(songIds, 3, 10);
+        assertEquals(6, capped.size());
+        assertTrue(capped.containsAll(List.of(1, 2, 3)));
+        assertEquals(Set.of(1, 2, 3, 4, 5, 6, 7, 8), new HashSet<>(LastFmService.sampleSongIds(songIds, 1000, 10)));
+    }
+
+    @Test
+    public void testSampleSongIdsWeightsArtistsBySongs() {
+        List<int[]> songIds = List.of(IntStream.range(0, 900).toArray(), IntStream.range(1000, 1100).toArray());
+        int fromLarge = 0;
+        for (int i = 0; i < 20; i++) {
+            fromLarge += (int) LastFmService.sampleSongIds(songIds, 1000, 100).stream().filter(id -> id < 900).count();
+        }
+        // 90% expected, 1800 of 2000
+        assertTrue(fromLarge > 1650 && fromLarge < 1950, "Picked " + fromLarge + " songs of the larger artist");
+    }
+
     @Test
     public void testGetArtistBioByMediaFileWithNullArtistShouldReturnNull() {
         // return artist with null name
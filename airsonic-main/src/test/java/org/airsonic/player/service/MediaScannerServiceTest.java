@@ -29,7 +29,6 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -44,9 +43,6 @@ public class MediaScannerServiceTest {
     @Autowired
     private MediaScannerService mediaScannerService;
 
-    @MockitoSpyBean
-    private MediaFileService mediaFileService;
-
     @MockitoSpyBean
     private SettingsService settingsService;
 
@@ -98,10 +94,10 @@ public class MediaScannerServiceTest {
         when(settingsService.getIgnoreSymLinks()).thenReturn(false);
         when(scanConfig.getFullTimeout()).thenReturn(1);
         doAnswer(invocation -> {
-            invocation.callRealMethod();
+            Object started = invocation.callRealMethod();
             Thread.sleep(10000);
-            return null;
-        }).when(mediaFileService).setMemoryCacheEnabled(anyBoolean());
+            return started;
+        }).when(indexManager).startIndexing();
 
         // Add the "loop" folder to the database
         Path musicFolderFile = MusicFolderTestData.resolveMusicLoopFolderPath();
@@ -122,10 +118,10 @@ public class MediaScannerServiceTest {
         when(settingsService.getIgnoreSymLinks()).thenReturn(false);
         when(scanConfig.getTimeout()).thenReturn(1);
         doAnswer(invocation -> {
-            invocation.callRealMethod();
+            Object started = invocation.callRealMethod();
             Thread.sleep(10000);
-            return null;
-        }).when(mediaFileService).setMemoryCacheEnabled(anyBoolean());
+            return started;
+        }).when(indexManager).startIndexing();
 
         // Add the "loop" folder to the database
         Path musicFolderFile = MusicFolderTestData.resolveMusicLoopFolderPath();
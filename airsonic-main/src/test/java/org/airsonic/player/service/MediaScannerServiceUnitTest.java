@@ -2,14 +2,26 @@ package org.airsonic.player.service;
 
 import org.airsonic.player.config.AirsonicScanConfig;
 import org.airsonic.player.domain.MediaLibraryStatistics;
+import org.airsonic.player.service.scanner.DirtyDirectoryJournal;
+import org.airsonic.player.service.scanner.MediaFolderWatcher;
+import org.airsonic.player.service.scanner.ScanWriteBuffer;
 import org.airsonic.player.service.search.IndexManager;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -38,16 +50,66 @@ public class MediaScannerServiceUnitTest {
     IndexManager indexManager;
     @Mock
     AirsonicScanConfig scanConfig;
+    @Mock
+    DirtyDirectoryJournal dirtyDirectoryJournal;
+    @Mock
+    MediaFolderWatcher mediaFolderWatcher;
+    @Mock
+    ScanWriteBuffer scanWriteBuffer;
+    @Mock
+    MusicIndexService musicIndexService;
 
     @Test
     public void neverScanned() {
         when(settingsService.getIndexCreationInterval()).thenReturn(-1);
         when(settingsService.getIndexCreationHour()).thenReturn(-1);
         when(indexManager.getStatistics()).thenReturn(null);
-        MediaScannerService mediaScannerService = new MediaScannerService(settingsService, indexManager, playlistFileService, mediaFileService, mediaFolderService, coverArtService, artistService, albumService, taskService, messagingTemplate, scanConfig);
+        MediaScannerService mediaScannerService = new MediaScannerService(settingsService, indexManager, playlistFileService, mediaFileService, mediaFolderService, coverArtService, artistService, albumService, taskService, messagingTemplate, scanConfig, dirtyDirectoryJournal, mediaFolderWatcher, scanWriteBuffer, musicIndexService);
         assertTrue(mediaScannerService.neverScanned());
 
         when(indexManager.getStatistics()).thenReturn(new MediaLibraryStatistics());
         assertFalse(mediaScannerService.neverScanned());
     }
+
+    @Test
+    public void incrementalScanIsDebouncedWithoutCancelling() {
+        when(settingsService.getIndexCreationInterval()).thenReturn(-1);
+        when(settingsService.getIndexCreationHour()).thenReturn(-1);
+        when(scanConfig.getWatchDelay()).thenReturn(60);
+        MediaScannerService mediaScannerService = new MediaScannerService(settingsService, indexManager, playlistFileService, mediaFileService, mediaFolderService, coverArtService, artistService, albumService, taskService, messagingTemplate, scanConfig, dirtyDirectoryJournal, mediaFolderWatcher, scanWriteBuffer, musicIndexService);
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+
+        // a burst of changes schedules a single task
+        mediaScannerService.scheduleIncrementalScan();
+        mediaScannerService.scheduleIncrementalScan();
+        verify(taskService).scheduleOnce(eq("mediascanner-IncrementalTask"), task.capture(), any(Instant.class), eq(false));
+
+        // folders changed within the delay, the task postpones itself
+        task.getValue().run();
+        verify(taskService, times(2)).scheduleOnce(eq("mediascanner-IncrementalTask"), any(Runnable.class), any(Instant.class), eq(false));
+
+        // quiet for the delay, the scan runs and the next change schedules a new task
+        when(scanConfig.getWatchDelay()).thenReturn(0);
+        DirtyDirectoryJournal.Snapshot changes = mock(DirtyDirectoryJournal.Snapshot.class);
+        when(changes.isEmpty()).thenReturn(true);
+        when(dirtyDirectoryJournal.snapshot()).thenReturn(changes);
+        task.getValue().run();
+        verify(dirtyDirectoryJournal).snapshot();
+        mediaScannerService.scheduleIncrementalScan();
+        verify(taskService, times(3)).scheduleOnce(eq("mediascanner-IncrementalTask"), any(Runnable.class), any(Instant.class), eq(false));
+    }
+
+    @Test
+    public void incrementalScanIsPostponedForAtMostTenDelays() {
+        long delay = TimeUnit.SECONDS.toNanos(60);
+
+        // changed 10 seconds ago, waits for the rest of the delay
+        assertEquals(TimeUnit.SECONDS.toNanos(50),
+                MediaScannerService.getRemainingDelayNanos(delay, 0, delay - TimeUnit.SECONDS.toNanos(10), delay));
+        // quiet for the delay
+        assertEquals(0, MediaScannerService.getRemainingDelayNanos(2 * delay, 0, delay, delay));
+        // still changing, but the first change is ten delays ago
+        assertEquals(0, MediaScannerService.getRemainingDelayNanos(10 * delay, 0, 10 * delay, delay));
+        assertEquals(5, MediaScannerService.getRemainingDelayNanos(10 * delay - 5, 0, 10 * delay - 5, delay));
+    }
 }
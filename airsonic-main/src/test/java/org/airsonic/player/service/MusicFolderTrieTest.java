@@ -0,0 +1,98 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MusicFolderTrieTest {
+
+    private final MusicFolder music = folder(1, "/music", true);
+    private final MusicFolder nested = folder(2, "/music/nested", true);
+    private final MusicFolder disabled = folder(3, "/music/nested/disabled", false);
+    private final MusicFolder missing = folder(4, "/podcasts", true);
+    private final MusicFolderTrie trie = new MusicFolderTrie(List.of(music, nested, disabled, missing), f -> f != missing);
+
+    @Test
+    void longestMatchingFolderIsFound() {
+        assertThat(trie.find(Paths.get("/music/a/b.mp3"), true, true)).isSameAs(music);
+        assertThat(trie.find(Paths.get("/music/nested/b.mp3"), true, true)).isSameAs(nested);
+        assertThat(trie.find(Paths.get("/music/nested"), true, true)).isSameAs(nested);
+        assertThat(trie.find(Paths.get("/music/nested/disabled/c.mp3"), true, true)).isSameAs(disabled);
+    }
+
+    @Test
+    void componentsMustMatchCompletely() {
+        assertThat(trie.find(Paths.get("/musicals/a.mp3"), true, true)).isNull();
+        assertThat(trie.find(Paths.get("/music/nestedx/a.mp3"), true, true)).isSameAs(music);
+        assertThat(trie.find(Paths.get("/mus"), true, true)).isNull();
+        assertThat(trie.find(Paths.get("/"), true, true)).isNull();
+        assertThat(trie.find(null, true, true)).isNull();
+    }
+
+    @Test
+    void disabledAndMissingFoldersCanBeSkipped() {
+        assertThat(trie.find(Paths.get("/music/nested/disabled/c.mp3"), false, true)).isSameAs(nested);
+        assertThat(trie.find(Paths.get("/podcasts/episode.mp3"), true, true)).isSameAs(missing);
+        assertThat(trie.find(Paths.get("/podcasts/episode.mp3"), true, false)).isNull();
+        assertThat(trie.exists(music)).isTrue();
+        assertThat(trie.exists(missing)).isFalse();
+    }
+
+    @Test
+    void pathsAreNormalized() {
+        assertThat(trie.find(Paths.get("/music/nested/../a.mp3"), true, true)).isSameAs(music);
+        assertThat(trie.find(Paths.get("/music/./nested/a.mp3"), true, true)).isSameAs(nested);
+        assertThat(trie.find(Paths.get("\\music\\nested\\a.mp3"), true, true)).isSameAs(nested);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void rootFolderContainsEverything() {
+        MusicFolder root = folder(5, "/", true);
+        MusicFolderTrie withRoot = new MusicFolderTrie(List.of(root, music), f -> true);
+
+        assertThat(withRoot.find(Paths.get("/other/a.mp3"), true, true)).isSameAs(root);
+        assertThat(withRoot.find(Paths.get("/music/a.mp3"), true, true)).isSameAs(music);
+    }
+
+    @Test
+    void normalizedPathsAreRecognized() {
+        assertThat(MusicFolderTrie.isNormalized("/music/a.mp3")).isTrue();
+        assertThat(MusicFolderTrie.isNormalized("/")).isTrue();
+        assertThat(MusicFolderTrie.isNormalized("/music/")).isFalse();
+        assertThat(MusicFolderTrie.isNormalized("/music//a")).isFalse();
+        assertThat(MusicFolderTrie.isNormalized("/music/./a")).isFalse();
+        assertThat(MusicFolderTrie.isNormalized("/music/..")).isFalse();
+        assertThat(MusicFolderTrie.isNormalized("C:\\music")).isFalse();
+        assertThat(MusicFolderTrie.isNormalized("/music/.hidden")).isTrue();
+    }
+
+    private static MusicFolder folder(int id, String path, boolean enabled) {
+        return new MusicFolder(id, Paths.get(path), "Folder " + id, MusicFolder.Type.MEDIA, enabled, Instant.now());
+    }
+}
@@ -19,12 +19,25 @@
  */
 package org.airsonic.player.service;
 
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.MusicIndex;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit test of {@link MusicIndex}.
@@ -78,4 +91,38 @@ public class MusicIndexServiceTestCase {
         assertEquals("Y", indexes.get(3).getPrefixes().get(1));
         assertEquals("Z", indexes.get(3).getPrefixes().get(2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIndexedId3ArtistsAreSnapshotted() {
+        SettingsService settingsService = mock(SettingsService.class);
+        ArtistService artistService = mock(ArtistService.class);
+        musicIndexService.setSettingsService(settingsService);
+        musicIndexService.setArtistService(artistService);
+        MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+        when(settingsService.getLocale()).thenReturn(Locale.ENGLISH);
+        when(settingsService.getIndexString()).thenReturn("A B T");
+        when(settingsService.getIgnoredArticles()).thenReturn("The");
+        when(settingsService.getIgnoredArticlesAsArray()).thenReturn(new String[] {"The"});
+        when(settingsService.getShortcuts()).thenReturn("");
+        when(artistService.getAlphabeticalArtists(List.of(folder)))
+                .thenReturn(List.of(new Artist("The Beatles"), new Artist("Abba"), new Artist("Toto")));
+
+        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> indexed = musicIndexService.getIndexedId3Artists(List.of(folder));
+
+        assertEquals(List.of("A", "B", "T"), indexed.keySet().stream().map(MusicIndex::getIndex).toList());
+        assertEquals("The Beatles", indexed.get(new MusicIndex("B")).get(0).getName());
+        assertThrows(UnsupportedOperationException.class, () -> indexed.get(new MusicIndex("A")).clear());
+        assertSame(indexed, musicIndexService.getIndexedId3Artists(List.of(folder)));
+        verify(artistService, times(1)).getAlphabeticalArtists(List.of(folder));
+
+        // a changed index expression leads to another snapshot
+        when(settingsService.getIndexString()).thenReturn("A-M(ABCDEFGHIJKLM) N-Z(NOPQRSTUVWXYZ)");
+        assertEquals(List.of("A-M", "N-Z"), musicIndexService.getIndexedId3Artists(List.of(folder)).keySet().stream().map(MusicIndex::getIndex).toList());
+
+        // completed scans drop the snapshots
+        when(settingsService.getIndexString()).thenReturn("A B T");
+        musicIndexService.clearSnapshots();
+        assertNotSame(indexed, musicIndexService.getIndexedId3Artists(List.of(folder)));
+        verify(artistService, times(3)).getAlphabeticalArtists(List.of(folder));
+    }
+}
@@ -10,12 +10,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -63,4 +72,77 @@ public class PlayerServiceTest {
         assertNotNull(playQueue);
     }
 
+    @Test
+    public void testPlayerIsResolvedFromRegistryAndWrittenBehind() throws Exception {
+
+        // given
+        when(transcodingRepository.findByDefaultActiveTrue()).thenReturn(new ArrayList<>());
+        when(playerRepository.findAll()).thenReturn(new ArrayList<>());
+        when(playerRepository.save(any(Player.class))).thenAnswer(invocation -> {
+            Player p = invocation.getArgument(0);
+            p.setId(5);
+            return p;
+        });
+
+        // when
+        Player first = playerService.getPlayer(request("10.0.0.1"), null, "test", false, true);
+        Player second = playerService.getPlayer(request("10.0.0.1"), null, "test", false, true);
+        Player other = playerService.getPlayerById(5);
+
+        // then
+        assertEquals(5, first.getId());
+        assertEquals(5, second.getId());
+        assertEquals("10.0.0.1", other.getIpAddress());
+        verify(playerRepository, times(2)).save(any(Player.class));
+        verify(playerRepository, never()).updateSeen(anyInt(), any(), any(), any(), any());
+
+        playerService.writeSeenPlayers();
+        playerService.writeSeenPlayers();
+        verify(playerRepository).updateSeen(eq(5), eq("test"), eq("10.0.0.1"), any(), any());
+    }
+
+    @Test
+    public void testConcurrentRequestsCreateOnePlayer() throws Exception {
+
+        // given
+        when(transcodingRepository.findByDefaultActiveTrue()).thenReturn(new ArrayList<>());
+        when(playerRepository.findAll()).thenReturn(new ArrayList<>());
+        AtomicInteger ids = new AtomicInteger();
+        when(playerRepository.save(any(Player.class))).thenAnswer(invocation -> {
+            Player p = invocation.getArgument(0);
+            if (p.getId() == null) {
+                p.setId(ids.incrementAndGet());
+            }
+            return p;
+        });
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Player>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return playerService.getPlayer(request("10.0.0.2"), null, "test", false, false);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Player> future : futures) {
+                assertEquals(1, future.get().getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then
+        assertEquals(1, ids.get());
+    }
+
+    private static MockHttpServletRequest request(String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
 }
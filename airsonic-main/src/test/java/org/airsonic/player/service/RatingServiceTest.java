@@ -19,7 +19,10 @@
 package org.airsonic.player.service;
 
 import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.MediaFileRating;
 import org.airsonic.player.domain.entity.UserRating;
+import org.airsonic.player.repository.MediaFileRatingRepository;
 import org.airsonic.player.repository.MediaFileRepository;
 import org.airsonic.player.repository.UserRatingRepository;
 import org.junit.jupiter.api.Test;
@@ -30,7 +33,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -42,6 +50,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -54,6 +63,9 @@ public class RatingServiceTest {
     @Mock
     private UserRatingRepository userRatingRepository;
 
+    @Mock
+    private MediaFileRatingRepository mediaFileRatingRepository;
+
     @Mock
     private SecurityService securityService;
 
@@ -67,6 +79,7 @@ public class RatingServiceTest {
 
         MediaFile mediaFile = new MediaFile();
         mediaFile.setId(1);
+        when(mediaFileRatingRepository.addRatings(1, 3, 1)).thenReturn(0, 1);
 
         ratingService.setRatingForUser("username", mediaFile, 3);
 
@@ -77,6 +90,40 @@ public class RatingServiceTest {
         assertEquals("username", userRating.getUsername());
         assertEquals(1, userRating.getMediaFileId());
         assertEquals(3, userRating.getRating());
+
+        // first rating of the media file creates its aggregate, then adds to it
+        verify(mediaFileRatingRepository).insertUnrated(1);
+        verify(mediaFileRatingRepository, times(2)).addRatings(1, 3, 1);
+        verify(mediaFileRatingRepository, never()).deleteUnrated();
+    }
+
+    @Test
+    public void testSetRatingForUserAddsToConcurrentlyCreatedAggregate() {
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(1);
+        when(mediaFileRatingRepository.addRatings(1, 3, 1)).thenReturn(0, 1);
+        when(mediaFileRatingRepository.insertUnrated(1)).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        ratingService.setRatingForUser("username", mediaFile, 3);
+
+        verify(userRatingRepository).save(any(UserRating.class));
+        verify(mediaFileRatingRepository, times(2)).addRatings(1, 3, 1);
+    }
+
+    @Test
+    public void testSetRatingForUserChangesAggregate() {
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(1);
+        when(userRatingRepository.findForUpdateByUsernameAndMediaFileId(eq("username"), eq(1))).thenReturn(Optional.of(new UserRating("username", 1, 2)));
+        when(mediaFileRatingRepository.addRatings(1, 3, 0)).thenReturn(1);
+
+        ratingService.setRatingForUser("username", mediaFile, 5);
+
+        verify(mediaFileRatingRepository).addRatings(1, 3, 0);
+        verify(mediaFileRatingRepository, never()).insertUnrated(anyInt());
+        verify(mediaFileRatingRepository, never()).deleteUnrated();
     }
 
     @Test
@@ -90,6 +137,22 @@ public class RatingServiceTest {
 
         verify(userRatingRepository).deleteByUsernameAndMediaFileId(eq("username"), eq(10));
         verify(userRatingRepository, never()).save(any(UserRating.class));
+        verify(mediaFileRatingRepository, never()).addRatings(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testSetRatingForUserNullRemovesFromAggregate() {
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(10);
+        when(userRatingRepository.findForUpdateByUsernameAndMediaFileId(eq("username"), eq(10))).thenReturn(Optional.of(new UserRating("username", 10, 4)));
+        when(mediaFileRatingRepository.addRatings(10, -4, -1)).thenReturn(1);
+
+        ratingService.setRatingForUser("username", mediaFile, null);
+
+        verify(userRatingRepository).deleteByUsernameAndMediaFileId(eq("username"), eq(10));
+        verify(mediaFileRatingRepository).addRatings(10, -4, -1);
+        verify(mediaFileRatingRepository).deleteUnrated();
     }
 
     @ParameterizedTest
@@ -114,20 +177,106 @@ public class RatingServiceTest {
         MediaFile mediaFile = new MediaFile();
         mediaFile.setId(1);
 
-        when(userRatingRepository.getAverageRatingByMediaFileId(eq(1))).thenReturn(3.5);
+        when(mediaFileRatingRepository.findById(eq(1))).thenReturn(Optional.of(new MediaFileRating(1, 7, 2)));
 
         Double actual = ratingService.getAverageRating(mediaFile);
 
-        verify(userRatingRepository).getAverageRatingByMediaFileId(eq(1));
+        verify(mediaFileRatingRepository).findById(eq(1));
         assertEquals(3.5, actual);
     }
 
+    @Test
+    public void testGetAverageRatings() {
+
+        when(mediaFileRatingRepository.findAllById(List.of(1, 2, 3)))
+                .thenReturn(List.of(new MediaFileRating(1, 7, 2), new MediaFileRating(2, 0, 0)));
+
+        Map<Integer, Double> actual = ratingService.getAverageRatings(List.of(1, 2, 3));
+
+        assertEquals(Map.of(1, 3.5), actual);
+    }
+
+    @Test
+    public void testGetRatingsForUser() {
+
+        when(userRatingRepository.findByUsernameAndMediaFileIdIn("username", List.of(1, 2)))
+                .thenReturn(List.of(new UserRating("username", 2, 4)));
+
+        Map<Integer, Integer> actual = ratingService.getRatingsForUser("username", List.of(1, 2));
+
+        assertEquals(Map.of(2, 4), actual);
+    }
+
+    @Test
+    public void testGetAverageRatingNotRated() {
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(1);
+
+        when(mediaFileRatingRepository.findById(eq(1))).thenReturn(Optional.empty());
+
+        assertNull(ratingService.getAverageRating(mediaFile));
+    }
+
+    @Test
+    public void testGetHighestRatedAlbums() {
+
+        MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+        MediaFile album1 = new MediaFile();
+        album1.setId(1);
+        MediaFile album2 = new MediaFile();
+        album2.setId(2);
+        when(mediaFileRepository.findHighestRated(eq(List.of(folder)), eq(MediaFile.MediaType.ALBUM), any()))
+                .thenReturn(List.of(album2, album1));
+        when(mediaFileRatingRepository.findAllById(eq(List.of(2, 1))))
+                .thenReturn(List.of(new MediaFileRating(1, 3, 1), new MediaFileRating(2, 9, 2)));
+        when(securityService.isReadAllowed(any(MediaFile.class), eq(true))).thenReturn(true);
+
+        List<MediaFile> albums = ratingService.getHighestRatedAlbums(0, 10, List.of(folder));
+
+        assertEquals(List.of(album2, album1), albums);
+        assertEquals(4.5, album2.getAverageRating());
+        assertEquals(3.0, album1.getAverageRating());
+        verify(userRatingRepository, never()).findAll();
+    }
+
+    @Test
+    public void testGetHighestRatedAlbumsSkipsMissingAlbumsBeforePaging() {
+
+        MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+        MediaFile album1 = new MediaFile();
+        album1.setId(1);
+        MediaFile missing = new MediaFile();
+        missing.setId(2);
+        MediaFile album3 = new MediaFile();
+        album3.setId(3);
+        MediaFile album4 = new MediaFile();
+        album4.setId(4);
+        when(mediaFileRepository.findHighestRated(eq(List.of(folder)), eq(MediaFile.MediaType.ALBUM), any()))
+                .thenReturn(List.of(album1, missing, album3), List.of(album4));
+        when(mediaFileRatingRepository.findAllById(eq(List.of(3, 4)))).thenReturn(List.of());
+        when(securityService.isReadAllowed(any(MediaFile.class), eq(true))).thenAnswer(i -> i.<MediaFile>getArgument(0) != missing);
+
+        List<MediaFile> albums = ratingService.getHighestRatedAlbums(1, 2, List.of(folder));
+
+        assertEquals(List.of(album3, album4), albums);
+    }
+
+    @Test
+    public void testGetHighestRatedAlbumsOfDisabledFolders() {
+
+        MusicFolder folder = new MusicFolder(1, Paths.get("/music"), "Music", MusicFolder.Type.MEDIA, false, Instant.now());
+
+        assertEquals(List.of(), ratingService.getHighestRatedAlbums(0, 10, List.of(folder)));
+        verify(mediaFileRepository, never()).findHighestRated(any(), any(), any());
+    }
+
     @Test
     public void testGetAverageRatingNull() {
 
         assertNull(ratingService.getAverageRating(null));
 
-        verify(userRatingRepository, never()).getAverageRatingByMediaFileId(anyInt());
+        verify(mediaFileRatingRepository, never()).findById(anyInt());
 
     }
 
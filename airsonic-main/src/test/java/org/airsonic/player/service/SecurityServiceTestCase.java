@@ -7,6 +7,7 @@ import org.airsonic.player.repository.UserCredentialRepository;
 import org.airsonic.player.repository.UserRepository;
 import org.airsonic.player.security.PasswordDecoder;
 import org.airsonic.player.security.PasswordEncoderConfig;
+import org.airsonic.player.service.cache.AuthenticationCache;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -39,6 +40,9 @@ public class SecurityServiceTestCase {
     @Mock
     private MediaFolderService mediaFolderService;
 
+    @Mock
+    private AuthenticationCache authenticationCache;
+
     @InjectMocks
     private SecurityService securityService;
 
@@ -0,0 +1,94 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.service.transcoding.TranscodeCache;
+import org.airsonic.player.service.transcoding.TranscodeMultiplexer;
+import org.airsonic.player.service.transcoding.TranscodeRejectedException;
+import org.airsonic.player.service.transcoding.TranscodeScheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class TranscodingServiceUnitTest {
+
+    @Mock
+    private TranscodeMultiplexer transcodeMultiplexer;
+
+    @Mock
+    private TranscodeCache transcodeCache;
+
+    @Mock
+    private TranscodeScheduler transcodeScheduler;
+
+    @InjectMocks
+    private TranscodingService transcodingService;
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void rejectedTranscodeIsNotServedFromTheOriginalFile() throws Exception {
+        Files.writeString(tempDir.resolve("song.flac"), "original");
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setFolder(new MusicFolder(1, tempDir, "music", MusicFolder.Type.MEDIA, true, Instant.now()));
+        mediaFile.setPath("song.flac");
+        TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, null);
+        parameters.setTranscoding(new Transcoding(null, "mp3 audio", "flac", "mp3", "ffmpeg -i %s -f mp3 -", null,
+                null, true));
+        parameters.setUsername("alice");
+        when(transcodeScheduler.acquire(eq(TranscodeScheduler.Kind.AUDIO), eq("alice")))
+                .thenThrow(new TranscodeRejectedException("Timed out", 30));
+
+        assertThatThrownBy(() -> transcodingService.getTranscodedInputStream(parameters))
+                .isInstanceOf(TranscodeRejectedException.class);
+    }
+
+    @Test
+    public void rejectedSharedTranscodeIsNotServedFromTheOriginalFile() throws Exception {
+        Files.writeString(tempDir.resolve("song.flac"), "original");
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setFolder(new MusicFolder(1, tempDir, "music", MusicFolder.Type.MEDIA, true, Instant.now()));
+        mediaFile.setPath("song.flac");
+        TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, null);
+        parameters.setTranscoding(new Transcoding(null, "mp3 audio", "flac", "mp3", "ffmpeg -i %s -f mp3 -", null,
+                null, true));
+        when(transcodeMultiplexer.open(eq(parameters), any()))
+                .thenThrow(new TranscodeRejectedException("Timed out", 30));
+
+        assertThatThrownBy(() -> transcodingService.getSharedTranscodedInputStream(parameters))
+                .isInstanceOf(TranscodeRejectedException.class);
+    }
+}
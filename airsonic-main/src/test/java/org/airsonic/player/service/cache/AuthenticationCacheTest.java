@@ -0,0 +1,116 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import org.airsonic.player.security.UsernameSaltedTokenAuthenticationToken;
+import org.airsonic.player.spring.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthenticationCacheTest {
+
+    private CacheManager cacheManager;
+    private AuthenticationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = createCacheManager();
+        cache = new AuthenticationCache(cacheManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    private static CacheManager createCacheManager() {
+        CacheManager cacheManager = Caching.getCachingProvider(EhcacheCachingProvider.class.getName())
+                .getCacheManager(URI.create("authentication-cache-test"), AuthenticationCacheTest.class.getClassLoader());
+        cacheManager.createCache(CacheConfiguration.AUTHENTICATION_CACHE, Eh107Configuration.fromEhcacheCacheConfiguration(
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, AuthenticationCache.Entry.class,
+                        ResourcePoolsBuilder.heap(10))));
+        return cacheManager;
+    }
+
+    @Test
+    void entriesAreKeyedByCredentials() {
+        UserDetails user = user("user");
+        cache.put(password("user", "pass"), user, null);
+
+        assertThat(cache.get(password("user", "pass"))).isSameAs(user);
+        assertThat(cache.get(password("user", "other"))).isNull();
+        assertThat(cache.get(password("other", "pass"))).isNull();
+        assertThat(cache.get(new UsernameSaltedTokenAuthenticationToken("user", "salt", "pass"))).isNull();
+    }
+
+    @Test
+    void entriesExpireWithTheirCredential() {
+        cache.put(password("user", "pass"), user("user"), Instant.now().minusSeconds(1));
+
+        assertThat(cache.get(password("user", "pass"))).isNull();
+        assertThat(cacheManager.getCache(CacheConfiguration.AUTHENTICATION_CACHE).iterator().hasNext()).isFalse();
+    }
+
+    @Test
+    void invalidateDropsEntriesOfUser() {
+        cache.put(password("user", "pass"), user("user"), null);
+        cache.put(new UsernameSaltedTokenAuthenticationToken("user", "salt", "token"), user("user"), null);
+        cache.put(password("other", "pass"), user("other"), null);
+
+        cache.invalidate("user");
+
+        assertThat(cache.get(password("user", "pass"))).isNull();
+        assertThat(cache.get(new UsernameSaltedTokenAuthenticationToken("user", "salt", "token"))).isNull();
+        assertThat(cache.get(password("other", "pass"))).isNotNull();
+    }
+
+    @Test
+    void nothingIsCachedWhenDisabled() {
+        cacheManager.destroyCache(CacheConfiguration.AUTHENTICATION_CACHE);
+        AuthenticationCache disabled = new AuthenticationCache(cacheManager);
+        disabled.put(password("user", "pass"), user("user"), null);
+
+        assertThat(disabled.get(password("user", "pass"))).isNull();
+    }
+
+    private static UsernamePasswordAuthenticationToken password(String username, String password) {
+        return new UsernamePasswordAuthenticationToken(username, password);
+    }
+
+    private static UserDetails user(String username) {
+        return new User(username, "", List.of());
+    }
+}
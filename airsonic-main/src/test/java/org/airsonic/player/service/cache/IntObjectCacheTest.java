@@ -0,0 +1,93 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectCacheTest {
+
+    @Test
+    void putGetRemoveWithinBudget() {
+        IntObjectCache<String> cache = new IntObjectCache<>(1_000_000, String::length, (k, v) -> { });
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value" + i);
+        }
+        assertEquals(1000, cache.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value" + i, cache.get(i));
+        }
+
+        assertEquals("value10", cache.remove(10));
+        assertNull(cache.get(10));
+        assertNull(cache.remove(10));
+        assertEquals(999, cache.size());
+        assertEquals(0, cache.evictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void evictsByWeightAndNotifiesListener() {
+        Map<Integer, String> evicted = new HashMap<>();
+        IntObjectCache<String> cache = new IntObjectCache<>(32 * 100, String::length, evicted::put);
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int n = 0; n < 20_000; n++) {
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(4) == 0) {
+                String removed = cache.remove(key);
+                assertEquals(removed, expected.remove(key));
+            } else {
+                String value = "v".repeat(1 + random.nextInt(30));
+                cache.put(key, value);
+                expected.put(key, value);
+                evicted.forEach(expected::remove);
+                evicted.clear();
+            }
+            assertTrue(cache.weight() <= cache.getMaxWeight());
+        }
+
+        assertTrue(cache.evictionCount() > 0);
+        assertEquals(expected.size(), cache.size());
+        expected.forEach((key, value) -> assertEquals(value, cache.get(key)));
+    }
+
+    @Test
+    void entryLargerThanSegmentIsNotCached() {
+        IntObjectCache<String> cache = new IntObjectCache<>(32 * 10, String::length, (k, v) -> { });
+
+        cache.put(1, "x".repeat(11));
+
+        assertNull(cache.get(1));
+        assertEquals(0, cache.weight());
+    }
+}
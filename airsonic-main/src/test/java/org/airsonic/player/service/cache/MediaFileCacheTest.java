@@ -0,0 +1,160 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.airsonic.player.config.AirsonicCacheConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.cache.CacheManager;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@ExtendWith(MockitoExtension.class)
+class MediaFileCacheTest {
+
+    @Mock
+    private CacheManager cacheManager;
+
+    private final MusicFolder folder = new MusicFolder(3, Paths.get("music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now());
+
+    private MediaFileCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MediaFileCache(new AirsonicCacheConfig(), cacheManager);
+    }
+
+    @Test
+    void pathLookupsResolveThroughIdCache() {
+        MediaFile mediaFile = mediaFile(7, "artist/album/song.mp3");
+
+        cache.putMediaFileById(7, mediaFile, cache.stamp());
+
+        assertSame(mediaFile, cache.getMediaFileByPath(Paths.get("artist/album/song.mp3"), folder, MediaFile.NOT_INDEXED));
+        assertNull(cache.getMediaFileByPath(Paths.get("artist/album/song.mp3"), folder, 10.0));
+        assertSame(mediaFile, cache.getMediaFileById(7));
+
+        cache.removeMediaFile(mediaFile);
+        assertNull(cache.getMediaFileById(7));
+        assertNull(cache.getMediaFileByPath(Paths.get("artist/album/song.mp3"), folder, MediaFile.NOT_INDEXED));
+    }
+
+    @Test
+    void movedMediaFileIsNotFoundByOldPath() {
+        MediaFile mediaFile = mediaFile(7, "old.mp3");
+        cache.putMediaFileByPath(Paths.get("old.mp3"), folder, MediaFile.NOT_INDEXED, mediaFile, cache.stamp());
+
+        cache.putMediaFileById(7, mediaFile(7, "new.mp3"), cache.stamp());
+
+        assertNull(cache.getMediaFileByPath(Paths.get("old.mp3"), folder, MediaFile.NOT_INDEXED));
+        assertEquals("new.mp3", cache.getMediaFileByPath(Paths.get("new.mp3"), folder, MediaFile.NOT_INDEXED).getPath());
+    }
+
+    @Test
+    void mediaFileLoadedBeforeRemovalIsNotCached() {
+        MediaFile stale = mediaFile(7, "song.mp3");
+        long stamp = cache.stamp();
+
+        // written by the scanner while the reader was loading
+        cache.removeMediaFile(mediaFile(7, "song.mp3"));
+        cache.putMediaFileById(7, stale, stamp);
+
+        assertNull(cache.getMediaFileById(7));
+        assertNull(cache.getMediaFileByPath(Paths.get("song.mp3"), folder, MediaFile.NOT_INDEXED));
+
+        cache.putMediaFileById(7, stale, cache.stamp());
+        assertSame(stale, cache.getMediaFileById(7));
+    }
+
+    @Test
+    void mediaFileLoadedBeforeClearIsNotCached() {
+        long stamp = cache.stamp();
+
+        cache.clear();
+        cache.putMediaFileByPath(Paths.get("song.mp3"), folder, MediaFile.NOT_INDEXED, mediaFile(7, "song.mp3"), stamp);
+
+        assertNull(cache.getMediaFileById(7));
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache.putMediaFileById(7, mediaFile(7, "song.mp3"), cache.stamp());
+
+        cache.getMediaFileById(7);
+        cache.getMediaFileById(8);
+        cache.getMediaFileByPath(Paths.get("song.mp3"), folder, MediaFile.NOT_INDEXED);
+
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "mediaFileIdCache", "result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "mediaFileIdCache", "result", "miss").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "mediaFilePathCache", "result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.size").tags("cache", "mediaFileIdCache").gauge().value());
+    }
+
+    @Test
+    void serializerRoundTrip() {
+        MediaFile mediaFile = mediaFile(7, "artist/album/song.flac");
+        mediaFile.setTitle("Song");
+        mediaFile.setTrackNumber(4);
+        mediaFile.setDuration(123.4);
+        mediaFile.setFileSize(4_000_000L);
+        mediaFile.setComment("éè 日本");
+        mediaFile.setChanged(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        mediaFile.setPresent(true);
+        MediaFileSerializer serializer = new MediaFileSerializer(id -> id == 3 ? folder : null);
+
+        MediaFile read = serializer.read(serializer.serialize(mediaFile));
+
+        assertEquals(mediaFile, read);
+        assertSame(folder, read.getFolder());
+        assertEquals(7, read.getId());
+        assertEquals(MediaFile.MediaType.MUSIC, read.getMediaType());
+        assertEquals("Song", read.getTitle());
+        assertEquals(4, read.getTrackNumber());
+        assertEquals(123.4, read.getDuration());
+        assertEquals(4_000_000L, read.getFileSize());
+        assertEquals(mediaFile.getComment(), read.getComment());
+        assertEquals(mediaFile.getChanged(), read.getChanged());
+        assertNull(read.getYear());
+        assertEquals(true, read.isPresent());
+    }
+
+    private MediaFile mediaFile(int id, String path) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(id);
+        mediaFile.setFolder(folder);
+        mediaFile.setPath(path);
+        mediaFile.setMediaType(MediaFile.MediaType.MUSIC);
+        return mediaFile;
+    }
+}
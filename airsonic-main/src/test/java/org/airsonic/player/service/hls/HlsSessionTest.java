@@ -0,0 +1,230 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.hls;
+
+import org.airsonic.player.config.AirsonicHlsConfig;
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.io.TranscodeInputStream;
+import org.airsonic.player.service.PathWatcherService;
+import org.airsonic.player.service.TranscodingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisabledOnOs(OS.WINDOWS)
+class HlsSessionTest {
+
+    @TempDir
+    private Path home;
+
+    @Mock
+    private TranscodingService transcodingService;
+
+    @Mock
+    private AirsonicHomeConfig homeConfig;
+
+    private final AirsonicHlsConfig hlsConfig = new AirsonicHlsConfig();
+    private final List<Process> processes = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch admission = new CountDownLatch(0);
+
+    private HlsSession session;
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MediaFile mediaFile = new MediaFile();
+        HlsSession.Key key = new HlsSession.Key(1, 1000, "640x480", 10, null);
+        when(homeConfig.getAirsonicHome()).thenReturn(home);
+        when(transcodingService.getParameters(eq(mediaFile), isNull(), anyInt(), eq("ts"), any()))
+                .thenReturn(new TranscodingService.Parameters(mediaFile, null));
+        // stands in for a transcoder that is still busy, the test writes the segments
+        when(transcodingService.getTranscodedInputStream(any())).thenAnswer(invocation -> {
+            admission.await();
+            TranscodeInputStream in = new TranscodeInputStream(new ProcessBuilder("sleep", "60"), null, null);
+            processes.add(in.getProcess());
+            return in;
+        });
+        HlsSegmentStore segmentStore = new HlsSegmentStore(hlsConfig, homeConfig);
+        session = new HlsSession(key, mediaFile, transcodingService, new PathWatcherService(), segmentStore, hlsConfig);
+        directory = segmentStore.getRootDirectory().resolve(key.id());
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.destroySession();
+    }
+
+    @Test
+    void segmentIsReadyOnceTheNextOneStarts() throws Exception {
+        CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment(0));
+        Path work = awaitWorkDirectory(1);
+        Files.write(work.resolve("0.ts"), new byte[] { 1 });
+        Thread.sleep(200);
+        assertThat(segment).isNotDone();
+
+        Files.write(work.resolve("1.ts"), new byte[] { 1 });
+        // well within the rescan interval, so the change event did it
+        assertThat(segment.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve("0.ts"));
+        assertThat(directory.resolve("0.ts")).exists();
+    }
+
+    @Test
+    void segmentIsReadyOnceListedInThePlaylist() throws Exception {
+        CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment(0));
+        Path work = awaitWorkDirectory(1);
+        Files.write(work.resolve("0.ts"), new byte[] { 1 });
+        Files.writeString(work.resolve("out.m3u8"), "#EXTM3U\n#EXTINF:10.000000,\n0.ts\n");
+
+        assertThat(segment.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve("0.ts"));
+    }
+
+    @Test
+    void transcoderStopsAfterLookAheadAndSegmentsAreReused() throws Exception {
+        hlsConfig.setLookAhead(1);
+        CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment(0));
+        Path work = awaitWorkDirectory(1);
+        Files.write(work.resolve("0.ts"), new byte[] { 1 });
+        Files.write(work.resolve("1.ts"), new byte[] { 1 });
+        Files.writeString(work.resolve("out.m3u8"), "#EXTM3U\n0.ts\n1.ts\n");
+        assertThat(segment.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve("0.ts"));
+
+        assertThat(processes.get(0).onExit().get(1500, TimeUnit.MILLISECONDS).isAlive()).isFalse();
+        assertThat(waitForSegment(0)).isEqualTo(directory.resolve("0.ts"));
+        assertThat(processes).hasSize(1);
+
+        // the segment following this one is missing, so it is transcoded ahead of time
+        assertThat(waitForSegment(1)).isEqualTo(directory.resolve("1.ts"));
+        awaitWorkDirectory(2);
+        assertThat(processes).hasSize(2);
+    }
+
+    @Test
+    void evictedSegmentsAreTranscodedAgain() throws Exception {
+        hlsConfig.setLookAhead(0);
+        hlsConfig.setCacheSize(1);
+        byte[] data = new byte[600 * 1024];
+        for (int i = 0; i <= 1; i++) {
+            int index = i;
+            CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment(index));
+            Path work = awaitWorkDirectory(i + 1);
+            Files.write(work.resolve(i + ".ts"), data);
+            Files.writeString(work.resolve("out.m3u8"), "#EXTM3U\n" + i + ".ts\n");
+            assertThat(segment.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve(i + ".ts"));
+        }
+        assertThat(directory.resolve("0.ts")).doesNotExist();
+
+        CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment(0));
+        awaitWorkDirectory(3);
+        assertThat(processes).hasSize(3);
+        segment.cancel(true);
+    }
+
+    @Test
+    void playersAtDifferentPositionsKeepTheirTranscoders() throws Exception {
+        CompletableFuture<Path> first = CompletableFuture.supplyAsync(() -> waitForSegment("1", 0));
+        Path firstWork = awaitWorkDirectory(1);
+        CompletableFuture<Path> second = CompletableFuture.supplyAsync(() -> waitForSegment("2", 20));
+        Path secondWork = awaitWorkDirectory(2);
+        assertThat(secondWork).isNotEqualTo(firstWork);
+
+        Files.write(secondWork.resolve("20.ts"), new byte[] { 1 });
+        Files.writeString(secondWork.resolve("out.m3u8"), "#EXTM3U\n20.ts\n");
+        assertThat(second.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve("20.ts"));
+        assertThat(first).isNotDone();
+        assertThat(processes.get(0).isAlive()).isTrue();
+
+        Files.write(firstWork.resolve("0.ts"), new byte[] { 1 });
+        Files.writeString(firstWork.resolve("out.m3u8"), "#EXTM3U\n0.ts\n");
+        assertThat(first.get(1500, TimeUnit.MILLISECONDS)).isEqualTo(directory.resolve("0.ts"));
+        assertThat(processes).hasSize(2);
+    }
+
+    @Test
+    void sessionIsNotLockedWhileATranscoderWaitsToBeAdmitted() throws Exception {
+        admission = new CountDownLatch(1);
+        CompletableFuture<Path> segment = CompletableFuture.supplyAsync(() -> waitForSegment("1", 5));
+        Thread.sleep(200);
+
+        CompletableFuture<Void> prepared = CompletableFuture.runAsync(() -> {
+            try {
+                session.prepare("2", 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        prepared.get(1500, TimeUnit.MILLISECONDS);
+        assertThat(segment).isNotDone();
+        assertThat(processes).isEmpty();
+
+        admission.countDown();
+        awaitWorkDirectory(2);
+        segment.cancel(true);
+    }
+
+    private Path waitForSegment(int index) {
+        return waitForSegment("1", index);
+    }
+
+    private Path waitForSegment(String player, int index) {
+        try {
+            return session.waitForSegment(player, index, 10000L);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // returns the work directory of the given transcoder process once it is watched
+    private Path awaitWorkDirectory(int process) throws Exception {
+        while (processes.size() < process) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.filter(Files::isDirectory).filter(d -> d.getFileName().toString().startsWith("work"))
+                    .sorted(Comparator.comparing(d -> d.toFile().lastModified())).reduce((a, b) -> b).orElseThrow();
+        }
+    }
+}
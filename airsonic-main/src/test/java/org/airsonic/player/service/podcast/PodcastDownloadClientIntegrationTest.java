@@ -18,7 +18,6 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicStatusLine;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -27,8 +26,6 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -66,7 +63,7 @@ public class PodcastDownloadClientIntegrationTest {
     @Autowired
     private PodcastDownloadClient podcastDownloadClient;
 
-    @Mock
+    @MockitoBean(name = "PodcastHttpClient")
     private CloseableHttpClient mockedHttpClient;
 
     @Mock
@@ -158,16 +155,12 @@ public class PodcastDownloadClientIntegrationTest {
 
     @Test
     public void testDownload() throws IOException {
-        try (MockedStatic<HttpClients> mockedHttpClients = Mockito.mockStatic(HttpClients.class,
-                Mockito.CALLS_REAL_METHODS)) {
-            mockedHttpClients.when(() -> HttpClients.createDefault()).thenReturn(mockedHttpClient);
-            when(mockedHttpClient.execute(any())).thenReturn(mockedHttpResponse);
-            HttpEntity httpEntity = new ByteArrayEntity("non mp3 data".getBytes());
-            StatusLine statusLine = new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "test");
-            when(mockedHttpResponse.getEntity()).thenReturn(httpEntity);
-            when(mockedHttpResponse.getStatusLine()).thenReturn(statusLine);
-            podcastDownloadClient.downloadEpisode(podcastEpisode.getId()).join();
-        }
+        when(mockedHttpClient.execute(any())).thenReturn(mockedHttpResponse);
+        HttpEntity httpEntity = new ByteArrayEntity("non mp3 data".getBytes());
+        StatusLine statusLine = new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "test");
+        when(mockedHttpResponse.getEntity()).thenReturn(httpEntity);
+        when(mockedHttpResponse.getStatusLine()).thenReturn(statusLine);
+        podcastDownloadClient.downloadEpisode(podcastEpisode.getId()).join();
         PodcastEpisode episode = podcastEpisodeRepository.findById(podcastEpisode.getId()).orElse(null);
         assertNotNull(episode);
         assertEquals(episode.getStatus(), PodcastStatus.ERROR);
@@ -0,0 +1,165 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2025 (C) Y.Tory
+ */
+package org.airsonic.player.service.podcast;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PodcastChannel;
+import org.airsonic.player.domain.PodcastEpisode;
+import org.airsonic.player.domain.PodcastStatus;
+import org.airsonic.player.service.PodcastPersistenceService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.service.VersionService;
+import org.airsonic.player.service.websocket.AsyncWebSocketClient;
+import org.apache.http.HttpHeaders;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PodcastRefresherTest {
+
+    private static final String FEED_URL = "https://example.com/feed.rss";
+
+    private static final String FEED = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <rss version="2.0">
+              <channel>
+                <title>Channel</title>
+                <item>
+                  <title>Known</title>
+                  <guid>known</guid>
+                  <pubDate>Wed, 21 Oct 2015 07:28:00 GMT</pubDate>
+                  <enclosure url="https://example.com/known.mp3" length="100" type="audio/mpeg"/>
+                </item>
+                <item>
+                  <title>New</title>
+                  <guid>new</guid>
+                  <pubDate>Thu, 22 Oct 2015 07:28:00 GMT</pubDate>
+                  <enclosure url="https://example.com/new.mp3" length="100" type="audio/mpeg"/>
+                </item>
+                <item>
+                  <title>New again</title>
+                  <guid>new</guid>
+                  <pubDate>Fri, 23 Oct 2015 07:28:00 GMT</pubDate>
+                  <enclosure url="https://example.com/new-again.mp3" length="100" type="audio/mpeg"/>
+                </item>
+              </channel>
+            </rss>
+            """;
+
+    @Mock
+    private PodcastPersistenceService podcastPersistenceService;
+
+    @Mock
+    private SettingsService settingsService;
+
+    @Mock
+    private VersionService versionService;
+
+    @Mock
+    private AsyncWebSocketClient asyncWebSocketClient;
+
+    @Mock
+    private CloseableHttpClient httpClient;
+
+    @Mock
+    private CloseableHttpResponse response;
+
+    @InjectMocks
+    private PodcastRefresher podcastRefresher;
+
+    @Test
+    public void testRefreshWithNotModifiedFeedShouldSkipParsing() throws Exception {
+
+        // given
+        PodcastChannel channel = new PodcastChannel(1, FEED_URL, "Channel", null, null, PodcastStatus.DOWNLOADING, null, new MediaFile());
+        channel.setEtag("\"abc\"");
+        channel.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+        when(podcastPersistenceService.prepareRefreshChannel(1)).thenReturn(channel);
+        ArgumentCaptor<HttpGet> requestCaptor = ArgumentCaptor.forClass(HttpGet.class);
+        when(httpClient.execute(requestCaptor.capture())).thenReturn(response);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 304, "Not Modified"));
+
+        // when
+        boolean result = podcastRefresher.refresh(1, false).get();
+
+        // then
+        assertTrue(result);
+        HttpGet request = requestCaptor.getValue();
+        assertEquals("\"abc\"", request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+        verify(podcastPersistenceService, never()).updateChannelByElement(any(), any());
+        verify(podcastPersistenceService, never()).setChannelValidators(any(), any(), any());
+        verify(podcastPersistenceService).setChannelCompleted(channel);
+    }
+
+    @Test
+    public void testRefreshShouldCreateUnknownEpisodesAndStoreValidators() throws Exception {
+
+        // given
+        PodcastChannel channel = new PodcastChannel(1, FEED_URL, null, null, null, PodcastStatus.DOWNLOADING, null, null);
+        when(podcastPersistenceService.prepareRefreshChannel(1)).thenReturn(channel);
+        when(podcastPersistenceService.getEpisodeGuids(channel)).thenReturn(new HashSet<>(Set.of("known")));
+        when(settingsService.getPodcastEpisodeDownloadCount()).thenReturn(1);
+        PodcastEpisode episode = new PodcastEpisode();
+        when(podcastPersistenceService.createEpisode(eq(channel), eq("new"), anyString(), anyString(), any(), any(), any(), any()))
+                .thenReturn(episode);
+        when(httpClient.execute(any(HttpGet.class))).thenReturn(response);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+        when(response.getEntity()).thenReturn(new StringEntity(FEED, StandardCharsets.UTF_8));
+        when(response.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"abc\""));
+        when(response.getFirstHeader(HttpHeaders.LAST_MODIFIED)).thenReturn(null);
+
+        // when
+        boolean result = podcastRefresher.refresh(1, true).get();
+
+        // then
+        assertTrue(result);
+        // the known GUID and the duplicate in the feed are skipped
+        verify(podcastPersistenceService, times(1)).createEpisode(any(), any(), any(), any(), any(), any(), any(), any());
+        verify(podcastPersistenceService).updateEpisode(episode);
+        verify(podcastPersistenceService).setChannelValidators(channel, "\"abc\"", null);
+        verify(podcastPersistenceService, never()).setChannelCompleted(any());
+    }
+
+}
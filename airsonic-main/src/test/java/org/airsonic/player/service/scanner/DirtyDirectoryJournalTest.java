@@ -0,0 +1,121 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scanner;
+
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirtyDirectoryJournalTest {
+
+    @TempDir
+    Path home;
+
+    private DirtyDirectoryJournal newJournal() {
+        return new DirtyDirectoryJournal(new AirsonicHomeConfig(home.toString(), null));
+    }
+
+    @Test
+    void changesSurviveRestart() {
+        DirtyDirectoryJournal journal = newJournal();
+        journal.markDirty(1, "Artist/Album");
+        journal.markDirty(2, "Other\tArtist/Album\nWith Newline");
+
+        Map<Integer, List<String>> directories = newJournal().snapshot().getDirectories();
+
+        assertEquals(List.of("Artist/Album"), directories.get(1));
+        assertEquals(List.of("Other\tArtist/Album\nWith Newline"), directories.get(2));
+    }
+
+    @Test
+    void completeKeepsChangesRecordedAfterSnapshot() {
+        DirtyDirectoryJournal journal = newJournal();
+        journal.markDirty(1, "A");
+        DirtyDirectoryJournal.Snapshot snapshot = journal.snapshot();
+        journal.markDirty(1, "B");
+
+        journal.complete(snapshot);
+
+        assertEquals(List.of("B"), journal.snapshot().getDirectories().get(1));
+        assertEquals(List.of("B"), newJournal().snapshot().getDirectories().get(1));
+    }
+
+    @Test
+    void changedDirectoriesSurviveRestart() {
+        DirtyDirectoryJournal journal = newJournal();
+        journal.markDirty(1, "New Album");
+        journal.markChanged(1, "");
+
+        DirtyDirectoryJournal.Snapshot snapshot = newJournal().snapshot();
+
+        assertFalse(snapshot.isEmpty());
+        assertEquals(List.of("New Album"), snapshot.getDirectories().get(1));
+        assertEquals(List.of(""), snapshot.getChangedDirectories().get(1));
+        journal.complete(snapshot);
+        assertTrue(newJournal().snapshot().isEmpty());
+    }
+
+    @Test
+    void changedDirectoriesBelowDirtyOnesAreLeftToTheRecursiveScan() {
+        DirtyDirectoryJournal journal = newJournal();
+        journal.markDirty(1, "Artist");
+        journal.markChanged(1, "Artist/Album");
+        journal.markChanged(1, "Other");
+        journal.markDirty(2, "");
+        journal.markChanged(2, "Artist");
+
+        Map<Integer, List<String>> changed = journal.snapshot().getChangedDirectories();
+
+        assertEquals(List.of("Other"), changed.get(1));
+        assertTrue(changed.getOrDefault(2, List.of()).isEmpty());
+    }
+
+    @Test
+    void overflowRequiresFullScan() {
+        DirtyDirectoryJournal journal = newJournal();
+        assertTrue(journal.snapshot().isEmpty());
+
+        journal.markOverflow(3);
+
+        DirtyDirectoryJournal.Snapshot snapshot = newJournal().snapshot();
+        assertFalse(snapshot.isEmpty());
+        assertTrue(snapshot.isFullScanRequired());
+        journal.complete(snapshot);
+        assertTrue(newJournal().snapshot().isEmpty());
+    }
+
+    @Test
+    void collapseDropsNestedDirectories() {
+        assertEquals(List.of("a", "a b"), sorted(DirtyDirectoryJournal.Snapshot.collapse(Set.of("a/b", "a", "a b", "a/b/c"))));
+        assertEquals(List.of(""), DirtyDirectoryJournal.Snapshot.collapse(Set.of("a/b", "")));
+    }
+
+    private static List<String> sorted(List<String> list) {
+        return list.stream().sorted().toList();
+    }
+}
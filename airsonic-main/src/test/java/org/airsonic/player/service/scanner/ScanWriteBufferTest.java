@@ -0,0 +1,187 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.scanner;
+
+import org.airsonic.player.config.AirsonicScanConfig;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.entity.ScanSeen;
+import org.airsonic.player.repository.ScanSeenRepository;
+import org.airsonic.player.service.AlbumService;
+import org.airsonic.player.service.ArtistService;
+import org.airsonic.player.service.MediaFileService;
+import org.airsonic.player.service.search.IndexManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ScanWriteBufferTest {
+
+    @Mock
+    private MediaFileService mediaFileService;
+    @Mock
+    private AlbumService albumService;
+    @Mock
+    private ArtistService artistService;
+    @Mock
+    private IndexManager indexManager;
+    @Mock
+    private ScanSeenRepository scanSeenRepository;
+
+    @Captor
+    private ArgumentCaptor<List<MediaFile>> batchCaptor;
+    @Captor
+    private ArgumentCaptor<List<ScanSeen>> seenCaptor;
+
+    private ScanWriteBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        AirsonicScanConfig scanConfig = new AirsonicScanConfig();
+        scanConfig.setBatchSize(2);
+        buffer = new ScanWriteBuffer(scanConfig, mediaFileService, albumService, artistService, indexManager, scanSeenRepository);
+        buffer.start(42L);
+    }
+
+    @Test
+    void writesFullBatchesAndDeduplicates() {
+        MediaFile first = mediaFile("first");
+        MediaFile second = mediaFile("second");
+
+        buffer.updateMediaFile(first);
+        buffer.updateMediaFile(first);
+        verify(mediaFileService, never()).updateMediaFiles(anyList());
+
+        buffer.updateMediaFile(second);
+        verify(mediaFileService).updateMediaFiles(batchCaptor.capture());
+        assertThat(batchCaptor.getValue()).containsExactlyInAnyOrder(first, second);
+        assertEquals(2, buffer.getRowsWritten());
+    }
+
+    @Test
+    void flushWritesPartialBatchAndIndexes() {
+        Album album = new Album();
+
+        buffer.saveAlbum(album);
+        verify(albumService, never()).saveAll(anyList());
+
+        buffer.flush();
+        verify(albumService).saveAll(List.of(album));
+        verify(indexManager).index(album);
+
+        buffer.flush();
+        verify(albumService, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void failedBatchIsWrittenOneByOne() {
+        MediaFile first = mediaFile("first");
+        MediaFile second = mediaFile("second");
+        doThrow(new RuntimeException("constraint violation")).when(mediaFileService).updateMediaFiles(anyList());
+        doThrow(new RuntimeException("constraint violation")).when(mediaFileService).updateMediaFile(first);
+
+        buffer.updateMediaFile(first);
+        buffer.updateMediaFile(second);
+
+        verify(mediaFileService).updateMediaFile(first);
+        verify(mediaFileService).updateMediaFile(second);
+        assertEquals(2, buffer.getRowsWritten());
+    }
+
+    @Test
+    void seenEntriesAreStagedOncePerGeneration() {
+        MediaFile file = mediaFile("file");
+        file.setId(7);
+        Album album = new Album();
+        album.setId(7);
+
+        buffer.markSeen(file);
+        buffer.markSeen(file);
+        buffer.markSeen(album);
+        verify(scanSeenRepository).deleteAllInBatch();
+        verify(scanSeenRepository).saveAll(seenCaptor.capture());
+        assertThat(seenCaptor.getValue()).extracting(ScanSeen::getGeneration, ScanSeen::getEntityType, ScanSeen::getEntityId)
+                .containsExactlyInAnyOrder(tuple(42L, ScanSeen.EntityType.MEDIA_FILE, 7), tuple(42L, ScanSeen.EntityType.ALBUM, 7));
+    }
+
+    @Test
+    void waitingForTheWriteLockLetsThePoolStartAnotherWorker() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(albumService).saveAll(anyList());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // fills a batch and keeps writing it
+            pool.execute(() -> {
+                buffer.saveAlbum(new Album());
+                buffer.saveAlbum(new Album());
+            });
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            // queues batches until it has to wait for the write lock
+            Future<?> waiting = pool.submit(() -> {
+                for (int i = 0; i < 8; i++) {
+                    buffer.saveAlbum(new Album());
+                }
+            });
+            // both workers are blocked, only a compensating worker can run this
+            pool.submit(release::countDown).get(5, TimeUnit.SECONDS);
+            waiting.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static MediaFile mediaFile(String path) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setFolder(new MusicFolder(1, Paths.get("music"), "Music", MusicFolder.Type.MEDIA, true, Instant.now()));
+        mediaFile.setPath(path);
+        return mediaFile;
+    }
+}
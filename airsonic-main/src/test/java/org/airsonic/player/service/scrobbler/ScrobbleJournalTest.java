@@ -0,0 +1,85 @@
+package org.airsonic.player.service.scrobbler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScrobbleJournalTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static Scrobble scrobble(String title) {
+        return new Scrobble("artist", "album", title, null, "recording", 3, 180, Instant.ofEpochSecond(1700000000L));
+    }
+
+    @Test
+    public void testPendingEntriesSurviveReload() {
+        Path file = tempDir.resolve("scrobbles.journal");
+        ScrobbleJournal journal = new ScrobbleJournal(file);
+        assertThat(journal.load()).isEmpty();
+
+        ScrobbleJournal.Entry first = journal.append("user", scrobble("first"));
+        journal.append("user", scrobble("second"));
+        journal.append("other", scrobble("third"));
+        journal.remove(List.of(first));
+
+        List<ScrobbleJournal.Entry> loaded = new ScrobbleJournal(file).load();
+        assertThat(loaded).extracting(ScrobbleJournal.Entry::account).containsExactly("user", "other");
+        assertThat(loaded.get(0).scrobble()).isEqualTo(scrobble("second"));
+        assertThat(loaded.get(1).scrobble()).isEqualTo(scrobble("third"));
+    }
+
+    @Test
+    public void testSequenceContinuesAfterReload() {
+        Path file = tempDir.resolve("scrobbles.journal");
+        ScrobbleJournal journal = new ScrobbleJournal(file);
+        journal.load();
+        ScrobbleJournal.Entry first = journal.append("user", scrobble("first"));
+
+        ScrobbleJournal reloaded = new ScrobbleJournal(file);
+        reloaded.load();
+        ScrobbleJournal.Entry second = reloaded.append("user", scrobble("second"));
+
+        assertThat(second.seq()).isGreaterThan(first.seq());
+    }
+
+    @Test
+    public void testTruncatedLineIsSkipped() throws IOException {
+        Path file = tempDir.resolve("scrobbles.journal");
+        ScrobbleJournal journal = new ScrobbleJournal(file);
+        journal.load();
+        journal.append("user", scrobble("first"));
+        Files.writeString(file, "+{\"seq\":1,\"acc", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        assertThat(new ScrobbleJournal(file).load()).extracting(entry -> entry.scrobble().title()).containsExactly("first");
+        // the file was rewritten without the truncated line
+        assertThat(Files.readAllLines(file)).hasSize(1);
+    }
+
+    @Test
+    public void testFileIsCompactedOnceMostEntriesAreRemoved() throws IOException {
+        Path file = tempDir.resolve("scrobbles.journal");
+        ScrobbleJournal journal = new ScrobbleJournal(file);
+        journal.load();
+        List<ScrobbleJournal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            entries.add(journal.append("user", scrobble("song" + i)));
+        }
+
+        journal.remove(entries.subList(0, 140));
+
+        assertThat(Files.readAllLines(file)).hasSize(10);
+        assertThat(new ScrobbleJournal(file).load()).hasSize(10);
+    }
+}
@@ -0,0 +1,149 @@
+package org.airsonic.player.service.scrobbler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ScrobblePipelineTest {
+
+    @TempDir
+    private Path tempDir;
+    @Mock
+    private ScheduledExecutorService executor;
+    @Mock
+    private ScheduledFuture<?> future;
+
+    private final FakeClient client = new FakeClient();
+    private final ScrobblePipeline.Account account = new ScrobblePipeline.Account("user", "user", "secret");
+
+    @BeforeEach
+    public void setUp() {
+        // drains run right away on the calling thread, retries are only run by the test
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Runnable.class).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        doReturn(future).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    private ScrobblePipeline createPipeline() {
+        return new ScrobblePipeline("test", new ScrobbleJournal(tempDir.resolve("scrobbles.journal")), client, executor);
+    }
+
+    private static Scrobble scrobble(int i) {
+        return new Scrobble("artist", "album", "song" + i, null, null, null, 180, Instant.ofEpochSecond(1700000000L + i));
+    }
+
+    private Runnable captureRetry(Duration delay) {
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(retry.capture(), eq(delay.toMillis()), eq(TimeUnit.MILLISECONDS));
+        return retry.getValue();
+    }
+
+    @Test
+    public void testSubmissionsQueuedDuringBackoffAreSentInBatches() {
+        ScrobblePipeline pipeline = createPipeline();
+        client.fail = true;
+        pipeline.register(account, scrobble(0), true);
+        Runnable retry = captureRetry(ScrobblePipeline.MIN_BACKOFF);
+
+        for (int i = 1; i <= 60; i++) {
+            pipeline.register(account, scrobble(i), true);
+        }
+        // backing off, so nothing else was tried
+        assertThat(client.attempts).isEqualTo(1);
+
+        client.fail = false;
+        retry.run();
+
+        assertThat(client.batches).extracting(List::size).containsExactly(50, 11);
+        assertThat(client.batches.get(0).get(0)).isEqualTo(scrobble(0));
+        assertThat(new ScrobbleJournal(tempDir.resolve("scrobbles.journal")).load()).isEmpty();
+    }
+
+    @Test
+    public void testJournaledSubmissionsWaitForCredentials() {
+        client.fail = true;
+        ScrobblePipeline pipeline = createPipeline();
+        pipeline.register(account, scrobble(0), true);
+        pipeline.register(account, scrobble(1), true);
+        pipeline.close();
+
+        // restart
+        client.fail = false;
+        client.attempts = 0;
+        pipeline = createPipeline();
+        assertThat(client.attempts).isEqualTo(0);
+
+        pipeline.register(account, scrobble(2), true);
+
+        assertThat(client.batches).containsExactly(List.of(scrobble(0), scrobble(1), scrobble(2)));
+    }
+
+    @Test
+    public void testNewCredentialsEndBackoff() {
+        ScrobblePipeline pipeline = createPipeline();
+        client.fail = true;
+        pipeline.register(account, scrobble(0), true);
+        verify(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        client.fail = false;
+        pipeline.register(new ScrobblePipeline.Account("user", "user", "new secret"), scrobble(1), true);
+
+        verify(future).cancel(false);
+        assertThat(client.batches).containsExactly(List.of(scrobble(0), scrobble(1)));
+    }
+
+    @Test
+    public void testBackoffDoublesUpToMax() {
+        assertThat(ScrobblePipeline.backoff(1)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(ScrobblePipeline.backoff(2)).isEqualTo(Duration.ofSeconds(60));
+        assertThat(ScrobblePipeline.backoff(8)).isEqualTo(Duration.ofHours(1));
+        assertThat(ScrobblePipeline.backoff(100)).isEqualTo(Duration.ofHours(1));
+    }
+
+    private static class FakeClient implements ScrobblePipeline.Client {
+        private boolean fail;
+        private int attempts;
+        private final List<List<Scrobble>> batches = new ArrayList<>();
+
+        @Override
+        public void submit(ScrobblePipeline.Account account, List<Scrobble> scrobbles) throws IOException {
+            attempts++;
+            if (fail) {
+                throw new IOException("offline");
+            }
+            batches.add(List.copyOf(scrobbles));
+        }
+
+        @Override
+        public void nowPlaying(ScrobblePipeline.Account account, Scrobble scrobble) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.airsonic.player.service.search;
+
+import org.airsonic.player.service.search.RandomSampleCollectorManager.RandomSampleCollector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RandomSampleCollectorManagerTestCase {
+
+    private static RandomSampleCollector collect(RandomSampleCollectorManager manager, int from, int to) {
+        RandomSampleCollector collector = manager.newCollector();
+        IntStream.range(from, to).forEach(collector::collect);
+        return collector;
+    }
+
+    @Test
+    public void testSampleIsDistinctAndBounded() {
+        RandomSampleCollectorManager manager = new RandomSampleCollectorManager(10);
+
+        int[] docs = manager.reduce(List.of(collect(manager, 0, 1000)));
+
+        assertEquals(10, docs.length);
+        Set<Integer> distinct = Arrays.stream(docs).boxed().collect(Collectors.toSet());
+        assertEquals(10, distinct.size());
+        assertTrue(distinct.stream().allMatch(doc -> doc >= 0 && doc < 1000));
+    }
+
+    @Test
+    public void testAllMatchesWhenFewerThanCount() {
+        RandomSampleCollectorManager manager = new RandomSampleCollectorManager(Integer.MAX_VALUE);
+
+        int[] docs = manager.reduce(List.of(collect(manager, 0, 5), collect(manager, 5, 8)));
+
+        assertEquals(Set.of(0, 1, 2, 3, 4, 5, 6, 7), Arrays.stream(docs).boxed().collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testSlicesAreSampledInProportion() {
+        RandomSampleCollectorManager manager = new RandomSampleCollectorManager(100);
+        int fromLarge = 0;
+        for (int i = 0; i < 20; i++) {
+            int[] docs = manager.reduce(List.of(collect(manager, 0, 9000), collect(manager, 9000, 10000)));
+            assertEquals(100, docs.length);
+            fromLarge += (int) Arrays.stream(docs).filter(doc -> doc < 9000).count();
+        }
+        // 90% expected, 1800 of 2000
+        assertTrue(fromLarge > 1650 && fromLarge < 1950, "Picked " + fromLarge + " docs of the larger slice");
+    }
+}
@@ -9,6 +9,7 @@ import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MediaFile.MediaType;
+import org.airsonic.player.domain.MediaLibraryStatistics;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.ParamSearchResult;
 import org.airsonic.player.domain.RandomSearchCriteria;
@@ -55,6 +56,9 @@ public class SearchServiceTestCase {
     @Autowired
     private MediaScannerService mediaScannerService;
 
+    @Autowired
+    private IndexManager indexManager;
+
     @TempDir
     private static Path airsonicHome;
 
@@ -433,6 +437,29 @@ public class SearchServiceTestCase {
         System.out.println("End. ");
     }
 
+    @Test
+    public void testRandomSongsSkipStaleIndexEntries() {
+        List<MusicFolder> allMusicFolders = musicFolderRepository.findByDeleted(false);
+
+        // songs removed from the database since the last scan are still in the index
+        MediaLibraryStatistics statistics = indexManager.getStatistics();
+        indexManager.startIndexing();
+        for (int i = 0; i < 20; i++) {
+            MediaFile stale = new MediaFile();
+            stale.setId(Integer.MAX_VALUE - i);
+            stale.setMediaType(MediaType.MUSIC);
+            stale.setTitle("Stale");
+            indexManager.index(stale, allMusicFolders.get(0));
+        }
+        indexManager.stopIndexing(statistics);
+
+        RandomSearchCriteria criteria = new RandomSearchCriteria(10, null, null, null, allMusicFolders);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(10, searchService.getRandomSongs(criteria).size(),
+                    "10 of the 11 songs are returned, whatever stale entries are sampled");
+        }
+    }
+
     private static String[] createRandomWords(int count) {
         String[] randomStrings = new String[count];
         Random random = new Random();
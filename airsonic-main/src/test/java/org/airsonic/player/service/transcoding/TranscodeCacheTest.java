@@ -0,0 +1,181 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import org.airsonic.player.config.AirsonicHomeConfig;
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.domain.VideoTranscodingSettings;
+import org.airsonic.player.service.TranscodingService.Parameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class TranscodeCacheTest {
+
+    private static final byte[] DATA = "transcoded data".getBytes();
+    private static final CompletableFuture<Boolean> SUCCEEDED = CompletableFuture.completedFuture(true);
+
+    @TempDir
+    private Path home;
+
+    @Mock
+    private AirsonicHomeConfig homeConfig;
+
+    private final AirsonicTranscodeConfig config = new AirsonicTranscodeConfig();
+
+    private TranscodeCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(homeConfig.getAirsonicHome()).thenReturn(home);
+        cache = new TranscodeCache(config, homeConfig);
+    }
+
+    @Test
+    void completeOutputIsCached() throws Exception {
+        assertThat(cache.getLength(parameters(1, 128))).isNull();
+        assertThat(cache.open(parameters(1, 128))).isNull();
+
+        try (InputStream in = cache.tee(parameters(1, 128), new ByteArrayInputStream(DATA), SUCCEEDED)) {
+            assertThat(in.readAllBytes()).isEqualTo(DATA);
+        }
+
+        assertThat(cache.getLength(parameters(1, 128))).isEqualTo(DATA.length);
+        assertThat(cache.getLength(parameters(1, 320))).isNull();
+        try (InputStream in = cache.open(parameters(1, 128))) {
+            assertThat(in.readAllBytes()).isEqualTo(DATA);
+        }
+
+        // survives a restart
+        TranscodeCache restarted = new TranscodeCache(config, homeConfig);
+        assertThat(restarted.getLength(parameters(1, 128))).isEqualTo(DATA.length);
+        assertThat(restarted.getSize()).isEqualTo(DATA.length);
+    }
+
+    @Test
+    void incompleteOutputIsDiscarded() throws Exception {
+        try (InputStream in = cache.tee(parameters(1, 128), new ByteArrayInputStream(DATA), SUCCEEDED)) {
+            assertThat(in.readNBytes(4)).hasSize(4);
+        }
+
+        assertThat(cache.getLength(parameters(1, 128))).isNull();
+        try (Stream<Path> files = Files.list(home.resolve("transcodecache"))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void outputOfFailedTranscoderIsDiscarded() throws Exception {
+        try (InputStream in = cache.tee(parameters(1, 128), new ByteArrayInputStream(DATA), CompletableFuture.completedFuture(false))) {
+            assertThat(in.readAllBytes()).isEqualTo(DATA);
+        }
+
+        assertThat(cache.getLength(parameters(1, 128))).isNull();
+        try (Stream<Path> files = Files.list(home.resolve("transcodecache"))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void emptyOutputIsDiscarded() throws Exception {
+        try (InputStream in = cache.tee(parameters(1, 128), new ByteArrayInputStream(new byte[0]), SUCCEEDED)) {
+            assertThat(in.read()).isEqualTo(-1);
+        }
+
+        assertThat(cache.getLength(parameters(1, 128))).isNull();
+        // the next transcode may try again
+        InputStream source = new ByteArrayInputStream(DATA);
+        try (InputStream in = cache.tee(parameters(1, 128), source, SUCCEEDED)) {
+            assertThat(in).isNotSameAs(source);
+        }
+    }
+
+    @Test
+    void onlyOneWriterPerTranscode() throws Exception {
+        InputStream source = new ByteArrayInputStream(DATA);
+        try (InputStream first = cache.tee(parameters(1, 128), new ByteArrayInputStream(DATA), SUCCEEDED)) {
+            assertThat(cache.tee(parameters(1, 128), source, SUCCEEDED)).isSameAs(source);
+        }
+        try (InputStream second = cache.tee(parameters(1, 128), source, SUCCEEDED)) {
+            assertThat(second).isNotSameAs(source);
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedOutputIsEvicted() throws Exception {
+        config.setCacheSize(1);
+        byte[] data = new byte[400 * 1024];
+        for (int id = 1; id <= 2; id++) {
+            try (InputStream in = cache.tee(parameters(id, 128), new ByteArrayInputStream(data), SUCCEEDED)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+        cache.getLength(parameters(1, 128));
+        try (InputStream in = cache.tee(parameters(3, 128), new ByteArrayInputStream(data), SUCCEEDED)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        assertThat(cache.getLength(parameters(1, 128))).isEqualTo(data.length);
+        assertThat(cache.getLength(parameters(2, 128))).isNull();
+        assertThat(cache.getLength(parameters(3, 128))).isEqualTo(data.length);
+        assertThat(cache.getSize()).isEqualTo(2L * data.length);
+    }
+
+    @Test
+    void uncacheableOutputIsPassedThrough() {
+        Parameters video = new Parameters(parameters(1, 128).getMediaFile(), new VideoTranscodingSettings(640, 480, 0, 10.0), 128);
+        video.setTranscoding(parameters(1, 128).getTranscoding());
+        InputStream source = new ByteArrayInputStream(DATA);
+        assertThat(cache.tee(video, source, SUCCEEDED)).isSameAs(source);
+
+        config.setCacheSize(0);
+        assertThat(cache.tee(parameters(1, 128), source, SUCCEEDED)).isSameAs(source);
+        assertThat(cache.getLength(parameters(1, 128))).isNull();
+    }
+
+    private static Parameters parameters(int mediaFileId, int bitRate) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(mediaFileId);
+        mediaFile.setChanged(Instant.EPOCH);
+        Parameters parameters = new Parameters(mediaFile, null, bitRate);
+        parameters.setTranscoding(new Transcoding(1, "mp3 audio", "flac", "mp3", "ffmpeg -i %s -ab %bk -", null, null, true));
+        return parameters;
+    }
+}
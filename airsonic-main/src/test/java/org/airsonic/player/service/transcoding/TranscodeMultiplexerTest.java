@@ -0,0 +1,198 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.service.TranscodingService.Parameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TranscodeMultiplexerTest {
+
+    private static final byte[] DATA = "transcoded data".getBytes();
+
+    private final AirsonicTranscodeConfig config = new AirsonicTranscodeConfig();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger stopped = new AtomicInteger();
+
+    private TranscodeMultiplexer multiplexer;
+
+    @BeforeEach
+    void setUp() {
+        multiplexer = new TranscodeMultiplexer(config);
+    }
+
+    @Test
+    void identicalTranscodesShareOneProcess() throws Exception {
+        try (InputStream first = multiplexer.open(parameters(1, 128), this::start);
+                InputStream second = multiplexer.open(parameters(1, 128), this::start)) {
+            assertThat(started).hasValue(1);
+            assertThat(first.readAllBytes()).isEqualTo(DATA);
+            assertThat(second.readAllBytes()).isEqualTo(DATA);
+
+            // the whole transcode is still buffered, so late joiners get all of it
+            try (InputStream late = multiplexer.open(parameters(1, 128), this::start)) {
+                assertThat(late.readAllBytes()).isEqualTo(DATA);
+            }
+            assertThat(started).hasValue(1);
+            assertThat(stopped).hasValue(0);
+        }
+
+        assertThat(stopped).hasValue(1);
+        assertThat(multiplexer.getSharedTranscodeCount()).isZero();
+    }
+
+    @Test
+    void differentParametersStartOwnProcess() throws Exception {
+        try (InputStream first = multiplexer.open(parameters(1, 128), this::start);
+                InputStream second = multiplexer.open(parameters(1, 320), this::start);
+                InputStream third = multiplexer.open(parameters(2, 128), this::start)) {
+            assertThat(started).hasValue(3);
+            assertThat(multiplexer.getSharedTranscodeCount()).isEqualTo(3);
+        }
+        assertThat(stopped).hasValue(3);
+    }
+
+    @Test
+    void sharingCanBeDisabled() throws Exception {
+        config.setShareStreams(false);
+
+        try (InputStream first = multiplexer.open(parameters(1, 128), this::start);
+                InputStream second = multiplexer.open(parameters(1, 128), this::start)) {
+            assertThat(started).hasValue(2);
+            assertThat(multiplexer.getSharedTranscodeCount()).isZero();
+        }
+    }
+
+    @Test
+    void joinersWaitForTheTranscodeBeingStarted() throws Exception {
+        CountDownLatch starting = new CountDownLatch(1);
+        CountDownLatch admitted = new CountDownLatch(1);
+        CompletableFuture<InputStream> first = CompletableFuture.supplyAsync(() -> open(() -> {
+            starting.countDown();
+            await(admitted);
+            return start();
+        }));
+        starting.await(5, TimeUnit.SECONDS);
+        AtomicReference<InputStream> second = new AtomicReference<>();
+        Thread joiner = new Thread(() -> second.set(open(this::start)));
+        joiner.start();
+        awaitState(() -> joiner.getState() == Thread.State.WAITING);
+        assertThat(started).hasValue(0);
+
+        admitted.countDown();
+        joiner.join(5000);
+        try (InputStream firstIn = first.get(5, TimeUnit.SECONDS); InputStream secondIn = second.get()) {
+            assertThat(started).hasValue(1);
+            assertThat(firstIn.readAllBytes()).isEqualTo(DATA);
+            assertThat(secondIn.readAllBytes()).isEqualTo(DATA);
+        }
+        assertThat(stopped).hasValue(1);
+    }
+
+    @Test
+    void joinersOfARejectedTranscodeAreRejected() throws Exception {
+        CountDownLatch starting = new CountDownLatch(1);
+        CountDownLatch admitted = new CountDownLatch(1);
+        CompletableFuture<InputStream> first = CompletableFuture.supplyAsync(() -> open(() -> {
+            starting.countDown();
+            await(admitted);
+            throw new TranscodeRejectedException("Timed out", 30);
+        }));
+        starting.await(5, TimeUnit.SECONDS);
+        AtomicReference<Throwable> second = new AtomicReference<>();
+        Thread joiner = new Thread(() -> {
+            try {
+                multiplexer.open(parameters(1, 128), this::start);
+            } catch (IOException e) {
+                second.set(e);
+            }
+        });
+        joiner.start();
+        awaitState(() -> joiner.getState() == Thread.State.WAITING);
+
+        admitted.countDown();
+        joiner.join(5000);
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(TranscodeRejectedException.class);
+        assertThat(second.get()).isInstanceOf(TranscodeRejectedException.class);
+        assertThat(started).hasValue(0);
+        assertThat(multiplexer.getSharedTranscodeCount()).isZero();
+    }
+
+    private InputStream open(TranscodeMultiplexer.Transcoder transcoder) {
+        try {
+            return multiplexer.open(parameters(1, 128), transcoder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedIOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void awaitState(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private InputStream start() {
+        started.incrementAndGet();
+        return new ByteArrayInputStream(DATA) {
+            @Override
+            public void close() throws IOException {
+                stopped.incrementAndGet();
+            }
+        };
+    }
+
+    private static Parameters parameters(int mediaFileId, int bitRate) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(mediaFileId);
+        mediaFile.setChanged(Instant.EPOCH);
+        Parameters parameters = new Parameters(mediaFile, null, bitRate);
+        parameters.setTranscoding(new Transcoding(null, "mp3 audio", "flac", "mp3", "ffmpeg -i %s -ab %bk -", null, null, true));
+        return parameters;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2026 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.transcoding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.airsonic.player.config.AirsonicTranscodeConfig;
+import org.airsonic.player.service.transcoding.TranscodeScheduler.Kind;
+import org.airsonic.player.service.transcoding.TranscodeScheduler.Permit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TranscodeSchedulerTest {
+
+    private final AirsonicTranscodeConfig config = new AirsonicTranscodeConfig();
+
+    private TranscodeScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        config.setConcurrency(2);
+        config.setUserConcurrency(2);
+        config.setQueueTimeout(1);
+        scheduler = new TranscodeScheduler(config);
+    }
+
+    @Test
+    void transcodesBeyondTheBudgetWaitAndTimeOut() throws Exception {
+        try (Permit first = scheduler.acquire(Kind.AUDIO, "alice");
+                Permit second = scheduler.acquire(Kind.AUDIO, "bob")) {
+            assertThat(scheduler.getRunningUnits()).isEqualTo(2);
+            assertThatThrownBy(() -> scheduler.acquire(Kind.AUDIO, "carol")).isInstanceOf(TranscodeRejectedException.class);
+            assertThat(scheduler.getQueueSize(Kind.AUDIO)).isZero();
+        }
+        assertThat(scheduler.getRunningCount()).isZero();
+        assertThat(scheduler.getRunningUnits()).isZero();
+    }
+
+    @Test
+    void freedUnitsStartWaitingTranscode() throws Exception {
+        Permit first = scheduler.acquire(Kind.VIDEO, "alice");
+        CompletableFuture<Permit> waiting = acquireAsync(Kind.AUDIO, "bob");
+        awaitQueued(Kind.AUDIO, 1);
+
+        first.close();
+        // closing twice does not free more units
+        first.close();
+        try (Permit second = waiting.get(5, TimeUnit.SECONDS)) {
+            assertThat(scheduler.getRunningUnits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void audioIsStartedBeforeEarlierQueuedImages() throws Exception {
+        config.setConcurrency(1);
+        config.setUserConcurrency(1);
+        Permit running = scheduler.acquire(Kind.AUDIO, "alice");
+        CompletableFuture<Permit> image = acquireAsync(Kind.IMAGE, null);
+        awaitQueued(Kind.IMAGE, 1);
+        CompletableFuture<Permit> audio = acquireAsync(Kind.AUDIO, "bob");
+        awaitQueued(Kind.AUDIO, 1);
+
+        running.close();
+        try (Permit started = audio.get(5, TimeUnit.SECONDS)) {
+            assertThat(image).isNotDone();
+        }
+        image.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    void usersAreLimitedToTheirShare() throws Exception {
+        config.setConcurrency(4);
+        try (Permit first = scheduler.acquire(Kind.AUDIO, "alice");
+                Permit second = scheduler.acquire(Kind.AUDIO, "alice")) {
+            CompletableFuture<Permit> third = acquireAsync(Kind.AUDIO, "alice");
+            awaitQueued(Kind.AUDIO, 1);
+
+            // other users are not held up by alice
+            try (Permit other = scheduler.acquire(Kind.AUDIO, "bob")) {
+                assertThat(third).isNotDone();
+            }
+            first.close();
+            third.get(5, TimeUnit.SECONDS).close();
+        }
+    }
+
+    @Test
+    void userWithFewerRunningTranscodesGoesFirst() throws Exception {
+        Permit first = scheduler.acquire(Kind.AUDIO, "alice");
+        try (Permit second = scheduler.acquire(Kind.AUDIO, "alice")) {
+            CompletableFuture<Permit> alice = acquireAsync(Kind.AUDIO, "alice");
+            awaitQueued(Kind.AUDIO, 1);
+            CompletableFuture<Permit> bob = acquireAsync(Kind.AUDIO, "bob");
+            awaitQueued(Kind.AUDIO, 2);
+
+            first.close();
+            try (Permit started = bob.get(5, TimeUnit.SECONDS)) {
+                assertThat(alice).isNotDone();
+            }
+            alice.get(5, TimeUnit.SECONDS).close();
+        }
+    }
+
+    @Test
+    void preRollIsNotTakenFromTheUserShare() throws Exception {
+        config.setConcurrency(4);
+        try (Permit first = scheduler.acquire(Kind.AUDIO, "alice");
+                Permit second = scheduler.acquire(Kind.AUDIO, "alice");
+                Permit preRoll = scheduler.acquire(Kind.PRE_ROLL, "alice")) {
+            assertThat(scheduler.getRunningUnits()).isEqualTo(3);
+            // the pre-roll left alice's share untouched for others
+            assertThatThrownBy(() -> scheduler.acquire(Kind.AUDIO, "alice")).isInstanceOf(TranscodeRejectedException.class);
+            try (Permit other = scheduler.acquire(Kind.AUDIO, "bob")) {
+                assertThat(scheduler.getRunningUnits()).isEqualTo(4);
+            }
+        }
+        assertThat(scheduler.getRunningUnits()).isZero();
+    }
+
+    @Test
+    void preRollIsStartedLast() throws Exception {
+        config.setConcurrency(1);
+        config.setUserConcurrency(1);
+        Permit running = scheduler.acquire(Kind.AUDIO, "alice");
+        CompletableFuture<Permit> preRoll = acquireAsync(Kind.PRE_ROLL, "alice");
+        awaitQueued(Kind.PRE_ROLL, 1);
+        CompletableFuture<Permit> image = acquireAsync(Kind.IMAGE, null);
+        awaitQueued(Kind.IMAGE, 1);
+
+        running.close();
+        try (Permit started = image.get(5, TimeUnit.SECONDS)) {
+            assertThat(preRoll).isNotDone();
+        }
+        preRoll.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    void costIsCappedToTheBudget() throws Exception {
+        config.setConcurrency(1);
+        config.setUserConcurrency(1);
+        try (Permit video = scheduler.acquire(Kind.HLS, null)) {
+            assertThat(scheduler.getRunningUnits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void metricsAreRegistered() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        scheduler.bindTo(registry);
+        try (Permit permit = scheduler.acquire(Kind.AUDIO, "alice")) {
+            assertThat(registry.get("transcode.running").gauge().value()).isEqualTo(1.0);
+            assertThat(registry.get("transcode.queue.wait").tag("kind", "audio").functionTimer().count()).isEqualTo(1.0);
+            assertThat(registry.get("transcode.queue.size").tag("kind", "video").gauge().value()).isZero();
+        }
+    }
+
+    private CompletableFuture<Permit> acquireAsync(Kind kind, String username) {
+        config.setQueueTimeout(10);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.acquire(kind, username);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void awaitQueued(Kind kind, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueueSize(kind) < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(scheduler.getQueueSize(kind)).isEqualTo(size);
+    }
+}